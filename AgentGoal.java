@@ -0,0 +1,248 @@
+//
+// AGENT GOAL
+// ==========
+// A goal handed from the team coordinator to a diagnostic agent. The goal is
+// placed in the agent's goal inbox and the coordinator keeps the completion 
+// future, which the agent completes with the final goal state. The agent
+// also posts the finished goal to the team's completion queue so that the 
+// coordinator can block until any agent finishes rather than polling them.
+//
+// (c) AUT University - 2026
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+// 18.10.2026 BRD Goals now carry a priority and a deadline, and are ordered by them
+//                in the agent's goal inbox.
+// 18.10.2026 BRD Deadlines are checked against the EngineClock.
+// 18.10.2026 BRD A goal can carry the fault belief it was raised for and the 
+//                script that diagnoses it. A goal that is re-queued after being
+//                pre-empted has its queued time reset.
+//
+package fde;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.intendico.gorite.Goal;
+
+public class AgentGoal implements Comparable<AgentGoal> {
+	// Goal priorities. A goal of a higher priority pre-empts a goal of a lower
+	// priority at the next safe point.
+	public static final int PRIORITY_ROUTINE = 0;
+	public static final int PRIORITY_REPORT = 1;
+	public static final int PRIORITY_CONFIGURE = 2;
+	public static final int PRIORITY_DIAGNOSIS = 5;
+	public static final int PRIORITY_FAULT = 9;
+	
+	// Used to keep goals of the same priority and deadline in FIFO order.
+	private static final AtomicLong sequence = new AtomicLong(0);
+	
+	private final String goalName;
+	private final String agentName;
+	private final CompletableFuture<Goal.States> completion = new CompletableFuture<Goal.States>();
+	
+	// Times in nanoseconds from System.nanoTime().
+	private volatile long queuedTime;
+	private volatile long startTime = 0;
+	
+	private final int priority;
+	private final long deadline;     // Epoch time in milliseconds, or zero if there is none.
+	private final long sequenceNumber = sequence.getAndIncrement();
+	
+	// The fault belief the goal was raised for and the script that handles it,
+	// or null for a goal that runs the script bound to the agent.
+	private final Belief belief;
+	private final String scriptName;
+	
+	//
+	// AgentGoal()
+	// ===========
+	// Creates a goal with the default priority for its name and no deadline.
+	//
+	public AgentGoal(String goalName, String agentName) {
+		this(goalName, agentName, defaultPriority(goalName), 0);
+	}
+	
+	//
+	// AgentGoal()
+	// ===========
+	// priority  One of the PRIORITY_ values. Higher values are more urgent.
+	//
+	// deadline  The epoch time in milliseconds by which the goal should be
+	//           complete, or zero if it has no deadline.
+	//
+	public AgentGoal(String goalName, String agentName, int priority, long deadline) {
+		this(goalName, agentName, priority, deadline, null, null);
+	}
+	
+	//
+	// AgentGoal()
+	// ===========
+	// belief      The fault belief the goal was raised for.
+	//
+	// scriptName  The script the agent runs for the goal instead of the one
+	//             bound to it, or null to run the bound script.
+	//
+	public AgentGoal(String goalName, String agentName, int priority, long deadline, Belief belief, String scriptName) {
+		this.goalName = goalName;
+		this.agentName = agentName;
+		this.priority = priority;
+		this.deadline = deadline;
+		this.belief = belief;
+		this.scriptName = scriptName;
+		this.queuedTime = System.nanoTime();
+	}
+	
+	//
+	// defaultPriority()
+	// =================
+	// The priority a goal is given when none is specified.
+	//
+	public static int defaultPriority(String goalName) {
+		switch (goalName) {
+		case Constants.DIAGNOSE_FAULTS:
+			return PRIORITY_DIAGNOSIS;
+		case Constants.CONFIGURE_DIAGNOSTICS:
+			return PRIORITY_CONFIGURE;
+		case Constants.REPORT_FAULTS:
+			return PRIORITY_REPORT;
+		default:
+			return PRIORITY_ROUTINE;
+		}
+	}
+	
+	//
+	// compareTo()
+	// ===========
+	// Orders goals by priority, most urgent first, then by the earliest deadline,
+	// then in the order they were created.
+	//
+	@Override
+	public int compareTo(AgentGoal goal) {
+		if (priority != goal.priority) {
+			return (priority > goal.priority) ? -1 : 1;
+		}
+		if (deadline != goal.deadline) {
+			if (deadline == 0) {
+				return 1;
+			} else if (goal.deadline == 0) {
+				return -1;
+			}
+			return (deadline < goal.deadline) ? -1 : 1;
+		}
+		return Long.compare(sequenceNumber, goal.sequenceNumber);
+	}
+	
+	//
+	// get Priority()
+	// ==============
+	public int Priority() {
+		return priority;
+	}
+	
+	//
+	// get Deadline()
+	// ==============
+	public long Deadline() {
+		return deadline;
+	}
+	
+	//
+	// isOverdue()
+	// ===========
+	// True if the goal has a deadline and it has passed.
+	//
+	public boolean isOverdue() {
+		return (deadline > 0) && (EngineClock.clock().currentTimeMillis() > deadline);
+	}
+	
+	//
+	// get Name()
+	// ==========
+	public String Name() {
+		return goalName;
+	}
+	
+	//
+	// get AgentName()
+	// ===============
+	public String AgentName() {
+		return agentName;
+	}
+	
+	//
+	// get belief()
+	// ============
+	// The fault belief the goal was raised for, or null.
+	//
+	public Belief belief() {
+		return belief;
+	}
+	
+	//
+	// get scriptName()
+	// ================
+	// The script chosen for the goal, or null if the agent runs its own.
+	//
+	public String scriptName() {
+		return scriptName;
+	}
+	
+	//
+	// started()
+	// =========
+	// Called by the agent when it takes the goal from its inbox.
+	//
+	void started() {
+		startTime = System.nanoTime();
+	}
+	
+	//
+	// requeued()
+	// ==========
+	// Called by the agent when it puts a pre-empted goal back in its inbox, so
+	// that the next dispatch latency is measured from now.
+	//
+	void requeued() {
+		startTime = 0;
+		queuedTime = System.nanoTime();
+	}
+	
+	//
+	// complete()
+	// ==========
+	// Called by the agent when it has finished the goal.
+	//
+	void complete(Goal.States goalState) {
+		completion.complete(goalState);
+	}
+	
+	//
+	// get completion()
+	// ================
+	// The future that completes with the final state of the goal.
+	//
+	public CompletableFuture<Goal.States> completion() {
+		return completion;
+	}
+	
+	//
+	// get GoalState()
+	// ===============
+	// The final state of the goal, or null if it has not finished yet.
+	//
+	public Goal.States GoalState() {
+		return completion.getNow(null);
+	}
+	
+	//
+	// get dispatchLatency()
+	// =====================
+	// The time in nanoseconds between the coordinator queueing the goal and
+	// the agent starting it, or zero if it has not started.
+	//
+	public long dispatchLatency() {
+		return (startTime == 0) ? 0 : startTime - queuedTime;
+	}
+}
@@ -0,0 +1,323 @@
+//
+// AGENT POOL
+// ==========
+// Manages the diagnostic agents that belong to a team. Agents are created on
+// demand, for example one for each subsystem being monitored, and are run on
+// a managed executor rather than on individually-started threads. The team
+// coordinator works through the pool using a single generic goal, so the 
+// number of agents can grow without any change to the team code.
+//
+// (c) AUT University - 2026
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+// 18.10.2026 BRD Added the virtual thread execution mode and benchmark().
+// 18.10.2026 BRD Added the completion queue that the agents post finished goals to.
+// 18.10.2026 BRD Corrected the notes on pinning now that the VirtualClock and the
+//                NIOserver's client records use ReentrantLocks.
+//
+// Documentation
+// =============
+// Agents spend nearly all their time waiting: sleeping between goals, or in 
+// the delay() and readWait() loops of their scripts. On a Java runtime with
+// virtual threads (Java 21 or later), the pool can run each agent, and so the
+// scripts it executes, on a virtual thread. A waiting agent then costs a few 
+// kilobytes of heap rather than a platform thread, and thousands of agents 
+// can monitor a single application. On older runtimes the pool falls back to
+// platform threads.
+//
+// The virtual thread executor is looked up by reflection so that the engine
+// still builds and runs on Java 8 to 17.
+//
+// None of the waits an agent makes are inside synchronized blocks, which would
+// pin a virtual thread to its carrier. The pool itself uses a lock-free list 
+// and a ReentrantLock, the NIOserver queues are lock-free, and the NIOserver's
+// client records and the VirtualClock are guarded by ReentrantLocks. The other
+// classes a script uses, such as DiagnosticPointStatistics, SignalAligner and
+// TimeSeriesStore, hold their monitors only for a few field updates and never
+// wait while they hold one. On Java 21 to 23 a virtual thread that finds such
+// a monitor taken is pinned until it is released, which is only briefly.
+//
+package fde;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class AgentPool {
+	// The default limit on the number of agents in a pool. 
+	public static final int DEFAULT_MAX_AGENTS = 64;
+	
+	// Agents can be scheduled on platform threads or virtual threads.
+	public enum ExecutionModes {
+		PLATFORM_THREADS,
+		VIRTUAL_THREADS
+	}
+	
+	private List<DiagnosticAgent> agents = new CopyOnWriteArrayList<DiagnosticAgent>();
+	private final ReentrantLock addLock = new ReentrantLock();
+	private final BlockingQueue<AgentGoal> completions = new LinkedBlockingQueue<AgentGoal>();
+	private ExecutorService executor;
+	private ExecutionModes executionMode = ExecutionModes.PLATFORM_THREADS;
+	private int maxAgents = DEFAULT_MAX_AGENTS;
+	
+	private NIOserver server;
+	private DiagnosticPoints dps;
+	
+	private boolean isSilent = false;
+	
+	//
+	// AgentPool()
+	// ===========
+	// server     The server that the agents use to reach the diagnostic points.
+	//
+	// dps        The diagnostic points deployed in the application.
+	//
+	// maxAgents  The largest number of agents the pool will create.
+	//
+	public AgentPool(NIOserver server, DiagnosticPoints dps, int maxAgents) {
+		this(server, dps, maxAgents, ExecutionModes.PLATFORM_THREADS);
+	}
+	
+	//
+	// AgentPool()
+	// ===========
+	// As above, but running the agents in the requested execution mode. If
+	// virtual threads are requested but the runtime does not support them,
+	// platform threads are used instead. executionMode() reports which one
+	// the pool actually uses.
+	//
+	public AgentPool(NIOserver server, DiagnosticPoints dps, int maxAgents, ExecutionModes executionMode) {
+		this.server = server;
+		this.dps = dps;
+		this.maxAgents = maxAgents;
+		
+		if (executionMode == ExecutionModes.VIRTUAL_THREADS) {
+			executor = newVirtualThreadExecutor();
+		}
+		if (executor != null) {
+			this.executionMode = ExecutionModes.VIRTUAL_THREADS;
+		} else {
+			if (executionMode == ExecutionModes.VIRTUAL_THREADS) {
+				say("Virtual threads are not supported by this Java runtime. Using platform threads.");
+			}
+			this.executionMode = ExecutionModes.PLATFORM_THREADS;
+			executor = newPlatformThreadExecutor();
+		}
+	}
+	
+	//
+	// newPlatformThreadExecutor()
+	// ===========================
+	// Each agent runs for the life of the engine, so the executor grows with
+	// the pool. The threads are named after the order the agents were added
+	// to make them easy to pick out in a thread dump.
+	//
+	private static ExecutorService newPlatformThreadExecutor() {
+		return Executors.newCachedThreadPool(new ThreadFactory() {
+			private AtomicInteger cntThreads = new AtomicInteger(0);
+			
+			public Thread newThread(Runnable agent) {
+				Thread thread = new Thread(agent, "agent-" + cntThreads.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	//
+	// newVirtualThreadExecutor()
+	// ==========================
+	// Returns an executor that starts a new virtual thread for each agent, or
+	// null if the runtime does not have virtual threads.
+	//
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+	
+	//
+	// add()
+	// =====
+	// Creates a new agent with this name and starts it. The agent is idle until
+	// the coordinator assigns it a goal.
+	//
+	// returns  the agent, or null if the pool is full or already has an agent
+	//          with that name.
+	//
+	public DiagnosticAgent add(String agentName) {
+		DiagnosticAgent agent = null;
+		
+		addLock.lock();
+		try {
+			if (agents.size() >= maxAgents) {
+				say("Agent pool is full. Could not add agent " + agentName);
+			} else if (find(agentName) != null) {
+				say("Agent " + agentName + " is already in the pool.");
+			} else {
+				agent = new DiagnosticAgent(agentName, server, dps);
+				agent.completions(completions);
+				agents.add(agent);
+			}
+		} finally {
+			addLock.unlock();
+		}
+		
+		if (agent != null) {
+			executor.execute(agent);
+		}
+		return agent;
+	}
+	
+	//
+	// get()
+	// =====
+	public DiagnosticAgent get(int ptrAgent) {
+		if (ptrAgent < agents.size()) {
+			return agents.get(ptrAgent);
+		}
+		return null;
+	}
+	
+	//
+	// find()
+	// ======
+	// Returns the agent with this name, or null if there is not one.
+	//
+	public DiagnosticAgent find(String agentName) {
+		for (DiagnosticAgent agent : agents) {
+			if (agent.AgentName().equals(agentName)) {
+				return agent;
+			}
+		}
+		return null;
+	}
+	
+	//
+	// count()
+	// =======
+	public int count() {
+		return agents.size();
+	}
+	
+	//
+	// get completions()
+	// =================
+	// The queue that every agent in the pool posts its finished goals to.
+	//
+	public BlockingQueue<AgentGoal> completions() {
+		return completions;
+	}
+	
+	//
+	// get maxAgents()
+	// ===============
+	public int maxAgents() {
+		return maxAgents;
+	}
+	
+	//
+	// get executionMode()
+	// ===================
+	public ExecutionModes executionMode() {
+		return executionMode;
+	}
+	
+	//
+	// shutdown()
+	// ==========
+	// Stops all the agents. Agents that are part way through a goal are 
+	// interrupted.
+	//
+	public void shutdown() {
+		executor.shutdownNow();
+		try {
+			executor.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	//
+	// benchmark()
+	// ===========
+	// Measures how many monitoring agents one engine can carry. Each simulated
+	// agent runs the inner loop of a monitoring script: it checks its diagnostic 
+	// point for data and then waits for the poll time, for the given number of
+	// seconds. The diagnostic points share a server that is not started, so the
+	// benchmark needs no FORTE application. The results are printed.
+	//
+	// Activate this from FDE by setting benchmarking = true;
+	//
+	public static void benchmark(int cntAgents, int seconds, ExecutionModes executionMode) {
+		NIOserver server = new NIOserver("", 0);
+		AgentPool pool = new AgentPool(server, new DiagnosticPoints(), cntAgents, executionMode);
+		CountDownLatch started = new CountDownLatch(cntAgents);
+		CountDownLatch finished = new CountDownLatch(cntAgents);
+		AtomicLong cntPolls = new AtomicLong(0);
+		int peakThreads = 0;
+		
+		System.out.println("Benchmark: " + cntAgents + " monitoring agents on " + pool.executionMode() + " for " + seconds + " s");
+		long startTime = System.currentTimeMillis();
+		long endTime = startTime + (seconds * 1000L);
+		
+		for (int ptrAgent = 0; ptrAgent < cntAgents; ptrAgent++) {
+			DiagnosticPoint dp = new DiagnosticPoint();
+			dp.server(server);
+			dp.SIFBinstanceID(1 + (ptrAgent % (server.maxClients() - 1)));
+			pool.executor.execute(() -> {
+				started.countDown();
+				while (System.currentTimeMillis() < endTime) {
+					if (dp.hasData()) {
+						dp.readDouble();
+					}
+					cntPolls.incrementAndGet();
+					dp.delay(DiagnosticPoint.DEFAULT_POLL_TIME);
+				}
+				finished.countDown();
+			});
+		}
+		
+		try {
+			started.await();
+			long allStarted = System.currentTimeMillis() - startTime;
+			while (!finished.await(100, TimeUnit.MILLISECONDS)) {
+				peakThreads = Math.max(peakThreads, ManagementFactory.getThreadMXBean().getThreadCount());
+			}
+			long elapsed = System.currentTimeMillis() - startTime;
+			long expectedPolls = (long) cntAgents * seconds * 1000 / DiagnosticPoint.DEFAULT_POLL_TIME;
+			System.out.println("All agents running after " + allStarted + " ms");
+			System.out.println("Polls " + cntPolls.get() + " of an expected " + expectedPolls + " in " + elapsed + " ms");
+			System.out.println("Peak platform threads " + peakThreads);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		pool.shutdown();
+	}
+	
+	//
+	// say()
+	// =====
+	// Output a console message for use during debugging. This
+	// can be turned off by setting the private variable isSilent.
+	//
+	private void say(String whatToSay){
+		if(!isSilent) {
+			System.out.println(whatToSay);
+		}
+	}
+}
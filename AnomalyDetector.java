@@ -0,0 +1,903 @@
+//
+// ANOMALY DETECTOR
+// ================
+// Streaming detectors that watch the values sampled by a diagnostic point and
+// decide, one value at a time, whether the signal is behaving abnormally.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// Each detector is given the values of one diagnostic point in the order they
+// were sampled. update() takes constant time and does not allocate memory, so a
+// detector can run on the server thread as the packets arrive. update() returns
+// true when the detector changes state, either because an anomaly has started
+// or because the signal has returned to normal, and isAnomalous() tells which.
+// The AnomalyMonitor uses the changes to assert beliefs.
+//
+// The detectors are:
+//
+//   zscore(threshold[, warmup])    The value is more than threshold standard
+//                                  deviations from the mean of the normal
+//                                  values seen so far.
+//
+//   cusum(slack, limit[, warmup])  The cumulative sum of the deviations from
+//                                  the warm-up mean, in standard deviations
+//                                  less the slack, exceeds the limit. This
+//                                  finds small shifts that persist.
+//
+//   ewma(lambda, width[, warmup])  An EWMA control chart. The moving average
+//                                  leaves the control limits, which are width
+//                                  standard deviations of the average wide.
+//
+//   rate(maxRate)                  The value changes faster than maxRate units
+//                                  per second.
+//
+//   step(maxStep)                  Consecutive values differ by more than
+//                                  maxStep.
+//
+//   stuck(samples[, tolerance])    The value has not moved by more than the
+//                                  tolerance for the given number of samples.
+//
+//   oscillation(minHz, maxHz, amplitude, period[, window])
+//                                  The signal oscillates at a frequency between
+//                                  minHz and maxHz with more than the given
+//                                  amplitude. The signal is resampled every
+//                                  period milliseconds and analysed over the
+//                                  last window samples (DEFAULT_WINDOW unless
+//                                  given) with a sliding DFT. The band can 
+//                                  be at most MAX_BINS - 1 times the window's
+//                                  resolution, 1000 / (period * window) Hz,
+//                                  wide.
+//
+// The mean and standard deviation used by zscore, cusum and ewma are learned
+// from the first warmup values (DEFAULT_WARMUP unless given), during which they
+// never report an anomaly. A diagnostic package attaches detectors to a point
+// with the Detectors attribute, using the forms above separated by spaces:
+//
+//     <DP Event="CNF" Port="TEMP_C" Detectors="zscore(4) stuck(50)"/>
+//
+// A detector is not thread safe. The AnomalyMonitor only ever updates it from
+// one thread.
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+// 18.10.2026 BRD Added the oscillation detector.
+// 18.10.2026 BRD The oscillation bins are never further apart than the window's
+//                resolution. A band that needs more than MAX_BINS is rejected
+//                rather than covered with bins that miss the frequencies 
+//                between them.
+//
+package fde;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public abstract class AnomalyDetector {
+	// The number of values used to learn the normal behaviour of a signal.
+	public static final int DEFAULT_WARMUP = 30;
+
+	private final String name;
+	private volatile boolean isAnomalous = false;
+	private volatile long cntAnomalies = 0;
+	private volatile double lastValue = Double.NaN;
+	private volatile long lastTimestamp = 0;
+
+	//
+	// AnomalyDetector()
+	// =================
+	protected AnomalyDetector(String name) {
+		this.name = name;
+	}
+
+	//
+	// update()
+	// ========
+	// Gives the detector the next value, sampled at the timestamp in
+	// milliseconds. NaN is ignored.
+	//
+	// returns  true if the detector changed state.
+	//
+	public final boolean update(long timestamp, double value) {
+		if (Double.isNaN(value)) {
+			return false;
+		}
+		boolean isNowAnomalous = test(timestamp, value);
+		boolean isChanged = (isNowAnomalous != isAnomalous);
+
+		if (isChanged && isNowAnomalous) {
+			cntAnomalies++;
+		}
+		isAnomalous = isNowAnomalous;
+		lastValue = value;
+		lastTimestamp = timestamp;
+		return isChanged;
+	}
+
+	//
+	// test()
+	// ======
+	// Updates the detector with the next value and returns whether the signal
+	// is now anomalous.
+	//
+	protected abstract boolean test(long timestamp, double value);
+
+	//
+	// describe()
+	// ==========
+	// Describes the detector's current state for a belief.
+	//
+	protected abstract String describe();
+
+	//
+	// reset()
+	// =======
+	// Forgets everything the detector has learned about the signal.
+	//
+	public void reset() {
+		isAnomalous = false;
+		lastValue = Double.NaN;
+		lastTimestamp = 0;
+	}
+
+	//
+	// get name()
+	// ==========
+	public String name() {
+		return name;
+	}
+
+	//
+	// get isAnomalous()
+	// =================
+	public boolean isAnomalous() {
+		return isAnomalous;
+	}
+
+	//
+	// get anomalyCount()
+	// ==================
+	// The number of times an anomaly has started.
+	//
+	public long anomalyCount() {
+		return cntAnomalies;
+	}
+
+	//
+	// get lastValue()
+	// ===============
+	public double lastValue() {
+		return lastValue;
+	}
+
+	//
+	// get lastTimestamp()
+	// ===================
+	public long lastTimestamp() {
+		return lastTimestamp;
+	}
+
+	//
+	// description()
+	// =============
+	public String description() {
+		return name + ": " + describe() + String.format(" (value %.4g at %d)", lastValue, lastTimestamp);
+	}
+
+	//
+	// toString()
+	// ==========
+	@Override
+	public String toString() {
+		return description();
+	}
+
+	//
+	// parse()
+	// =======
+	// Creates the detectors described by a Detectors attribute such as
+	// "zscore(4) stuck(50, 0.01)".
+	//
+	// throws  IllegalArgumentException if a detector is not recognised or its
+	//         arguments are wrong.
+	//
+	public static List<AnomalyDetector> parse(String specification) {
+		List<AnomalyDetector> detectors = new ArrayList<AnomalyDetector>();
+		int ptr = 0;
+
+		while (ptr < specification.length()) {
+			if (Character.isWhitespace(specification.charAt(ptr)) || (specification.charAt(ptr) == ';')) {
+				ptr++;
+				continue;
+			}
+			int ptrOpen = specification.indexOf('(', ptr);
+			int ptrClose = specification.indexOf(')', ptr);
+			if ((ptrOpen < 0) || (ptrClose < ptrOpen)) {
+				throw new IllegalArgumentException("Expected name(arguments) in detector \"" + specification.substring(ptr).trim() + "\"");
+			}
+			String detectorName = specification.substring(ptr, ptrOpen).trim();
+			String arguments = specification.substring(ptrOpen + 1, ptrClose).trim();
+			detectors.add(create(detectorName, arguments));
+			ptr = ptrClose + 1;
+		}
+		return detectors;
+	}
+
+	//
+	// create()
+	// ========
+	private static AnomalyDetector create(String detectorName, String arguments) {
+		double[] args;
+		String[] fields = arguments.isEmpty() ? new String[0] : arguments.split(",");
+
+		args = new double[fields.length];
+		for (int ptrArg = 0; ptrArg < fields.length; ptrArg++) {
+			try {
+				args[ptrArg] = Double.parseDouble(fields[ptrArg].trim());
+			} catch (NumberFormatException nfe) {
+				throw new IllegalArgumentException("Detector " + detectorName + " has an argument that is not a number: " + fields[ptrArg].trim());
+			}
+		}
+
+		switch (detectorName.toLowerCase()) {
+		case "zscore":
+			checkArguments(detectorName, args, 1, 2);
+			return new ZScore(args[0], warmup(args, 1));
+
+		case "cusum":
+			checkArguments(detectorName, args, 2, 3);
+			return new Cusum(args[0], args[1], warmup(args, 2));
+
+		case "ewma":
+			checkArguments(detectorName, args, 2, 3);
+			return new EwmaChart(args[0], args[1], warmup(args, 2));
+
+		case "rate":
+			checkArguments(detectorName, args, 1, 1);
+			return new RateOfChange(args[0]);
+
+		case "step":
+			checkArguments(detectorName, args, 1, 1);
+			return new Step(args[0]);
+
+		case "stuck":
+			checkArguments(detectorName, args, 1, 2);
+			return new StuckValue((int) args[0], (args.length > 1) ? args[1] : 0);
+
+		case "oscillation":
+			checkArguments(detectorName, args, 4, 5);
+			return new Oscillation(args[0], args[1], args[2], (long) args[3], (args.length > 4) ? (int) args[4] : Oscillation.DEFAULT_WINDOW);
+
+		default:
+			throw new IllegalArgumentException("There is no detector called " + detectorName);
+		}
+	}
+
+	//
+	// checkArguments()
+	// ================
+	private static void checkArguments(String detectorName, double[] args, int minArgs, int maxArgs) {
+		if ((args.length < minArgs) || (args.length > maxArgs)) {
+			throw new IllegalArgumentException("Detector " + detectorName + " takes "
+				+ ((minArgs == maxArgs) ? "" + minArgs : minArgs + " to " + maxArgs) + " argument(s)");
+		}
+	}
+
+	//
+	// warmup()
+	// ========
+	private static int warmup(double[] args, int ptrArg) {
+		return (args.length > ptrArg) ? (int) args[ptrArg] : DEFAULT_WARMUP;
+	}
+
+	// =====================================================================
+	// Detectors
+	// =====================================================================
+
+	//
+	// ZScore
+	// ======
+	// Compares each value with the mean and standard deviation of the normal
+	// values. Anomalous values are left out so that a fault does not become the
+	// new normal. After the warm-up the baseline is an exponentially weighted
+	// mean and variance so it can follow slow drift.
+	//
+	public static class ZScore extends AnomalyDetector {
+		// The weight of each new normal value in the baseline after the warm-up.
+		static final double BASELINE_ALPHA = 0.01;
+
+		private final double threshold;
+		private final int warmup;
+		private long count = 0;
+		private double mean = 0;
+		private double variance = 0;
+		private double zScore = 0;
+
+		public ZScore(double threshold) {
+			this(threshold, DEFAULT_WARMUP);
+		}
+
+		public ZScore(double threshold, int warmup) {
+			super("zscore");
+			if ((threshold <= 0) || (warmup < 2)) {
+				throw new IllegalArgumentException("zscore needs a positive threshold and a warm-up of at least 2 values");
+			}
+			this.threshold = threshold;
+			this.warmup = warmup;
+		}
+
+		@Override
+		protected boolean test(long timestamp, double value) {
+			double delta = value - mean;
+
+			if (count < warmup) {
+				// Welford's method, keeping the population variance.
+				count++;
+				mean += delta / count;
+				variance += (delta * (value - mean) - variance) / count;
+				zScore = 0;
+				return false;
+			}
+			double stdDev = Math.sqrt(variance);
+			zScore = (stdDev > 0) ? Math.abs(delta) / stdDev : ((delta == 0) ? 0 : Double.POSITIVE_INFINITY);
+			if (zScore > threshold) {
+				return true;
+			}
+			count++;
+			mean += BASELINE_ALPHA * delta;
+			variance = (1 - BASELINE_ALPHA) * (variance + BASELINE_ALPHA * delta * delta);
+			return false;
+		}
+
+		@Override
+		protected String describe() {
+			return String.format("z = %.2f against mean %.4g sd %.4g (threshold %.2f)", zScore, mean, Math.sqrt(variance), threshold);
+		}
+
+		@Override
+		public void reset() {
+			super.reset();
+			count = 0;
+			mean = 0;
+			variance = 0;
+			zScore = 0;
+		}
+	}
+
+	//
+	// Baseline
+	// ========
+	// A detector that learns a fixed mean and standard deviation from its
+	// warm-up values and then measures the signal against them.
+	//
+	static abstract class Baseline extends AnomalyDetector {
+		protected final int warmup;
+		private long count = 0;
+		protected double mean = 0;
+		private double m2 = 0;
+		protected double stdDev = 0;
+
+		Baseline(String name, int warmup) {
+			super(name);
+			if (warmup < 2) {
+				throw new IllegalArgumentException(name + " needs a warm-up of at least 2 values");
+			}
+			this.warmup = warmup;
+		}
+
+		//
+		// learn()
+		// =======
+		// Adds a warm-up value.
+		//
+		// returns  true once the baseline is known.
+		//
+		protected boolean learn(double value) {
+			if (count >= warmup) {
+				return true;
+			}
+			count++;
+			double delta = value - mean;
+			mean += delta / count;
+			m2 += delta * (value - mean);
+			if (count == warmup) {
+				stdDev = Math.sqrt(m2 / (count - 1));
+			}
+			return false;
+		}
+
+		//
+		// standardise()
+		// =============
+		// The deviation of a value from the baseline mean in standard
+		// deviations. A signal that did not vary during the warm-up is measured
+		// in its own units.
+		//
+		protected double standardise(double value) {
+			return (stdDev > 0) ? (value - mean) / stdDev : value - mean;
+		}
+
+		@Override
+		public void reset() {
+			super.reset();
+			count = 0;
+			mean = 0;
+			m2 = 0;
+			stdDev = 0;
+		}
+	}
+
+	//
+	// Cusum
+	// =====
+	// A two-sided tabular CUSUM. The sums are not cleared when an anomaly is
+	// reported, so the detector stays anomalous for as long as the shift
+	// lasts and returns to normal as the sums decay.
+	//
+	public static class Cusum extends Baseline {
+		private final double slack;
+		private final double limit;
+		private double upperSum = 0;
+		private double lowerSum = 0;
+
+		public Cusum(double slack, double limit) {
+			this(slack, limit, DEFAULT_WARMUP);
+		}
+
+		public Cusum(double slack, double limit, int warmup) {
+			super("cusum", warmup);
+			if ((slack < 0) || (limit <= 0)) {
+				throw new IllegalArgumentException("cusum needs a slack of at least zero and a positive limit");
+			}
+			this.slack = slack;
+			this.limit = limit;
+		}
+
+		@Override
+		protected boolean test(long timestamp, double value) {
+			if (!learn(value)) {
+				return false;
+			}
+			double z = standardise(value);
+			upperSum = Math.max(0, upperSum + z - slack);
+			lowerSum = Math.max(0, lowerSum - z - slack);
+			return (upperSum > limit) || (lowerSum > limit);
+		}
+
+		@Override
+		protected String describe() {
+			return String.format("upper sum %.2f lower sum %.2f against mean %.4g sd %.4g (limit %.2f)", upperSum, lowerSum, mean, stdDev, limit);
+		}
+
+		@Override
+		public void reset() {
+			super.reset();
+			upperSum = 0;
+			lowerSum = 0;
+		}
+	}
+
+	//
+	// EwmaChart
+	// =========
+	// An exponentially weighted moving average control chart. The control
+	// limits widen towards their steady state over the first values after the
+	// warm-up.
+	//
+	public static class EwmaChart extends Baseline {
+		private final double lambda;
+		private final double width;
+		private double average = 0;
+		private double decay = 1;
+		private double controlLimit = 0;
+
+		public EwmaChart(double lambda, double width) {
+			this(lambda, width, DEFAULT_WARMUP);
+		}
+
+		public EwmaChart(double lambda, double width, int warmup) {
+			super("ewma", warmup);
+			if ((lambda <= 0) || (lambda > 1) || (width <= 0)) {
+				throw new IllegalArgumentException("ewma needs a lambda between 0 and 1 and a positive width");
+			}
+			this.lambda = lambda;
+			this.width = width;
+		}
+
+		@Override
+		protected boolean test(long timestamp, double value) {
+			if (!learn(value)) {
+				average = mean;
+				return false;
+			}
+			average += lambda * (value - average);
+			decay *= (1 - lambda) * (1 - lambda);
+			controlLimit = width * stdDev * Math.sqrt(lambda / (2 - lambda) * (1 - decay));
+			return Math.abs(average - mean) > controlLimit;
+		}
+
+		@Override
+		protected String describe() {
+			return String.format("average %.4g against mean %.4g +/- %.4g", average, mean, controlLimit);
+		}
+
+		@Override
+		public void reset() {
+			super.reset();
+			average = 0;
+			decay = 1;
+			controlLimit = 0;
+		}
+	}
+
+	//
+	// RateOfChange
+	// ============
+	// Compares the change between consecutive values with the time between
+	// them. Values with the same timestamp are compared with the last value
+	// that had an earlier one.
+	//
+	public static class RateOfChange extends AnomalyDetector {
+		private final double maxRate;
+		private double previousValue = Double.NaN;
+		private long previousTimestamp = 0;
+		private double rate = 0;
+
+		public RateOfChange(double maxRate) {
+			super("rate");
+			if (maxRate <= 0) {
+				throw new IllegalArgumentException("rate needs a positive maximum rate");
+			}
+			this.maxRate = maxRate;
+		}
+
+		@Override
+		protected boolean test(long timestamp, double value) {
+			if (Double.isNaN(previousValue) || (timestamp < previousTimestamp)) {
+				previousValue = value;
+				previousTimestamp = timestamp;
+				return false;
+			}
+			if (timestamp == previousTimestamp) {
+				return isAnomalous();
+			}
+			rate = (value - previousValue) * 1000 / (timestamp - previousTimestamp);
+			previousValue = value;
+			previousTimestamp = timestamp;
+			return Math.abs(rate) > maxRate;
+		}
+
+		@Override
+		protected String describe() {
+			return String.format("rate %.4g/s (maximum %.4g/s)", rate, maxRate);
+		}
+
+		@Override
+		public void reset() {
+			super.reset();
+			previousValue = Double.NaN;
+			previousTimestamp = 0;
+			rate = 0;
+		}
+	}
+
+	//
+	// Step
+	// ====
+	// Compares each value with the one before it, whatever the time between
+	// them.
+	//
+	public static class Step extends AnomalyDetector {
+		private final double maxStep;
+		private double previousValue = Double.NaN;
+		private double step = 0;
+
+		public Step(double maxStep) {
+			super("step");
+			if (maxStep < 0) {
+				throw new IllegalArgumentException("step needs a maximum step of at least zero");
+			}
+			this.maxStep = maxStep;
+		}
+
+		@Override
+		protected boolean test(long timestamp, double value) {
+			boolean isStep = false;
+
+			if (!Double.isNaN(previousValue)) {
+				step = value - previousValue;
+				isStep = Math.abs(step) > maxStep;
+			}
+			previousValue = value;
+			return isStep;
+		}
+
+		//
+		// get step()
+		// ==========
+		// The difference between the last two values.
+		//
+		public double step() {
+			return step;
+		}
+
+		@Override
+		protected String describe() {
+			return String.format("step %.4g (maximum %.4g)", step, maxStep);
+		}
+
+		@Override
+		public void reset() {
+			super.reset();
+			previousValue = Double.NaN;
+			step = 0;
+		}
+	}
+
+	//
+	// StuckValue
+	// ==========
+	// Counts the consecutive values that stay within the tolerance of the value
+	// that started the run.
+	//
+	public static class StuckValue extends AnomalyDetector {
+		private final int maxSamples;
+		private final double tolerance;
+		private double runValue = Double.NaN;
+		private long cntRun = 0;
+
+		public StuckValue(int maxSamples) {
+			this(maxSamples, 0);
+		}
+
+		public StuckValue(int maxSamples, double tolerance) {
+			super("stuck");
+			if ((maxSamples < 2) || (tolerance < 0)) {
+				throw new IllegalArgumentException("stuck needs at least 2 samples and a tolerance of at least zero");
+			}
+			this.maxSamples = maxSamples;
+			this.tolerance = tolerance;
+		}
+
+		@Override
+		protected boolean test(long timestamp, double value) {
+			if (!Double.isNaN(runValue) && (Math.abs(value - runValue) <= tolerance)) {
+				cntRun++;
+			} else {
+				runValue = value;
+				cntRun = 1;
+			}
+			return cntRun >= maxSamples;
+		}
+
+		@Override
+		protected String describe() {
+			return String.format("%d samples within %.4g of %.4g (maximum %d)", cntRun, tolerance, runValue, maxSamples);
+		}
+
+		@Override
+		public void reset() {
+			super.reset();
+			runValue = Double.NaN;
+			cntRun = 0;
+		}
+	}
+	//
+	// Oscillation
+	// ===========
+	// A bank of sliding DFT bins spread evenly from minHz to maxHz, no further
+	// apart than the resolution of the window, so that every frequency in the
+	// band is within half a bin of one of them. A band that needs more than 
+	// MAX_BINS is rejected. Each new sample updates
+	// every bin in constant time from the sample entering the window and the one
+	// leaving it, so the spectrum is always up to date without a full DFT.
+	//
+	// Samples that arrive at irregular times are resampled onto a fixed period
+	// by holding the last value. The mean of the window is removed from each bin
+	// so a steady offset does not leak into the low frequencies. A slight
+	// damping keeps rounding errors from building up in the recursion.
+	//
+	// The detector is anomalous while the amplitude of the strongest frequency
+	// in the band is above the limit. It stays anomalous until the amplitude
+	// falls below CLEAR_RATIO of the limit so that it does not chatter itself.
+	//
+	public static class Oscillation extends AnomalyDetector {
+		public static final int DEFAULT_WINDOW = 64;
+		static final int MAX_BINS = 32;
+		static final double CLEAR_RATIO = 0.8;
+		static final double DAMPING = 0.99999;
+
+		private final long period;
+		private final int window;
+		private final double limit;
+		private final double[] frequencies;
+
+		// The recursion for each bin is
+		//
+		//   S(n) = e^jw (x(n) + r S(n-1)) - r^N e^jw(N+1) x(n-N)
+		//
+		// and a constant signal c gives c times dcRe + j dcIm.
+		private final double[] stepRe;
+		private final double[] stepIm;
+		private final double[] leaveRe;
+		private final double[] leaveIm;
+		private final double[] dcRe;
+		private final double[] dcIm;
+		private final double[] binRe;
+		private final double[] binIm;
+
+		private final double[] samples;
+		private long cntSamples = 0;
+		private double windowSum = 0;
+		private long nextTick = Long.MIN_VALUE;
+		private double heldValue = Double.NaN;
+		private double amplitude = 0;
+		private double peakFrequency = 0;
+
+		public Oscillation(double minHz, double maxHz, double limit, long period) {
+			this(minHz, maxHz, limit, period, DEFAULT_WINDOW);
+		}
+
+		public Oscillation(double minHz, double maxHz, double limit, long period, int window) {
+			super("oscillation");
+			if ((period < 1) || (window < 4) || (limit <= 0)) {
+				throw new IllegalArgumentException("oscillation needs a positive period and limit and a window of at least 4 samples");
+			}
+			double nyquist = 500.0 / period;
+			if ((minHz <= 0) || (maxHz < minHz) || (maxHz > nyquist)) {
+				throw new IllegalArgumentException("oscillation needs 0 < minHz <= maxHz <= " + nyquist + " Hz for a period of " + period + " ms");
+			}
+			this.period = period;
+			this.window = window;
+			this.limit = limit;
+
+			// The bins are spaced at the resolution of the window, or a little
+			// closer so that they land on both ends of the band.
+			double resolution = 1000.0 / (period * window);
+			int cntBins = 1 + (int) Math.ceil(((maxHz - minHz) / resolution) - 1e-9);
+			if (cntBins > MAX_BINS) {
+				throw new IllegalArgumentException(String.format("oscillation between %.3g and %.3g Hz needs %d bins at the window's resolution of %.3g Hz, "
+					+ "but can have at most %d. Narrow the band or shorten the window", minHz, maxHz, cntBins, resolution, MAX_BINS));
+			}
+			double spacing = (cntBins > 1) ? (maxHz - minHz) / (cntBins - 1) : 0;
+			frequencies = new double[cntBins];
+			stepRe = new double[cntBins];
+			stepIm = new double[cntBins];
+			leaveRe = new double[cntBins];
+			leaveIm = new double[cntBins];
+			dcRe = new double[cntBins];
+			dcIm = new double[cntBins];
+			binRe = new double[cntBins];
+			binIm = new double[cntBins];
+			samples = new double[window];
+
+			double dampingN = Math.pow(DAMPING, window);
+			for (int ptrBin = 0; ptrBin < cntBins; ptrBin++) {
+				frequencies[ptrBin] = minHz + ptrBin * spacing;
+				double omega = 2 * Math.PI * frequencies[ptrBin] * period / 1000.0;
+				stepRe[ptrBin] = Math.cos(omega);
+				stepIm[ptrBin] = Math.sin(omega);
+				leaveRe[ptrBin] = dampingN * Math.cos(omega * (window + 1));
+				leaveIm[ptrBin] = dampingN * Math.sin(omega * (window + 1));
+				double weight = 1;
+				for (int m = 0; m < window; m++) {
+					dcRe[ptrBin] += weight * Math.cos(omega * (m + 1));
+					dcIm[ptrBin] += weight * Math.sin(omega * (m + 1));
+					weight *= DAMPING;
+				}
+			}
+		}
+
+		@Override
+		protected boolean test(long timestamp, double value) {
+			if ((nextTick == Long.MIN_VALUE) || (timestamp - nextTick > period * (long) window)) {
+				// The first sample, or a gap longer than the window.
+				clearWindow();
+				nextTick = timestamp;
+			}
+			while (nextTick < timestamp) {
+				addSample(heldValue);
+				nextTick += period;
+			}
+			heldValue = value;
+			if (cntSamples < window) {
+				return false;
+			}
+			measure();
+			return isAnomalous() ? (amplitude > limit * CLEAR_RATIO) : (amplitude > limit);
+		}
+
+		//
+		// addSample()
+		// ===========
+		private void addSample(double value) {
+			int ptrSample = (int) (cntSamples % window);
+			double leaving = (cntSamples >= window) ? samples[ptrSample] : 0;
+
+			for (int ptrBin = 0; ptrBin < frequencies.length; ptrBin++) {
+				double re = value + DAMPING * binRe[ptrBin];
+				double im = DAMPING * binIm[ptrBin];
+				binRe[ptrBin] = stepRe[ptrBin] * re - stepIm[ptrBin] * im - leaveRe[ptrBin] * leaving;
+				binIm[ptrBin] = stepRe[ptrBin] * im + stepIm[ptrBin] * re - leaveIm[ptrBin] * leaving;
+			}
+			samples[ptrSample] = value;
+			windowSum += value - leaving;
+			cntSamples++;
+			if ((cntSamples % window) == 0) {
+				// Recalculate the sum so rounding errors cannot build up.
+				windowSum = 0;
+				for (double sample : samples) {
+					windowSum += sample;
+				}
+			}
+		}
+
+		//
+		// measure()
+		// =========
+		// Finds the strongest frequency in the band once the mean is removed.
+		//
+		private void measure() {
+			double mean = windowSum / window;
+			double peakMagnitude = 0;
+
+			for (int ptrBin = 0; ptrBin < frequencies.length; ptrBin++) {
+				double re = binRe[ptrBin] - mean * dcRe[ptrBin];
+				double im = binIm[ptrBin] - mean * dcIm[ptrBin];
+				double magnitude = re * re + im * im;
+				if (magnitude > peakMagnitude) {
+					peakMagnitude = magnitude;
+					peakFrequency = frequencies[ptrBin];
+				}
+			}
+			amplitude = 2 * Math.sqrt(peakMagnitude) / window;
+		}
+
+		//
+		// clearWindow()
+		// =============
+		private void clearWindow() {
+			Arrays.fill(binRe, 0);
+			Arrays.fill(binIm, 0);
+			Arrays.fill(samples, 0);
+			cntSamples = 0;
+			windowSum = 0;
+			amplitude = 0;
+		}
+
+		//
+		// get amplitude()
+		// ===============
+		// The amplitude of the strongest frequency in the band.
+		//
+		public double amplitude() {
+			return amplitude;
+		}
+
+		//
+		// get peakFrequency()
+		// ===================
+		// The strongest frequency in the band in Hz.
+		//
+		public double peakFrequency() {
+			return peakFrequency;
+		}
+
+		@Override
+		protected String describe() {
+			return String.format("oscillation of %.4g at %.3g Hz (limit %.4g between %.3g and %.3g Hz)",
+				amplitude, peakFrequency, limit, frequencies[0], frequencies[frequencies.length - 1]);
+		}
+
+		@Override
+		public void reset() {
+			super.reset();
+			clearWindow();
+			nextTick = Long.MIN_VALUE;
+			heldValue = Double.NaN;
+			peakFrequency = 0;
+		}
+	}
+}
@@ -0,0 +1,466 @@
+//
+// ANOMALY MONITOR
+// ===============
+// Runs the anomaly detectors attached to the diagnostic points and asserts a
+// belief each time one of them changes state. It lets the engine watch hundreds
+// of signals without giving each one an agent that polls it in a loop.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// The monitor listens to the values sampled by the servers of the diagnostic
+// points it watches. It can run the detectors in one of two ways:
+//
+//   INLINE  On the server thread as each value arrives. There is no queueing
+//           delay, but slow detectors hold up the packets behind them.
+//
+//   WORKER  On a thread of its own. The server copies each value into a fixed
+//           size queue and carries on. If the worker falls behind and the queue
+//           fills, the oldest values are dropped and counted.
+//
+// When a detector reports an anomaly, the monitor asserts a DYNAMIC belief named
+// FBNAME.EVENT.DETECTOR, for example F_TO_C_CONV.TEMP_F.zscore, with the veracity
+// FALSE and a description of what was seen. The team responds to the belief by
+// giving one of its agents the DIAGNOSE_FAULTS goal. When the signal returns to
+// normal the belief is asserted again as TRUE.
+//
+// The detectors for each diagnostic point are normally given in its diagnostic
+// package and attached with attach(dps) once the harness has been created, but
+// they can also be attached one at a time with attach(dp, detector).
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+//
+package fde;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class AnomalyMonitor implements SampleListener {
+	// The number of values the worker's queue holds.
+	public static final int DEFAULT_QUEUE_SIZE = 65536;
+
+	// The number of values the worker takes from the queue at a time.
+	final static int WORKER_BATCH_SIZE = 256;
+
+	// The detectors can run on the server threads or on a worker thread.
+	public enum ExecutionModes {
+		INLINE,
+		WORKER
+	}
+
+	private boolean isSilent = false;
+
+	private final Beliefs beliefs;
+	private final ExecutionModes executionMode;
+
+	// The detectors attached to each diagnostic point, indexed by the point's
+	// harnessID. The arrays are replaced rather than changed, so the
+	// server threads can read them without locking.
+	private volatile Watch[][] watches = new Watch[0][];
+	private final Object attachLock = new Object();
+	private final List<String> errors = new ArrayList<String>();
+
+	// Worker queue
+	// ============
+	// A ring buffer of the values waiting for the worker.
+	private final ReentrantLock queueLock = new ReentrantLock();
+	private final Condition notEmpty = queueLock.newCondition();
+	private final int[] queueIDs;
+	private final long[] queueTimestamps;
+	private final double[] queueValues;
+	private int queueHead = 0;
+	private int queueCount = 0;
+	private int cntInProgress = 0;
+	private long cntDropped = 0;
+	private Thread worker = null;
+
+	//
+	// Watch
+	// =====
+	// A detector attached to a diagnostic point.
+	//
+	private static class Watch {
+		final DiagnosticPoint dp;
+		final AnomalyDetector detector;
+		final String beliefName;
+
+		Watch(DiagnosticPoint dp, AnomalyDetector detector) {
+			this.dp = dp;
+			this.detector = detector;
+			this.beliefName = dp.fbName + "." + dp.fbEventName + "." + detector.name();
+		}
+	}
+
+	//
+	// AnomalyMonitor()
+	// ================
+	// Creates a monitor that runs the detectors on the server threads.
+	//
+	public AnomalyMonitor(Beliefs beliefs) {
+		this(beliefs, ExecutionModes.INLINE, DEFAULT_QUEUE_SIZE);
+	}
+
+	//
+	// AnomalyMonitor()
+	// ================
+	// beliefs        The beliefs the detectors' findings are asserted in.
+	//
+	// executionMode  Where the detectors run.
+	//
+	// queueSize      The number of values the worker's queue holds. It is not
+	//                used when the detectors run inline.
+	//
+	public AnomalyMonitor(Beliefs beliefs, ExecutionModes executionMode, int queueSize) {
+		this.beliefs = beliefs;
+		this.executionMode = executionMode;
+		if (executionMode == ExecutionModes.WORKER) {
+			if (queueSize < 1) {
+				throw new IllegalArgumentException("The queue size must be positive");
+			}
+			queueIDs = new int[queueSize];
+			queueTimestamps = new long[queueSize];
+			queueValues = new double[queueSize];
+			worker = new Thread(this::runWorker, "AnomalyMonitor");
+			worker.setDaemon(true);
+			worker.start();
+		} else {
+			queueIDs = new int[0];
+			queueTimestamps = new long[0];
+			queueValues = new double[0];
+		}
+	}
+
+	//
+	// attach()
+	// ========
+	// Attaches the detectors given in the diagnostic package to each diagnostic
+	// point. A point whose detectors cannot be created is skipped and the
+	// reason recorded in errors().
+	//
+	// returns  the number of detectors attached.
+	//
+	public int attach(DiagnosticPoints dps) {
+		int cntAttached = 0;
+
+		for (int ptrDP = 0; ptrDP < dps.count(); ptrDP++) {
+			DiagnosticPoint dp = dps.get(ptrDP);
+			if (dp.detectors().isEmpty()) {
+				continue;
+			}
+			try {
+				for (AnomalyDetector detector : AnomalyDetector.parse(dp.detectors())) {
+					attach(dp, detector);
+					cntAttached++;
+				}
+			} catch (IllegalArgumentException e) {
+				addError(dp.fbName + "." + dp.fbEventName + ": " + e.getMessage());
+			}
+		}
+		if (cntAttached > 0) {
+			say("Watching for anomalies with " + cntAttached + " detector(s) running " + executionMode);
+		}
+		return cntAttached;
+	}
+
+	//
+	// attach()
+	// ========
+	// Attaches a detector to a diagnostic point. The detector is given each value
+	// the point samples from now on.
+	//
+	public void attach(DiagnosticPoint dp, AnomalyDetector detector) {
+		int harnessID = dp.harnessID();
+
+		if (harnessID < 0) {
+			throw new IllegalArgumentException("Diagnostic point " + dp.fbName + "." + dp.fbEventName + " has not been deployed");
+		}
+		synchronized (attachLock) {
+			Watch[][] newWatches = watches;
+			if (harnessID >= newWatches.length) {
+				newWatches = Arrays.copyOf(newWatches, harnessID + 1);
+			} else {
+				newWatches = newWatches.clone();
+			}
+			Watch[] pointWatches = newWatches[harnessID];
+			pointWatches = (pointWatches == null) ? new Watch[1] : Arrays.copyOf(pointWatches, pointWatches.length + 1);
+			pointWatches[pointWatches.length - 1] = new Watch(dp, detector);
+			newWatches[harnessID] = pointWatches;
+			watches = newWatches;
+		}
+		dp.server.addSampleListener(this);
+	}
+
+	//
+	// detach()
+	// ========
+	// Removes all the detectors from a diagnostic point.
+	//
+	public void detach(DiagnosticPoint dp) {
+		synchronized (attachLock) {
+			if (dp.harnessID() < watches.length) {
+				Watch[][] newWatches = watches.clone();
+				newWatches[dp.harnessID()] = null;
+				watches = newWatches;
+			}
+		}
+	}
+
+	//
+	// detectors()
+	// ===========
+	// Returns the detectors attached to a diagnostic point.
+	//
+	public List<AnomalyDetector> detectors(DiagnosticPoint dp) {
+		List<AnomalyDetector> detectors = new ArrayList<AnomalyDetector>();
+		Watch[][] currentWatches = watches;
+
+		if ((dp.harnessID() >= 0) && (dp.harnessID() < currentWatches.length) && (currentWatches[dp.harnessID()] != null)) {
+			for (Watch watch : currentWatches[dp.harnessID()]) {
+				detectors.add(watch.detector);
+			}
+		}
+		return detectors;
+	}
+
+	//
+	// sampleReceived()
+	// ================
+	// Called by a server thread with each sampled value.
+	//
+	@Override
+	public void sampleReceived(int harnessID, long timeStamp, double value) {
+		Watch[][] currentWatches = watches;
+
+		if (Double.isNaN(value) || (harnessID < 0) || (harnessID >= currentWatches.length) || (currentWatches[harnessID] == null)) {
+			return;
+		}
+		if (executionMode == ExecutionModes.INLINE) {
+			// Each point is served by one server thread, so its detectors are
+			// only ever updated by that thread.
+			evaluate(currentWatches[harnessID], timeStamp, value);
+		} else {
+			enqueue(harnessID, timeStamp, value);
+		}
+	}
+
+	//
+	// evaluate()
+	// ==========
+	private void evaluate(Watch[] pointWatches, long timeStamp, double value) {
+		for (Watch watch : pointWatches) {
+			if (watch.detector.update(timeStamp, value)) {
+				report(watch);
+			}
+		}
+	}
+
+	//
+	// report()
+	// ========
+	// Asserts the belief for a detector that has changed state.
+	//
+	private void report(Watch watch) {
+		Belief belief = new Belief();
+
+		belief.Name(watch.beliefName);
+		belief.BeliefType(BeliefTypes.DYNAMIC);
+		belief.Description(watch.detector.description());
+		if (watch.detector.isAnomalous()) {
+			belief.Veracity(VeracityTypes.FALSE);
+			say("Anomaly on " + watch.dp.fbName + "." + watch.dp.fbEventName + " " + watch.detector.description());
+		} else {
+			belief.Veracity(VeracityTypes.TRUE);
+			say(watch.dp.fbName + "." + watch.dp.fbEventName + " has returned to normal (" + watch.detector.name() + ")");
+		}
+		beliefs.assertBelief(belief);
+	}
+
+	//
+	// enqueue()
+	// =========
+	// Adds a value to the worker's queue, dropping the oldest value if the
+	// queue is full.
+	//
+	private void enqueue(int harnessID, long timeStamp, double value) {
+		queueLock.lock();
+		try {
+			if (queueCount == queueIDs.length) {
+				queueHead = (queueHead + 1) % queueIDs.length;
+				queueCount--;
+				cntDropped++;
+			}
+			int ptrTail = (queueHead + queueCount) % queueIDs.length;
+			queueIDs[ptrTail] = harnessID;
+			queueTimestamps[ptrTail] = timeStamp;
+			queueValues[ptrTail] = value;
+			queueCount++;
+			notEmpty.signal();
+		} finally {
+			queueLock.unlock();
+		}
+	}
+
+	//
+	// runWorker()
+	// ===========
+	// Takes the values from the queue in batches and runs the detectors on them
+	// with the queue unlocked.
+	//
+	private void runWorker() {
+		int[] batchIDs = new int[WORKER_BATCH_SIZE];
+		long[] batchTimestamps = new long[WORKER_BATCH_SIZE];
+		double[] batchValues = new double[WORKER_BATCH_SIZE];
+
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				int cntBatch = 0;
+				queueLock.lock();
+				try {
+					while (queueCount == 0) {
+						notEmpty.await();
+					}
+					while ((queueCount > 0) && (cntBatch < WORKER_BATCH_SIZE)) {
+						batchIDs[cntBatch] = queueIDs[queueHead];
+						batchTimestamps[cntBatch] = queueTimestamps[queueHead];
+						batchValues[cntBatch] = queueValues[queueHead];
+						queueHead = (queueHead + 1) % queueIDs.length;
+						queueCount--;
+						cntBatch++;
+					}
+					cntInProgress = cntBatch;
+				} finally {
+					queueLock.unlock();
+				}
+
+				Watch[][] currentWatches = watches;
+				for (int ptrBatch = 0; ptrBatch < cntBatch; ptrBatch++) {
+					int harnessID = batchIDs[ptrBatch];
+					if ((harnessID < currentWatches.length) && (currentWatches[harnessID] != null)) {
+						evaluate(currentWatches[harnessID], batchTimestamps[ptrBatch], batchValues[ptrBatch]);
+					}
+				}
+				queueLock.lock();
+				try {
+					cntInProgress = 0;
+				} finally {
+					queueLock.unlock();
+				}
+			}
+		} catch (InterruptedException e) {
+			// The monitor has been shut down.
+		}
+	}
+
+	//
+	// awaitIdle()
+	// ===========
+	// Waits until the worker has run the detectors on every value queued so
+	// far. This is mostly useful for testing.
+	//
+	// returns  false if the worker is still busy after the timeout.
+	//
+	public boolean awaitIdle(long milliseconds) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(milliseconds);
+
+		while (!isIdle()) {
+			if (System.nanoTime() > deadline) {
+				return false;
+			}
+			Thread.onSpinWait();
+		}
+		return true;
+	}
+
+	//
+	// isIdle()
+	// ========
+	private boolean isIdle() {
+		queueLock.lock();
+		try {
+			return (queueCount == 0) && (cntInProgress == 0);
+		} finally {
+			queueLock.unlock();
+		}
+	}
+
+	//
+	// shutdown()
+	// ==========
+	// Stops the worker thread. Values still in the queue are discarded.
+	//
+	public void shutdown() {
+		if (worker != null) {
+			worker.interrupt();
+		}
+	}
+
+	//
+	// get executionMode()
+	// ===================
+	public ExecutionModes executionMode() {
+		return executionMode;
+	}
+
+	//
+	// get queueLength()
+	// =================
+	// The number of values waiting for the worker.
+	//
+	public int queueLength() {
+		queueLock.lock();
+		try {
+			return queueCount;
+		} finally {
+			queueLock.unlock();
+		}
+	}
+
+	//
+	// get droppedCount()
+	// ==================
+	// The number of values the worker's queue has dropped because it was full.
+	//
+	public long droppedCount() {
+		queueLock.lock();
+		try {
+			return cntDropped;
+		} finally {
+			queueLock.unlock();
+		}
+	}
+
+	//
+	// get errors()
+	// ============
+	// Describes the detectors that could not be attached.
+	//
+	public synchronized List<String> errors() {
+		return new ArrayList<String>(errors);
+	}
+
+	//
+	// addError()
+	// ==========
+	private synchronized void addError(String description) {
+		errors.add(description);
+		say("Cannot attach anomaly detector to " + description);
+	}
+
+	//
+	// say()
+	// =====
+	// Output a console message for use during development.
+	//
+	private void say(String whatToSay) {
+		if (!isSilent) {
+			System.out.println(whatToSay);
+		}
+	}
+}
@@ -15,40 +15,10 @@
 // Revision History
 // ================
 // 19.08.2020 BRD Original version.
+// 18.10.2026 BRD Moved BeliefTypes and VeracityTypes into their own source files.
 //
 package fde;
 
-//
-// BeliefTypes
-// ===========
-class BeliefTypes {
-	public static final int UNDEFINED = 0;				// Undefined. Used primarily when creating
-														// a new belief.
-	
-	public static final int INTERACTION = 1;            // Beliefs related to the skills the agent 
-	                                                    // possesses and can perform. 
-	
-	public static final int SYSTEM_UNDER_DIAGNOSIS = 2; // Beliefs that the agent holds about the 
-	 													// the structure and configuration of the
-	                                                    // function block application that it is
-	                     								// has been tasked with diagnosing. See the
-														// FunctionBlockApp class for more information.
-	
-	public static final int DYNAMIC = 3;				// Beliefs about what has happened during
-	                                                    // the current fault finding session.
-}
-
-//
-// VeracityTypes
-// =============
-class VeracityTypes {
-	public static final int UNDETERMINED = 0;			// This belief has not been verified (tried, tested).
-	public static final int TRUE = 1;         			// This belief has been tested and is now believed to
-	         											// be true.
-	public static final int FALSE = 2;					// This belief has been tested and is now believed to
-														// be false.
-}
-
 public class Belief {
 	private String Name = "";
 	private int beliefType = BeliefTypes.UNDEFINED;
@@ -0,0 +1,30 @@
+//
+// BELIEF TYPES
+// ============
+// The types of belief an agent can hold.
+//
+// (c) AUT University - 2020
+//
+// Revision History
+// ================
+// 19.08.2020 BRD Original version.
+// 18.10.2026 BRD Moved out of Belief.java into its own source file.
+//
+package fde;
+
+class BeliefTypes {
+	public static final int UNDEFINED = 0;				// Undefined. Used primarily when creating
+														// a new belief.
+	
+	public static final int INTERACTION = 1;            // Beliefs related to the skills the agent 
+	                                                    // possesses and can perform. 
+	
+	public static final int SYSTEM_UNDER_DIAGNOSIS = 2; // Beliefs that the agent holds about the 
+	 													// the structure and configuration of the
+	                                                    // function block application that it is
+	                     								// has been tasked with diagnosing. See the
+														// FunctionBlockApp class for more information.
+	
+	public static final int DYNAMIC = 3;				// Beliefs about what has happened during
+	                                                    // the current fault finding session.
+}
@@ -18,6 +18,10 @@
 // Revision History
 // ================
 // 19.08.2020 BRD Original version.
+// 18.10.2026 BRD Added assertBelief() and belief listeners so that the team can
+//                respond as soon as a fault belief is asserted.
+// 18.10.2026 BRD The beliefs are synchronized since the anomaly detectors assert
+//                them from the server threads while the agents read them.
 //
 package fde;
 
@@ -25,16 +29,27 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+//
+// BeliefListener
+// ==============
+// Notified each time a belief is asserted with assertBelief().
+//
+interface BeliefListener {
+	void beliefAsserted(Belief belief);
+}
 
 public class Beliefs {
 	private List<Belief> beliefs = new ArrayList<Belief>();
+	private List<BeliefListener> listeners = new CopyOnWriteArrayList<BeliefListener>();
 	
 	//
 	// findBelief()
 	// ============
 	// Search for a belief by name.
 	//
-	public Belief findBelief(String name) {
+	public synchronized Belief findBelief(String name) {
 		Belief belief = new Belief();
 		
 		for (int ptrBelief = 0; ptrBelief < beliefs.size(); ptrBelief++) {
@@ -51,7 +66,7 @@ public class Beliefs {
 	// ========
 	// Creates a new belief in a single step
 	//
-	public void create(String name, int beliefType, int veracity, String description) {
+	public synchronized void create(String name, int beliefType, int veracity, String description) {
 		Belief belief = new Belief();
 		belief.Name(name);
 		belief.BeliefType(beliefType);
@@ -65,16 +80,44 @@ public class Beliefs {
 	// =====
 	// Creates a new belief.
 	//
-	public void add(Belief belief) {
+	public synchronized void add(Belief belief) {
 		beliefs.add(belief);
 	}
 	
+	//
+	// assertBelief()
+	// ==============
+	// Adds the belief, or updates it if a belief with the same name is already
+	// held, and then notifies the listeners.
+	//
+	public void assertBelief(Belief belief) {
+		// The listeners are notified outside the lock so that they can read
+		// the beliefs.
+		synchronized (this) {
+			if (findBelief(belief.Name()).Name().equals(belief.Name())) {
+				updateBelief(belief);
+			} else {
+				beliefs.add(belief);
+			}
+		}
+		for (BeliefListener listener : listeners) {
+			listener.beliefAsserted(belief);
+		}
+	}
+	
+	//
+	// addListener()
+	// =============
+	public void addListener(BeliefListener listener) {
+		listeners.add(listener);
+	}
+	
 	// 
 	// get Count()
 	// ===========
 	// Returns the number of beliefs currently held by this agent.
 	//
-	public int Count() {
+	public synchronized int Count() {
 		return beliefs.size();
 	}
 	
@@ -83,7 +126,7 @@ public class Beliefs {
 	// ==============
 	// Replaces the belief in the list with the updated version.
 	//
-	public void updateBelief(Belief newBelief) {
+	public synchronized void updateBelief(Belief newBelief) {
 		Belief belief = new Belief();
 		int beliefCount = beliefs.size();
 		String name = newBelief.Name();
@@ -107,7 +150,7 @@ public class Beliefs {
 	// Used to dump the current beliefs to the consul during
 	// development.
 	//
-	public void displayBeliefs( ) {
+	public synchronized void displayBeliefs( ) {
 		Belief belief = new Belief();
 		System.out.println("\nBeliefs\n=======");
 		for (int ptrBelief = 0; ptrBelief < beliefs.size(); ptrBelief++) {
@@ -0,0 +1,321 @@
+//
+// FORTE BOOT FILE WRITER
+// ======================
+// Streams the requests that make up a FORTE forte.fboot file into a temporary
+// file and then moves it over the real boot file in a single atomic step. FORTE
+// therefore only ever sees either the previous boot file or the complete new one,
+// never a partially-written one.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// Each request line is assembled in a reusable StringBuilder and encoded straight
+// into a direct NIO buffer by a reusable CharsetEncoder. The buffer is only written
+// to the file channel when it fills, so a boot file is written with a handful of
+// large writes rather than one write per request. The buffer is sized from the
+// estimated size of the boot file passed to createFile().
+//
+// Typical use:
+//
+//     BootFileWriter bootfile = new BootFileWriter();
+//     if (bootfile.createFile(path, "forte.fboot", estimatedRequests) == FileIOstatus.FILE_CREATED) {
+//         bootfile.createResource("EMB_RES", "EMB_RES");
+//         ...
+//         bootfile.start("EMB_RES");
+//         bootfile.close();
+//     }
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+// 18.10.2026 BRD The write methods return FILE_CREATED when the request is written,
+//                and a request that cannot be encoded is reported as a WRITE_FAILURE.
+//
+package fde;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+public class BootFileWriter {
+	// Buffer limits. The buffer is sized to hold the whole boot file
+	// where possible, within these bounds.
+	final static int MIN_BUFFER_SIZE = 8 * 1024;
+	final static int MAX_BUFFER_SIZE = 1024 * 1024;
+
+	// Average length of a single request line. Used to estimate the
+	// size of the boot file from the number of requests.
+	final static int AVERAGE_REQUEST_SIZE = 112;
+
+	private FileChannel channel;
+	private ByteBuffer buffer;
+	private Path tempFile;
+	private Path bootFile;
+
+	private final StringBuilder line = new StringBuilder(256);
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+	private int requestID = 1;
+	private int requestCount = 0;
+	private long bytesWritten = 0;
+	private String errorDescription = "";
+	private boolean writeFailed = false;
+
+	//
+	// createFile()
+	// ============
+	// Creates the temporary file that the requests are streamed into. It is created
+	// in the same folder as the boot file so that it can be moved over it atomically.
+	//
+	// path               The folder where the boot file is to be created.
+	//
+	// fileName           The name of the boot file, normally forte.fboot.
+	//
+	// estimatedRequests  The number of requests expected. Used to size the buffer.
+	//
+	public FileIOstatus createFile(String path, String fileName, int estimatedRequests) {
+		FileIOstatus IOstatus = FileIOstatus.UNDEFINED;
+		errorDescription = "";
+
+		if (path.equals("")) {
+			errorDescription = "File path not specified";
+			IOstatus = FileIOstatus.INVALID_FILE_PATH;
+		} else if (fileName.equals("")) {
+			errorDescription = "File name not specified";
+			IOstatus = FileIOstatus.INVALID_FILE_NAME;
+		} else {
+			try {
+				Path folder = Paths.get(path);
+				Files.createDirectories(folder);
+				bootFile = folder.resolve(fileName);
+				tempFile = Files.createTempFile(folder, fileName + ".", ".tmp");
+				channel = FileChannel.open(tempFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+				long estimatedSize = (long) Math.max(estimatedRequests, 1) * AVERAGE_REQUEST_SIZE;
+				int bufferSize = (int) Math.min(Math.max(estimatedSize, MIN_BUFFER_SIZE), MAX_BUFFER_SIZE);
+				buffer = ByteBuffer.allocateDirect(bufferSize);
+
+				requestID = 1;
+				requestCount = 0;
+				bytesWritten = 0;
+				writeFailed = false;
+				IOstatus = FileIOstatus.FILE_CREATED;
+
+			} catch (IOException e) {
+				errorDescription = "Error in createFile() while attempting to create file '" +
+								   fileName + "' in folder '" + path + "'. " + e.getMessage();
+				abort();
+			}
+		}
+		return IOstatus;
+	}
+
+	//
+	// createResource()
+	// ================
+	// Writes the device-level request that creates a resource.
+	//
+	public FileIOstatus createResource(String resourceName, String resourceType) {
+		line.setLength(0);
+		line.append(";<Request ID=\"").append(requestID++).append("\" Action=\"CREATE\"><FB Name=\"")
+			.append(resourceName).append("\" Type=\"").append(resourceType).append("\" /></Request>\n");
+		return writeLine();
+	}
+
+	//
+	// createFB()
+	// ==========
+	public FileIOstatus createFB(String resourceName, String fbName, String fbType) {
+		line.setLength(0);
+		line.append(resourceName).append(";<Request ID=\"").append(requestID++).append("\" Action=\"CREATE\">")
+			.append("<FB Name=\"").append(fbName).append("\" Type=\"").append(fbType).append("\" /></Request>\n");
+		return writeLine();
+	}
+
+	//
+	// writeParameter()
+	// ================
+	public FileIOstatus writeParameter(String resourceName, String value, String fbName, String parameterName) {
+		line.setLength(0);
+		line.append(resourceName).append(";<Request ID=\"").append(requestID++).append("\" Action=\"WRITE\">")
+			.append("<Connection Source=\"").append(value).append("\" ")
+			.append("Destination=\"").append(fbName).append('.').append(parameterName).append("\" /></Request>\n");
+		return writeLine();
+	}
+
+	//
+	// createConnection()
+	// ==================
+	public FileIOstatus createConnection(String resourceName, String sourceFB, String sourceName, String destinationFB, String destinationName) {
+		line.setLength(0);
+		line.append(resourceName).append(";<Request ID=\"").append(requestID++).append("\" Action=\"CREATE\">")
+			.append("<Connection Source=\"").append(sourceFB).append('.').append(sourceName).append("\" ")
+			.append("Destination=\"").append(destinationFB).append('.').append(destinationName).append("\"/></Request>\n");
+		return writeLine();
+	}
+
+	//
+	// start()
+	// =======
+	// Writes the request that starts the application in a resource.
+	//
+	public FileIOstatus start(String resourceName) {
+		line.setLength(0);
+		line.append(resourceName).append(";<Request ID=\"").append(requestID++).append("\" Action=\"START\"/>\n");
+		return writeLine();
+	}
+
+	//
+	// close()
+	// =======
+	// Flushes the remaining buffered requests, forces them to disk and then
+	// replaces the boot file with the temporary file. If anything failed
+	// while writing, the temporary file is discarded and the existing boot
+	// file is left untouched.
+	//
+	public FileIOstatus close() {
+		FileIOstatus IOstatus = FileIOstatus.UNDEFINED;
+
+		if (channel == null) {
+			IOstatus = FileIOstatus.CLOSE_FAILURE;
+			errorDescription = "Error during close(). The boot file was not created.";
+		} else if (writeFailed) {
+			IOstatus = FileIOstatus.WRITE_FAILURE;
+			abort();
+		} else {
+			try {
+				drain();
+				channel.force(true);
+				channel.close();
+				channel = null;
+				try {
+					Files.move(tempFile, bootFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+				} catch (AtomicMoveNotSupportedException e) {
+					// Some file systems cannot rename atomically. Fall back to a plain
+					// replace, which is still better than writing the boot file in place.
+					Files.move(tempFile, bootFile, StandardCopyOption.REPLACE_EXISTING);
+				}
+				tempFile = null;
+				IOstatus = FileIOstatus.FILE_CREATED;
+
+			} catch (IOException e) {
+				IOstatus = FileIOstatus.CLOSE_FAILURE;
+				errorDescription = "Error during close(). " + e.getMessage();
+				abort();
+			}
+		}
+		return IOstatus;
+	}
+
+	//
+	// abort()
+	// =======
+	// Discards the temporary file without touching the existing boot file.
+	//
+	public void abort() {
+		try {
+			if (channel != null) {
+				channel.close();
+			}
+			if (tempFile != null) {
+				Files.deleteIfExists(tempFile);
+			}
+		} catch (IOException e) {
+			// Nothing more can be done with the temporary file.
+		}
+		channel = null;
+		tempFile = null;
+	}
+
+	//
+	// writeLine()
+	// ===========
+	// Encodes the current request line into the buffer, draining the
+	// buffer to the file whenever it fills up. A line that cannot be encoded
+	// fails the file, since part of it may already be in the buffer.
+	//
+	// returns  FILE_CREATED if the request was written, otherwise WRITE_FAILURE.
+	//
+	private FileIOstatus writeLine() {
+		FileIOstatus IOstatus = FileIOstatus.UNDEFINED;
+
+		if (channel == null || writeFailed) {
+			return FileIOstatus.WRITE_FAILURE;
+		}
+
+		try {
+			CharBuffer chars = CharBuffer.wrap(line);
+			encoder.reset();
+			CoderResult result = encoder.encode(chars, buffer, true);
+			while (result.isOverflow()) {
+				drain();
+				result = encoder.encode(chars, buffer, true);
+			}
+			if (result.isError()) {
+				IOstatus = FileIOstatus.WRITE_FAILURE;
+				errorDescription = "Error in write(). Request " + (requestID - 1) + " could not be encoded. " + result;
+				writeFailed = true;
+				return IOstatus;
+			}
+			while (encoder.flush(buffer).isOverflow()) {
+				drain();
+			}
+			requestCount++;
+			IOstatus = FileIOstatus.FILE_CREATED;
+
+		} catch (IOException e) {
+			IOstatus = FileIOstatus.WRITE_FAILURE;
+			errorDescription = "Error in write(). " + e.getMessage();
+			writeFailed = true;
+		}
+		return IOstatus;
+	}
+
+	//
+	// drain()
+	// =======
+	private void drain() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			bytesWritten += channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	//
+	// get requestCount()
+	// ==================
+	// Returns the number of requests written to the boot file.
+	//
+	public int requestCount() {
+		return requestCount;
+	}
+
+	//
+	// get bytesWritten()
+	// ==================
+	// Returns the number of bytes written to the boot file. This is only
+	// complete once close() has been called.
+	//
+	public long bytesWritten() {
+		return bytesWritten;
+	}
+
+	//
+	// errorDescription()
+	// ==================
+	public String errorDescription() {
+		return errorDescription;
+	}
+}
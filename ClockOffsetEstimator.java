@@ -0,0 +1,328 @@
+//
+// CLOCK OFFSET ESTIMATOR
+// ======================
+// Estimates the offset and drift of a FORTE runtime's clock from the engine's
+// clock. The timestamps in the packets from a diagnostic point are read from the
+// clock of the device that runs it, so when the application is deployed on other
+// hosts they cannot be compared directly with the engine's time, or with the
+// timestamps from another device, until they have been corrected.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// The estimate is made in the same way as NTP does, from round trips. Each time
+// a diagnostic point is triggered the server notes the engine time t0 at which
+// the trigger was written, the FORTE timestamp T the point returns, and the
+// engine time t1 at which the TIMESTAMP packet arrived:
+//
+//     offset = T - (t0 + t1) / 2
+//     delay  = t1 - t0
+//
+// The offset of one round trip is only wrong by as much as the two legs of the
+// trip differ, which is never more than delay / 2, so the samples with the
+// shortest round trips are the ones to believe. The last WINDOW_SIZE samples are
+// kept and the quarter of them with the shortest delays are used. Once those
+// cover at least MIN_DRIFT_SPAN milliseconds, a straight line is fitted through
+// them by least squares, giving the offset now and the drift of the FORTE clock
+// in parts per million. Until then the offset of the best sample is used and the
+// drift is taken to be zero.
+//
+// If the FORTE clock is stepped, for example by its own NTP client, the old
+// samples no longer apply. STEP_COUNT samples in a row that disagree with the
+// estimate by more than STEP_THRESHOLD milliseconds discard them.
+//
+// Engine times are given in fractional milliseconds from engineTime(), which
+// interpolates the EngineClock with its nanosecond timer. The interpolation is
+// anchored to the EngineClock again whenever they disagree by more than a
+// millisecond, so engineTime() keeps to the EngineClock if it is stepped or
+// runs at a different rate from the timer. Anything compared with these engine
+// times should be read from engineTime() as well. FORTE timestamps are
+// whole milliseconds, truncated, so they are taken to be half a millisecond
+// later than they read.
+//
+// The estimator is written by the server thread and read by the agents, so the
+// methods are synchronized.
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+// 18.10.2026 BRD engineTime() is anchored to the EngineClock again whenever it 
+//                drifts from it.
+//
+package fde;
+
+public class ClockOffsetEstimator {
+	final static int WINDOW_SIZE = 64;
+	final static double MIN_DRIFT_SPAN = 5000;
+	final static double STEP_THRESHOLD = 128;
+	final static int STEP_COUNT = 3;
+
+	// The resolution of the FORTE timestamps in milliseconds.
+	final static double TIMESTAMP_RESOLUTION = 1;
+
+	// The EngineClock that engineTime() was last anchored to, and how far in
+	// milliseconds the interpolated time may drift from it before it is anchored
+	// again.
+	final static double MAX_ANCHOR_DRIFT = 1;
+	private static EngineClock anchorClock = null;
+	private static long anchorMillis = 0;
+	private static long anchorNanos = 0;
+
+	// The samples, in a ring buffer.
+	private final double[] times = new double[WINDOW_SIZE];
+	private final double[] offsets = new double[WINDOW_SIZE];
+	private final double[] delays = new double[WINDOW_SIZE];
+	private final int[] order = new int[WINDOW_SIZE];
+	private int cntSamples = 0;
+	private int ptrNext = 0;
+	private long cntRoundTrips = 0;
+	private int cntOutliers = 0;
+
+	// The estimate: offset(t) = offset + drift * (t - epoch).
+	private double epoch = 0;
+	private double offset = 0;
+	private double drift = 0;
+	private double minDelay = 0;
+	private double residual = 0;
+
+	//
+	// engineTime()
+	// ============
+	// The engine time in fractional milliseconds since the epoch. This is the
+	// EngineClock's time with the fraction of a millisecond filled in from its
+	// nanosecond timer.
+	//
+	public static double engineTime() {
+		EngineClock clock = EngineClock.clock();
+		long nanos = clock.nanoTime();
+		long millis = clock.currentTimeMillis();
+
+		synchronized (ClockOffsetEstimator.class) {
+			double time = anchorMillis + ((nanos - anchorNanos) / 1e6);
+			if ((clock != anchorClock) || (Math.abs(time - millis) > MAX_ANCHOR_DRIFT)) {
+				anchorClock = clock;
+				anchorMillis = millis;
+				anchorNanos = nanos;
+				time = millis;
+			}
+			return time;
+		}
+	}
+
+	//
+	// add()
+	// =====
+	// Adds a round trip. sendTime and receiveTime are engine times from
+	// engineTime(), and timeStamp is the FORTE timestamp returned.
+	//
+	// returns  false if the round trip was rejected because it took negative
+	//          time.
+	//
+	public synchronized boolean add(double sendTime, long timeStamp, double receiveTime) {
+		double delay = receiveTime - sendTime;
+		if ((delay < 0) || Double.isNaN(delay)) {
+			return false;
+		}
+		double time = (sendTime + receiveTime) / 2;
+		double sampleOffset = (timeStamp + (TIMESTAMP_RESOLUTION / 2)) - time;
+
+		if (cntSamples > 0) {
+			double error = Math.abs(sampleOffset - offset(time));
+			if (error > STEP_THRESHOLD + (delay / 2) + uncertainty()) {
+				cntOutliers++;
+				if (cntOutliers < STEP_COUNT) {
+					return true;
+				}
+				// The FORTE clock has been stepped.
+				cntSamples = 0;
+				ptrNext = 0;
+			}
+		}
+		cntOutliers = 0;
+
+		times[ptrNext] = time;
+		offsets[ptrNext] = sampleOffset;
+		delays[ptrNext] = delay;
+		ptrNext = (ptrNext + 1) % WINDOW_SIZE;
+		cntSamples = Math.min(cntSamples + 1, WINDOW_SIZE);
+		cntRoundTrips++;
+		estimate();
+		return true;
+	}
+
+	//
+	// estimate()
+	// ==========
+	// Fits the offset and drift to the samples with the shortest round trips.
+	//
+	private void estimate() {
+		// Sort the samples by their delay.
+		for (int ptr = 0; ptr < cntSamples; ptr++) {
+			int ptrInsert = ptr;
+			while ((ptrInsert > 0) && (delays[order[ptrInsert - 1]] > delays[ptr])) {
+				order[ptrInsert] = order[ptrInsert - 1];
+				ptrInsert--;
+			}
+			order[ptrInsert] = ptr;
+		}
+		int cntBest = Math.max(1, cntSamples / 4);
+		minDelay = delays[order[0]];
+
+		double minTime = Double.MAX_VALUE;
+		double maxTime = -Double.MAX_VALUE;
+		double meanTime = 0;
+		double meanOffset = 0;
+		for (int ptr = 0; ptr < cntBest; ptr++) {
+			double time = times[order[ptr]];
+			minTime = Math.min(minTime, time);
+			maxTime = Math.max(maxTime, time);
+			meanTime += time;
+			meanOffset += offsets[order[ptr]];
+		}
+		meanTime /= cntBest;
+		meanOffset /= cntBest;
+
+		if ((cntBest < 3) || (maxTime - minTime < MIN_DRIFT_SPAN)) {
+			epoch = times[order[0]];
+			offset = offsets[order[0]];
+			drift = 0;
+			residual = 0;
+			return;
+		}
+
+		double sumTT = 0;
+		double sumTO = 0;
+		for (int ptr = 0; ptr < cntBest; ptr++) {
+			double dt = times[order[ptr]] - meanTime;
+			sumTT += dt * dt;
+			sumTO += dt * (offsets[order[ptr]] - meanOffset);
+		}
+		epoch = meanTime;
+		offset = meanOffset;
+		drift = sumTO / sumTT;
+
+		double sumSquares = 0;
+		for (int ptr = 0; ptr < cntBest; ptr++) {
+			double error = offsets[order[ptr]] - offset(times[order[ptr]]);
+			sumSquares += error * error;
+		}
+		residual = Math.sqrt(sumSquares / (cntBest - 2));
+	}
+
+	//
+	// reset()
+	// =======
+	public synchronized void reset() {
+		cntSamples = 0;
+		ptrNext = 0;
+		cntRoundTrips = 0;
+		cntOutliers = 0;
+		epoch = 0;
+		offset = 0;
+		drift = 0;
+		minDelay = 0;
+		residual = 0;
+	}
+
+	//
+	// get isCalibrated()
+	// ==================
+	// True once there has been a round trip to estimate the offset from.
+	//
+	public synchronized boolean isCalibrated() {
+		return (cntSamples > 0);
+	}
+
+	//
+	// offset()
+	// ========
+	// The amount in milliseconds that the FORTE clock is ahead of the engine's
+	// at the given engine time.
+	//
+	public synchronized double offset(double engineTime) {
+		return offset + (drift * (engineTime - epoch));
+	}
+
+	//
+	// get offset()
+	// ============
+	// The amount in milliseconds that the FORTE clock is ahead of the engine's now.
+	//
+	public double offset() {
+		return offset(engineTime());
+	}
+
+	//
+	// get drift()
+	// ===========
+	// How fast the FORTE clock gains on the engine's, in parts per million.
+	//
+	public synchronized double drift() {
+		return drift * 1e6;
+	}
+
+	//
+	// get uncertainty()
+	// =================
+	// The largest error in milliseconds expected in the offset. This is half the
+	// shortest round trip, the resolution of the timestamps and the scatter of
+	// the samples about the fitted line.
+	//
+	public synchronized double uncertainty() {
+		return (minDelay / 2) + (TIMESTAMP_RESOLUTION / 2) + (2 * residual);
+	}
+
+	//
+	// get roundTripDelay()
+	// ====================
+	// The shortest round trip in the window, in milliseconds.
+	//
+	public synchronized double roundTripDelay() {
+		return minDelay;
+	}
+
+	//
+	// get roundTripCount()
+	// ====================
+	// The number of round trips used since the estimator was reset.
+	//
+	public synchronized long roundTripCount() {
+		return cntRoundTrips;
+	}
+
+	//
+	// toEngineTime()
+	// ==============
+	// Converts a FORTE time to engine time. The time is returned unchanged until
+	// the estimator has been calibrated.
+	//
+	public synchronized double toEngineTime(double forteTime) {
+		if (cntSamples == 0) {
+			return forteTime;
+		}
+		return forteTime - offset(forteTime - offset);
+	}
+
+	//
+	// toForteTime()
+	// =============
+	// Converts an engine time to FORTE time. The time is returned unchanged until
+	// the estimator has been calibrated.
+	//
+	public synchronized double toForteTime(double engineTime) {
+		if (cntSamples == 0) {
+			return engineTime;
+		}
+		return engineTime + offset(engineTime);
+	}
+
+	//
+	// toString()
+	// ==========
+	@Override
+	public synchronized String toString() {
+		return String.format("offset=%.3fms drift=%.2fppm uncertainty=%.3fms delay=%.3fms n=%d",
+			offset, drift * 1e6, uncertainty(), minDelay, cntRoundTrips);
+	}
+}
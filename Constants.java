@@ -9,6 +9,7 @@
 // ================
 // 03.07.2019 BRD Original version.
 // 24.03.2021 BRD Added new team coordinator goals.
+// 18.10.2026 BRD Replaced the per-agent coordinator goals with MANAGE_AGENT.
 
 package fde;
 
@@ -23,8 +24,7 @@ public class Constants {
 	public static final String FIND_FAULTS = "FIND_FAULTS";
 	public static final String MANAGE_TEAM = "MANAGE_TEAM";
 	
-	public static final String MANAGE_AGENT_0 = "MANAGE_AGENT_0";
-	public static final String MANAGE_AGENT_1 = "MANAGE_AGENT_1";
+	public static final String MANAGE_AGENT = "MANAGE_AGENT";
 	
 	public static final String CONFIGURE_DIAGNOSTICS = "CONFIGURE_DIAGNOSTICS";
 	public static final String CONFIGURE_DIAGNOSTICS2 = "CONFIGURE_DIAGNOSTICS2";
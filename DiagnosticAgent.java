@@ -15,6 +15,36 @@
 // 26.01.2021 BRD Extending the re-wire capabilities and evaluating HVAC2.
 // 24.03.2021 BRD Integrate latest multi-agent extensions and change the threading
 //                model used.
+// 18.10.2026 BRD Added the SET_POLL_TIME agent mode.
+// 18.10.2026 BRD Added the PUSH_ENABLED agent mode.
+// 18.10.2026 BRD run() now ends when the agent's thread is interrupted so that
+//                the agent pool can shut its agents down.
+// 18.10.2026 BRD Goals are handed to the agent through a blocking goal inbox
+//                instead of being polled for every second. The agent state is
+//                volatile and the goal dispatch latency is measured.
+// 18.10.2026 BRD Added the SAMPLE_FILTER agent mode.
+// 18.10.2026 BRD Goals are scheduled by priority and deadline. A more urgent goal
+//                pre-empts the current one at its next safe point, and missed
+//                deadlines are recorded.
+// 18.10.2026 BRD Each goal runs in a ScriptContext with a time budget so that it
+//                can be cancelled. A cancelled goal records a partial result
+//                belief.
+// 18.10.2026 BRD The agent attaches to the EngineClock while it runs a goal so
+//                that a virtual clock waits for it before moving time on.
+// 18.10.2026 BRD The scripts for each goal come from the team's ScriptRegistry
+//                instead of a switch on the agent's name.
+// 18.10.2026 BRD A fault goal runs the script chosen for its belief, and the belief
+//                is given to the script through its ScriptContext. A pre-empted 
+//                goal is restarted from the beginning, and its dispatch latency
+//                is measured from when it was re-queued.
+// 18.10.2026 BRD The goal being executed is published under the goalLock that
+//                assignGoal() holds, so a pre-emption request can no longer be
+//                lost between taking a goal and starting it.
+// 18.10.2026 BRD A script that throws an exception fails its goal rather than
+//                stopping the agent, so the goal is still completed and the
+//                team can try the fault again.
+// 18.10.2026 BRD Monitoring goals have a wall-clock budget, MONITOR_TIME_BUDGET,
+//                and pause() returns at once when there is no console.
 //
 // Documentation
 // =============
@@ -38,7 +68,11 @@ import java.math.RoundingMode;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.io.BufferedReader;
 import java.io.IOException;
 
@@ -50,10 +84,52 @@ public class DiagnosticAgent implements Runnable {
 	// Used to turn off and on console messages during development.
 	private boolean isSilent = false;
 	private String agentName = "";
-	private String currentGoalName = UNDEFINED_GOAL;
+	// The agent state is written by the agent's thread and read by the
+	// coordinator, so it is volatile.
+	private volatile String currentGoalName = UNDEFINED_GOAL;
 	private String lastGoalName = "";
-	private Goal.States currentGoalState = Goal.States.STOPPED;
-	private int currentAgentState = AgentStates.IDLE;
+	private volatile Goal.States currentGoalState = Goal.States.STOPPED;
+	private volatile int currentAgentState = AgentStates.IDLE;
+	
+	// Goal handoff
+	// ============
+	// The coordinator places goals in the inbox, which keeps them in priority
+	// and deadline order. The agent blocks on it while idle and posts each goal
+	// to the team's completion queue when it is done.
+	private final BlockingQueue<AgentGoal> goalInbox = new PriorityBlockingQueue<AgentGoal>();
+	private BlockingQueue<AgentGoal> completions = null;
+	
+	// Pre-emption
+	// ===========
+	// The goal being executed, and a request to abandon it at the next safe 
+	// point because a more urgent goal has arrived. The agent running on the
+	// current thread is found through currentAgent so that checkpoint() can be
+	// called from scripts and diagnostic points. currentGoal and the request
+	// are only changed while holding the goalLock.
+	private volatile AgentGoal currentGoal = null;
+	private volatile boolean isPreemptRequested = false;
+	private final ReentrantLock goalLock = new ReentrantLock();
+	private static final ThreadLocal<DiagnosticAgent> currentAgent = new ThreadLocal<DiagnosticAgent>();
+	
+	private volatile long cntPreemptions = 0;
+	private volatile long cntMissedDeadlines = 0;
+	
+	// Script execution
+	// ================
+	// Each goal runs in its own ScriptContext so that it can be cancelled.
+	// Diagnosis goals have a wall-clock and CPU time budget in milliseconds.
+	// Monitoring goals have a longer wall-clock budget so that a script
+	// cannot hold an agent for good, and are given again by the team.
+	public static final long DIAGNOSIS_TIME_BUDGET = 300000;
+	public static final long DIAGNOSIS_CPU_BUDGET = 60000;
+	public static final long MONITOR_TIME_BUDGET = 600000;
+	private volatile ScriptContext currentContext = null;
+	private Beliefs beliefs = null;
+	
+	// Goal dispatch latency in nanoseconds. Only the agent's thread writes these.
+	private volatile long cntDispatches = 0;
+	private volatile long totalDispatchLatency = 0;
+	private volatile long maxDispatchLatency = 0;
 	
 	private String homeDirectory = System.getProperty("user.home");
 	
@@ -79,6 +155,9 @@ public class DiagnosticAgent implements Runnable {
 		static final int POLL_AGENT = 5;
 		static final int SAMPLED_DATA = 6;
 		static final int TIMESTAMP = 7;
+		static final int SET_POLL_TIME = 8;
+		static final int PUSH_ENABLED = 9;
+		static final int SAMPLE_FILTER = 10;
 	}
 	int currentAgentMode = AgentModes.PASSTHROUGH_ENABLED; 
 	
@@ -96,7 +175,7 @@ public class DiagnosticAgent implements Runnable {
 	}
 
 	DiagnosticAgentCapabilities skills = new DiagnosticAgentCapabilities();
-	Scripts scripts = new Scripts();
+	ScriptRegistry scripts = null;
 	NIOserver server;
     DiagnosticPoints dps;
 
@@ -114,59 +193,402 @@ public class DiagnosticAgent implements Runnable {
 	// 
 	//  run()
 	//  =====
+	//  The agent waits on its goal inbox until the coordinator assigns it a goal,
+	//  executes it, and then reports the result through the goal's completion 
+	//  future and the team's completion queue.
+	//
 	@Override
 	public void run() {
-		int sleepTime = 0;
+		AgentGoal goal;
+		Goal.States goalState;
 		
-		while (true) {
+		currentAgent.set(this);
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				goal = goalInbox.take();
+			} catch (InterruptedException e) {
+				break;
+			}
+			goal = startGoal(goal);
+			recordDispatchLatency(goal.dispatchLatency());
 			cycleCount++;
 			
-			switch (currentAgentState) {
-			case AgentStates.EXECUTING:
-				// The agent has a new goal. Execute it, returning
-				// only when complete or the goal has been abandoned.
-				say(agentName + ": " + currentGoalName + " [" + cycleCount + "]");
+			// The agent has a new goal. Execute it, returning
+			// only when complete, abandoned or pre-empted.
+			GoalName(goal.Name());
+			AgentState(AgentStates.EXECUTING);
+			say(agentName + ": " + currentGoalName + " [" + cycleCount + "]");
+			
+			ScriptContext context = newContext(goal);
+			currentContext = context;
+			context.enter();
+			EngineClock.clock().attach();
+			try {
 				switch (currentGoalName) {
 				case CONFIGURE_DIAGNOSTICS:
-					GoalState(configureDiagnostics());
-					AgentState(AgentStates.IDLE);
+					goalState = configureDiagnostics();
 					break;
 					
 				case WATCH_FOR_FAULTS:
-					GoalState(watchForFaults());
-					AgentState(AgentStates.IDLE);
+					goalState = watchForFaults();
 					break;
 					
 				case DIAGNOSE_FAULTS:
-					GoalState(diagnoseFaults());
-					AgentState(AgentStates.IDLE);
+					goalState = diagnoseFaults(goal.scriptName());
 					break;
 					
 				case REPORT_FAULTS:
-					GoalState(reportFaults());
-					AgentState(AgentStates.IDLE);
+					goalState = reportFaults();
+					break;
+					
+				default:
+					say(agentName + ": does not know how to " + currentGoalName);
+					goalState = Goal.States.STOPPED;
 					break;
 				}	
-				break;	
+				context.finished();
+			} catch (GoalPreemptedException e) {
+				// A more urgent goal has arrived. Put this goal back in the
+				// inbox. It is started again from the beginning once the 
+				// urgent goal is done, since a script cannot be resumed part
+				// way through.
+				say(agentName + ": " + e.getMessage());
+				cntPreemptions++;
+				clearGoal();
+				AgentState(AgentStates.IDLE);
+				goal.requeued();
+				goalInbox.add(goal);
+				continue;
+				
+			} catch (ScriptCancelledException e) {
+				// The goal was cancelled or ran out of time. Record what is
+				// known so far and free the agent for its next goal.
+				say(agentName + ": " + currentGoalName + " cancelled. " + e.getMessage());
+				recordPartialResult(goal, context);
+				goalState = Goal.States.CANCEL;
+				
+			} catch (RuntimeException e) {
+				// The script failed. Record the error and carry on with the
+				// next goal so that the team still hears the goal has ended.
+				say(agentName + ": " + currentGoalName + " failed. " + e);
+				recordFailedResult(goal, context, e);
+				goalState = Goal.States.FAILED;
+				
+			} finally {
+				currentContext = null;
+				context.exit();
+				EngineClock.clock().detach();
+			}
 			
-			case AgentStates.IDLE:
-			case AgentStates.UNDEFINED:
-				if (GoalName().equals(UNDEFINED_GOAL)) {
-					// The agent is not working on any assigned task at the moment. 
-					//say(agentName + " sleeping ...");
-					// RA_BRD parameterise this? 
-					sleep(1000);
-				} else {	
-					// The agent is idle, but the coordinator agent has just
-					// assigned a new goal. Start executing it now.
-					currentGoalName = GoalName();
-					AgentState(AgentStates.EXECUTING);
-				}
-
-				break;
+			clearGoal();
+			if (goal.isOverdue()) {
+				cntMissedDeadlines++;
+				say(agentName + ": missed the deadline for " + goal.Name() + " by " 
+					+ (EngineClock.clock().currentTimeMillis() - goal.Deadline()) + " ms");
+			}
+			GoalState(goalState);
+			AgentState(AgentStates.IDLE);
+			goal.complete(goalState);
+			if (completions != null) {
+				completions.add(goal);
 			}
 		}
+		currentAgent.remove();
 	}	
+	
+	//
+	// assignGoal()
+	// ============
+	// Hands a goal to the agent with the default priority for the goal and
+	// no deadline.
+	//
+	// returns  the goal's completion future.
+	//
+	public CompletableFuture<Goal.States> assignGoal(String goalName) {
+		return assignGoal(goalName, AgentGoal.defaultPriority(goalName), 0);
+	}
+	
+	//
+	// assignGoal()
+	// ============
+	// Hands a goal to the agent. If it is more urgent than the goal the agent
+	// is working on, the current goal is pre-empted at its next safe point. 
+	// Otherwise the agent starts it once the more urgent goals are done.
+	//
+	// priority  One of the AgentGoal.PRIORITY_ values.
+	//
+	// deadline  Epoch time in milliseconds by which the goal should be complete, 
+	//           or zero for none.
+	//
+	// returns   the goal's completion future.
+	//
+	public CompletableFuture<Goal.States> assignGoal(String goalName, int priority, long deadline) {
+		return assignGoal(new AgentGoal(goalName, agentName, priority, deadline));
+	}
+	
+	//
+	// assignGoal()
+	// ============
+	// Hands a goal that has already been created to the agent, such as a 
+	// fault goal that carries its belief and script.
+	//
+	// returns   the goal's completion future.
+	//
+	public CompletableFuture<Goal.States> assignGoal(AgentGoal goal) {
+		goalLock.lock();
+		try {
+			goalInbox.add(goal);
+			AgentGoal runningGoal = currentGoal;
+			if ((runningGoal != null) && (goal.Priority() > runningGoal.Priority())) {
+				isPreemptRequested = true;
+			}
+		} finally {
+			goalLock.unlock();
+		}
+		return goal.completion();
+	}
+	
+	//
+	// startGoal()
+	// ===========
+	// Publishes the goal taken from the inbox as the current goal. A more
+	// urgent goal may have been assigned after it was taken but before it was
+	// published, when assignGoal() could not see it. In that case the taken
+	// goal goes back in the inbox and the more urgent one is started instead.
+	//
+	// returns  the goal to execute.
+	//
+	private AgentGoal startGoal(AgentGoal goal) {
+		goalLock.lock();
+		try {
+			AgentGoal nextGoal = goalInbox.peek();
+			if ((nextGoal != null) && (nextGoal.compareTo(goal) < 0)) {
+				goalInbox.add(goal);
+				goal = goalInbox.poll();
+			}
+			goal.started();
+			currentGoal = goal;
+			isPreemptRequested = false;
+			return goal;
+		} finally {
+			goalLock.unlock();
+		}
+	}
+	
+	//
+	// clearGoal()
+	// ===========
+	private void clearGoal() {
+		goalLock.lock();
+		try {
+			currentGoal = null;
+			isPreemptRequested = false;
+		} finally {
+			goalLock.unlock();
+		}
+	}
+	
+	//
+	// newContext()
+	// ============
+	// Creates the script context for a goal with the budget for that goal.
+	//
+	private ScriptContext newContext(AgentGoal goal) {
+		ScriptContext context;
+		
+		if (goal.Name().equals(DIAGNOSE_FAULTS)) {
+			context = new ScriptContext(agentName + "." + goal.Name(), DIAGNOSIS_TIME_BUDGET, DIAGNOSIS_CPU_BUDGET);
+		} else if (goal.Name().equals(WATCH_FOR_FAULTS)) {
+			context = new ScriptContext(agentName + "." + goal.Name(), MONITOR_TIME_BUDGET, 0);
+		} else {
+			context = new ScriptContext(agentName + "." + goal.Name(), 0, 0);
+		}
+		context.belief(goal.belief());
+		return context;
+	}
+	
+	//
+	// cancelGoal()
+	// ============
+	// Cancels the goal the agent is executing. The script is unwound at its 
+	// next safe point, or straight away if it is waiting.
+	//
+	// returns  true if there was a goal to cancel.
+	//
+	public boolean cancelGoal(String reason) {
+		ScriptContext context = currentContext;
+		if (context != null) {
+			context.cancel(reason);
+			return true;
+		}
+		return false;
+	}
+	
+	//
+	// isGoalOverdue()
+	// ===============
+	// True if the goal being executed has passed its deadline by more than
+	// the grace period in milliseconds.
+	//
+	public boolean isGoalOverdue(long gracePeriod) {
+		AgentGoal goal = currentGoal;
+		return (goal != null) && (goal.Deadline() > 0) && (EngineClock.clock().currentTimeMillis() > goal.Deadline() + gracePeriod);
+	}
+	
+	//
+	// recordPartialResult()
+	// =====================
+	// Records an undetermined belief for a goal that was cancelled before it
+	// could reach a conclusion.
+	//
+	private void recordPartialResult(AgentGoal goal, ScriptContext context) {
+		Belief belief = new Belief();
+		belief.Name(agentName + "." + goal.Name());
+		belief.BeliefType(BeliefTypes.DYNAMIC);
+		belief.Veracity(VeracityTypes.UNDETERMINED);
+		belief.Description("Cancelled after " + context.elapsedTime() + " ms. " + context.cancelReason());
+		if (beliefs != null) {
+			beliefs.assertBelief(belief);
+		}
+	}
+	
+	//
+	// recordFailedResult()
+	// ====================
+	// Records an undetermined belief for a goal whose script threw an
+	// exception, describing the error.
+	//
+	private void recordFailedResult(AgentGoal goal, ScriptContext context, RuntimeException e) {
+		Belief belief = new Belief();
+		belief.Name(agentName + "." + goal.Name());
+		belief.BeliefType(BeliefTypes.DYNAMIC);
+		belief.Veracity(VeracityTypes.UNDETERMINED);
+		belief.Description("Failed after " + context.elapsedTime() + " ms. " + e);
+		if (beliefs != null) {
+			beliefs.assertBelief(belief);
+		}
+	}
+	
+	//
+	// set beliefs()
+	// =============
+	// The team's beliefs, where partial results are recorded.
+	//
+	public void beliefs(Beliefs beliefs) {
+		this.beliefs = beliefs;
+	}
+	
+	//
+	// set scripts()
+	// =============
+	// The registry the agent finds the script for each of its goals in.
+	//
+	public void scripts(ScriptRegistry scripts) {
+		this.scripts = scripts;
+	}
+	
+	//
+	// checkpoint()
+	// ============
+	// A safe point at which the goal being executed on this thread can be 
+	// pre-empted. Called from the waits in scripts and diagnostic points. It
+	// does nothing on threads that are not running an agent.
+	//
+	public static void checkpoint() {
+		DiagnosticAgent agent = currentAgent.get();
+		if ((agent != null) && agent.isPreemptRequested) {
+			String goalName;
+			agent.goalLock.lock();
+			try {
+				agent.isPreemptRequested = false;
+				AgentGoal goal = agent.currentGoal;
+				goalName = (goal == null) ? "" : goal.Name();
+			} finally {
+				agent.goalLock.unlock();
+			}
+			throw new GoalPreemptedException(goalName);
+		}
+	}
+	
+	//
+	// get currentPriority()
+	// =====================
+	// The priority of the goal the agent is executing, or -1 if it is idle.
+	//
+	public int currentPriority() {
+		AgentGoal goal = currentGoal;
+		return (goal == null) ? -1 : goal.Priority();
+	}
+	
+	//
+	// get pendingGoalCount()
+	// ======================
+	// The number of goals waiting in the agent's inbox.
+	//
+	public int pendingGoalCount() {
+		return goalInbox.size();
+	}
+	
+	//
+	// get preemptionCount()
+	// =====================
+	public long preemptionCount() {
+		return cntPreemptions;
+	}
+	
+	//
+	// get missedDeadlineCount()
+	// =========================
+	public long missedDeadlineCount() {
+		return cntMissedDeadlines;
+	}
+	
+	//
+	// set completions()
+	// =================
+	// The team's queue that finished goals are posted to.
+	//
+	public void completions(BlockingQueue<AgentGoal> completions) {
+		this.completions = completions;
+	}
+	
+	//
+	// recordDispatchLatency()
+	// =======================
+	private void recordDispatchLatency(long latency) {
+		cntDispatches++;
+		totalDispatchLatency += latency;
+		if (latency > maxDispatchLatency) {
+			maxDispatchLatency = latency;
+		}
+	}
+	
+	//
+	// get dispatchCount()
+	// ===================
+	public long dispatchCount() {
+		return cntDispatches;
+	}
+	
+	//
+	// get averageDispatchLatency()
+	// ============================
+	// The average time in microseconds between a goal being assigned and the 
+	// agent starting it.
+	//
+	public double averageDispatchLatency() {
+		long cnt = cntDispatches;
+		return (cnt == 0) ? 0 : (totalDispatchLatency / (double) cnt) / 1000.0;
+	}
+	
+	//
+	// get maxDispatchLatency()
+	// ========================
+	// The longest goal dispatch latency in microseconds.
+	//
+	public double maxDispatchLatency() {
+		return maxDispatchLatency / 1000.0;
+	}
 
 	//
 	// GOAL EXECUTION
@@ -198,16 +620,7 @@ public class DiagnosticAgent implements Runnable {
 	//  skills.runDiagnostic(applicationPath, "MyClass"); System.exit(0); 
 	// 
 	private Goal.States watchForFaults(){
-		Belief belief = new Belief();
-		switch (agentName) {
-		case "alpha":
-			belief = scripts.alphaMonitor(agentName, dps, server);
-			break;
-			
-		case "beta":
-			belief = scripts.betaMonitor(agentName, dps, server);
-			break;
-		}
+		Belief belief = runScript(WATCH_FOR_FAULTS);
 			
 		// Signal that the agent has completed this...or it has failed..
 		if (belief.Veracity() == VeracityTypes.FALSE) {
@@ -221,33 +634,41 @@ public class DiagnosticAgent implements Runnable {
 	// 
 	// diagnoseFaults()
 	// ================
-	private Goal.States diagnoseFaults() {
-		Belief belief = new Belief();
-	
-		switch (agentName) {
-		case "beta":
-			belief =  scripts.betaOvercurrent(agentName, dps, server);
-			break;
+	// Runs the script chosen for the fault, or the agent's own diagnosis
+	// script if none was chosen.
+	//
+	private Goal.States diagnoseFaults(String scriptName) {
+		Belief belief;
 		
-		case "marvin":
-			//belief = scripts.HVACsim(dps, server);
-			//belief = scripts.Monitor2(dps, server);
-			
-			belief = scripts.gimbal2(dps, server);
-			say(belief.Description());
-			break;
-			
-		case "Beta":
-			belief =  scripts.Overcurrent(agentName, dps, server);
-			break;
+		if ((scriptName != null) && (scripts != null) && (scripts.find(scriptName) != null)) {
+			belief = scripts.find(scriptName).run(agentName, dps, server);
+		} else {
+			belief = runScript(DIAGNOSE_FAULTS);
+		}
 		
-		case "dennis":
-			if (scripts.tripMux(agentName, dps, server)) {
-			}
-			break;
+		if ((belief.Description() != null) && (!belief.Description().equals(""))) {
+			say(belief.Description());
 		}
 		return Goal.States.PASSED;
 	}
+	
+	//
+	// runScript()
+	// ===========
+	// Runs the script bound to this agent for a goal. An agent with no script
+	// for the goal has nothing to do.
+	//
+	private Belief runScript(String goalName) {
+		DiagnosticScript script = null;
+		
+		if (scripts != null) {
+			script = scripts.scriptFor(agentName, goalName);
+		}
+		if (script == null) {
+			return new Belief();
+		}
+		return script.run(agentName, dps, server);
+	}
 
 	// 
 	//  reportFaults()
@@ -262,6 +683,13 @@ public class DiagnosticAgent implements Runnable {
 		return Goal.States.PASSED;
 	}
 	
+	//
+	// get AgentName()
+	// ===============
+	public String AgentName() {
+		return agentName;
+	}
+	
 	//
 	// get GoalName()
 	// ==============
@@ -323,6 +751,9 @@ public class DiagnosticAgent implements Runnable {
 		String userInput = "";
 		BufferedReader stdIn = new BufferedReader(new InputStreamReader(System.in));
 
+		if (System.console() == null) {
+			return;
+		}
 		System.out.println(prompt);
 		try {
 			userInput = stdIn.readLine();
@@ -338,10 +769,8 @@ public class DiagnosticAgent implements Runnable {
 	//
 	@SuppressWarnings("unused")
 	private void sleep(int sleepTime) {
-		try {			
-			Thread.sleep(sleepTime);
-		} catch (InterruptedException e) {
-		}
+		// Keeps any interrupt so that run() can see the agent is being stopped.
+		ScriptContext.sleep(sleepTime);
 	}
 	
 	//
@@ -352,11 +781,7 @@ public class DiagnosticAgent implements Runnable {
 	//
 	@SuppressWarnings("unused")
 	private void delay(int milliseconds) {
-		try {
-			TimeUnit.MILLISECONDS.sleep((long) milliseconds);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-		}	
+		ScriptContext.sleep(milliseconds);
 	}
 }
 
@@ -17,6 +17,20 @@
 //                functions that capture more event information. The referencing of
 //                a diagnostic point now centers around the event it is watching, not
 //                the data input or output port that is being captured.
+// 18.10.2026 BRD createForteBootfile() now streams the requests through BootFileWriter
+//                and replaces forte.fboot atomically.
+// 18.10.2026 BRD createHarness() partitions the diagnostic points by resource, gives
+//                each partition its own NIOserver and writes the boot files for each
+//                device concurrently.
+// 18.10.2026 BRD The POLL_TIME of each diagnostic point comes from its diagnostic
+//                package when one is specified.
+// 18.10.2026 BRD Each diagnostic point is given the anomaly detectors named in its
+//                diagnostic package.
+// 18.10.2026 BRD The SIFBinstanceIDs are numbered on each server, and a partition
+//                with more points than a server can take is given another one.
+//                The partition servers are kept so they can be stopped. A
+//                connection between two resources on the same device is
+//                written as a device request.
 //
 package fde;
 import static fde.Constants.NOT_FOUND;
@@ -25,7 +39,13 @@ import java.math.BigDecimal;
 import java.math.MathContext;
 import java.math.RoundingMode;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class DiagnosticAgentCapabilities {
 	int monitorInstanceCount = 0;	  // Instance counter for the sender diagnostic function blocks 
@@ -36,6 +56,13 @@ public class DiagnosticAgentCapabilities {
 	
 	private ErrorHandler errorHandler = new ErrorHandler();
 	
+	private List<NIOserver> servers = new ArrayList<NIOserver>();   // One server for each resource partition
+	                                                                // that hosts diagnostic points.
+	private List<Thread> serverThreads = new ArrayList<Thread>();   // The threads running the servers that
+	                                                                // assignServers() started.
+	final static long SERVER_STOP_TIMEOUT = 5000;                   // How long stopServers() waits for each 
+	                                                                // server in milliseconds.
+	
 	private boolean isSilent = false; // Used to turn off and on console messages during development.
 	
 	//
@@ -62,7 +89,7 @@ public class DiagnosticAgentCapabilities {
 		boolean status = true;
 		boolean foundConnection = false;
 		
-		int pollTime = 100; // polling time in milliseconds.
+		int pollTime = DiagnosticPoint.DEFAULT_POLL_TIME; // default polling time in milliseconds.
 		
 		FunctionBlock fb = new FunctionBlock();
 		FunctionBlockConnection fbconn = new FunctionBlockConnection();
@@ -70,7 +97,6 @@ public class DiagnosticAgentCapabilities {
 		Diagnostics diag = new Diagnostics();
 		String diagPak = "";
 		int loadStatus = XMLErrorCodes.UNDEFINED;
-		int SIFBinstanceID = 0;
 				
 		errorHandler.clear();
 		if (fbapp.fbCount() == 0) {
@@ -103,14 +129,18 @@ public class DiagnosticAgentCapabilities {
 									say("--> |" + diag.Event(dpptr) + "|" + diag.Port(dpptr) + "|");
 									// Create the diagnostic point instance and add it into the list of
 									// diagnostic points.
-									SIFBinstanceID++;
 									DiagnosticPoint dp = new DiagnosticPoint();
 									dp.fbName = fb.Name();
 									dp.fbEventName = diag.Event(dpptr);
 									dp.fbPortName = diag.Port(dpptr);
-									dp.SIFBinstanceID = SIFBinstanceID;
 									dp.fbapp = fbapp;
 									dp.server = server;	
+									if (diag.PollTime(dpptr) > 0) {
+										dp.basePollTime(diag.PollTime(dpptr), true);
+									} else {
+										dp.basePollTime(pollTime, false);
+									}
+									dp.detectors(diag.Detectors(dpptr));
 									dps.add(dp);
 									say("dps size " + dps.count());
 								}
@@ -138,10 +168,12 @@ public class DiagnosticAgentCapabilities {
 				DiagnosticPoint dp = new DiagnosticPoint();
 				fbAppCodes dpStatus = fbAppCodes.UNDEFINED;	
 				
+				assignServers(fbapp, dps, server);
+				
 				say("\nRewiring...");
 				for (int dpptr = 0; dpptr < dps.count(); dpptr++) {
 					dp = dps.get(dpptr);
-					dpStatus = createDP(dp, fbapp, pollTime, server, errorHandler);
+					dpStatus = createDP(dp, fbapp, dp.basePollTime(), dp.server, errorHandler);
 					if (dpStatus != fbAppCodes.REWIRED) {
 						status = false;
 						say("Problem");
@@ -151,7 +183,7 @@ public class DiagnosticAgentCapabilities {
 			
 			if (status) {
 				// RA_BRD note change to specify where the forte.fboot file is to be created.
-				if (!createForteBootfile(fbapp, applicationPath + "/src/", errorHandler)) {
+				if (!createForteBootfiles(fbapp, applicationPath + "/src/", errorHandler)) {
 					say("Could not create a diagnostic harness in forte.boot. " + errorHandler.Description());
 					status = false;
 				}	
@@ -160,6 +192,106 @@ public class DiagnosticAgentCapabilities {
 		return status;
 	}
 	
+	//
+	// assignServers()
+	// ===============
+	// Partitions the diagnostic points by the resource that hosts the function block they
+	// are attached to. The first partition uses the engine's own server. Each additional
+	// partition is given its own server listening on the next port number, so the traffic 
+	// from each resource arrives on a different socket and selector thread.
+	//
+	// A server only has room for MAX_CLIENTS - 1 points, so the SIFBinstanceIDs are 
+	// numbered from one on each server and a partition with more points than that is
+	// given another server. The servers' point offsets are then set so that every point
+	// has its own harness ID across all the servers.
+	//
+	private void assignServers(FunctionBlockApp fbapp, DiagnosticPoints dps, NIOserver server) {
+		List<String> partitions = new ArrayList<String>();
+		List<NIOserver> partitionServers = new ArrayList<NIOserver>();
+		List<Integer> cntPoints = new ArrayList<Integer>();
+		FunctionBlockResource resource = new FunctionBlockResource();
+		DiagnosticPoint dp = new DiagnosticPoint();
+		NIOserver partitionServer = null;
+		String partition = "";
+		int ptrPartition = 0;
+		int ptrServer = 0;
+		int pointOffset = 0;
+		
+		stopServers();
+		for (int dpptr = 0; dpptr < dps.count(); dpptr++) {
+			dp = dps.get(dpptr);
+			resource = fbapp.findResource(fbapp.findfb(dp.fbName()));
+			partition = resource.DeviceName() + "." + resource.Name();
+			ptrPartition = partitions.indexOf(partition);
+			if (ptrPartition == NOT_FOUND) {
+				partitions.add(partition);
+				partitionServers.add(null);
+				ptrPartition = partitions.size() - 1;
+			}
+			
+			partitionServer = partitionServers.get(ptrPartition);
+			if ((partitionServer == null) || (cntPoints.get(servers.indexOf(partitionServer)) >= partitionServer.maxClients() - 1)) {
+				if (servers.size() == 0) {
+					partitionServer = server;
+				} else {
+					partitionServer = new NIOserver(server.hostName(), server.listenerPortNumber() + servers.size());
+				}
+				servers.add(partitionServer);
+				cntPoints.add(0);
+				partitionServers.set(ptrPartition, partitionServer);
+				say("Resource " + partition + " diagnostic points use port " + partitionServer.listenerPortNumber());
+			}
+			
+			ptrServer = servers.indexOf(partitionServer);
+			cntPoints.set(ptrServer, cntPoints.get(ptrServer) + 1);
+			dp.SIFBinstanceID = cntPoints.get(ptrServer);
+			dp.server = partitionServer;
+		}
+		
+		// Number the points on each server after those on the servers before it, then
+		// start the new servers. The engine's server is already running.
+		for (ptrServer = 0; ptrServer < servers.size(); ptrServer++) {
+			servers.get(ptrServer).pointOffset(pointOffset);
+			pointOffset = pointOffset + cntPoints.get(ptrServer);
+			if (ptrServer > 0) {
+				Thread serverThread = new Thread(servers.get(ptrServer), "NIOserver-" + servers.get(ptrServer).listenerPortNumber());
+				serverThread.start();
+				serverThreads.add(serverThread);
+			}
+		}
+	}
+	
+	//
+	// stopServers()
+	// =============
+	// Stops the servers started by assignServers() and waits for them to release
+	// their ports. The engine's own server is left running.
+	//
+	public void stopServers() {
+		for (int ptrServer = 1; ptrServer < servers.size(); ptrServer++) {
+			servers.get(ptrServer).stop();
+		}
+		for (Thread serverThread : serverThreads) {
+			try {
+				serverThread.join(SERVER_STOP_TIMEOUT);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		serverThreads.clear();
+		servers.clear();
+	}
+	
+	//
+	// get servers()
+	// =============
+	// Returns the servers created for each resource partition by createHarness().
+	//
+	public List<NIOserver> servers() {
+		return servers;
+	}
+	
 	//
 	// createDP()
 	// ==========
@@ -212,11 +344,16 @@ public class DiagnosticAgentCapabilities {
 		
 		boolean foundConnection = false;
 		
-		say("\nCreating diagnostic point " + "DP_"+ dp.SIFBinstanceID() + " " + dp.fbName() 
+		say("\nCreating diagnostic point " + "DP_"+ dp.harnessID() + " " + dp.fbName() 
 		    + " " + dp.fbEventName() + " " + dp.fbPortName() + " " + dp.fbPortName.length());
 		
 		fb = fbapp.findfb(dp.fbName());
 		if (fb.Name() != "") {
+			// The diagnostic point is deployed into the same resource as the
+			// function block it is attached to.
+			fbdp.Device(fb.Device());
+			fbdp.Resource(fb.Resource());
+			
 			if (dp.fbPortName.length() > 0) {
 				// Locate the data port on this function block that this diagnostic point
 				// has been assigned to monitor.
@@ -241,7 +378,7 @@ public class DiagnosticAgentCapabilities {
 						if (ptrWith != NOT_FOUND) {
 							say("Input port " + dp.fbPortName + " " + dp.fbEventName);
 							
-							fbdp.Name("DP_" + dp.SIFBinstanceID());
+							fbdp.Name("DP_" + dp.harnessID());
 							fbdp.Type("DP");
 							fbdp.Comment("Diagnostic point for " + fb.Name());
 							
@@ -249,8 +386,7 @@ public class DiagnosticAgentCapabilities {
 							outputPort = "DATA_OUT_" + fbVar.StringFromDataType(dataType);
 							fbdp.addParameter("DATA_TYPE", String.valueOf(dataType));
 							
-							// RA_BRD The POLL_TIME should be parameterized ... maybe in the diagnostic package?
-							fbdp.addParameter("POLL_TIME", "T#"+ pollTime + "ms");  // was "T#100ms"
+							fbdp.addParameter("POLL_TIME", "T#"+ pollTime + "ms");
 							fbdp.addParameter("ADDRESS", server.hostName()); 
 							fbdp.addParameter("PORT", String.valueOf(server.listenerPortNumber())); 
 							fbdp.addParameter("INST_ID", String.valueOf(dp.SIFBinstanceID()));
@@ -286,11 +422,11 @@ public class DiagnosticAgentCapabilities {
 								fbapp.addConnection(sourceFB, sourceName, fbdp.Name(), "DATA_IN_" + fbVar.StringFromDataType(dataType) , true);
 							}	
 							
-							fbapp.addConnection("DP_" + dp.SIFBinstanceID(), "DATA_OUT", fb.Name(), dp.fbEventName, true);
-							fbapp.addConnection("DP_" + dp.SIFBinstanceID(), outputPort, fb.Name(), dp.fbPortName, true);
+							fbapp.addConnection("DP_" + dp.harnessID(), "DATA_OUT", fb.Name(), dp.fbEventName, true);
+							fbapp.addConnection("DP_" + dp.harnessID(), outputPort, fb.Name(), dp.fbPortName, true);
 							
-							fbapp.addConnection("START", "COLD", "DP_" + dp.SIFBinstanceID(), "START", true);
-							fbapp.addConnection("START", "WARM", "DP_" + dp.SIFBinstanceID(), "START", true);
+							fbapp.addConnection("START", "COLD", "DP_" + dp.harnessID(), "START", true);
+							fbapp.addConnection("START", "WARM", "DP_" + dp.harnessID(), "START", true);
 		
 							fbapp.add(fbdp);
 							status = fbAppCodes.REWIRED;
@@ -318,7 +454,7 @@ public class DiagnosticAgentCapabilities {
 						}
 						if (ptrWith != NOT_FOUND) {
 							say("Output port " + dp.fbPortName + " " + eventName);
-							fbdp.Name("DP_" + dp.SIFBinstanceID());
+							fbdp.Name("DP_" + dp.harnessID());
 							fbdp.Type("DP");
 							fbdp.Comment("Diagnostic point for " + fb.Name());
 							
@@ -326,7 +462,6 @@ public class DiagnosticAgentCapabilities {
 							inputPort = "DATA_IN_" + fbVar.StringFromDataType(dataType);
 							fbdp.addParameter("DATA_TYPE", String.valueOf(dataType));
 							
-							// RA_BRD The POLL_TIME should be parameterized ... maybe in the diagnostic package?
 							fbdp.addParameter("POLL_TIME", "T#" + pollTime + "ms");
 							fbdp.addParameter("ADDRESS", server.hostName()); 
 							fbdp.addParameter("PORT", String.valueOf(server.listenerPortNumber())); 
@@ -369,15 +504,15 @@ public class DiagnosticAgentCapabilities {
 							}
 							
 							// Connect the output event to the diagnostic point.
-							fbapp.addConnection(fb.Name(), dp.fbEventName, "DP_" + dp.SIFBinstanceID(), "DATA_IN", true);
+							fbapp.addConnection(fb.Name(), dp.fbEventName, "DP_" + dp.harnessID(), "DATA_IN", true);
 							if (dp.fbPortName != "") {
 								// There is an output data port, so connect it to the correct input port on the diagnostic point.
-								fbapp.addConnection(fb.Name(), dp.fbPortName, "DP_" + dp.SIFBinstanceID(), "DATA_IN_" + fbVar.StringFromDataType(dataType), true);
+								fbapp.addConnection(fb.Name(), dp.fbPortName, "DP_" + dp.harnessID(), "DATA_IN_" + fbVar.StringFromDataType(dataType), true);
 							}
 							
 							// These connections activate and initialise the diagnostic point.
-							fbapp.addConnection("START", "COLD", "DP_" + dp.SIFBinstanceID(), "START", true);
-							fbapp.addConnection("START", "WARM", "DP_" + dp.SIFBinstanceID(), "START", true);
+							fbapp.addConnection("START", "COLD", "DP_" + dp.harnessID(), "START", true);
+							fbapp.addConnection("START", "WARM", "DP_" + dp.harnessID(), "START", true);
 		
 							fbapp.add(fbdp);
 							status = fbAppCodes.REWIRED;
@@ -404,11 +539,10 @@ public class DiagnosticAgentCapabilities {
 					switch (fbEvent.EventType()) {
 					case EVENT_INPUT:
 						say(fbEvent.EventType() + " Input port " + dp.fbEventName() + " " + dp.fbPortName());							
-						fbdp.Name("DP_" + dp.SIFBinstanceID());
+						fbdp.Name("DP_" + dp.harnessID());
 						fbdp.Type("DP");
 						dataType = DataTypes.DATATYPE_EVENT;
 						fbdp.addParameter("DATA_TYPE", String.valueOf(dataType));
-						// RA_BRD The POLL_TIME should be parameterized ... maybe in the diagnostic package?
 						fbdp.addParameter("POLL_TIME", "T#"+ pollTime + "ms");
 						fbdp.addParameter("ADDRESS", server.hostName()); 
 						fbdp.addParameter("PORT", String.valueOf(server.listenerPortNumber())); 
@@ -443,14 +577,14 @@ public class DiagnosticAgentCapabilities {
 						}
 						
 						// Add the new event-only connections between the diagnostic point and the function block.
-						fbapp.addConnection("DP_" + dp.SIFBinstanceID(), "DATA_OUT", fb.Name(), eventName,  true);
+						fbapp.addConnection("DP_" + dp.harnessID(), "DATA_OUT", fb.Name(), eventName,  true);
 						if (foundConnection) {
 							// There is an incoming event connection from another function block to this diagnostic point.
 							fbapp.addConnection(sourceFB, sourceName, fbdp.Name(), "DATA_IN", true);
 						}
 						
-						fbapp.addConnection("START", "COLD", "DP_" + dp.SIFBinstanceID(), "START", true);
-						fbapp.addConnection("START", "WARM", "DP_" + dp.SIFBinstanceID(), "START", true);
+						fbapp.addConnection("START", "COLD", "DP_" + dp.harnessID(), "START", true);
+						fbapp.addConnection("START", "WARM", "DP_" + dp.harnessID(), "START", true);
 
 						fbapp.add(fbdp);
 						status = fbAppCodes.REWIRED;						
@@ -458,7 +592,7 @@ public class DiagnosticAgentCapabilities {
 						
 					case EVENT_OUTPUT:
 						say(fbEvent.EventType() + " Output port " + dp.fbPortName + " " + eventName);							
-						fbdp.Name("DP_" + dp.SIFBinstanceID());
+						fbdp.Name("DP_" + dp.harnessID());
 						fbdp.Type("DP");
 						fbdp.Comment("Diagnostic point for " + fb.Name());
 						
@@ -466,7 +600,6 @@ public class DiagnosticAgentCapabilities {
 						// inputPort = "DATA_IN_" + fbVar.StringFromDataType(dataType); RA_BRD
 						fbdp.addParameter("DATA_TYPE", String.valueOf(dataType));
 						
-						// RA_BRD The POLL_TIME should be parameterized ... maybe in the diagnostic package?
 						fbdp.addParameter("POLL_TIME", "T#"+ pollTime + "ms");
 						fbdp.addParameter("ADDRESS", server.hostName()); 
 						fbdp.addParameter("PORT", String.valueOf(server.listenerPortNumber())); 
@@ -498,14 +631,14 @@ public class DiagnosticAgentCapabilities {
 						}
 
 						// Add the new event-only connections between the diagnostic point and the function block.
-						fbapp.addConnection(fb.Name(), eventName, "DP_" + dp.SIFBinstanceID(), "DATA_IN", true);
+						fbapp.addConnection(fb.Name(), eventName, "DP_" + dp.harnessID(), "DATA_IN", true);
 						if (foundConnection) {
 							// There is an outgoing event connection from the diagnostic point to another function block.
 							fbapp.addConnection(fbdp.Name(), "DATA_OUT", destinationFB, destinationName, true);
 						}
 						
-						fbapp.addConnection("START", "COLD", "DP_" + dp.SIFBinstanceID(), "START", true);
-						fbapp.addConnection("START", "WARM", "DP_" + dp.SIFBinstanceID(), "START", true);
+						fbapp.addConnection("START", "COLD", "DP_" + dp.harnessID(), "START", true);
+						fbapp.addConnection("START", "WARM", "DP_" + dp.harnessID(), "START", true);
 
 						fbapp.add(fbdp);
 						status = fbAppCodes.REWIRED;
@@ -525,11 +658,74 @@ public class DiagnosticAgentCapabilities {
 		return status;
 	}
 	
+	//
+	// createForteBootfiles()
+	// ======================
+	// Generates the FORTE boot files for every device that the function block application
+	// is mapped onto. An application deployed onto a single device gets one forte.fboot in 
+	// bootFilePath, as before. When there are several devices, each device gets its own 
+	// forte.fboot in a sub-folder named after the device, and the files are generated
+	// concurrently.
+	//
+	// fbapp         The function block application to be deployed.
+	//
+	// bootFilePath  The fully-qualified path to the directory where the boot files are to
+	//               be created.
+	//
+	// errorHandler  The error handling object which accumulates all the errors for the process.
+	//
+	// returns       boolean true if all the boot files were created.
+	//
+	public boolean createForteBootfiles(FunctionBlockApp fbapp, String bootFilePath, ErrorHandler errorHandler) {
+		boolean status = true;
+		List<String> devices = new ArrayList<String>();
+		List<Future<String>> results = new ArrayList<Future<String>>();
+		String deviceErrors = "";
+		
+		for (int ptrResource = 0; ptrResource < fbapp.ResourceCount(); ptrResource++) {
+			if (!devices.contains(fbapp.Resource(ptrResource).DeviceName())) {
+				devices.add(fbapp.Resource(ptrResource).DeviceName());
+			}
+		}
+		
+		if (devices.size() <= 1) {
+			return createForteBootfile(fbapp, bootFilePath, errorHandler);
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(devices.size(), Runtime.getRuntime().availableProcessors()));
+		for (String device : devices) {
+			results.add(executor.submit(() -> {
+				// Each device has its own error handler since they are not
+				// thread-safe. The descriptions are merged afterwards.
+				ErrorHandler bootErrors = new ErrorHandler();
+				writeBootfile(fbapp, bootFilePath + device + "/", device, bootErrors);
+				return bootErrors.Description();
+			}));
+		}
+		
+		for (int ptrDevice = 0; ptrDevice < results.size(); ptrDevice++) {
+			try {
+				deviceErrors = results.get(ptrDevice).get();
+			} catch (Exception e) {
+				deviceErrors = "Could not create forte.fboot for device " + devices.get(ptrDevice) + ". " + e.getMessage();
+			}
+			if (!deviceErrors.equals("")) {
+				errorHandler.addDescription(deviceErrors);
+				status = false;
+			}
+		}
+		executor.shutdown();
+		return status;
+	}
+	
 	// 
 	// createForteBootfile()
 	// =====================
 	// Generates a FORTE-compliant forte.fboot file that will instantiate the function block
-	// application specified by the function block application definition passed in.
+	// application specified by the function block application definition passed in. All the
+	// resources are written into the one boot file. The requests are streamed into a temporary
+	// file that replaces forte.fboot only once it is complete, so FORTE never starts from a 
+	// truncated boot file.
 	//
 	// fbapp         The list of function blocks and their properties that define this function
 	//	             block application. This is a structure of the type FunctionBlockApp<> which
@@ -544,56 +740,130 @@ public class DiagnosticAgentCapabilities {
 	// returns       boolean true if the boot file was created.
 	//
 	public boolean createForteBootfile(FunctionBlockApp fbapp, String bootFilePath, ErrorHandler errorHandler) {
+		return writeBootfile(fbapp, bootFilePath, null, errorHandler);
+	}
+	
+	//
+	// writeBootfile()
+	// ===============
+	// Writes the forte.fboot file for the resources on one device, or for all the resources
+	// if deviceName is null.
+	//
+	// A connection between function blocks in the same resource is written into that
+	// resource. One between two resources on the same device is written as a device
+	// request once both resources have been created, using the resource names to qualify
+	// the function blocks. A connection between two devices cannot be made by a boot file,
+	// so it is reported as an error by the device that holds its source.
+	//
+	private boolean writeBootfile(FunctionBlockApp fbapp, String bootFilePath, String deviceName, ErrorHandler errorHandler) {
 		boolean status = false;	
-
-		int requestID = 1;
+		int estimatedRequests = 0;
 		
 		FunctionBlock fb = new FunctionBlock();
-//		FunctionBlockEvent fbevent = new FunctionBlockEvent();
 		FunctionBlockParameter fbparameter = new FunctionBlockParameter();
 		FunctionBlockConnection fbconnection = new FunctionBlockConnection();
-		
-		//String FORTE_PATH = System.getProperty("user.home") + "/4diac-ide/forte/src/";
+		FunctionBlockResource resource = new FunctionBlockResource();
+		FunctionBlockResource sourceResource = new FunctionBlockResource();
+		FunctionBlockResource destinationResource = new FunctionBlockResource();
+		Map<String, FunctionBlockResource> fbResources = new HashMap<String, FunctionBlockResource>();
+		List<FunctionBlockConnection> crossConnections = new ArrayList<FunctionBlockConnection>();
+		String resourceKey = "";
+		String unconnected = "";
 		
 		FileIOstatus IOstatus = FileIOstatus.UNDEFINED;
-		FileIO bootfile = new FileIO();
+		BootFileWriter bootfile = new BootFileWriter();
+		
+		// Look up the resource that each function block is deployed into once, rather
+		// than once for every request. Estimate the number of requests at the same time 
+		// so the writer can size its buffer.
+		estimatedRequests = 2 + fbapp.ConnectionCount();
+		for (int ptr = 0; ptr < fbapp.fbCount(); ptr++) {
+			fb = fbapp.getfb(ptr);
+			fbResources.put(fb.Name(), fbapp.findResource(fb));
+			estimatedRequests = estimatedRequests + 1 + fb.ParameterCount();
+		}
 		
-		IOstatus = bootfile.createFile(bootFilePath, "forte.fboot");
+		IOstatus = bootfile.createFile(bootFilePath, "forte.fboot", estimatedRequests);
 		if (IOstatus == FileIOstatus.FILE_CREATED) {
-			bootfile.write(";<Request ID=\"" + requestID++ + "\" Action=\"CREATE\"><FB Name=\"EMB_RES\" Type=\"EMB_RES\" /></Request>\n");
-			
-			for (int ptr = 0; ptr < fbapp.fbCount(); ptr++) {
-				fb = fbapp.getfb(ptr);
+			for (int ptrResource = 0; ptrResource < fbapp.ResourceCount(); ptrResource++) {
+				resource = fbapp.Resource(ptrResource);
+				if ((deviceName != null) && (!resource.DeviceName().equals(deviceName))) {
+					continue;
+				}
+				resourceKey = resourceKey(resource);
+				bootfile.createResource(resource.Name(), resource.Type());
 				
-				if (fb.Name() != "START") {
-					bootfile.write("EMB_RES;<Request ID=\"" + requestID++ + "\" Action=\"CREATE\">" +
-					      "<FB Name=\"" + fb.Name() + "\" Type=\"" + fb.Type() + "\" /></Request>\n");
+				for (int ptr = 0; ptr < fbapp.fbCount(); ptr++) {
+					fb = fbapp.getfb(ptr);
 					
-					// Configure the parameters for this function block. 
-					for (int ptrParameter = 0; ptrParameter < fb.ParameterCount(); ptrParameter++) {
-						fbparameter = fb.Parameter(ptrParameter);
+					if ((fb.Name() != "START") && resourceKey.equals(resourceKey(fbResources.get(fb.Name())))) {
+						bootfile.createFB(resource.Name(), fb.Name(), fb.Type());
 						
-						bootfile.write("EMB_RES;<Request ID=\"" + requestID++ + "\" Action=\"WRITE\">" +
-								       "<Connection Source=\"" + fbparameter.Value() + "\" " + 
-								       "Destination=\"" + fb.Name() + "." + fbparameter.Name() + "\" /></Request>\n");
-					}
+						// Configure the parameters for this function block. 
+						for (int ptrParameter = 0; ptrParameter < fb.ParameterCount(); ptrParameter++) {
+							fbparameter = fb.Parameter(ptrParameter);
+							bootfile.writeParameter(resource.Name(), fbparameter.Value(), fb.Name(), fbparameter.Name());
+						}
+					}	
 				}	
-			}	
+				
+				// Create the connections between the function blocks in this resource. START 
+				// exists in every resource, so its connections belong to the resource of their 
+				// destination. The connections to other resources are made once they all exist.
+				for (int ptrConnection = 0; ptrConnection < fbapp.ConnectionCount(); ptrConnection++) {
+					fbconnection = fbapp.Connection(ptrConnection);
+					if (fbconnection.Enabled()) {
+						destinationResource = fbResources.get(fbconnection.DestinationFB());
+						if (fbconnection.SourceFB().equals("START")) {
+							sourceResource = destinationResource;
+						} else {
+							sourceResource = fbResources.get(fbconnection.SourceFB());
+						}
+						if (resourceKey.equals(resourceKey(sourceResource))) {
+							if ((destinationResource == null) || resourceKey.equals(resourceKey(destinationResource))) {
+								bootfile.createConnection(resource.Name(), fbconnection.SourceFB(), fbconnection.SourceName(),
+										                  fbconnection.DestinationFB(), fbconnection.DestinationName());
+							} else {
+								crossConnections.add(fbconnection);
+							}
+						}
+					}	
+				}
+			}
 			
-			// Create the connections between the function blocks.
-			for (int ptrConnection = 0; ptrConnection < fbapp.ConnectionCount(); ptrConnection++) {
-				fbconnection = fbapp.Connection(ptrConnection);
-				if (fbconnection.Enabled()) {
-					bootfile.write("EMB_RES;<Request ID=\"" + requestID++ + "\" Action=\"CREATE\">" +
-									"<Connection Source=\"" + fbconnection.SourceFB() + "." + fbconnection.SourceName() + "\" " + 
-									"Destination=\"" + fbconnection.DestinationFB() + "." + fbconnection.DestinationName()  + "\"" + "/></Request>\n");
-				}	
+			// Create the connections that cross between resources.
+			for (FunctionBlockConnection crossConnection : crossConnections) {
+				sourceResource = fbResources.get(crossConnection.SourceFB());
+				destinationResource = fbResources.get(crossConnection.DestinationFB());
+				if (sourceResource.DeviceName().equals(destinationResource.DeviceName())) {
+					bootfile.createConnection("", sourceResource.Name() + "." + crossConnection.SourceFB(), crossConnection.SourceName(),
+							                  destinationResource.Name() + "." + crossConnection.DestinationFB(), crossConnection.DestinationName());
+				} else {
+					unconnected = unconnected + " " + crossConnection.SourceFB() + "." + crossConnection.SourceName() + 
+							      " -> " + crossConnection.DestinationFB() + "." + crossConnection.DestinationName();
+				}
 			}
 			
-			// Add the application start command. 
-			bootfile.write("EMB_RES;<Request ID=\"" + requestID++ + "\" Action=\"START\"/>\n");
-			bootfile.close();
-			status = true;
+			// Add the application start commands. 
+			for (int ptrResource = 0; ptrResource < fbapp.ResourceCount(); ptrResource++) {
+				resource = fbapp.Resource(ptrResource);
+				if ((deviceName == null) || (resource.DeviceName().equals(deviceName))) {
+					bootfile.start(resource.Name());
+				}
+			}
+			
+			if (bootfile.close() == FileIOstatus.FILE_CREATED) {
+				say("Created " + bootFilePath + "forte.fboot with " + bootfile.requestCount() + " requests (" + bootfile.bytesWritten() + " bytes).");
+				status = true;
+			} else {
+				errorHandler.addDescription("Could not write forte.fboot. " + bootfile.errorDescription());
+				status = false;
+			}
+			
+			if (!unconnected.equals("")) {
+				errorHandler.addDescription("These connections are between devices and cannot be made by forte.fboot:" + unconnected);
+				status = false;
+			}
 			
 		} else {
 			errorHandler.addDescription("Could not create forte.fboot." + bootfile.errorDescription());
@@ -603,6 +873,16 @@ public class DiagnosticAgentCapabilities {
 		return status;
 	}
 	
+	//
+	// resourceKey()
+	// =============
+	// Identifies a resource by its device and name, since two devices can each have
+	// a resource with the same name.
+	//
+	private String resourceKey(FunctionBlockResource resource) {
+		return (resource == null) ? "" : resource.DeviceName() + "." + resource.Name();
+	}
+	
 	//
 	// createMonitor()  RA_BRD deprecated
 	// ===============
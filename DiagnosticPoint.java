@@ -22,15 +22,59 @@
 //                values. These are useful to the agents who need to retrieve
 //                settings that cannot be captured from events or other port
 //                reading methods.
+// 18.10.2026 BRD The poll time of each diagnostic point is now negotiated at
+//                runtime. Points that a script is watching are polled faster
+//                and idle points are slowed down.
+// 18.10.2026 BRD Split out the trigger packets and the timestamp check so that
+//                triggers can be batched by DiagnosticPoints.
+// 18.10.2026 BRD delay() is a safe point for goal pre-emption.
+// 18.10.2026 BRD Waits are now cancellable through the script's ScriptContext and
+//                closed gates are recorded so they can be re-opened. readFloat()
+//                no longer loops forever when no matching packet is queued.
+// 18.10.2026 BRD Time is read from the EngineClock so scripts can run in virtual time.
+// 18.10.2026 BRD Added statistics() to give scripts the streaming statistics of the
+//                values the point has sampled.
+// 18.10.2026 BRD Holds the anomaly detectors given for the point in its
+//                diagnostic package.
+// 18.10.2026 BRD Timestamps are checked against the engine time converted to the
+//                FORTE clock, using the clock offset estimated by the server.
+//                Added engineTime() to correct the point's timestamps.
+// 18.10.2026 BRD Added subscribe(), unsubscribe() and mute() so that the server
+//                only queues the packets a script will read, and sampleFilter()
+//                to ask the function block to stop sending unwanted samples.
+// 18.10.2026 BRD flush() no longer spins for its window. The server discards the
+//                samples taken before a gate mode change itself, so flushing
+//                is now a single call that returns at once.
+// 18.10.2026 BRD Added harnessID() since the SIFBinstanceID is only unique on the
+//                point's own server.
+// 18.10.2026 BRD forteTime() takes its engine time from ClockOffsetEstimator.engineTime(),
+//                the time base the clock offsets are estimated in.
+// 18.10.2026 BRD Added configureStatistics() to set the statistics' window sizes
+//                and percentile accuracy for this point.
+// 18.10.2026 BRD trigger() reads its send time before sending the trigger, so a reply
+//                pushed back at once is not taken to be older than the trigger.
+// 18.10.2026 BRD mute() no longer flushes the queue, which threw away the timestamps
+//                of triggers that were still in flight.
 //
 package fde;
 
-import java.util.concurrent.TimeUnit;
 
 import fde.DiagnosticAgent.AgentModes;
 import fde.DiagnosticAgent.PacketDelimiters;
 
 public class DiagnosticPoint {
+	// Poll time limits in milliseconds. DEFAULT_POLL_TIME is used when neither
+	// the diagnostic package nor the observed traffic suggest a better one.
+	final static int DEFAULT_POLL_TIME = 100;
+	final static int MIN_POLL_TIME = 10;
+	final static int MAX_POLL_TIME = 1000;
+	
+	// A point that has not been read for WATCH_TIMEOUT milliseconds is treated
+	// as idle. Watched points are polled POLL_TIME_FACTOR times faster than their
+	// base poll time, and idle points that many times slower.
+	final static int WATCH_TIMEOUT = 2000;
+	final static int POLL_TIME_FACTOR = 4;
+	
 	FunctionBlockApp fbapp = new FunctionBlockApp();
 	NIOserver server = new NIOserver("", 0);
 	String fbName = "";
@@ -44,10 +88,48 @@ public class DiagnosticPoint {
 	private double lastDoubleValue = 0;
 	private long lastTimestamp = 0;
 	
+	// basePollTime is the poll time the point was deployed with. pollTime is the
+	// rate currently negotiated with the function block. A package poll time is
+	// fixed; otherwise the base follows the observed traffic.
+	private int basePollTime = DEFAULT_POLL_TIME;
+	private volatile int pollTime = DEFAULT_POLL_TIME;
+	private boolean isPackagePollTime = false;
+	private volatile long lastAccess = 0;
+	
+	// The anomaly detectors the diagnostic package attaches to this point,
+	// for example "zscore(4) stuck(50)".
+	private String detectors = "";
+	
+	//
+	// statistics()
+	// ============
+	// The running, sliding window and tumbling window statistics of the values
+	// this point has sampled. They are kept up to date by the server as the
+	// values arrive, whether or not the script reads them.
+	//
+	public DiagnosticPointStatistics statistics() {
+		return server.statistics(SIFBinstanceID);
+	}
+	
+	//
+	// configureStatistics()
+	// =====================
+	// Restarts the point's statistics with a sliding window of slidingWindowSize
+	// values, tumbling windows of tumblingWindowTime milliseconds, the moving
+	// average weight alpha and percentiles to the relative accuracy given, for
+	// example 0.01 for 1%. Throws IllegalArgumentException if any of them are
+	// out of range.
+	//
+	public void configureStatistics(int slidingWindowSize, long tumblingWindowTime, double alpha, double accuracy) {
+		server.statistics(SIFBinstanceID,
+			new DiagnosticPointStatistics(slidingWindowSize, tumblingWindowTime, alpha, accuracy));
+	}
+	
 	//
 	// hasData()
 	// =========
 	public boolean hasData() {
+		lastAccess = EngineClock.clock().currentTimeMillis();
 		return (server.inQueueSize(SIFBinstanceID) > 0);
 	}
 	
@@ -95,6 +177,7 @@ public class DiagnosticPoint {
 	// readInt()
 	// =========
 	public int readInt() {
+		lastAccess = EngineClock.clock().currentTimeMillis();
 		NIOserverPacket packet = new NIOserverPacket();
 		int value = 0;
 				
@@ -122,6 +205,7 @@ public class DiagnosticPoint {
 	// readDouble()
 	// ============
 	public double readDouble() {
+		lastAccess = EngineClock.clock().currentTimeMillis();
 		NIOserverPacket packet = new NIOserverPacket();
 		double value = 0;
 				
@@ -150,22 +234,23 @@ public class DiagnosticPoint {
 	// readFloat()
 	// ============
 	public float readFloat(long triggerTimestamp) {
+		lastAccess = EngineClock.clock().currentTimeMillis();
 		NIOserverPacket packet = new NIOserverPacket();
 		float value = 0;
 		boolean found = false;
 		
-		if (server.inQueueSize(SIFBinstanceID) > 0) {
-			while (!found) {
-				packet = server.getPacket(SIFBinstanceID);
-				if (Integer.parseInt(packet.command()) == AgentModes.SAMPLED_DATA) { 
-					if (packet.timeStamp() >= triggerTimestamp) {
-						try {
-							value = Float.valueOf(packet.dataValue());
-						} catch (NumberFormatException nfe) {
-							value = 0;							
-						}
-						lastTimestamp = packet.timeStamp();
+		while (!found && (server.inQueueSize(SIFBinstanceID) > 0)) {
+			ScriptContext.checkpoint();
+			packet = server.getPacket(SIFBinstanceID);
+			if (Integer.parseInt(packet.command()) == AgentModes.SAMPLED_DATA) { 
+				if (packet.timeStamp() >= triggerTimestamp) {
+					try {
+						value = Float.valueOf(packet.dataValue());
+					} catch (NumberFormatException nfe) {
+						value = 0;							
 					}
+					lastTimestamp = packet.timeStamp();
+					found = true;
 				}
 			}
 		}	
@@ -180,6 +265,7 @@ public class DiagnosticPoint {
 	// readBoolean()
 	// =============
 	public boolean readBoolean() {
+		lastAccess = EngineClock.clock().currentTimeMillis();
 		NIOserverPacket packet = new NIOserverPacket();
 		boolean value = false;
 				
@@ -201,6 +287,7 @@ public class DiagnosticPoint {
 	// readEvent()
 	// ===========
 	public boolean readEvent(long triggerTimestamp) {
+		lastAccess = EngineClock.clock().currentTimeMillis();
 		NIOserverPacket packet = new NIOserverPacket();
 		boolean value = false;
 		lastTimestamp = 0;
@@ -319,34 +406,23 @@ public class DiagnosticPoint {
 	// trigger()
 	// =========
 	public boolean trigger(double data) {
+		lastAccess = EngineClock.clock().currentTimeMillis();
 		boolean wasTriggered = false;
-		String packetData = "";
-		String dataValue = "";
-		NIOserverPacket packet = new NIOserverPacket();
 		int maxRetrys = 10; //RA_BRD parameterise this?
 		
-		dataValue = Double.toString(data);
-		packetData = PacketDelimiters.START_OF_PACKET + AgentModes.TRIGGER_DATA_VALUE + PacketDelimiters.FIELD_SEPARATOR
-				     + Integer.toString(dataValue.length()) + PacketDelimiters.FIELD_SEPARATOR  + dataValue + 
-				     PacketDelimiters.FIELD_SEPARATOR + PacketDelimiters.END_OF_PACKET;
-		server.sendPacket(SIFBinstanceID, packetData);
-		
-		// Calculate the current epoch time. Any timestamp packet that comes back must be later a than time one.
-		long timestamp = System.currentTimeMillis();
+		// Calculate the current epoch time on the FORTE clock. Any timestamp packet that comes back must
+		// be later than this one. It is read before the trigger is sent, since in push mode the reply
+		// can arrive before sendPacket() returns.
+		long timestamp = forteTime(ClockOffsetEstimator.engineTime());
 		//System.out.println("trigger time " + timestamp);
+		
+		server.sendPacket(SIFBinstanceID, triggerPacket(data));
 					
 		// Receive the timestamp back from the diagnostic point for this trigger event.
 		for (int retry1 = 0; retry1 < maxRetrys; retry1++) {
-			if (server.inQueueSize(SIFBinstanceID) > 0) {
-				packet = server.getPacket(SIFBinstanceID);
-				if (Integer.parseInt(packet.command()) == AgentModes.TIMESTAMP) {
-					if (packet.timeStamp >= timestamp) {
-						this.lastTimestamp = packet.timeStamp;
-						//System.out.println("Timestamp back from trigger() " + lastTimestamp);
-						wasTriggered = true;
-						break;
-					}	
-				}	
+			if (receiveTimestamp(timestamp)) {
+				wasTriggered = true;
+				break;
 			}
 			delay(25); // RA_BRD parameterise this?
 		}
@@ -359,33 +435,115 @@ public class DiagnosticPoint {
 	// Triggers an event without a corresponding data input.
 	//
 	public boolean trigger() {
+		lastAccess = EngineClock.clock().currentTimeMillis();
 		boolean wasTriggered = false;
-		String packetData = "";
-		String dataValue = "";
-		NIOserverPacket packet = new NIOserverPacket();
 		int maxRetrys = 10; //BRD parameterise this?	
 		
-		packetData = PacketDelimiters.START_OF_PACKET + AgentModes.TRIGGER_EVENT + PacketDelimiters.FIELD_SEPARATOR
-			         + Integer.toString(0) + PacketDelimiters.FIELD_SEPARATOR  + "" + 
-			         PacketDelimiters.FIELD_SEPARATOR + PacketDelimiters.END_OF_PACKET;
-		server.sendPacket(SIFBinstanceID, packetData);
+		long timestamp = forteTime(ClockOffsetEstimator.engineTime());
+		server.sendPacket(SIFBinstanceID, triggerPacket());
 	    
 		// Receive the timestamp back from the diagnostic point for this trigger event.
 		for (int retry1 = 0; retry1 < maxRetrys; retry1++) {
-			if (server.inQueueSize(SIFBinstanceID) > 0) {
-				packet = server.getPacket(SIFBinstanceID);
-				if (Integer.parseInt(packet.command()) == AgentModes.TIMESTAMP) {
-					this.lastTimestamp = packet.timeStamp;
-					//System.out.println("Timestamp back from event trigger() " + packet.timeStamp);
-					wasTriggered = true;
-					break;
-				}	
+			if (receiveTimestamp(timestamp)) {
+				wasTriggered = true;
+				break;
 			}
 			delay(25); // RA_BRD parameterise this?
 		}
 		return wasTriggered;
 	}
 	
+	//
+	// triggerPacket()
+	// ===============
+	// Builds the packet that triggers the input event with a data value.
+	//
+	String triggerPacket(double data) {
+		String dataValue = Double.toString(data);
+		return PacketDelimiters.START_OF_PACKET + AgentModes.TRIGGER_DATA_VALUE + PacketDelimiters.FIELD_SEPARATOR
+			   + Integer.toString(dataValue.length()) + PacketDelimiters.FIELD_SEPARATOR  + dataValue + 
+			   PacketDelimiters.FIELD_SEPARATOR + PacketDelimiters.END_OF_PACKET;
+	}
+	
+	//
+	// triggerPacket()
+	// ===============
+	// Builds the packet that triggers an event without a data value.
+	//
+	String triggerPacket() {
+		return PacketDelimiters.START_OF_PACKET + AgentModes.TRIGGER_EVENT + PacketDelimiters.FIELD_SEPARATOR
+			   + Integer.toString(0) + PacketDelimiters.FIELD_SEPARATOR  + "" + 
+			   PacketDelimiters.FIELD_SEPARATOR + PacketDelimiters.END_OF_PACKET;
+	}
+	
+	//
+	// receiveTimestamp()
+	// ==================
+	// Checks the queued packets for the timestamp that the diagnostic point
+	// returns when it has been triggered. Other packets, and timestamps earlier
+	// than notBefore, are discarded.
+	//
+	// returns  true if the timestamp was received. It is then available from
+	//          timestamp().
+	//
+	boolean receiveTimestamp(long notBefore) {
+		NIOserverPacket packet = new NIOserverPacket();
+		
+		lastAccess = EngineClock.clock().currentTimeMillis();
+		while (server.inQueueSize(SIFBinstanceID) > 0) {
+			packet = server.getPacket(SIFBinstanceID);
+			if (Integer.parseInt(packet.command()) == AgentModes.TIMESTAMP) {
+				if (packet.timeStamp >= notBefore) {
+					this.lastTimestamp = packet.timeStamp;
+					return true;
+				}	
+			}	
+		}
+		return false;
+	}
+	
+	//
+	// get clockOffset()
+	// =================
+	// The estimate of the offset of this point's FORTE clock from the engine's.
+	//
+	public ClockOffsetEstimator clockOffset() {
+		return server.clockOffset(SIFBinstanceID);
+	}
+	
+	//
+	// forteTime()
+	// ===========
+	// Converts an engine time from ClockOffsetEstimator.engineTime() to the 
+	// earliest FORTE timestamp that a packet sent by the point after that time 
+	// could carry. Until the clock offset has been estimated the clocks are 
+	// taken to agree.
+	//
+	public long forteTime(double engineTime) {
+		ClockOffsetEstimator clock = clockOffset();
+		
+		if (!clock.isCalibrated()) {
+			return (long) Math.floor(engineTime);
+		}
+		return (long) Math.floor(clock.toForteTime(engineTime) - clock.uncertainty());
+	}
+	
+	//
+	// engineTime()
+	// ============
+	// Converts a timestamp from the point to engine time in fractional 
+	// milliseconds, so that it can be compared with the engine's time and with
+	// the timestamps of points on other devices.
+	//
+	public double engineTime(long timeStamp) {
+		ClockOffsetEstimator clock = clockOffset();
+		
+		if (!clock.isCalibrated()) {
+			return timeStamp;
+		}
+		return clock.toEngineTime(timeStamp + (ClockOffsetEstimator.TIMESTAMP_RESOLUTION / 2));
+	}
+	
 	//
 	// gateClose()
 	// ===========
@@ -393,9 +551,16 @@ public class DiagnosticPoint {
 		String packetData = PacketDelimiters.START_OF_PACKET + AgentModes.TRIGGER_ENABLED + PacketDelimiters.FIELD_SEPARATOR + PacketDelimiters.END_OF_PACKET;
 		server.sendPacket(SIFBinstanceID, packetData);
 		
+		// Remember the closed gate so that it is re-opened if the script
+		// is cancelled.
+		ScriptContext context = ScriptContext.current();
+		if (context != null) {
+			context.gateClosed(this);
+		}
+		
 		// RA_BRD Put this in a retry loop, waiting for an acknowledgement that the gate has closed?
-		// RA_BRD Flush the queue since previous readings no longer matter?
-		//flush(100);
+		// The server discards the readings taken before the gate closed, so
+		// there is no need to flush the queue here.
 	}
 	
 	//
@@ -404,34 +569,175 @@ public class DiagnosticPoint {
 	public void gateOpen() {
 		String packetData = PacketDelimiters.START_OF_PACKET + AgentModes.PASSTHROUGH_ENABLED + PacketDelimiters.FIELD_SEPARATOR + PacketDelimiters.END_OF_PACKET;
 		server.sendPacket(SIFBinstanceID, packetData);
+		
+		ScriptContext context = ScriptContext.current();
+		if (context != null) {
+			context.gateOpened(this);
+		}
+	}
+	
+	//
+	// changePollTime()
+	// ================
+	// Asks the diagnostic point function block to poll the engine every
+	// milliseconds from now on. The request is only sent if the rate is
+	// actually changing.
+	//
+	// returns  true if a new poll time was sent.
+	//
+	public boolean changePollTime(int milliseconds) {
+		boolean changed = false;
+		String dataValue = "";
+		String packetData = "";
+		
+		milliseconds = Math.max(MIN_POLL_TIME, Math.min(MAX_POLL_TIME, milliseconds));
+		if (milliseconds != pollTime) {
+			dataValue = Integer.toString(milliseconds);
+			packetData = PacketDelimiters.START_OF_PACKET + AgentModes.SET_POLL_TIME + PacketDelimiters.FIELD_SEPARATOR
+				     + Integer.toString(dataValue.length()) + PacketDelimiters.FIELD_SEPARATOR + dataValue + 
+				     PacketDelimiters.FIELD_SEPARATOR + PacketDelimiters.END_OF_PACKET;
+			server.sendPacket(SIFBinstanceID, packetData);
+			pollTime = milliseconds;
+			changed = true;
+		}
+		return changed;
+	}
+	
+	//
+	// sampleFilter()
+	// ==============
+	// Asks the diagnostic point function block to send a sampled value only
+	// when at least minInterval milliseconds have passed since the last one it
+	// sent and the value has moved by more than the deadband. A minInterval of
+	// zero and a deadband of zero send every sample, and a negative minInterval
+	// stops the samples altogether. Triggers are still answered.
+	//
+	public void sampleFilter(long minInterval, double deadband) {
+		String dataValue = "";
+		String packetData = "";
+		
+		if (minInterval < 0) {
+			dataValue = "-1";
+		} else {
+			dataValue = Long.toString(minInterval) + "," + Double.toString(Math.abs(deadband));
+		}
+		packetData = PacketDelimiters.START_OF_PACKET + AgentModes.SAMPLE_FILTER + PacketDelimiters.FIELD_SEPARATOR
+			     + Integer.toString(dataValue.length()) + PacketDelimiters.FIELD_SEPARATOR + dataValue + 
+			     PacketDelimiters.FIELD_SEPARATOR + PacketDelimiters.END_OF_PACKET;
+		server.sendPacket(SIFBinstanceID, packetData);
+	}
+	
+	//
+	// subscribe()
+	// ===========
+	// Registers the packets a script wants from this point. Once the point
+	// has a subscription, the server throws away the packets that none of its
+	// subscriptions want instead of queueing them.
+	//
+	public void subscribe(SampleSubscription subscription) {
+		server.subscribe(SIFBinstanceID, subscription);
+	}
+	
+	//
+	// unsubscribe()
+	// =============
+	public void unsubscribe(SampleSubscription subscription) {
+		server.unsubscribe(SIFBinstanceID, subscription);
+	}
+	
+	//
+	// mute()
+	// ======
+	// Stops the samples from this point being queued or recorded in its
+	// statistics. Trigger timestamps are still queued. The packets already
+	// queued are kept, so that the timestamp for a trigger in flight is not
+	// lost; receiveTimestamp() skips the samples among them. Remove the mute
+	// with unsubscribe().
+	//
+	public void mute() {
+		server.mute(SIFBinstanceID);
+	}
+	
+	//
+	// unsubscribe()
+	// =============
+	// Removes all the subscriptions to this point, so all its packets are
+	// queued again.
+	//
+	public void unsubscribe() {
+		server.unsubscribeAll(SIFBinstanceID);
+	}
+	
+	//
+	// adaptPollTime()
+	// ===============
+	// Chooses the poll time for this point from its base poll time and whether a
+	// script is currently watching it, then negotiates it with the function block.
+	// When the package did not specify a poll time, the base follows the observed
+	// interval between packets so that the point polls at least twice per event.
+	// Small changes are ignored so that the rate does not chase every packet.
+	//
+	// returns  true if a new poll time was sent.
+	//
+	public boolean adaptPollTime() {
+		int targetPollTime = basePollTime;
+		int observedInterval = 0;
+		
+		if (!isPackagePollTime) {
+			observedInterval = server.arrivalInterval(SIFBinstanceID);
+			if (observedInterval > 0) {
+				targetPollTime = Math.min(basePollTime, observedInterval / 2);
+			}
+		}
+		if (isWatched()) {
+			targetPollTime = targetPollTime / POLL_TIME_FACTOR;
+		} else {
+			targetPollTime = targetPollTime * POLL_TIME_FACTOR;
+		}
+		targetPollTime = Math.max(MIN_POLL_TIME, Math.min(MAX_POLL_TIME, targetPollTime));
+		
+		if (Math.abs(targetPollTime - pollTime) * 5 > pollTime) {
+			return changePollTime(targetPollTime);
+		}
+		return false;
+	}
+	
+	//
+	// isWatched()
+	// ===========
+	// True if a script has read or triggered this point recently.
+	//
+	public boolean isWatched() {
+		return ((EngineClock.clock().currentTimeMillis() - lastAccess) < WATCH_TIMEOUT);
 	}
 	
 	//
 	// flush()
 	// =======
-	// Flush the incoming packet queue.
+	// Flush the incoming packet queue. The packets already queued are skipped
+	// from now on, however many there are. The packets still in flight from
+	// before a gate mode change are discarded by the server as they arrive, so
+	// there is no longer any need to keep flushing for a while. The window is
+	// kept so that existing scripts are unchanged.
 	//
-	@SuppressWarnings("static-access")
 	public void flush(int milliseconds) {
-		long startTime = System.currentTimeMillis();
-		
-		while((System.currentTimeMillis() - startTime) < milliseconds) {
-			server.flush(SIFBinstanceID);
-			Thread.currentThread().yield();
-			delay(10);
-		//	System.out.println("flush() queue size " + server.inQueueSize(SIFBinstanceID));
-		}
+		flush();
+	}
+	
+	//
+	// flush()
+	// =======
+	public void flush() {
+		server.flush(SIFBinstanceID);
 	}
 	
 	//
 	// delay()
 	// =======
 	void delay(int milliseconds) {
-		try {
-			TimeUnit.MILLISECONDS.sleep((long) milliseconds);  
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-		}	
+		// Every wait on a diagnostic point is a safe point at which the
+		// script can be pre-empted or cancelled.
+		ScriptContext.sleep(milliseconds);
 	}
 	
 	//
@@ -507,10 +813,63 @@ public class DiagnosticPoint {
 		this.SIFBinstanceID = SIFBinstanceID;
 	}
 	
+	//
+	// get harnessID()
+	// ===============
+	// Identifies the point across all the servers in the harness. The SIFBinstanceID
+	// only identifies it on its own server.
+	//
+	public int harnessID() {
+		return (server == null) ? SIFBinstanceID : server.pointOffset() + SIFBinstanceID;
+	}
+	
 	//
 	// get timestamp()
 	// ===============
 	public long timestamp() {
 		return lastTimestamp;
-	}	
+	}
+	
+	//
+	// get pollTime()
+	// ==============
+	// The poll time currently negotiated with the function block.
+	//
+	public int pollTime() {
+		return pollTime;
+	}
+	
+	//
+	// set basePollTime()
+	// ==================
+	// Sets the poll time the point is deployed with. A poll time from the
+	// diagnostic package is kept as the base; a default one may be refined
+	// from the observed traffic.
+	//
+	public void basePollTime(int milliseconds, boolean isPackagePollTime) {
+		this.basePollTime = Math.max(MIN_POLL_TIME, Math.min(MAX_POLL_TIME, milliseconds));
+		this.pollTime = this.basePollTime;
+		this.isPackagePollTime = isPackagePollTime;
+	}
+	
+	//
+	// get basePollTime()
+	// ==================
+	public int basePollTime() {
+		return basePollTime;
+	}
+	
+	//
+	// get detectors()
+	// ===============
+	public String detectors() {
+		return detectors;
+	}
+	
+	//
+	// set detectors()
+	// ===============
+	public void detectors(String detectors) {
+		this.detectors = (detectors == null) ? "" : detectors.trim();
+	}
 }
@@ -0,0 +1,378 @@
+//
+// DIAGNOSTIC POINT STATISTICS
+// ===========================
+// Streaming statistics for the values sampled by one diagnostic point. The
+// NIOserver updates them as each SAMPLED_DATA packet arrives, so a script can
+// ask for the mean, spread or percentiles of a point at any time without
+// draining and summarising its packet queue itself.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// Three sets of statistics are kept:
+//
+//   Total     Every value since the statistics were last reset.
+//
+//   Sliding   The last slidingWindowSize values. As well as the count, mean,
+//             variance, minimum and maximum, this window keeps a histogram
+//             so percentiles can be asked for.
+//
+//   Tumbling  Consecutive, non-overlapping windows of tumblingWindowTime
+//             milliseconds, using the timestamps applied by the function
+//             block. The statistics of the last complete window can be
+//             copied out with completedWindow().
+//
+// Adding a value takes constant time and does not allocate memory. The minimum
+// and maximum of the sliding window are kept with monotonic queues, and its
+// mean and variance are updated by adding the new value and removing the one
+// that falls out of the window. The window's sums are recalculated from the
+// values in the window each time it has been filled again, so rounding errors
+// cannot build up. Every query is constant time except percentile(), which
+// scans the fixed number of histogram buckets.
+//
+// The statistics are written by the server thread and read by the agents, so
+// the methods are synchronized.
+//
+// The window sizes, the moving average weight and the accuracy of the
+// percentiles can be chosen for each point with DiagnosticPoint's
+// configureStatistics().
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+// 18.10.2026 BRD Added a constructor that also sets the accuracy of the sliding
+//                window's percentiles.
+//
+package fde;
+
+public class DiagnosticPointStatistics {
+	public static final int DEFAULT_SLIDING_WINDOW_SIZE = 100;
+	public static final long DEFAULT_TUMBLING_WINDOW_TIME = 1000;
+
+	private final RunningStatistics total;
+
+	// Sliding window
+	// ==============
+	// The values in the window are held in a ring buffer indexed by their
+	// sequence number. The monotonic queues hold the sequence numbers of the
+	// values that can still become the window's minimum or maximum.
+	private final int slidingWindowSize;
+	private final double[] window;
+	private long cntValues = 0;
+	private double windowMean = 0;
+	private double windowM2 = 0;
+	private final long[] minQueue;
+	private int minHead = 0;
+	private int minSize = 0;
+	private final long[] maxQueue;
+	private int maxHead = 0;
+	private int maxSize = 0;
+	private final QuantileHistogram histogram;
+
+	// Tumbling window
+	// ===============
+	private final long tumblingWindowTime;
+	private final RunningStatistics currentWindow;
+	private final RunningStatistics completedWindow;
+	private long windowStart = 0;
+	private long completedWindowStart = 0;
+
+	private long lastTimestamp = 0;
+
+	//
+	// DiagnosticPointStatistics()
+	// ===========================
+	public DiagnosticPointStatistics() {
+		this(DEFAULT_SLIDING_WINDOW_SIZE, DEFAULT_TUMBLING_WINDOW_TIME, RunningStatistics.DEFAULT_EWMA_ALPHA);
+	}
+
+	//
+	// DiagnosticPointStatistics()
+	// ===========================
+	// slidingWindowSize   The number of values in the sliding window.
+	//
+	// tumblingWindowTime  The length of each tumbling window in milliseconds.
+	//
+	// alpha               The weight given to each new value by the moving
+	//                     averages.
+	//
+	public DiagnosticPointStatistics(int slidingWindowSize, long tumblingWindowTime, double alpha) {
+		this(slidingWindowSize, tumblingWindowTime, alpha, QuantileHistogram.DEFAULT_ACCURACY);
+	}
+
+	//
+	// DiagnosticPointStatistics()
+	// ===========================
+	// accuracy            The relative accuracy of the percentiles, for example
+	//                     0.01 for 1%.
+	//
+	public DiagnosticPointStatistics(int slidingWindowSize, long tumblingWindowTime, double alpha, double accuracy) {
+		if ((slidingWindowSize < 1) || (tumblingWindowTime < 1)) {
+			throw new IllegalArgumentException("The window sizes must be positive");
+		}
+		this.slidingWindowSize = slidingWindowSize;
+		this.tumblingWindowTime = tumblingWindowTime;
+		total = new RunningStatistics(alpha);
+		currentWindow = new RunningStatistics(alpha);
+		completedWindow = new RunningStatistics(alpha);
+		histogram = new QuantileHistogram(accuracy);
+		window = new double[slidingWindowSize];
+		minQueue = new long[slidingWindowSize];
+		maxQueue = new long[slidingWindowSize];
+	}
+
+	//
+	// add()
+	// =====
+	// Adds a value sampled at the given timestamp in milliseconds.
+	//
+	public synchronized void add(long timestamp, double value) {
+		if (Double.isNaN(value)) {
+			return;
+		}
+		total.add(value);
+		addToTumblingWindow(timestamp, value);
+		addToSlidingWindow(value);
+		lastTimestamp = timestamp;
+	}
+
+	//
+	// addToTumblingWindow()
+	// =====================
+	private void addToTumblingWindow(long timestamp, double value) {
+		if (currentWindow.count() == 0) {
+			windowStart = timestamp - (timestamp % tumblingWindowTime);
+		} else if (timestamp >= windowStart + tumblingWindowTime) {
+			completedWindow.copy(currentWindow);
+			completedWindowStart = windowStart;
+			currentWindow.reset();
+			windowStart = timestamp - (timestamp % tumblingWindowTime);
+		}
+		currentWindow.add(value);
+	}
+
+	//
+	// addToSlidingWindow()
+	// ====================
+	private void addToSlidingWindow(double value) {
+		long sequence = cntValues++;
+		int ptrSlot = (int) (sequence % slidingWindowSize);
+
+		if (sequence >= slidingWindowSize) {
+			// The oldest value drops out of the window.
+			double oldest = window[ptrSlot];
+			histogram.remove(oldest);
+			int cntRemaining = slidingWindowSize - 1;
+			if (cntRemaining == 0) {
+				windowMean = 0;
+				windowM2 = 0;
+			} else {
+				double delta = oldest - windowMean;
+				windowMean -= delta / cntRemaining;
+				windowM2 -= delta * (oldest - windowMean);
+			}
+			if ((minSize > 0) && (minQueue[minHead] == sequence - slidingWindowSize)) {
+				minHead = (minHead + 1) % slidingWindowSize;
+				minSize--;
+			}
+			if ((maxSize > 0) && (maxQueue[maxHead] == sequence - slidingWindowSize)) {
+				maxHead = (maxHead + 1) % slidingWindowSize;
+				maxSize--;
+			}
+		}
+
+		window[ptrSlot] = value;
+		histogram.add(value);
+		int cntInWindow = windowCount();
+		double delta = value - windowMean;
+		windowMean += delta / cntInWindow;
+		windowM2 += delta * (value - windowMean);
+
+		while ((minSize > 0) && (window[slot(minQueue[(minHead + minSize - 1) % slidingWindowSize])] >= value)) {
+			minSize--;
+		}
+		minQueue[(minHead + minSize) % slidingWindowSize] = sequence;
+		minSize++;
+		while ((maxSize > 0) && (window[slot(maxQueue[(maxHead + maxSize - 1) % slidingWindowSize])] <= value)) {
+			maxSize--;
+		}
+		maxQueue[(maxHead + maxSize) % slidingWindowSize] = sequence;
+		maxSize++;
+
+		if ((cntValues % slidingWindowSize) == 0) {
+			recalculateWindow();
+		}
+	}
+
+	//
+	// recalculateWindow()
+	// ===================
+	// Recalculates the mean and variance of the sliding window from its values.
+	//
+	private void recalculateWindow() {
+		int cntInWindow = windowCount();
+		double sum = 0;
+		for (int ptr = 0; ptr < cntInWindow; ptr++) {
+			sum += window[ptr];
+		}
+		windowMean = sum / cntInWindow;
+		windowM2 = 0;
+		for (int ptr = 0; ptr < cntInWindow; ptr++) {
+			windowM2 += (window[ptr] - windowMean) * (window[ptr] - windowMean);
+		}
+	}
+
+	//
+	// slot()
+	// ======
+	private int slot(long sequence) {
+		return (int) (sequence % slidingWindowSize);
+	}
+
+	//
+	// reset()
+	// =======
+	public synchronized void reset() {
+		total.reset();
+		currentWindow.reset();
+		completedWindow.reset();
+		histogram.clear();
+		cntValues = 0;
+		windowMean = 0;
+		windowM2 = 0;
+		minHead = 0;
+		minSize = 0;
+		maxHead = 0;
+		maxSize = 0;
+		windowStart = 0;
+		completedWindowStart = 0;
+		lastTimestamp = 0;
+	}
+
+	// =====================================================================
+	// Total
+	// =====================================================================
+
+	public synchronized long count() {
+		return total.count();
+	}
+
+	public synchronized double min() {
+		return total.min();
+	}
+
+	public synchronized double max() {
+		return total.max();
+	}
+
+	public synchronized double mean() {
+		return total.mean();
+	}
+
+	public synchronized double variance() {
+		return total.variance();
+	}
+
+	public synchronized double stdDev() {
+		return total.stdDev();
+	}
+
+	public synchronized double ewma() {
+		return total.ewma();
+	}
+
+	public synchronized double last() {
+		return total.last();
+	}
+
+	//
+	// get lastTimestamp()
+	// ===================
+	// The timestamp of the most recent value, or zero if there are none.
+	//
+	public synchronized long lastTimestamp() {
+		return lastTimestamp;
+	}
+
+	// =====================================================================
+	// Sliding window
+	// =====================================================================
+
+	//
+	// get windowCount()
+	// =================
+	// The number of values in the sliding window.
+	//
+	public synchronized int windowCount() {
+		return (int) Math.min(cntValues, slidingWindowSize);
+	}
+
+	public synchronized double windowMin() {
+		return (minSize == 0) ? Double.NaN : window[slot(minQueue[minHead])];
+	}
+
+	public synchronized double windowMax() {
+		return (maxSize == 0) ? Double.NaN : window[slot(maxQueue[maxHead])];
+	}
+
+	public synchronized double windowMean() {
+		return (cntValues == 0) ? Double.NaN : windowMean;
+	}
+
+	public synchronized double windowVariance() {
+		return (windowCount() < 2) ? Double.NaN : Math.max(0, windowM2) / (windowCount() - 1);
+	}
+
+	public synchronized double windowStdDev() {
+		return Math.sqrt(windowVariance());
+	}
+
+	//
+	// percentile()
+	// ============
+	// The value below which the given percentage of the values in the sliding
+	// window fall, for example 99 for the 99th percentile.
+	//
+	public synchronized double percentile(double percent) {
+		return histogram.quantile(percent / 100);
+	}
+
+	// =====================================================================
+	// Tumbling window
+	// =====================================================================
+
+	//
+	// completedWindow()
+	// =================
+	// Copies the statistics of the last complete tumbling window into stats.
+	//
+	// returns  the time the window started, or zero if no window has been
+	//          completed yet.
+	//
+	public synchronized long completedWindow(RunningStatistics stats) {
+		stats.copy(completedWindow);
+		return completedWindowStart;
+	}
+
+	//
+	// currentWindow()
+	// ===============
+	// Copies the statistics of the tumbling window that is still open into stats.
+	//
+	// returns  the time the window started.
+	//
+	public synchronized long currentWindow(RunningStatistics stats) {
+		stats.copy(currentWindow);
+		return windowStart;
+	}
+
+	//
+	// toString()
+	// ==========
+	@Override
+	public synchronized String toString() {
+		return total + String.format(" window n=%d mean=%.4g sd=%.4g min=%.4g max=%.4g p50=%.4g p99=%.4g",
+			windowCount(), windowMean(), windowStdDev(), windowMin(), windowMax(), percentile(50), percentile(99));
+	}
+}
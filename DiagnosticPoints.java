@@ -13,20 +13,36 @@
 // 14.08.2020 BRD Original version. 
 // 26.05.2021 BRD The map() method now matches the diagnostic point up 
 //                by name and event, not the port.
+// 18.10.2026 BRD Added adaptPolling().
+// 18.10.2026 BRD Added trigger() to apply a batch of triggers together.
+// 18.10.2026 BRD Trigger waits use the EngineClock and are script safe points.
+// 18.10.2026 BRD map() looks the diagnostic point up in an index rather than
+//                searching the list. Added find().
+// 18.10.2026 BRD Trigger timestamps are checked against the send time on each
+//                point's FORTE clock.
+// 18.10.2026 BRD map() cancels the script rather than ending the engine when the
+//                diagnostic point is missing.
 //
 package fde;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DiagnosticPoints {
 	private List<DiagnosticPoint> dps = new ArrayList<DiagnosticPoint>(); 
+	
+	// The diagnostic points indexed by function block and event name.
+	private Map<String, DiagnosticPoint> index = new ConcurrentHashMap<String, DiagnosticPoint>();
 
 	//
 	// add()
 	// =====
 	public void add(DiagnosticPoint dp) {
 		dps.add(dp);
+		index.putIfAbsent(dp.fbName + "." + dp.fbEventName, dp);
 	}
 	
 	//
@@ -52,27 +68,103 @@ public class DiagnosticPoints {
 	// map()
 	// =====
 	// Used in the diagnostic scripts to map an existing diagnostic point
-	// to a friendly name:
+	// to a friendly name. Scripts that declare their points have them 
+	// checked when they are registered. For any other script, a missing
+	// point cancels the script.
 	//
+	public DiagnosticPoint map(String fbName, String fbEventName) {
+		DiagnosticPoint dp = find(fbName, fbEventName);
+		
+		if (dp == null) {
+			throw new ScriptCancelledException("Diagnostic Point " + fbName + "_" + fbEventName + " is not defined.");
+		}
+		return dp;
+	}
+	
 	//
+	// find()
+	// ======
+	// Returns the diagnostic point watching an event of a function block, or
+	// null if there is none.
 	//
-	public DiagnosticPoint map(String fbName, String fbEventName) {
-		DiagnosticPoint dp = new DiagnosticPoint();
-		boolean found = false;
+	public DiagnosticPoint find(String fbName, String fbEventName) {
+		return index.get(fbName + "." + fbEventName);
+	}
 	
+	//
+	// adaptPolling()
+	// ==============
+	// Called periodically by the team coordinator. Speeds up the polling of the
+	// diagnostic points that scripts are watching and slows down the idle ones.
+	//
+	// returns  the number of diagnostic points whose poll time was changed.
+	//
+	public int adaptPolling() {
+		int cntChanged = 0;
+		
 		for (int dpptr = 0; dpptr < dps.size(); dpptr++) {
-			dp = dps.get(dpptr);
-			if (dp.fbName.equals(fbName) && dp.fbEventName.equals(fbEventName)) {
-				found = true;
-				break;
+			if (dps.get(dpptr).adaptPollTime()) {
+				cntChanged++;
 			}
 		}
-		if (!found) {
-			// RA_BRD This is just a safety net for the moment. It can be removed when the pre-compiler
-			//        picks up errors like this earlier in the process.
-			System.err.println("Diagnostic Point " + fbName + "_" + fbEventName + " is not defined.");
-			System.exit(0); 
+		return cntChanged;
+	}
+	
+	//
+	// trigger()
+	// =========
+	// Applies every trigger in the batch together. The packets for each server are
+	// queued in one operation so they are delivered in a single pass, then a single
+	// wait loop collects the timestamps returned by all the diagnostic points. A 
+	// batch therefore costs one round trip rather than one per trigger.
+	//
+	// returns  true if every trigger returned its timestamp. The timestamps are 
+	//          available from the batch.
+	//
+	public boolean trigger(TriggerBatch batch) {
+		int maxRetrys = 10;
+		int cntPending = batch.count();
+		Map<NIOserver, List<Integer>> servers = new IdentityHashMap<NIOserver, List<Integer>>();
+		
+		batch.reset();
+		for (int ptr = 0; ptr < batch.count(); ptr++) {
+			servers.computeIfAbsent(batch.dp(ptr).server, server -> new ArrayList<Integer>()).add(ptr);
 		}
-		return dp;
+		
+		// Data value triggers only accept timestamps later than the time they were sent.
+		double sendTime = ClockOffsetEstimator.engineTime();
+		for (Map.Entry<NIOserver, List<Integer>> entry : servers.entrySet()) {
+			List<Integer> ptrs = entry.getValue();
+			int[] SIFBinstanceIDs = new int[ptrs.size()];
+			String[] packets = new String[ptrs.size()];
+			for (int ptr = 0; ptr < ptrs.size(); ptr++) {
+				SIFBinstanceIDs[ptr] = batch.dp(ptrs.get(ptr)).SIFBinstanceID();
+				packets[ptr] = batch.packet(ptrs.get(ptr));
+			}
+			entry.getKey().sendPackets(SIFBinstanceIDs, packets);
+		}
+		
+		for (int retry = 0; (retry < maxRetrys) && (cntPending > 0); retry++) {
+			for (int ptr = 0; ptr < batch.count(); ptr++) {
+				if (!batch.triggered(ptr)) {
+					DiagnosticPoint dp = batch.dp(ptr);
+					if (dp.receiveTimestamp(batch.hasValue(ptr) ? dp.forteTime(sendTime) : 0)) {
+						batch.timestamp(ptr, dp.timestamp());
+						cntPending--;
+					}
+				}
+			}
+			if (cntPending > 0) {
+				delay(25);
+			}
+		}
+		return (cntPending == 0);
+	}
+	
+	//
+	// delay()
+	// =======
+	private void delay(int milliseconds) {
+		ScriptContext.sleep(milliseconds);
 	}
 }
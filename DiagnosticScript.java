@@ -0,0 +1,81 @@
+//
+// DIAGNOSTIC SCRIPT
+// =================
+// A monitoring or diagnosis script that an agent can run for one of its goals.
+// Scripts are found and invoked through the ScriptRegistry.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// A script packaged outside the engine implements this interface and lists its
+// class in META-INF/services/fde.DiagnosticScript so that the registry can find
+// it with the ServiceLoader:
+//
+//     public class PumpMonitor implements DiagnosticScript {
+//         private DiagnosticPoint PUMP_REQ;
+//
+//         public String name() {
+//             return "pumpMonitor";
+//         }
+//
+//         public String[] diagnosticPoints() {
+//             return new String[] {"PUMP.REQ"};
+//         }
+//
+//         public void bind(Map<String, DiagnosticPoint> points) {
+//             PUMP_REQ = points.get("PUMP.REQ");
+//         }
+//
+//         public Belief run(String agentName, DiagnosticPoints dps, NIOserver server) {
+//             ...
+//         }
+//     }
+//
+// The diagnostic points a script declares are resolved once, when the harness
+// has been created, rather than each time the script runs. A script whose
+// points are not in the harness is reported and disabled.
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+//
+package fde;
+
+import java.util.Map;
+
+public interface DiagnosticScript {
+
+	//
+	// name()
+	// ======
+	// The name the script is registered and bound to goals under.
+	//
+	String name();
+
+	//
+	// diagnosticPoints()
+	// ==================
+	// The diagnostic points the script uses, each as "fbName.eventName".
+	//
+	default String[] diagnosticPoints() {
+		return new String[0];
+	}
+
+	//
+	// bind()
+	// ======
+	// Called once with the diagnostic points the script declared, keyed by
+	// "fbName.eventName", after the diagnostic harness has been created.
+	//
+	default void bind(Map<String, DiagnosticPoint> points) {
+	}
+
+	//
+	// run()
+	// =====
+	// Runs the script for an agent. The belief it returns records what the
+	// script found.
+	//
+	Belief run(String agentName, DiagnosticPoints dps, NIOserver server);
+}
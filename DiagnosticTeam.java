@@ -12,6 +12,37 @@
 // 24.03.2021 BRD Brought in the manage team capabilities from
 //                The Dam Scenario. This completes the multi-
 //                threading of the agents.
+// 18.10.2026 BRD The agents are now held in an AgentPool and run on its executor.
+//                The per-agent manageAgentN() goals are replaced by one generic
+//                manageAgent() goal.
+// 18.10.2026 BRD The agents can be run on virtual threads.
+// 18.10.2026 BRD The coordinator blocks on the pool's completion queue and hands
+//                out goals through each agent's goal inbox, rather than checking
+//                every agent once a second.
+// 18.10.2026 BRD Asserting a fault belief schedules an urgent diagnosis goal that
+//                pre-empts routine monitoring. Goals are given deadlines.
+// 18.10.2026 BRD The coordinator cancels goals that are well past their deadline.
+// 18.10.2026 BRD Deadlines and waits use the EngineClock.
+// 18.10.2026 BRD Added simulate() to run the application in the SimulatedRuntime.
+// 18.10.2026 BRD The coordinator adapts the poll times of the diagnostic
+//                points each time it looks in on the agents.
+// 18.10.2026 BRD The agents share a ScriptRegistry. The application's script
+//                plugins are loaded and bound once the harness is created.
+// 18.10.2026 BRD The scripts in the diagnostic packages are compiled when the
+//                harness is created and recompiled when a package changes.
+// 18.10.2026 BRD The anomaly detectors named in the diagnostic packages are
+//                attached to their diagnostic points when the harness is created.
+// 18.10.2026 BRD A LatencyTracer profiles the event chains of the application once
+//                the harness is created.
+// 18.10.2026 BRD The values sampled by every diagnostic point are kept in a
+//                TimeSeriesStore in the application's history directory.
+// 18.10.2026 BRD A fault belief that is already being diagnosed is not scheduled
+//                again. The belief is handed to the script bound to it, on an
+//                agent that runs that script if there is one.
+// 18.10.2026 BRD The servers started for the resource partitions are stopped when
+//                the team stops managing.
+// 18.10.2026 BRD Changed diagnostic packages are compiled in the background.
+// 18.10.2026 BRD The TimeSeriesStore's writer thread is stopped with the team.
 //
 package fde;
 
@@ -20,6 +51,9 @@ import static fde.Constants.*;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import com.intendico.gorite.BDIGoal;
@@ -28,8 +62,22 @@ import com.intendico.gorite.Goal;
 import com.intendico.gorite.Team;
 
 public class DiagnosticTeam extends Team {
+	public static final int MAX_AGENTS = AgentPool.DEFAULT_MAX_AGENTS;
+	
+	// The longest time in milliseconds the coordinator waits for an agent to
+	// finish a goal before doing its own housekeeping.
+	public static final int COORDINATOR_INTERVAL = 1000;
+	
+	// Deadlines in milliseconds for diagnosing a fault belief that has been
+	// asserted, and for diagnosing a fault found by an agent's monitoring.
+	public static final int FAULT_DEADLINE = 2000;
+	public static final int DIAGNOSIS_DEADLINE = 30000;
+	
+	// A goal still running this many milliseconds after its deadline is 
+	// treated as stale and cancelled by the coordinator.
+	public static final int STALE_GOAL_TIME = 30000;
+	
 	// used to turn off and on console messages during development.
-	public static final int MAX_AGENTS = 5;
 	private boolean isSilent = false;
 	
 	private String homeDirectory = System.getProperty("user.home");
@@ -42,8 +90,20 @@ public class DiagnosticTeam extends Team {
     Beliefs beliefs;
     
 	DiagnosticAgentCapabilities skills = new DiagnosticAgentCapabilities();
+	ScriptRegistry scripts = new ScriptRegistry();
+	ScriptCompiler scriptCompiler = null;
+	AnomalyMonitor anomalies;
+	LatencyTracer tracer = null;
+	TimeSeriesStore history = null;
+	
+	// Runs the application in-process instead of FORTE when it is set.
+	SimulatedRuntime simulator = null;
+	
+	AgentPool agents;
+	private Map<String, Data> agentData = new ConcurrentHashMap<String, Data>();
 	
-	DiagnosticAgent[] agent = new DiagnosticAgent[MAX_AGENTS];
+	// The names of the fault beliefs that have a diagnosis queued or running.
+	private final Set<String> pendingDiagnoses = ConcurrentHashMap.newKeySet();
 
 	//
 	// Constructor
@@ -66,39 +126,122 @@ public class DiagnosticTeam extends Team {
 	// the manageAgent() goals for the team coordinator.
 	//
 	public DiagnosticTeam(String teamName, NIOserver server, DiagnosticPoints dps, FunctionBlockApp fbapp, Beliefs beliefs) {
+		this(teamName, server, dps, fbapp, beliefs, new String[] {"alpha", "beta"}, AgentPool.ExecutionModes.PLATFORM_THREADS);
+	}
+	
+	//
+	// DiagnosticTeam()
+	// ================
+	// Constructs the team with a named agent for each entry in agentNames. More
+	// agents can be added while the team is running by calling addAgent(). The
+	// agents run on platform or virtual threads depending on executionMode.
+	//
+	public DiagnosticTeam(String teamName, NIOserver server, DiagnosticPoints dps, FunctionBlockApp fbapp, Beliefs beliefs,
+			              String[] agentNames, AgentPool.ExecutionModes executionMode) {
 		super(teamName);
 		
 		this.server = server;
 		this.dps = dps;
 		this.fbapp = fbapp;
 		this.beliefs = beliefs;
+		this.anomalies = new AnomalyMonitor(beliefs);
 		
 		new Thread(this.server).start(); 
 		
-		// RA_BRD should instantiate MAX_AGENTS.
-		agent[0] = new DiagnosticAgent("alpha", server, dps);
-		agent[1] = new DiagnosticAgent("beta", server, dps);
-	
-	//	agent[0] = new DiagnosticAgent("marvin", server, dps);
-
-		// RA_BRD should instantiate MAX_AGENTS
-		new Thread(agent[0]).start();
-		new Thread(agent[1]).start();
+		agents = new AgentPool(server, dps, MAX_AGENTS, executionMode);
+		say("Agents are running on " + agents.executionMode());
+		for (String agentName : agentNames) {
+			addAgent(agentName);
+		}
 		
-		addGoal(manageAgent0());
-		addGoal(manageAgent1());
+		addGoal(manageAgent());
+		
+		// A fault belief asserted by any part of the engine is diagnosed
+		// straight away rather than waiting for the current sweep to end.
+		beliefs.addListener(belief -> scheduleDiagnosis(belief));
 	}	
 	
+	//
+	// scheduleDiagnosis()
+	// ===================
+	// Gives a fault belief to the agent working on the least urgent goal,
+	// preferring the agents that run the script bound to the belief. The 
+	// diagnosis pre-empts that agent's current goal at its next safe point and
+	// the script finds the belief in its ScriptContext. A belief that is 
+	// asserted again while it is still being diagnosed is not scheduled again.
+	//
+	private void scheduleDiagnosis(Belief belief) {
+		DiagnosticAgent selectedAgent = null;
+		boolean isSelectedBound = false;
+		
+		if ((belief.BeliefType() != BeliefTypes.DYNAMIC) || (belief.Veracity() != VeracityTypes.FALSE)) {
+			return;
+		}
+		String beliefName = belief.Name();
+		if (!pendingDiagnoses.add(beliefName)) {
+			say("Fault belief " + beliefName + " asserted again while it is being diagnosed.");
+			return;
+		}
+		
+		String scriptName = scripts.scriptForBelief(beliefName);
+		for (int ptrAgent = 0; ptrAgent < agents.count(); ptrAgent++) {
+			DiagnosticAgent agent = agents.get(ptrAgent);
+			boolean isBound = (scriptName != null) && scripts.isBound(agent.AgentName(), DIAGNOSE_FAULTS, scriptName);
+			if (agent.currentPriority() >= AgentGoal.PRIORITY_FAULT) {
+				continue;
+			}
+			if ((selectedAgent == null) || (isBound && !isSelectedBound)
+				|| ((isBound == isSelectedBound) && (agent.currentPriority() < selectedAgent.currentPriority()))) {
+				selectedAgent = agent;
+				isSelectedBound = isBound;
+			}
+		}
+		if (selectedAgent == null) {
+			pendingDiagnoses.remove(beliefName);
+			say("Fault belief " + beliefName + " asserted but every agent is already diagnosing a fault.");
+			return;
+		}
+		
+		say("Fault belief " + beliefName + " asserted. Diagnosis assigned to " + selectedAgent.AgentName()
+			+ ((scriptName == null) ? "" : " running " + scriptName));
+		AgentGoal goal = new AgentGoal(DIAGNOSE_FAULTS, selectedAgent.AgentName(), AgentGoal.PRIORITY_FAULT,
+									   EngineClock.clock().currentTimeMillis() + FAULT_DEADLINE, belief, scriptName);
+		goal.completion().whenComplete((goalState, e) -> pendingDiagnoses.remove(beliefName));
+		selectedAgent.assignGoal(goal);
+	}
+	
+	//
+	// addAgent()
+	// ==========
+	// Adds a new agent to the team. The new agent is posted to the completion
+	// queue with an empty goal, so the coordinator picks it up straight away
+	// and assigns it its first goal.
+	//
+	public DiagnosticAgent addAgent(String agentName) {
+		DiagnosticAgent agent = agents.add(agentName);
+		if (agent != null) {
+			Data data = new Data();
+			data.setValue("currentGoal", UNDEFINED_GOAL);
+			data.setValue("agentName", agentName);
+			agentData.put(agentName, data);
+			agent.beliefs(beliefs);
+			agent.scripts(scripts);
+			agents.completions().add(new AgentGoal(UNDEFINED_GOAL, agentName));
+		}
+		return agent;
+	}
+	
 	//
 	// manageTeam()
 	// ============
 	// Management is performed by the main or coordinating agent by 
 	// executing this loop. It executes a local set of tasks, with one 
-	// GORITE performGoal() for each agent. 
+	// GORITE performGoal() of the generic MANAGE_AGENT goal for each 
+	// agent in the pool. 
 	// 
-	// Basically, the coordinator looks in on each agent sequentially, 
-	// assigning tasks to them when they are found to be idle. The
-	// coordinator then leaves them to get on with it. Like all good managers, 
+	// Basically, the coordinator waits for any agent to finish its goal 
+	// and then assigns it the next one. The coordinator then leaves it
+	// to get on with it. Like all good managers, 
 	// it performs a duty-of-care without micromanaging everything the
 	// agent does. This is the primary mechanism that allows the engine
 	// to support multiple agents, each performing its own set of tasks
@@ -106,12 +249,6 @@ public class DiagnosticTeam extends Team {
 	//
 	public boolean manageTeam() {
 		boolean isManaging = true;
-		Data data0 = new Data();
-		Data data1 = new Data();
-		String currentGoal = "";
-		
-		data0.setValue("currentGoal", UNDEFINED_GOAL);
-		data1.setValue("currentGoal", UNDEFINED_GOAL);
 		
 		//currentGoal = data0.getValue("currentGoal").toString();
 		//say(currentGoal);	
@@ -130,16 +267,98 @@ public class DiagnosticTeam extends Team {
 		}
 		
 		say("Managing team.");
-		// RA_BRD should manage MAX_AGENTS.
 		while (isManaging) {
-			performGoal(new BDIGoal(MANAGE_AGENT_0), "MANAGE_AGENT_0",
-					    data0);
-			performGoal(new BDIGoal(MANAGE_AGENT_1), "MANAGE_AGENT_1",
-						data1);
+			try {
+				AgentGoal finished = agents.completions().poll(COORDINATOR_INTERVAL, TimeUnit.MILLISECONDS);
+				if (finished != null) {
+					Data data = agentData.get(finished.AgentName());
+					if (data != null) {
+						performGoal(new BDIGoal(MANAGE_AGENT), "MANAGE_AGENT", data);
+					}
+				}
+			} catch (InterruptedException e) {
+				isManaging = false;
+			}
+			abortStaleGoals();
+			if (scriptCompiler != null) {
+				scriptCompiler.refresh(dps);
+			}
+			dps.adaptPolling();
+		}
+		agents.shutdown();
+		anomalies.shutdown();
+		skills.stopServers();
+		if (scriptCompiler != null) {
+			scriptCompiler.shutdown();
+		}
+		if (history != null) {
+			history.shutdown();
 		}
 		return true;
 	}
 	
+	//
+	// dispatchLatency()
+	// =================
+	// The average time in microseconds between the coordinator assigning a goal
+	// and an agent starting it, across all the agents in the team.
+	//
+	public double dispatchLatency() {
+		double totalLatency = 0;
+		long cntDispatches = 0;
+		
+		for (int ptrAgent = 0; ptrAgent < agents.count(); ptrAgent++) {
+			DiagnosticAgent agent = agents.get(ptrAgent);
+			totalLatency += agent.averageDispatchLatency() * agent.dispatchCount();
+			cntDispatches += agent.dispatchCount();
+		}
+		return (cntDispatches == 0) ? 0 : totalLatency / cntDispatches;
+	}
+	
+	//
+	// simulate()
+	// ==========
+	// Runs the application in the SimulatedRuntime instead of waiting for FORTE.
+	// This must be called before the team starts managing the agents. The
+	// behaviours of the application's function block types are registered on the
+	// runtime that is returned.
+	//
+	public SimulatedRuntime simulate(SimulatedRuntime.TransportModes transportMode) {
+		simulator = new SimulatedRuntime(fbapp, skills.servers());
+		simulator.transportMode(transportMode);
+		return simulator;
+	}
+	
+	//
+	// abortStaleGoals()
+	// =================
+	// Cancels the goals that are still running long after their deadline so
+	// that their agents and diagnostic points are freed for other work. The 
+	// agent records a partial result for each one.
+	//
+	private void abortStaleGoals() {
+		for (int ptrAgent = 0; ptrAgent < agents.count(); ptrAgent++) {
+			DiagnosticAgent agent = agents.get(ptrAgent);
+			if (agent.isGoalOverdue(STALE_GOAL_TIME)) {
+				agent.cancelGoal(agent.GoalName() + " is more than " + STALE_GOAL_TIME + " ms past its deadline");
+			}
+		}
+	}
+	
+	//
+	// missedDeadlines()
+	// =================
+	// The number of goals across the team that finished after their deadline.
+	//
+	public long missedDeadlines() {
+		long cntMissed = 0;
+		
+		for (int ptrAgent = 0; ptrAgent < agents.count(); ptrAgent++) {
+			cntMissed += agents.get(ptrAgent).missedDeadlineCount();
+		}
+		return cntMissed;
+	}
+	
 	//
 	// configureDiagnostics()
 	// ======================
@@ -166,6 +385,25 @@ public class DiagnosticTeam extends Team {
 			// Create and deploy the diagnostic test harness.
 			if (skills.createHarness(fbapp, dps, applicationPath, server)) {
 				beliefs.create("DeployedStatus", BeliefTypes.SYSTEM_UNDER_DIAGNOSIS, VeracityTypes.TRUE, "Application deployed successfully.");
+				
+				// Load the application's own scripts and resolve the diagnostic
+				// points that every script uses.
+				scripts.load(applicationPath + ScriptRegistry.SCRIPT_DIRECTORY);
+				scripts.bind(dps);
+				scriptCompiler = new ScriptCompiler(scripts, applicationPath + ScriptRegistry.SCRIPT_DIRECTORY + "/cache");
+				scriptCompiler.compilePackages(fbapp, applicationPath, dps);
+				
+				// Watch the signals that have anomaly detectors in their packages.
+				// The detectors assert fault beliefs, which are diagnosed straight away.
+				anomalies.attach(dps);
+				
+				// Profile the response times of the blocks and event chains.
+				tracer = new LatencyTracer(fbapp, dps);
+				tracer.attach();
+				
+				// Keep every sampled value so faults can be analysed afterwards.
+				history = new TimeSeriesStore(applicationPath + TimeSeriesStore.STORE_DIRECTORY);
+				history.attach(dps);
 				fbapp.displayFunctionBlocks(fbapp);
 								
 				if (dps.count() > 0) {
@@ -176,11 +414,19 @@ public class DiagnosticTeam extends Team {
 					} else {
 						say("\nCreated a diagnostic harness with " + dps.count() + " diagnostic points."); 
 					}
-					say(" Waiting for FORTE to start\n");
-					
-					// RA_BRD build a deployment timeout into this if forte does not launch successfully.
-					while (server.ConnectionCount() == 0) {
-						delay(100);
+					if (simulator != null) {
+						say(" Starting the simulated runtime\n");
+						simulator.start();
+						while (!simulator.isRunning()) {
+							delay(10);
+						}
+					} else {
+						say(" Waiting for FORTE to start\n");
+						
+						// RA_BRD build a deployment timeout into this if forte does not launch successfully.
+						while (server.ConnectionCount() == 0) {
+							delay(100);
+						}
 					}
 				} else {
 					say("\nCreated diagnostic harness");
@@ -200,104 +446,47 @@ public class DiagnosticTeam extends Team {
 	}
 	
 	//
-	// manageAgent0()
-	// ==============
-	Goal manageAgent0() {
-		return new Goal (MANAGE_AGENT_0) {
-			//
-			// execute()
-			// =========
-			public Goal.States execute(Data data) {
-				Goal.States goalState = Goal.States.PASSED;
-				String currentGoal = data.getValue("currentGoal").toString();
-				
-				if (agent[0].AgentState() == AgentStates.EXECUTING) {
-					// Leave the agent to get on with the task; it is busy.
-					// Ask GORITE to come back to this goal later.
-					sleep(1000);
-					goalState = Goal.States.PASSED;
-					
-				} else if (agent[0].AgentState() == AgentStates.IDLE) {
-					if (agent[0].GoalName() != UNDEFINED_GOAL) {
-						// The agent had a goal which has now been either completed or stopped.
-						// so decide what to do next.
-						//taskPointer[0]++;
-						//switch (taskPointer[0]) {
-						//case 1:
-						//agent[0].GoalName(DIAGNOSE_FAULTS);
-						agent[0].GoalName(WATCH_FOR_FAULTS);
-						goalState = agent[0].GoalState();
-						
-					} else {
-						if (agent[0].GoalState() == Goal.States.FAILED) {
-							agent[0].GoalName(DIAGNOSE_FAULTS);					
-							agent[0].AgentState(AgentStates.EXECUTING);
-						} else {
-							// The agent is awaiting a new goal to execute. 
-							agent[0].GoalName(WATCH_FOR_FAULTS);					
-							agent[0].AgentState(AgentStates.EXECUTING);
-						}	
-		     			goalState = Goal.States.PASSED;
-					}	
-				}
-				return goalState;
-			}
-		};
-	}	
-	
+	// manageAgent()
+	// =============
+	// The coordinator's goal for a single agent that has just finished a goal.
+	// The agent is named in the goal data as agentName. A busy agent is left
+	// to get on with its task. An idle agent is given its next goal: it diagnoses
+	// the fault if watching for faults failed, otherwise it goes back to watching.
 	//
-	// manageAgent1()
-	// ==============
-	Goal manageAgent1() {
-		return new Goal (MANAGE_AGENT_1) {
+	Goal manageAgent() {
+		return new Goal (MANAGE_AGENT) {
 			//
 			// execute()
 			// =========
 			public Goal.States execute(Data data) {
 				Goal.States goalState = Goal.States.PASSED;
-				String currentGoal = data.getValue("currentGoal").toString();
+				DiagnosticAgent agent = agents.find(data.getValue("agentName").toString());
 				
-				if (agent[1].AgentState() == AgentStates.EXECUTING) {
+				if (agent == null) {
+					goalState = Goal.States.FAILED;
+					
+				} else if (agent.AgentState() == AgentStates.EXECUTING) {
 					// Leave the agent to get on with the task; it is busy.
-					// Ask GORITE to come back to this goal later.
-					sleep(1000);
+					// It posts to the completion queue when it is done.
 					goalState = Goal.States.PASSED;
 					
-				} else if (agent[1].AgentState() == AgentStates.IDLE) {
-					if (agent[1].GoalName() != UNDEFINED_GOAL) {
-						// The agent had a goal which has now been either completed or stopped.
-						// so decide what to do next.
-						if (agent[1].GoalState() == Goal.States.FAILED) {
-							agent[1].GoalName(DIAGNOSE_FAULTS);					
-							agent[1].AgentState(AgentStates.EXECUTING);
-						} else {
-							// The agent is awaiting a new goal to execute. 
-							agent[1].GoalName(WATCH_FOR_FAULTS);					
-							agent[1].AgentState(AgentStates.EXECUTING);
-						}	
-						goalState = Goal.States.PASSED;
-						
-						//agent[1].GoalName(WATCH_FOR_FAULTS);
-						//goalState = agent[0].GoalState();
-						
+				} else if ((agent.AgentState() == AgentStates.IDLE) && (agent.pendingGoalCount() == 0)) {
+					// The agent has nothing else queued, such as a goal it was
+					// pre-empted from, so give it its next goal.
+					if (agent.GoalState() == Goal.States.FAILED) {
+						agent.assignGoal(DIAGNOSE_FAULTS, AgentGoal.PRIORITY_DIAGNOSIS, EngineClock.clock().currentTimeMillis() + DIAGNOSIS_DEADLINE);
+						data.setValue("currentGoal", DIAGNOSE_FAULTS);
 					} else {
-						if (agent[1].GoalState() == Goal.States.FAILED) {
-							agent[1].GoalName(DIAGNOSE_FAULTS);					
-							agent[1].AgentState(AgentStates.EXECUTING);
-						} else {
-							// The agent is awaiting a new goal to execute. 
-							agent[1].GoalName(WATCH_FOR_FAULTS);					
-							agent[1].AgentState(AgentStates.EXECUTING);
-						}	
-		     			goalState = Goal.States.PASSED;
+						agent.assignGoal(WATCH_FOR_FAULTS);
+						data.setValue("currentGoal", WATCH_FOR_FAULTS);
 					}	
+					goalState = Goal.States.PASSED;
 				}
 				return goalState;
 			}
 		};
 	}	
 	
-		
 		//say("Setting up TaskTeam diagnosticTeam.\nAdding roles for a diagnoser.");
 		//addRole(new Role(DIAGNOSER, new String[] {
 		//		CONFIGURE_DIAGNOSTICS, IDENTIFY_FAULT, DIAGNOSE_FAULT, REPORT_FAULT
@@ -380,9 +569,10 @@ public class DiagnosticTeam extends Team {
 	// =======
 	// Put this thread to sleep for a specified number of milliseconds.
 	//
+	@SuppressWarnings("unused")
 	private void sleep(int sleepTime) {
 		try {			
-			Thread.sleep(sleepTime);
+			EngineClock.clock().sleep(sleepTime);
 		} catch (InterruptedException e) {
 		}
 	}
@@ -396,7 +586,7 @@ public class DiagnosticTeam extends Team {
 	@SuppressWarnings("unused")
 	private void delay(int milliseconds) {
 		try {
-			TimeUnit.MILLISECONDS.sleep((long) milliseconds);
+			EngineClock.clock().sleep(milliseconds);
 		} catch (InterruptedException e) {
 			e.printStackTrace();
 		}	
@@ -12,12 +12,34 @@
 //
 // Full documentation for this class is contained in the ... <RA_BRD
 //
+// A package can also carry the bodies of diagnostic scripts for the function block. The
+// ScriptCompiler turns each one into a DiagnosticScript that can use the package's
+// diagnostic points by the names FBNAME_EVENT. Agent and Goal bind the script to a goal:
+//
+//     <Scripts>
+//         <Script Name="convMonitor" Agent="marvin" Goal="DIAGNOSE_FAULTS"><![CDATA[
+//             F_TO_C_CONV_REQ.gateClose();
+//             ...
+//         ]]></Script>
+//     </Scripts>
+//
+// A DP can attach anomaly detectors to its values with the Detectors attribute. See
+// AnomalyDetector for the detectors that are available:
+//
+//     <DP Event="CNF" Port="TEMP_C" Detectors="zscore(4) stuck(50)"/>
+//
 // For more information on the SAX XML parser, see https://examples.javacodegeeks.com/core-java/xml/java-xml-parser-tutorial/ 
 //
 // Revision History
 // ================
 // 10.07.2020 BRD Original version.
 // 25.05.2021 BRD Revised the XML structure of the diagnostic package to introduce separate Event and Port attributes.
+// 18.10.2026 BRD Added the optional PollTime attribute to each DP so the package can specify how often that
+//                diagnostic point polls the engine.
+// 18.10.2026 BRD Added the optional Scripts element that holds the source of the
+//                diagnostic scripts for the function block.
+// 18.10.2026 BRD Added the optional Detectors attribute to each DP that attaches
+//                anomaly detectors to the diagnostic point.
 //
 package fde;
 
@@ -36,6 +58,9 @@ public class Diagnostics {
 							                          // block definition.
 	private ErrorHandler errorHandler = new ErrorHandler();
 	
+	// The scripts in the package. Each one is held as its name, agent, goal and source.
+	ArrayList<String[]> scripts = new ArrayList<String[]>();
+	
 	final static String FIELD_SEPARATOR = "|";
 	
 	//
@@ -57,6 +82,7 @@ public class Diagnostics {
 		if (dps.size() > 0) {
 			dps.clear();
 		}	
+		scripts.clear();
 		
 		if (fileName == "") {
 			errorHandler.addDescription("Invalid file name or missing path");
@@ -72,7 +98,7 @@ public class Diagnostics {
 					// not return an error.
 					parserFactory.setFeature( "http://apache.org/xml/features/nonvalidating/load-external-dtd", false );
 			        javax.xml.parsers.SAXParser parser = parserFactory.newSAXParser();
-			        SAXdpgParser handler = new SAXdpgParser(dps, errorHandler);
+			        SAXdpgParser handler = new SAXdpgParser(dps, scripts, errorHandler);
 			                
 			        // Supply the diagnostic package file handle to the SAX parser and
 			        // start it parsing. It will call its handler functions to give us access 
@@ -127,17 +153,101 @@ public class Diagnostics {
 	public String Port(int ptrDP) {
 		if (ptrDP < dps.size()) {
 			String param = (String) dps.get(ptrDP);
-			String event = "";
+			String port = "";
 			int ptr = param.indexOf(FIELD_SEPARATOR, 0);
 			if (ptr > 0) {
-				event = param.substring(ptr + 1);
+				int ptrEnd = param.indexOf(FIELD_SEPARATOR, ptr + 1);
+				if (ptrEnd > 0) {
+					port = param.substring(ptr + 1, ptrEnd);
+				} else {
+					port = param.substring(ptr + 1);
+				}	
 			}
-			return event;
+			return port;
 		} else {
 			return "";
 		}	
 	}
 	
+	//
+	// get PollTime()
+	// ==============
+	// Returns the poll time in milliseconds specified in the package for this
+	// diagnostic point, or zero if the package leaves it to the engine.
+	//
+	public int PollTime(int ptrDP) {
+		int pollTime = 0;
+		try {
+			pollTime = Integer.parseInt(field(ptrDP, 2));
+		} catch (NumberFormatException nfe) {
+			pollTime = 0;
+		}
+		return pollTime;
+	}
+	
+	//
+	// get Detectors()
+	// ===============
+	// Returns the anomaly detectors specified in the package for this diagnostic
+	// point, or "" if there are none.
+	//
+	public String Detectors(int ptrDP) {
+		return field(ptrDP, 3);
+	}
+	
+	//
+	// field()
+	// =======
+	// Returns one of the fields held for a diagnostic point, or "" if it is
+	// missing.
+	//
+	private String field(int ptrDP, int ptrField) {
+		if (ptrDP < dps.size()) {
+			String[] fields = dps.get(ptrDP).split("\\" + FIELD_SEPARATOR, -1);
+			if (ptrField < fields.length) {
+				return fields[ptrField];
+			}
+		}
+		return "";
+	}
+	
+	//
+	// countScripts()
+	// ==============
+	public int countScripts() {
+		return scripts.size();
+	}
+	
+	//
+	// get ScriptName()
+	// ================
+	public String ScriptName(int ptrScript) {
+		return (ptrScript < scripts.size()) ? scripts.get(ptrScript)[0] : "";
+	}
+	
+	//
+	// get ScriptAgent()
+	// =================
+	// The agent the script is bound to, or "" if it is not bound.
+	//
+	public String ScriptAgent(int ptrScript) {
+		return (ptrScript < scripts.size()) ? scripts.get(ptrScript)[1] : "";
+	}
+	
+	//
+	// get ScriptGoal()
+	// ================
+	public String ScriptGoal(int ptrScript) {
+		return (ptrScript < scripts.size()) ? scripts.get(ptrScript)[2] : "";
+	}
+	
+	//
+	// get ScriptSource()
+	// ==================
+	public String ScriptSource(int ptrScript) {
+		return (ptrScript < scripts.size()) ? scripts.get(ptrScript)[3] : "";
+	}
+	
 	//
 	// lastErrorDescription()
 	// ======================
@@ -176,6 +286,13 @@ class SAXdpgParser extends DefaultHandler {
 	final static String FIELD_SEPARATOR = "|";
 	
 	List<String> dps;
+	List<String[]> scripts = new ArrayList<String[]>();
+	
+	// The script being read.
+	String scriptName = "";
+	String scriptAgent = "";
+	String scriptGoal = "";
+	StringBuilder scriptSource = null;
 	
 	// 
 	// Constructor
@@ -190,6 +307,11 @@ class SAXdpgParser extends DefaultHandler {
 		this.errorHandler = errorHandler;
 	} 
 	
+	SAXdpgParser(List<String> dps, List<String[]> scripts, ErrorHandler errorHandler) {
+		this(dps, errorHandler);
+		this.scripts = scripts;
+	}
+	
 	//
 	// startElement()
 	// ==============
@@ -203,6 +325,8 @@ class SAXdpgParser extends DefaultHandler {
 		//String name = "";
 		String port = "";
 		String event = "";
+		String pollTime = "";
+		String detectors = "";
 	
 		switch (qName) {
 		case "FBDiag":
@@ -232,9 +356,20 @@ class SAXdpgParser extends DefaultHandler {
 				if (port == null || port.length() == 0) {
 					port = "";
 				}
-				System.out.println("DP " + event + " " + port);
+				// The poll time is optional. When it is missing, the
+				// engine chooses one from the traffic it observes.
+				pollTime = attributes.getValue("PollTime");
+				if (pollTime == null || pollTime.length() == 0) {
+					pollTime = "0";
+				}
+				// The anomaly detectors are optional too.
+				detectors = attributes.getValue("Detectors");
+				if (detectors == null) {
+					detectors = "";
+				}
+				System.out.println("DP " + event + " " + port + " " + pollTime + " " + detectors);
 				if (event != "") {
-					dps.add(event + FIELD_SEPARATOR + port);
+					dps.add(event + FIELD_SEPARATOR + port + FIELD_SEPARATOR + pollTime + FIELD_SEPARATOR + detectors.replace(FIELD_SEPARATOR, " "));
 				}
 			}
 			break;
@@ -253,6 +388,21 @@ class SAXdpgParser extends DefaultHandler {
 		case "DiagTest":
 			currentNode = qName;
 			break;
+			
+		case "Script":
+			// The source of a diagnostic script. It is collected from the
+			// element's text until the end of the element.
+			scriptName = attributes.getValue("Name");
+			scriptAgent = attributes.getValue("Agent");
+			scriptGoal = attributes.getValue("Goal");
+			if (scriptName == null || scriptName.length() == 0) {
+				errorHandler.addDescription("A diagnostic script has no Name");
+				scriptName = "";
+			}
+			scriptAgent = (scriptAgent == null) ? "" : scriptAgent;
+			scriptGoal = (scriptGoal == null) ? "" : scriptGoal;
+			scriptSource = new StringBuilder();
+			break;
 		}
 	}
 		
@@ -270,6 +420,13 @@ class SAXdpgParser extends DefaultHandler {
 			currentNode = "";
 			currentTag = "";
 			break;
+			
+		case "Script":
+			if ((scriptSource != null) && (!scriptName.equals(""))) {
+				scripts.add(new String[] {scriptName, scriptAgent, scriptGoal, scriptSource.toString()});
+			}
+			scriptSource = null;
+			break;
 		}
 	}	
 	
@@ -278,6 +435,11 @@ class SAXdpgParser extends DefaultHandler {
 	// ============
 	@Override
 	public void characters(char[] ch, int start, int length) throws SAXException {
+		if (scriptSource != null) {
+			// Script text can arrive in several pieces, so it is not trimmed.
+			scriptSource.append(ch, start, length);
+			return;
+		}
 		String value = new String(ch, start, length).trim();
 		
 		switch (currentNode) {
@@ -0,0 +1,142 @@
+//
+// ENGINE CLOCK
+// ============
+// The source of time for the diagnostic engine. Diagnostic points, agents, the
+// team and the scripts read the time and wait through the installed clock rather
+// than calling System.currentTimeMillis() and Thread.sleep() directly. By default
+// this is the system clock. A VirtualClock can be installed instead so that a
+// diagnostic campaign against a simulated application runs in virtual time, as
+// fast as the agents can execute.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// The clock must be installed before the diagnostic points and the team are
+// created:
+//
+//     EngineClock.install(new VirtualClock());
+//
+// Threads that run scripts attach() to the clock while they are working and
+// detach() when they are idle. A virtual clock only moves time forward when every
+// attached thread is waiting on it, so no script ever misses an event because
+// time ran ahead of it. The system clock ignores attach() and detach().
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+//
+package fde;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public abstract class EngineClock {
+	private static volatile EngineClock clock = new SystemClock();
+
+	//
+	// clock()
+	// =======
+	// The clock in use by the engine.
+	//
+	public static EngineClock clock() {
+		return clock;
+	}
+
+	//
+	// install()
+	// =========
+	// Replaces the clock used by the engine.
+	//
+	public static void install(EngineClock newClock) {
+		clock = newClock;
+	}
+
+	//
+	// currentTimeMillis()
+	// ===================
+	// The current time as epoch milliseconds.
+	//
+	public abstract long currentTimeMillis();
+
+	//
+	// nanoTime()
+	// ==========
+	// A monotonic time in nanoseconds for measuring intervals.
+	//
+	public abstract long nanoTime();
+
+	//
+	// sleep()
+	// =======
+	// Waits until the given number of milliseconds have passed on this clock,
+	// or until the latch is released. The latch may be null.
+	//
+	public abstract void sleep(long milliseconds, CountDownLatch wake) throws InterruptedException;
+
+	//
+	// sleep()
+	// =======
+	public void sleep(long milliseconds) throws InterruptedException {
+		sleep(milliseconds, null);
+	}
+
+	//
+	// wakeWaiters()
+	// =============
+	// Makes the threads waiting on the clock re-check their latches. Called
+	// after a latch passed to sleep() is released.
+	//
+	public void wakeWaiters() {
+	}
+
+	//
+	// attach()
+	// ========
+	// Tells the clock that the current thread is running a script.
+	//
+	public void attach() {
+	}
+
+	//
+	// detach()
+	// ========
+	// Tells the clock that the current thread is idle.
+	//
+	public void detach() {
+	}
+
+	//
+	// isVirtual()
+	// ===========
+	public boolean isVirtual() {
+		return false;
+	}
+
+	//
+	// SystemClock
+	// ===========
+	// The wall clock.
+	//
+	static class SystemClock extends EngineClock {
+
+		@Override
+		public long currentTimeMillis() {
+			return System.currentTimeMillis();
+		}
+
+		@Override
+		public long nanoTime() {
+			return System.nanoTime();
+		}
+
+		@Override
+		public void sleep(long milliseconds, CountDownLatch wake) throws InterruptedException {
+			if (wake == null) {
+				TimeUnit.MILLISECONDS.sleep(Math.max(0, milliseconds));
+			} else {
+				wake.await(Math.max(0, milliseconds), TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+}
@@ -0,0 +1,19 @@
+//
+// EVENT TYPES
+// ===========
+// Whether a function block event is an input or an output.
+//
+// (c) AUT University - 2019-2020
+//
+// Revision History
+// ================
+// 17.10.2019 BRD Original version.
+// 18.10.2026 BRD Moved out of FunctionBlockEvent.java into its own source file.
+//
+package fde;
+
+enum EventTypes {
+	EVENT_UNDEFINED,
+	EVENT_INPUT,
+	EVENT_OUTPUT
+}
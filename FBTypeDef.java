@@ -0,0 +1,364 @@
+//
+// FUNCTION BLOCK TYPE DEFINITION
+// ==============================
+// Loads and parses a function block type definition file with the extension .fbt
+// to extract the properties of the function block.
+//
+// (c) AUT University - 2019-2020
+//
+// Documentation
+// =============
+// See also https://examples.javacodegeeks.com/core-java/xml/java-xml-parser-tutorial/ 
+// for more information on the SAX XML parser.
+//
+// Revision History
+// ================
+// 04.09.2019 BRD Original version.
+// 18.10.2026 BRD The type definition parser reads the internal variables and the
+//                Structured Text algorithms of basic function blocks.
+// 18.10.2026 BRD Moved FBTypeDef and SAXFBParser out of FunctionBlockApp.java into
+//                their own source file.
+//
+package fde;
+
+import java.io.File;
+import static fde.Constants.*;
+//
+// SAX XML Parser support packages
+// ===============================
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+//
+// FBTypeDef
+// =========
+// Loads and parses a function block type definition file with the extension .fbt to extract
+// the properties of the function block. 
+//
+class FBTypeDef {
+	String lastErrorDescription = "";
+	String applicationPath = "";
+	String functionBlockTypeFileName = "";
+	
+	//
+	// load()
+	// ======
+	// Loads and parses the named function block application .sys file.
+	//
+	// libraryPath		      		The fully-qualified path to the directory where the type definition
+	//								is stored.
+	// 
+	// FunctionBlockTypeFileName 	The name of the file that holds the XML-format <function block 
+	//								type name>.fbt function block type definition file. This is a
+	//								proprietary XML format based on the IEC 61499 Function Block standard.
+	//
+	// returns           			Returns an enumerated type from the XMLErrorCodes list that reports 
+	//							    if the file could be loaded and parsed successfully. If an error code
+	//								is returned getLastErrorDescription() returns information about what 
+	//								went wrong.
+	//
+	public int load(String applicationPath, FunctionBlock fb, ErrorHandler errorHandler) {
+		int loadStatus = XMLErrorCodes.UNDEFINED;
+		String functionBlockType = fb.Type();
+		fb.HasTypeDef(false);
+
+		if (applicationPath == "") {
+			loadStatus = XMLErrorCodes.UNDEFINED_FILE_PATH;		
+			errorHandler.addDescription("Path to the function block type definition file has not been specified.");			
+	
+		} else if (functionBlockType == "") {
+			loadStatus = XMLErrorCodes.UNDEFINED_FILE_NAME;		
+			errorHandler.addDescription("Function block type name has not been specified.");
+		} else {
+			this.applicationPath = applicationPath;
+			this.functionBlockTypeFileName = functionBlockType + ".fbt";
+			try {
+				// The directory path object used to access the XML file that contains the application.
+				File fbTypeDef = new File(applicationPath + "/" + functionBlockTypeFileName);  
+				
+				// Create and configure a SAX XML parser 
+				SAXParserFactory parserFactory = SAXParserFactory.newInstance();
+				// The dtd for this file is not available so ensure that the parser does
+				// not return an error.
+				parserFactory.setFeature( "http://apache.org/xml/features/nonvalidating/load-external-dtd", false );
+		        javax.xml.parsers.SAXParser parser = parserFactory.newSAXParser();
+		        SAXFBParser handler = new SAXFBParser(fb, errorHandler);
+		                
+		        // Pass the function block type definition application file handle to the 
+		        // SAX parser handler and start it parsing. It will call its handler functions
+		        // to give us access to the data each time it has unpacked an element, returning back here
+		        // when it finishes.
+		        parser.parse(fbTypeDef, handler);
+		        fb.HasTypeDef(true);
+		        loadStatus = XMLErrorCodes.LOADED;
+		      
+			} catch (Exception e) {
+				loadStatus = XMLErrorCodes.UNEXPECTED_ERROR;
+				errorHandler.addDescription(e.getMessage());
+			}
+		}	
+		return loadStatus;
+	}
+}
+
+//
+// SAXFBParser()
+// =============
+class SAXFBParser extends DefaultHandler {
+	String currentNode = "";
+	String currentEventName = "";
+	String algorithmName = "";
+	String algorithmComment = "";
+	StringBuilder algorithmCode = new StringBuilder();
+	boolean inST = false;
+	FunctionBlock fb = new FunctionBlock();
+	ErrorHandler errorHandler = new ErrorHandler();	
+	// 
+	// Constructor
+	// ===========
+	// Note how the function block that is being extended with new data is passed in
+	// via the constructor when the handler is created.
+	//
+	//     SAXParser handler = new SAXParser(fb);
+	//
+	SAXFBParser(FunctionBlock fb, ErrorHandler errorHandler){
+		this.fb = fb;
+		this.errorHandler = errorHandler;
+	} 
+
+	//
+	// startElement()
+	// ==============
+	// This method is called when entering a nested group of XML elements within a 
+	// structure such as:
+	//
+	//  <node> ------------------> startElement() invoked.
+	//      <tag> data </tag> ---> startElement() invoked.
+	//  </node>   
+	//
+	@Override
+	public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+		int ptr = 0;
+		int ptrEvent = 0;
+		String eventName = "";
+		String WithVarName = "";
+		
+		//System.err.println("FBTypeDefn startElement: " + localName + " " + qName);
+		switch (currentNode) {
+		case "EventInputs":
+			switch (qName) {
+			case "Event":
+				//System.err.println("Event" + localName + " " + qName);
+				eventName = attributes.getValue("Name");
+				currentEventName = eventName;
+				ptr = fb.findEvent(eventName);
+				if (ptr == NOT_FOUND) {
+					fb.addEvent(eventName, EventTypes.EVENT_INPUT);
+				}
+				break;
+				
+
+			case "With":
+				WithVarName = attributes.getValue("Var");
+				ptrEvent = fb.findEvent(currentEventName);
+				if (ptrEvent == NOT_FOUND) {
+					// <RA_BRD need to report this somehow.
+				} else {
+					FunctionBlockEvent fbEvent = fb.Event(ptrEvent);
+					//System.out.println(fbEvent.EventName);
+					fbEvent.addWithVar(WithVarName);
+				}	
+				break;
+			}
+			break;
+			
+		case "EventOutputs":
+			switch (qName) {
+			case "Event":
+				//System.err.println("Event" + localName + " " + qName);
+				eventName = attributes.getValue("Name");
+				currentEventName = eventName;
+				ptr = fb.findEvent(eventName);
+				if (ptr == NOT_FOUND) {
+					fb.addEvent(eventName, EventTypes.EVENT_OUTPUT);
+					//System.out.println(fb.eventCount());
+				}
+				break;				
+				
+			case "With":
+				WithVarName = attributes.getValue("Var");
+				ptrEvent = fb.findEvent(currentEventName);
+				if (ptrEvent == NOT_FOUND) {
+					// <RA_BRD need to report this somehow.
+				} else {
+					FunctionBlockEvent fbEvent = fb.Event(ptrEvent);
+					//System.out.println(fbEvent.EventName);
+					fbEvent.addWithVar(WithVarName);
+				}	
+				break;
+			}
+			break;
+			
+		case "InputVars":
+			switch (qName) {
+			case "VarDeclaration":
+				FunctionBlockVariable fbVariable = new FunctionBlockVariable();
+				VarTypes varType = VarTypes.VAR_INPUT;
+				String varName = attributes.getValue("Name");
+				int dataType = fbVariable.DataTypeFromString(attributes.getValue("Type"));
+				String comment = attributes.getValue("Comment");
+				String initialValue = attributes.getValue("InitialValue");
+				fb.addVar(varName, varType, dataType, comment, initialValue);
+				break;
+			}
+			break;
+			
+		case "OutputVars":
+			switch (qName) {
+			case "VarDeclaration":
+				FunctionBlockVariable fbVariable = new FunctionBlockVariable();
+				VarTypes varType = VarTypes.VAR_OUTPUT;
+				String varName = attributes.getValue("Name");
+				int dataType = fbVariable.DataTypeFromString(attributes.getValue("Type"));
+				String comment = attributes.getValue("Comment");
+				String initialValue = attributes.getValue("InitialValue");
+				fb.addVar(varName, varType, dataType, comment, initialValue);
+				break;
+			}
+			break;
+			
+		case "InternalVars":
+			switch (qName) {
+			case "VarDeclaration":
+				FunctionBlockVariable fbVariable = new FunctionBlockVariable();
+				VarTypes varType = VarTypes.VAR_INTERNAL;
+				String varName = attributes.getValue("Name");
+				int dataType = fbVariable.DataTypeFromString(attributes.getValue("Type"));
+				String comment = attributes.getValue("Comment");
+				String initialValue = attributes.getValue("InitialValue");
+				fb.addVar(varName, varType, dataType, comment, initialValue);
+				break;
+			}
+			break;
+			
+		case "Algorithm":
+			// The Structured Text is normally in the Text attribute, but older
+			// files hold it as the content of the ST element.
+			if (qName.equals("ST")) {
+				inST = true;
+				if (attributes.getValue("Text") != null) {
+					algorithmCode.append(attributes.getValue("Text"));
+				}
+			}
+			break;
+			
+		default:	
+			switch (qName) {
+			case "EventInputs":
+			case "EventOutputs":
+			case "InputVars":
+			case "OutputVars":
+			case "InternalVars":
+				currentNode = qName;				
+				break;
+				
+			case "Algorithm":
+				currentNode = qName;
+				algorithmName = attributes.getValue("Name");
+				algorithmComment = (attributes.getValue("Comment") == null) ? "" : attributes.getValue("Comment");
+				algorithmCode.setLength(0);
+				break;
+			}
+		}	
+	}
+	
+	//
+	// endElement()
+	// ============
+	// This method is called when exiting from a nested group of XML elements within a 
+	// structure such as:
+	//
+	//  <node>
+	//      <tag> data </tag>
+	//  </node>   -------------> endElement() invoked.
+	//
+	// In this class, it is most often used to clean up cached values when leaving a section
+	// of the document.
+	//
+	@Override
+	public void endElement(String uri, String localName, String qName) throws SAXException {
+		// System.err.println("FBTypeDefn endElement: " + qName);
+		
+		switch (qName) {
+		case "EventInputs":
+		case "EventOutputs":
+		case "InputVars":
+		case "OutputVars":
+		case "InternalVars":
+			currentNode = "";
+			currentEventName = "";
+			break;
+			
+		case "ST":
+			inST = false;
+			break;
+			
+		case "Algorithm":
+			fb.addAlgorithm(algorithmName, algorithmComment, algorithmCode.toString());
+			currentNode = "";
+			break;
+		}
+	}	
+	
+	//
+	// characters()
+	// ============
+	@Override
+	public void characters(char[] ch, int start, int length) throws SAXException {
+       //System.err.println("FBTypeDefn characters: " + String.copyValueOf(ch, start, length).trim());
+		if (inST) {
+			algorithmCode.append(ch, start, length);
+		}
+	}
+}
+
+//
+// ErrorHandler
+// ============
+// Allows deeply-nested handler to log an error that is able to be
+// passed up to higher-level processes.
+//
+//class ErrorHandler {
+//	
+//	String lastErrorDescription = "";
+//	
+//	//
+//	// addErrorDescription()
+//	// =====================
+//	//
+//	public void addErrorDescription(String errorDescription) {
+//		if (lastErrorDescription != "") {
+//			lastErrorDescription = lastErrorDescription + "\n" + errorDescription;
+//		} else {
+//			lastErrorDescription = errorDescription;
+//		}
+//	}
+//	
+//	// set lastErrorDescription()
+//	// ==========================
+//	//
+//	public void lastErrorDescription(String errorDescription) {
+//		lastErrorDescription = errorDescription;
+//	}
+//	
+//	//
+//	// get lastErrorDescription()
+//	// ==========================
+//	public String lastErrorDescription() {
+//		return lastErrorDescription;
+//	}
+//}
+
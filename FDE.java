@@ -24,6 +24,10 @@
 // 10.02.2020 BRD Migrated multiAgentSystem_03 into the first production Fault
 //                Diagnostic Engine.
 // 24.03.2021 BRD Integrate latest multi-agent extensions and upgrade to version 2.2	
+// 18.10.2026 BRD The names of the agents in the team are now configured here.
+// 18.10.2026 BRD Added the option to run the agents on virtual threads.
+// 18.10.2026 BRD Added the option to run the agents in virtual time.
+// 18.10.2026 BRD Added the option to run the application in the simulated runtime.
 //
 package fde;
 
@@ -36,6 +40,22 @@ public class FDE {
 	private static String serverAddress = "127.0.0.3";
 	private static int serverListenerPort = 62503;
 	
+	// The agents that make up the diagnostic team. The team creates an
+	// agent for each name. Scripts are chosen by agent name.
+	private static String[] agentNames = {"alpha", "beta"};
+	
+	// Run the agents on virtual threads when the Java runtime supports them.
+	private static AgentPool.ExecutionModes executionMode = AgentPool.ExecutionModes.VIRTUAL_THREADS;
+	
+	// Set this to run the agent pool benchmark instead of the engine.
+	private static boolean benchmarking = false;
+	
+	// Set this to run the application in the simulated runtime instead of
+	// FORTE, and this to run the agents in virtual time. Only use virtual time
+	// with the simulated runtime.
+	private static boolean simulated = false;
+	private static boolean virtualTime = false;
+	
 	static FunctionBlockApp fbapp = new FunctionBlockApp();
 	static Beliefs beliefs = new Beliefs();
 	
@@ -66,8 +86,20 @@ public class FDE {
     public static void main(String[] args) throws Throwable {
 		say("\nFault Diagnostic Engine version " + appVersion);
 		
+		if (benchmarking) {
+			AgentPool.benchmark(5000, 10, executionMode);
+			System.exit(0);
+		}
+		
+		if (virtualTime) {
+			EngineClock.install(new VirtualClock());
+		}
+		
 		DiagnosticTeam diagnosticTeam = new DiagnosticTeam("diagnosticTeam",
-				                                           server, dps, fbapp, beliefs);
+				                                           server, dps, fbapp, beliefs, agentNames, executionMode);
+		if (simulated) {
+			diagnosticTeam.simulate(SimulatedRuntime.TransportModes.IN_MEMORY);
+		}
 		diagnosticTeam.manageTeam();
 		
 		say("Exiting Fault Diagnostic Engine\n");
@@ -8,6 +8,7 @@
 // Revision History
 // ================
 // 21.10.2019 BRD Original version.
+// 18.10.2026 BRD Moved FileIOstatus into its own source file.
 //
 package fde;
 
@@ -16,16 +17,6 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 
-enum FileIOstatus {
-	UNDEFINED,
-	INVALID_FILE_NAME,
-	INVALID_FILE_PATH,
-	FILE_NOT_FOUND,
-	FILE_CREATED,
-	WRITE_FAILURE,
-	CLOSE_FAILURE
-}
-
 public class FileIO {
 	BufferedWriter fileIO;
 	String path = "";
@@ -0,0 +1,23 @@
+//
+// FILE IO STATUS
+// ==============
+// The status codes returned by the FileIO library.
+//
+// (c) AUT University - 2019-2020
+//
+// Revision History
+// ================
+// 21.10.2019 BRD Original version.
+// 18.10.2026 BRD Moved out of FileIO.java into its own source file.
+//
+package fde;
+
+enum FileIOstatus {
+	UNDEFINED,
+	INVALID_FILE_NAME,
+	INVALID_FILE_PATH,
+	FILE_NOT_FOUND,
+	FILE_CREATED,
+	WRITE_FAILURE,
+	CLOSE_FAILURE
+}
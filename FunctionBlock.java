@@ -13,6 +13,8 @@
 // 17.01.2019 BRD Needs work to improve sub-List management. See all RA_BRD markers.
 // 06.09.2019 BRD Refactored for use with the new FunctionBlockApp class.
 // 09.06.2020 BRD Adding new belief (skills) that can be instanced for each function block.
+// 18.10.2026 BRD Added the device and resource that the function block is mapped onto.
+// 18.10.2026 BRD Added access to the algorithms parsed from the type definition.
 //
 package fde;
 //
@@ -32,6 +34,8 @@ public class FunctionBlock {
 										// to facilitate traceability.
 	private boolean HasTypeDef = false; // Set true if the function blocks type definition file
 										// has been found, loaded and parsed.
+	private String fbDevice = "";		// The device and resource that this function block
+	private String fbResource = "";     // instance is mapped onto. Blank if it is not mapped.
 	
 	List<FunctionBlockAlgorithm> fbAlgorithms = new ArrayList<FunctionBlockAlgorithm>();
 	List<FunctionBlockEvent> fbEvents = new ArrayList<FunctionBlockEvent>();
@@ -82,6 +86,34 @@ public class FunctionBlock {
 		this.fbComment = fbComment;
 	}
 	
+	//
+	// get Device()
+	// ============
+	public String Device() {
+		return fbDevice;
+	}
+	
+	//
+	// set Device()
+	// ============
+	public void Device(String fbDevice) {
+		this.fbDevice = fbDevice;
+	}
+	
+	//
+	// get Resource()
+	// ==============
+	public String Resource() {
+		return fbResource;
+	}
+	
+	//
+	// set Resource()
+	// ==============
+	public void Resource(String fbResource) {
+		this.fbResource = fbResource;
+	}
+	
 	//
 	// get HasTypeDef()
 	// ================
@@ -242,6 +274,49 @@ public class FunctionBlock {
 		return fbVariable;
 	}
 	
+	//
+	// algorithmCount()
+	// ================
+	public int algorithmCount() {
+		return fbAlgorithms.size();
+	}
+	
+	//
+	// addAlgorithm()
+	// ==============
+	public void addAlgorithm(String name, String comment, String code) {
+		FunctionBlockAlgorithm fbAlgorithm = new FunctionBlockAlgorithm();
+		fbAlgorithm.setAlgorithmName(name);
+		fbAlgorithm.setAlgorithmComment(comment);
+		fbAlgorithm.setAlgorithmCode(code);
+		fbAlgorithms.add(fbAlgorithm);
+	}
+	
+	//
+	// get Algorithm()
+	// ===============
+	public FunctionBlockAlgorithm Algorithm(int ptrAlgorithm) {
+		FunctionBlockAlgorithm fbAlgorithm = new FunctionBlockAlgorithm();
+		if (ptrAlgorithm < fbAlgorithms.size()) {
+			fbAlgorithm = fbAlgorithms.get(ptrAlgorithm);
+		}
+		return fbAlgorithm;
+	}
+	
+	//
+	// get Algorithm()
+	// ===============
+	// Returns the algorithm with this name, or null if there is none.
+	//
+	public FunctionBlockAlgorithm Algorithm(String algorithmName) {
+		for (FunctionBlockAlgorithm fbAlgorithm : fbAlgorithms) {
+			if (fbAlgorithm.getAlgorithmName().equals(algorithmName)) {
+				return fbAlgorithm;
+			}
+		}
+		return null;
+	}
+	
 	//
 	// ParameterCount()
 	// ================
@@ -26,6 +26,14 @@
 //  	          naming conventions.
 // 08.11.2019 BRD Added error handler to cache error messages.
 // 19.08.2020 BRD
+// 18.10.2026 BRD Parse the devices and resources in the .sys file and record which
+//                resource each function block is mapped onto.
+// 18.10.2026 BRD The type definition parser reads the internal variables and the
+//                Structured Text algorithms of basic function blocks.
+// 18.10.2026 BRD findfb() no longer blanks the name of the last function block when
+//                the one asked for is not found.
+// 18.10.2026 BRD Moved fbAppCodes into its own source file, and FBTypeDef and its
+//                parser SAXFBParser into FBTypeDef.java.
 //
 package fde;
 
@@ -43,17 +51,6 @@ import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
-enum fbAppCodes {
-	UNDEFINED,			// Default undefined state.
-	INVALID_NAME,       // Blank or invalid function block name was specified.
-	INVALID_PORT_NAME,  // Name of the function block port was blank or invalid.
-	INVALID_EVENT_NAME, // The name of event was blank or invalid.
-	FB_NOT_FOUND,		// Function block specified in the command could not be found.
-	EVENT_UNDEFINED,    // No event could be found that would trigger the input or output data event.
-	REWIRE_FAILED,		// Could not rewire the function block specified. 
-	REWIRED				// Application was rewired successfully.
-}
-
 //
 // FunctionBlockApp
 // ================
@@ -76,6 +73,9 @@ public class FunctionBlockApp {
 										// Structure to hold a list of all the connections
 										// between the function blocks.
 	private List<FunctionBlockConnection> fbc = new ArrayList<FunctionBlockConnection>();
+										// Structure to hold a list of all the devices and
+										// resources the application is mapped onto.
+	private List<FunctionBlockResource> fbr = new ArrayList<FunctionBlockResource>();
 	
 	private ErrorHandler errorHandler = new ErrorHandler();
 
@@ -120,7 +120,7 @@ public class FunctionBlockApp {
 				// not return an error.
 				parserFactory.setFeature( "http://apache.org/xml/features/nonvalidating/load-external-dtd", false );
 		        javax.xml.parsers.SAXParser parser = parserFactory.newSAXParser();
-		        SAXParser handler = new SAXParser(applicationPath, fbs, fbc, errorHandler);
+		        SAXParser handler = new SAXParser(applicationPath, fbs, fbc, fbr, errorHandler);
 		                
 		        // Pass the function block application file handle to the SAX parser and
 		        // start it parsing. It will call its handler functions to give us access 
@@ -220,18 +220,15 @@ public class FunctionBlockApp {
 	// Search for an return a function block given its name.
 	//
 	public FunctionBlock findfb(String name) {
-		FunctionBlock fb = new FunctionBlock();
-		boolean found = false;
-		
 		for (int ptrfb = 0; ptrfb < fbs.size(); ptrfb++) {
-			fb = fbs.get(ptrfb);
+			FunctionBlock fb = fbs.get(ptrfb);
 			if (fb.Name().equals(name)) {
 				return fb;
 			}
 		}	
-
-		fb.Name("");
-		return fb;
+		// Not found. An empty function block is returned rather than
+		// renaming the last one in the list.
+		return new FunctionBlock();
 	}
 	
 	//
@@ -325,6 +322,49 @@ public class FunctionBlockApp {
 		}
 	}	
 		
+	//
+	// get ResourceCount()
+	// ===================
+	// Returns the number of resources the application is mapped onto. An
+	// application that does not declare any resources is treated as having
+	// a single EMB_RES resource.
+	//
+	public int ResourceCount() {
+		if (fbr.size() == 0) {
+			return 1;
+		}
+		return fbr.size();
+	}
+	
+	//
+	// get Resource()
+	// ==============
+	public FunctionBlockResource Resource(int ptrResource) {
+		FunctionBlockResource resource = new FunctionBlockResource();
+		if (fbr.size() == 0) {
+			resource.Name("EMB_RES");
+			resource.Type("EMB_RES");
+		} else if (ptrResource < fbr.size()) {
+			resource = fbr.get(ptrResource);
+		}
+		return resource;
+	}
+	
+	//
+	// findResource()
+	// ==============
+	// Returns the resource that a function block is mapped onto. Function
+	// blocks that have not been mapped are placed in the first resource.
+	//
+	public FunctionBlockResource findResource(FunctionBlock fb) {
+		for (int ptrResource = 0; ptrResource < fbr.size(); ptrResource++) {
+			if (fbr.get(ptrResource).matches(fb.Device(), fb.Resource())) {
+				return fbr.get(ptrResource);
+			}
+		}
+		return Resource(0);
+	}
+	
 	//
 	// get ParameterCount()
 	// ====================
@@ -400,6 +440,9 @@ public class FunctionBlockApp {
 				if (fbVariable.VarType() == VarTypes.VAR_INPUT) {
 					System.out.printf("%16s %s\n",       "Type : ", "Input"); 
 					System.out.printf("%16s %s\n",  "Initial Value : ", fbVariable.InitialValue());
+				} else if (fbVariable.VarType() == VarTypes.VAR_INTERNAL) {
+					System.out.printf("%16s %s\n",       "Type : ", "Internal"); 
+					System.out.printf("%16s %s\n",  "Initial Value : ", fbVariable.InitialValue());
 				} else {
 					System.out.printf("%16s %s\n",           "Type : ", "Output"); 
 					System.out.printf("%15s %s\n",  "Initial Value : ", "undefined until runtime");	
@@ -474,6 +517,7 @@ public class FunctionBlockApp {
 class SAXParser extends DefaultHandler {
 	List<FunctionBlock> fbs;
 	List<FunctionBlockConnection> fbc;
+	List<FunctionBlockResource> fbr;
 	String applicationPath = "";
 	FBTypeDef fbTypeDef = new FBTypeDef();
 	ErrorHandler errorHandler = new ErrorHandler();
@@ -482,6 +526,9 @@ class SAXParser extends DefaultHandler {
 	String parentNode = "";	
 	String fbName = "";
 	String currentNode = "";
+	String currentDevice = "";
+	String currentDeviceType = "";
+	String currentResource = "";
 	public final int NOT_FOUND = -1;
 	
 	// 
@@ -492,10 +539,12 @@ class SAXParser extends DefaultHandler {
 	//
 	//     SAXParser handler = new SAXParser(fbs);
 	//
-	SAXParser(String applicationPath, List<FunctionBlock> fbs, List<FunctionBlockConnection> fbc, ErrorHandler errorHandler) {
+	SAXParser(String applicationPath, List<FunctionBlock> fbs, List<FunctionBlockConnection> fbc, 
+			  List<FunctionBlockResource> fbr, ErrorHandler errorHandler) {
 		this.applicationPath = applicationPath;
 		this.fbs = fbs;
 		this.fbc = fbc;
+		this.fbr = fbr;
 		this.errorHandler = errorHandler;
 	} 
 	
@@ -522,6 +571,40 @@ class SAXParser extends DefaultHandler {
 			// Primary system characteristics.
 			applicationName = attributes.getValue("Name");
 			break;
+			
+		case "Device":
+			// A device is a FORTE instance that hosts one or more resources.
+			currentDevice = attributes.getValue("Name");
+			currentDeviceType = attributes.getValue("Type");
+			break;
+			
+		case "Resource":
+			if (currentDevice != "") {
+				currentResource = attributes.getValue("Name");
+				FunctionBlockResource resource = new FunctionBlockResource();
+				resource.Name(currentResource);
+				resource.Type(attributes.getValue("Type"));
+				resource.DeviceName(currentDevice);
+				resource.DeviceType(currentDeviceType);
+				fbr.add(resource);
+			}
+			break;
+			
+		case "Mapping":
+			// Maps an application function block onto a resource: 
+			//     <Mapping From="App.FB" To="Device.Resource.FB"/>
+			value = attributes.getValue("To");
+			if (value != null) {
+				String[] mapping = value.split("\\.");
+				if (mapping.length == 3) {
+					ptrfb = findfb(mapping[2]);
+					if (ptrfb != NOT_FOUND) {
+						fbs.get(ptrfb).Device(mapping[0]);
+						fbs.get(ptrfb).Resource(mapping[1]);
+					}
+				}
+			}
+			break;
 		
 		case "FB":
 			// Function block definition.
@@ -629,6 +712,15 @@ class SAXParser extends DefaultHandler {
 		case "DataConnections":	
 			currentNode = "";
 			break;
+			
+		case "Resource":
+			currentResource = "";
+			break;
+			
+		case "Device":
+			currentDevice = "";
+			currentDeviceType = "";
+			break;
 		}
 	}	
 	
@@ -703,284 +795,3 @@ class SAXParser extends DefaultHandler {
 		return ptr;
 	}
 }
-
-//
-// FBTypeDef
-// =========
-// Loads and parses a function block type definition file with the extension .fbt to extract
-// the properties of the function block. 
-//
-class FBTypeDef {
-	String lastErrorDescription = "";
-	String applicationPath = "";
-	String functionBlockTypeFileName = "";
-	
-	//
-	// load()
-	// ======
-	// Loads and parses the named function block application .sys file.
-	//
-	// libraryPath		      		The fully-qualified path to the directory where the type definition
-	//								is stored.
-	// 
-	// FunctionBlockTypeFileName 	The name of the file that holds the XML-format <function block 
-	//								type name>.fbt function block type definition file. This is a
-	//								proprietary XML format based on the IEC 61499 Function Block standard.
-	//
-	// returns           			Returns an enumerated type from the XMLErrorCodes list that reports 
-	//							    if the file could be loaded and parsed successfully. If an error code
-	//								is returned getLastErrorDescription() returns information about what 
-	//								went wrong.
-	//
-	public int load(String applicationPath, FunctionBlock fb, ErrorHandler errorHandler) {
-		int loadStatus = XMLErrorCodes.UNDEFINED;
-		String functionBlockType = fb.Type();
-		fb.HasTypeDef(false);
-
-		if (applicationPath == "") {
-			loadStatus = XMLErrorCodes.UNDEFINED_FILE_PATH;		
-			errorHandler.addDescription("Path to the function block type definition file has not been specified.");			
-	
-		} else if (functionBlockType == "") {
-			loadStatus = XMLErrorCodes.UNDEFINED_FILE_NAME;		
-			errorHandler.addDescription("Function block type name has not been specified.");
-		} else {
-			this.applicationPath = applicationPath;
-			this.functionBlockTypeFileName = functionBlockType + ".fbt";
-			try {
-				// The directory path object used to access the XML file that contains the application.
-				File fbTypeDef = new File(applicationPath + "/" + functionBlockTypeFileName);  
-				
-				// Create and configure a SAX XML parser 
-				SAXParserFactory parserFactory = SAXParserFactory.newInstance();
-				// The dtd for this file is not available so ensure that the parser does
-				// not return an error.
-				parserFactory.setFeature( "http://apache.org/xml/features/nonvalidating/load-external-dtd", false );
-		        javax.xml.parsers.SAXParser parser = parserFactory.newSAXParser();
-		        SAXFBParser handler = new SAXFBParser(fb, errorHandler);
-		                
-		        // Pass the function block type definition application file handle to the 
-		        // SAX parser handler and start it parsing. It will call its handler functions
-		        // to give us access to the data each time it has unpacked an element, returning back here
-		        // when it finishes.
-		        parser.parse(fbTypeDef, handler);
-		        fb.HasTypeDef(true);
-		        loadStatus = XMLErrorCodes.LOADED;
-		      
-			} catch (Exception e) {
-				loadStatus = XMLErrorCodes.UNEXPECTED_ERROR;
-				errorHandler.addDescription(e.getMessage());
-			}
-		}	
-		return loadStatus;
-	}
-}
-
-//
-// SAXFBParser()
-// =============
-class SAXFBParser extends DefaultHandler {
-	String currentNode = "";
-	String currentEventName = "";
-	FunctionBlock fb = new FunctionBlock();
-	ErrorHandler errorHandler = new ErrorHandler();	
-	// 
-	// Constructor
-	// ===========
-	// Note how the function block that is being extended with new data is passed in
-	// via the constructor when the handler is created.
-	//
-	//     SAXParser handler = new SAXParser(fb);
-	//
-	SAXFBParser(FunctionBlock fb, ErrorHandler errorHandler){
-		this.fb = fb;
-		this.errorHandler = errorHandler;
-	} 
-
-	//
-	// startElement()
-	// ==============
-	// This method is called when entering a nested group of XML elements within a 
-	// structure such as:
-	//
-	//  <node> ------------------> startElement() invoked.
-	//      <tag> data </tag> ---> startElement() invoked.
-	//  </node>   
-	//
-	@Override
-	public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
-		int ptr = 0;
-		int ptrEvent = 0;
-		String eventName = "";
-		String WithVarName = "";
-		
-		//System.err.println("FBTypeDefn startElement: " + localName + " " + qName);
-		switch (currentNode) {
-		case "EventInputs":
-			switch (qName) {
-			case "Event":
-				//System.err.println("Event" + localName + " " + qName);
-				eventName = attributes.getValue("Name");
-				currentEventName = eventName;
-				ptr = fb.findEvent(eventName);
-				if (ptr == NOT_FOUND) {
-					fb.addEvent(eventName, EventTypes.EVENT_INPUT);
-				}
-				break;
-				
-
-			case "With":
-				WithVarName = attributes.getValue("Var");
-				ptrEvent = fb.findEvent(currentEventName);
-				if (ptrEvent == NOT_FOUND) {
-					// <RA_BRD need to report this somehow.
-				} else {
-					FunctionBlockEvent fbEvent = fb.Event(ptrEvent);
-					//System.out.println(fbEvent.EventName);
-					fbEvent.addWithVar(WithVarName);
-				}	
-				break;
-			}
-			break;
-			
-		case "EventOutputs":
-			switch (qName) {
-			case "Event":
-				//System.err.println("Event" + localName + " " + qName);
-				eventName = attributes.getValue("Name");
-				currentEventName = eventName;
-				ptr = fb.findEvent(eventName);
-				if (ptr == NOT_FOUND) {
-					fb.addEvent(eventName, EventTypes.EVENT_OUTPUT);
-					//System.out.println(fb.eventCount());
-				}
-				break;				
-				
-			case "With":
-				WithVarName = attributes.getValue("Var");
-				ptrEvent = fb.findEvent(currentEventName);
-				if (ptrEvent == NOT_FOUND) {
-					// <RA_BRD need to report this somehow.
-				} else {
-					FunctionBlockEvent fbEvent = fb.Event(ptrEvent);
-					//System.out.println(fbEvent.EventName);
-					fbEvent.addWithVar(WithVarName);
-				}	
-				break;
-			}
-			break;
-			
-		case "InputVars":
-			switch (qName) {
-			case "VarDeclaration":
-				FunctionBlockVariable fbVariable = new FunctionBlockVariable();
-				VarTypes varType = VarTypes.VAR_INPUT;
-				String varName = attributes.getValue("Name");
-				int dataType = fbVariable.DataTypeFromString(attributes.getValue("Type"));
-				String comment = attributes.getValue("Comment");
-				String initialValue = attributes.getValue("InitialValue");
-				fb.addVar(varName, varType, dataType, comment, initialValue);
-				break;
-			}
-			break;
-			
-		case "OutputVars":
-			switch (qName) {
-			case "VarDeclaration":
-				FunctionBlockVariable fbVariable = new FunctionBlockVariable();
-				VarTypes varType = VarTypes.VAR_OUTPUT;
-				String varName = attributes.getValue("Name");
-				int dataType = fbVariable.DataTypeFromString(attributes.getValue("Type"));
-				String comment = attributes.getValue("Comment");
-				String initialValue = attributes.getValue("InitialValue");
-				fb.addVar(varName, varType, dataType, comment, initialValue);
-				break;
-			}
-			break;
-			
-		default:	
-			switch (qName) {
-			case "EventInputs":
-			case "EventOutputs":
-			case "InputVars":
-			case "OutputVars":
-				currentNode = qName;				
-				break;
-			}
-		}	
-	}
-	
-	//
-	// endElement()
-	// ============
-	// This method is called when exiting from a nested group of XML elements within a 
-	// structure such as:
-	//
-	//  <node>
-	//      <tag> data </tag>
-	//  </node>   -------------> endElement() invoked.
-	//
-	// In this class, it is most often used to clean up cached values when leaving a section
-	// of the document.
-	//
-	@Override
-	public void endElement(String uri, String localName, String qName) throws SAXException {
-		// System.err.println("FBTypeDefn endElement: " + qName);
-		
-		switch (qName) {
-		case "EventInputs":
-		case "EventOutputs":
-		case "InputVars":
-		case "OutputVars":
-			currentNode = "";
-			currentEventName = "";
-			break;
-		}
-	}	
-	
-	//
-	// characters()
-	// ============
-	@Override
-	public void characters(char[] ch, int start, int length) throws SAXException {
-       //System.err.println("FBTypeDefn characters: " + String.copyValueOf(ch, start, length).trim());
- }
-}
-
-//
-// ErrorHandler
-// ============
-// Allows deeply-nested handler to log an error that is able to be
-// passed up to higher-level processes.
-//
-//class ErrorHandler {
-//	
-//	String lastErrorDescription = "";
-//	
-//	//
-//	// addErrorDescription()
-//	// =====================
-//	//
-//	public void addErrorDescription(String errorDescription) {
-//		if (lastErrorDescription != "") {
-//			lastErrorDescription = lastErrorDescription + "\n" + errorDescription;
-//		} else {
-//			lastErrorDescription = errorDescription;
-//		}
-//	}
-//	
-//	// set lastErrorDescription()
-//	// ==========================
-//	//
-//	public void lastErrorDescription(String errorDescription) {
-//		lastErrorDescription = errorDescription;
-//	}
-//	
-//	//
-//	// get lastErrorDescription()
-//	// ==========================
-//	public String lastErrorDescription() {
-//		return lastErrorDescription;
-//	}
-//}
-
@@ -0,0 +1,58 @@
+//
+// FUNCTION BLOCK BEHAVIOUR
+// ========================
+// The Java behaviour of a function block type when it is executed by the
+// SimulatedRuntime instead of FORTE. A new instance is created for every
+// function block instance of that type, so a behaviour can keep its own
+// internal state between events.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// A behaviour reads its inputs, writes its outputs and fires its output events
+// through the SimulatedBlock it is given:
+//
+//     runtime.behaviour("SCALE", () -> new FunctionBlockBehaviour() {
+//         public void event(SimulatedBlock block, String eventName) {
+//             if (eventName.equals("REQ")) {
+//                 block.value("OUT", block.getReal("IN") * block.getReal("FACTOR"));
+//                 block.fire("CNF");
+//             }
+//         }
+//     });
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+//
+package fde;
+
+public interface FunctionBlockBehaviour {
+
+	//
+	// initialise()
+	// ============
+	// Called once when the runtime starts, after the block's inputs have been
+	// set from its parameters and initial values.
+	//
+	default void initialise(SimulatedBlock block) {
+	}
+
+	//
+	// event()
+	// =======
+	// Called when an input event arrives at the block, or when an event the
+	// block scheduled for itself falls due. The data inputs that are sampled
+	// with the event have already been updated.
+	//
+	void event(SimulatedBlock block, String eventName);
+
+	//
+	// stop()
+	// ======
+	// Called when the runtime stops.
+	//
+	default void stop(SimulatedBlock block) {
+	}
+}
@@ -10,6 +10,7 @@
 // Revision History
 // ================
 // 17.10.2019 BRD Original version.
+// 18.10.2026 BRD Moved EventTypes into its own source file.
 //
 package fde;
 
@@ -18,12 +19,6 @@ import static fde.Constants.NOT_FOUND;
 import java.util.ArrayList;
 import java.util.List;
 
-enum EventTypes {
-	EVENT_UNDEFINED,
-	EVENT_INPUT,
-	EVENT_OUTPUT
-}
-
 public class FunctionBlockEvent {
 	String EventName = "";
 	EventTypes EventType = EventTypes.EVENT_UNDEFINED;  
@@ -0,0 +1,87 @@
+//
+// FUNCTION BLOCK RESOURCE CLASS
+// =============================
+// This class implements a structure to hold the properties of a single FORTE resource
+// and the device that hosts it. It is used within the class FunctionBlockApp() to 
+// manage a list of all the resources that the application has been mapped onto. 
+//
+// (c) AUT University - 2026
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+//
+package fde;
+
+public class FunctionBlockResource {
+	private String Name = "";					// The resource instance name, e.g. EMB_RES.
+	private String Type = "";					// The resource type, e.g. EMB_RES.
+	private String DeviceName = "";				// The name of the device (FORTE instance) that
+												// hosts this resource.
+	private String DeviceType = "";				// The type of that device, e.g. FORTE_PC.
+	
+	//
+	// get Name()
+	// ==========
+	public String Name() {
+		return this.Name;
+	}
+	
+	//
+	// set Name()
+	// ==========
+	public void Name(String Name) {
+		this.Name = Name;
+	}
+	
+	//
+	// get Type()
+	// ==========
+	public String Type() {
+		return this.Type;
+	}
+	
+	//
+	// set Type()
+	// ==========
+	public void Type(String Type) {
+		this.Type = Type;
+	}
+	
+	//
+	// get DeviceName()
+	// ================
+	public String DeviceName() {
+		return this.DeviceName;
+	}
+	
+	//
+	// set DeviceName()
+	// ================
+	public void DeviceName(String DeviceName) {
+		this.DeviceName = DeviceName;
+	}
+	
+	//
+	// get DeviceType()
+	// ================
+	public String DeviceType() {
+		return this.DeviceType;
+	}
+	
+	//
+	// set DeviceType()
+	// ================
+	public void DeviceType(String DeviceType) {
+		this.DeviceType = DeviceType;
+	}
+	
+	//
+	// matches()
+	// =========
+	// Returns true if this is the named resource on the named device.
+	//
+	public boolean matches(String deviceName, String resourceName) {
+		return this.DeviceName.equals(deviceName) && this.Name.equals(resourceName);
+	}
+}
@@ -13,35 +13,12 @@
 // 05.11.2019 BRD Extended to manage data types for input and output ports.
 // 15.08.2020 BRD Refactored the data types used by the diagnostic function 
 //                blocks.
+// 18.10.2026 BRD Added VAR_INTERNAL for the internal variables of basic function
+//                blocks.
+// 18.10.2026 BRD Moved VarTypes and DataTypes into their own source files.
 
 package fde;
 
-enum VarTypes {
-	VAR_UNDEFINED,
-	VAR_INPUT,
-	VAR_OUTPUT
-}
-
-//
-// DATA TYPES
-// ==========
-// The data types used by 4DIAC and FORTE to define input and output data types for
-// function blocks. These enumerations are also used by the AGENT_GATE in the DP
-// composite function block to signal what data type is is being sent or is being 
-// received.
-//
-class DataTypes {
-	public static final int DATATYPE_UNDEFINED = -1;
-	public static final int DATATYPE_EVENT = 0;
-	public static final int DATATYPE_INT = 1;
-	public static final int DATATYPE_LINT = 2;
-	public static final int DATATYPE_REAL = 3;
-	public static final int DATATYPE_LREAL = 4;
-	public static final int DATATYPE_STRING = 5;
-	public static final int DATATYPE_WSTRING = 6;
-	public static final int DATATYPE_BOOL = 7;
-}
-
 public class FunctionBlockVariable {
 	private String Name = "";
 	private VarTypes VarType = VarTypes.VAR_UNDEFINED;  
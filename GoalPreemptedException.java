@@ -0,0 +1,28 @@
+//
+// GOAL PRE-EMPTED EXCEPTION
+// =========================
+// Thrown at a safe point in an agent's goal when a goal of a higher priority
+// has been assigned to the agent. It unwinds the current goal back to the 
+// agent's run() loop, which re-queues the pre-empted goal and starts the
+// more urgent one. The pre-empted goal starts again from the beginning once
+// the more urgent goal is done, so its scripts must be safe to re-run.
+//
+// (c) AUT University - 2026
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+// 18.10.2026 BRD Documented that a pre-empted goal is restarted, not resumed.
+//
+package fde;
+
+public class GoalPreemptedException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+	
+	//
+	// GoalPreemptedException()
+	// ========================
+	public GoalPreemptedException(String goalName) {
+		super("Goal " + goalName + " was pre-empted");
+	}
+}
@@ -0,0 +1,219 @@
+//
+// GOLDEN MODEL
+// ============
+// The compiled Structured Text algorithms of a basic function block type. A
+// diagnostic script uses a golden model to work out what a function block
+// should output for a given set of inputs, using the block's own algorithm
+// rather than a hand-coded copy of it.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// The algorithms of each function block type are compiled once, the first time
+// a script asks for the model, and the compiled model is shared by all scripts.
+// Each script creates its own Instance to hold the values of the variables:
+//
+//     GoldenModel model = GoldenModel.forType(fb);
+//     GoldenModel.Instance conv = model.instance();
+//     conv.set("temp_F", 98.6);
+//     conv.run("REQ");
+//     double expected = conv.getReal("temp_C");
+//
+// Algorithms that use Structured Text the STCompiler does not support are
+// skipped. compileErrors() lists them so they can be reported.
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+//
+package fde;
+
+import static fde.Constants.NOT_FOUND;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class GoldenModel {
+	private static final Map<String, GoldenModel> models = new ConcurrentHashMap<String, GoldenModel>();
+
+	private final String typeName;
+	private final STCompiler compiler;
+	private final Map<String, STCompiler.Program> programs = new HashMap<String, STCompiler.Program>();
+	private final List<String> compileErrors = new ArrayList<String>();
+	private final double[] initialValues;
+
+	//
+	// GoldenModel()
+	// =============
+	private GoldenModel(FunctionBlock fb) {
+		this.typeName = fb.Type();
+		this.compiler = new STCompiler(fb);
+
+		for (int ptrAlgorithm = 0; ptrAlgorithm < fb.algorithmCount(); ptrAlgorithm++) {
+			FunctionBlockAlgorithm fbAlgorithm = fb.Algorithm(ptrAlgorithm);
+			try {
+				programs.put(fbAlgorithm.getAlgorithmName(), compiler.compile(fbAlgorithm.getAlgorithmCode()));
+			} catch (STCompileException e) {
+				compileErrors.add(typeName + "." + fbAlgorithm.getAlgorithmName() + " " + e.getMessage());
+			}
+		}
+
+		initialValues = new double[compiler.slotCount()];
+		for (int ptrVar = 0; ptrVar < fb.VarCount(); ptrVar++) {
+			FunctionBlockVariable fbVar = fb.Var(ptrVar);
+			if ((fbVar.InitialValue() != null) && (!fbVar.InitialValue().equals(""))) {
+				initialValues[ptrVar] = STCompiler.narrow(fbVar.DataType(), toDouble(SimulatedBlock.parseLiteral(fbVar.InitialValue())));
+			}
+		}
+	}
+
+	//
+	// forType()
+	// =========
+	// Returns the golden model for the type of a function block, compiling
+	// its algorithms the first time the type is used.
+	//
+	public static GoldenModel forType(FunctionBlock fb) {
+		return models.computeIfAbsent(fb.Type(), typeName -> new GoldenModel(fb));
+	}
+
+	//
+	// get typeName()
+	// ==============
+	public String typeName() {
+		return typeName;
+	}
+
+	//
+	// hasAlgorithm()
+	// ==============
+	// True if the type has an algorithm with this name and it compiled.
+	//
+	public boolean hasAlgorithm(String algorithmName) {
+		return programs.containsKey(algorithmName);
+	}
+
+	//
+	// get compileErrors()
+	// ===================
+	public List<String> compileErrors() {
+		return compileErrors;
+	}
+
+	//
+	// instance()
+	// ==========
+	// Creates a new set of variables for the model, set to their initial values.
+	//
+	public Instance instance() {
+		return new Instance();
+	}
+
+	//
+	// expected()
+	// ==========
+	// Runs an algorithm with a single input and returns the value of an output.
+	//
+	public double expected(String algorithmName, String outputName, String inputName, double inputValue) {
+		Instance instance = new Instance();
+		instance.set(inputName, inputValue);
+		instance.run(algorithmName);
+		return instance.getReal(outputName);
+	}
+
+	//
+	// toDouble()
+	// ==========
+	private static double toDouble(Object value) {
+		if (value instanceof Number) {
+			return ((Number) value).doubleValue();
+		} else if (value instanceof Boolean) {
+			return ((Boolean) value) ? 1 : 0;
+		}
+		return 0;
+	}
+
+	//
+	// Instance
+	// ========
+	// The variables of one copy of the function block. An instance is not
+	// thread safe, so each script should use its own.
+	//
+	public class Instance {
+		private final double[] values = initialValues.clone();
+
+		//
+		// set()
+		// =====
+		public void set(String varName, double value) {
+			int slot = slot(varName);
+			values[slot] = STCompiler.narrow(compiler.dataType(slot), value);
+		}
+
+		//
+		// set()
+		// =====
+		public void set(String varName, boolean value) {
+			values[slot(varName)] = value ? 1 : 0;
+		}
+
+		//
+		// run()
+		// =====
+		// Runs an algorithm, as the block's execution control chart would when
+		// the event that triggers it arrives.
+		//
+		public void run(String algorithmName) {
+			STCompiler.Program program = programs.get(algorithmName);
+			if (program == null) {
+				throw new IllegalArgumentException("No compiled algorithm " + typeName + "." + algorithmName);
+			}
+			program.run(values);
+		}
+
+		//
+		// getReal()
+		// =========
+		public double getReal(String varName) {
+			return values[slot(varName)];
+		}
+
+		//
+		// getInt()
+		// ========
+		public long getInt(String varName) {
+			return (long) values[slot(varName)];
+		}
+
+		//
+		// getBool()
+		// =========
+		public boolean getBool(String varName) {
+			return values[slot(varName)] != 0;
+		}
+
+		//
+		// reset()
+		// =======
+		// Sets every variable back to its initial value.
+		//
+		public void reset() {
+			System.arraycopy(initialValues, 0, values, 0, values.length);
+		}
+
+		//
+		// slot()
+		// ======
+		private int slot(String varName) {
+			int slot = compiler.slot(varName);
+			if (slot == NOT_FOUND) {
+				throw new IllegalArgumentException(typeName + " has no variable " + varName);
+			}
+			return slot;
+		}
+	}
+}
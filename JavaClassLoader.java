@@ -12,12 +12,12 @@ public class JavaClassLoader extends ClassLoader {
             ClassLoader classLoader = this.getClass().getClassLoader();
              
             // Load the target class using its binary name
-            Class loadedMyClass = classLoader.loadClass(classBinName);
+            Class<?> loadedMyClass = classLoader.loadClass(classBinName);
              
             System.out.println("Loaded class name: " + loadedMyClass.getName());
              
             // Create a new instance from the loaded class
-            Constructor constructor = loadedMyClass.getConstructor();
+            Constructor<?> constructor = loadedMyClass.getConstructor();
             Object myClassObject = constructor.newInstance();
              
             // Getting the target method from the loaded class and invoke it using its name
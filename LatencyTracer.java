@@ -0,0 +1,738 @@
+//
+// LATENCY TRACER
+// ==============
+// Measures how long the function blocks of the application take to respond to
+// their events, and how long events take to travel between blocks, from the
+// timestamps of the diagnostic points. The event chains are found from the
+// application's connections, so no script has to be written to profile them.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// Each diagnostic point on an event is a node in the event graph. The nodes are
+// joined by links of two kinds:
+//
+//   BLOCK  From an input event of a function block to an output event of the
+//          same block, for example IED50_51.REQ -> IED50_51.CNF. The event types
+//          come from the block's .fbt type definition.
+//
+//   HOP    From an output event of one block to the input event of another that
+//          it is connected to in the application, for example
+//          CURRENT_A_TO_D.CNF -> IED50_51.REQ. The connections are those of the
+//          application as it was designed, before the diagnostic points were
+//          wired into it.
+//
+// A PATH is a chain of links from an event that nothing traced leads into to
+// one that leads nowhere traced. Paths are only followed up to MAX_PATH_LENGTH
+// links, and at most MAX_PATHS of them are traced. A loop that has no event
+// leading into it has no paths.
+//
+// Each time a diagnostic point samples its event, the tracer joins it with the
+// latest unmatched occurrence of each event that links to it, using the
+// timestamps of the points. An output event is matched with only the latest of the block's
+// input events, so CLEAR -> CNF is not measured when REQ caused the CNF. A link
+// still unmatched after maxLatency milliseconds is counted as unmatched. The
+// latency of a path is carried along its links as they are matched, so it
+// assumes that one event at a time travels along each path.
+//
+// Packets from different diagnostic points can reach the engine out of order,
+// so the tracer holds each event back until one lateness period later has been
+// seen, and then processes the events in timestamp order. An
+// event that arrives after later ones have been processed is counted as late and
+// ignored. flush() processes the events still being held.
+//
+// The points may run on devices whose clocks differ, so each timestamp is
+// converted to engine time with the clock offset estimated for its point, to the
+// nearest microsecond, before it is used. A point whose clock offset has not yet
+// been estimated has its timestamps used as they are, so the points should each
+// be triggered at least once before tracing latencies across devices.
+//
+// The latencies of every link and path are kept as running statistics and a
+// histogram, and can be read at any time with latency() or latencies().
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+// 18.10.2026 BRD Timestamps are corrected by the clock offset of their points
+//                and events are timed in microseconds.
+//
+package fde;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class LatencyTracer implements SampleListener {
+	// How long events are held back so that they can be put in order, in
+	// milliseconds.
+	public static final long DEFAULT_LATENESS = 1000;
+
+	// How long an event waits in milliseconds for the event it leads to.
+	public static final long DEFAULT_MAX_LATENCY = 10000;
+
+	final static int MAX_PATHS = 256;
+	final static int MAX_PATH_LENGTH = 32;
+	final static int MAX_BUFFERED = 65536;
+
+	// Events are timed in microseconds.
+	final static long TICKS_PER_MILLISECOND = 1000;
+
+	// Marks a path position that has no origin timestamp.
+	final static long NO_ORIGIN = Long.MIN_VALUE;
+
+	public enum LatencyTypes {
+		BLOCK,
+		HOP,
+		PATH
+	}
+
+	private boolean isSilent = false;
+
+	private final List<Node> nodes = new ArrayList<Node>();
+	private Node[] nodesByID = new Node[0];
+	private final List<Link> links = new ArrayList<Link>();
+	private final List<Path> paths = new ArrayList<Path>();
+	private final Map<String, Timings> timingsByName = new HashMap<String, Timings>();
+
+	// The lateness and maximum latency in microseconds.
+	private long lateness = DEFAULT_LATENESS * TICKS_PER_MILLISECOND;
+	private long maxLatency = DEFAULT_MAX_LATENCY * TICKS_PER_MILLISECOND;
+
+	// Reorder buffer
+	// ==============
+	// A binary heap of the events being held back, ordered by timestamp and
+	// then by the node's position in the event graph.
+	private long[] heapTimestamps = new long[1024];
+	private int[] heapNodes = new int[1024];
+	private int cntBuffered = 0;
+	private long maxTimestamp = Long.MIN_VALUE;
+	private long lastReleased = Long.MIN_VALUE;
+	private long cntEvents = 0;
+	private long cntLate = 0;
+
+	//
+	// Node
+	// ====
+	// An event watched by a diagnostic point.
+	//
+	private static class Node {
+		final DiagnosticPoint dp;
+		final String name;
+		final boolean isInput;
+		final int index;
+		int rank = 0;
+		List<Link> incoming = new ArrayList<Link>();
+		List<Link> outgoing = new ArrayList<Link>();
+		List<Path> pathsFrom = new ArrayList<Path>();
+
+		Node(DiagnosticPoint dp, boolean isInput, int index) {
+			this.dp = dp;
+			this.name = dp.fbName + "." + dp.fbEventName;
+			this.isInput = isInput;
+			this.index = index;
+		}
+	}
+
+	//
+	// Timings
+	// =======
+	// The latencies measured for a link or a path.
+	//
+	private static class Timings {
+		final String name;
+		final LatencyTypes type;
+		final RunningStatistics statistics = new RunningStatistics();
+		final QuantileHistogram histogram = new QuantileHistogram();
+		long cntUnmatched = 0;
+
+		Timings(String name, LatencyTypes type) {
+			this.name = name;
+			this.type = type;
+		}
+
+		void add(long ticks) {
+			double latency = (double) ticks / TICKS_PER_MILLISECOND;
+			statistics.add(latency);
+			histogram.add(latency);
+		}
+	}
+
+	//
+	// Link
+	// ====
+	private static class Link {
+		final Node from;
+		final Node to;
+		final Timings timings;
+		boolean isPending = false;
+		long fromTimestamp = 0;
+
+		// The paths this link is part of, and its position in each.
+		List<Path> paths = new ArrayList<Path>();
+		List<Integer> positions = new ArrayList<Integer>();
+
+		Link(Node from, Node to, LatencyTypes type) {
+			this.from = from;
+			this.to = to;
+			this.timings = new Timings(from.name + " -> " + to.name, type);
+		}
+	}
+
+	//
+	// Path
+	// ====
+	// origins[ptrNode] holds the timestamp at which the event that reached
+	// nodes[ptrNode] entered the path.
+	//
+	private static class Path {
+		final Node[] nodes;
+		final long[] origins;
+		final Timings timings;
+
+		Path(List<Node> pathNodes) {
+			nodes = pathNodes.toArray(new Node[pathNodes.size()]);
+			origins = new long[nodes.length];
+			Arrays.fill(origins, NO_ORIGIN);
+			StringBuilder name = new StringBuilder();
+			for (Node node : nodes) {
+				name.append((name.length() == 0) ? "" : " -> ").append(node.name);
+			}
+			timings = new Timings(name.toString(), LatencyTypes.PATH);
+		}
+	}
+
+	//
+	// Latency
+	// =======
+	// A copy of the latencies measured for a link or a path, in milliseconds.
+	//
+	public static class Latency {
+		public final String name;
+		public final LatencyTypes type;
+		public final long count;
+		public final long unmatched;
+		public final double mean;
+		public final double stdDev;
+		public final double min;
+		public final double max;
+		public final double p50;
+		public final double p90;
+		public final double p99;
+
+		Latency(Timings timings) {
+			name = timings.name;
+			type = timings.type;
+			count = timings.statistics.count();
+			unmatched = timings.cntUnmatched;
+			mean = timings.statistics.mean();
+			stdDev = timings.statistics.stdDev();
+			min = timings.statistics.min();
+			max = timings.statistics.max();
+			p50 = timings.histogram.quantile(0.5);
+			p90 = timings.histogram.quantile(0.9);
+			p99 = timings.histogram.quantile(0.99);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-5s %s: n=%d mean=%.4g sd=%.4g min=%.4g p50=%.4g p90=%.4g p99=%.4g max=%.4g unmatched=%d",
+				type, name, count, mean, stdDev, min, p50, p90, p99, max, unmatched);
+		}
+	}
+
+	//
+	// LatencyTracer()
+	// ===============
+	// Builds the event graph for the diagnostic points in the harness. Call
+	// attach() to start tracing.
+	//
+	public LatencyTracer(FunctionBlockApp fbapp, DiagnosticPoints dps) {
+		Map<String, Node> nodesByName = new HashMap<String, Node>();
+
+		// A node for each event that has a diagnostic point. When several points
+		// watch the same event, the one the scripts map to is used.
+		for (int ptrDP = 0; ptrDP < dps.count(); ptrDP++) {
+			DiagnosticPoint dp = dps.get(ptrDP);
+			if ((dps.find(dp.fbName, dp.fbEventName) != dp) || (dp.harnessID() < 0)) {
+				continue;
+			}
+			EventTypes eventType = fbapp.findfb(dp.fbName).Event(dp.fbEventName).EventType();
+			if (eventType == EventTypes.EVENT_UNDEFINED) {
+				continue;
+			}
+			Node node = new Node(dp, eventType == EventTypes.EVENT_INPUT, nodes.size());
+			nodes.add(node);
+			nodesByName.put(node.name, node);
+			if (dp.harnessID() >= nodesByID.length) {
+				nodesByID = Arrays.copyOf(nodesByID, dp.harnessID() + 1);
+			}
+			nodesByID[dp.harnessID()] = node;
+		}
+
+		// BLOCK links from each input event to each output event of a block.
+		for (Node from : nodes) {
+			for (Node to : nodes) {
+				if (from.isInput && !to.isInput && from.dp.fbName.equals(to.dp.fbName)) {
+					addLink(from, to, LatencyTypes.BLOCK);
+				}
+			}
+		}
+
+		// HOP links along the event connections of the application. The
+		// connections to and from the diagnostic points themselves are skipped;
+		// the original connections they replaced are still listed, disabled.
+		for (int ptrConnection = 0; ptrConnection < fbapp.ConnectionCount(); ptrConnection++) {
+			FunctionBlockConnection fbconn = fbapp.Connection(ptrConnection);
+			Node from = nodesByName.get(fbconn.SourceFB() + "." + fbconn.SourceName());
+			Node to = nodesByName.get(fbconn.DestinationFB() + "." + fbconn.DestinationName());
+			if ((from != null) && (to != null) && !from.isInput && to.isInput) {
+				addLink(from, to, LatencyTypes.HOP);
+			}
+		}
+
+		rankNodes();
+		findPaths();
+		say("Tracing latencies over " + nodes.size() + " event(s), " + links.size() + " link(s) and " + paths.size() + " path(s).");
+	}
+
+	//
+	// addLink()
+	// =========
+	private void addLink(Node from, Node to, LatencyTypes type) {
+		for (Link link : from.outgoing) {
+			if (link.to == to) {
+				return;
+			}
+		}
+		Link link = new Link(from, to, type);
+		from.outgoing.add(link);
+		to.incoming.add(link);
+		links.add(link);
+		timingsByName.put(link.timings.name, link.timings);
+	}
+
+	//
+	// rankNodes()
+	// ===========
+	// Orders the nodes so that, as far as the loops allow, each comes after the
+	// nodes that link to it. Events with the same timestamp are processed in
+	// this order.
+	//
+	private void rankNodes() {
+		Map<Node, Integer> cntIncoming = new HashMap<Node, Integer>();
+		Deque<Node> ready = new ArrayDeque<Node>();
+		int rank = 0;
+
+		for (Node node : nodes) {
+			cntIncoming.put(node, node.incoming.size());
+			node.rank = -1;
+			if (node.incoming.isEmpty()) {
+				ready.add(node);
+			}
+		}
+		while (!ready.isEmpty()) {
+			Node node = ready.poll();
+			node.rank = rank++;
+			for (Link link : node.outgoing) {
+				int cntRemaining = cntIncoming.get(link.to) - 1;
+				cntIncoming.put(link.to, cntRemaining);
+				if (cntRemaining == 0) {
+					ready.add(link.to);
+				}
+			}
+		}
+		// The nodes in loops follow the others.
+		for (Node node : nodes) {
+			if (node.rank < 0) {
+				node.rank = rank++;
+			}
+		}
+	}
+
+	//
+	// findPaths()
+	// ===========
+	// Follows the links from each node that has none leading into it.
+	//
+	private void findPaths() {
+		for (Node node : nodes) {
+			if (node.incoming.isEmpty() && !node.outgoing.isEmpty()) {
+				List<Node> pathNodes = new ArrayList<Node>();
+				pathNodes.add(node);
+				findPaths(pathNodes);
+			}
+		}
+		if (paths.size() >= MAX_PATHS) {
+			say("Only the first " + MAX_PATHS + " event paths are traced.");
+		}
+	}
+
+	//
+	// findPaths()
+	// ===========
+	private void findPaths(List<Node> pathNodes) {
+		Node last = pathNodes.get(pathNodes.size() - 1);
+		boolean isEnd = true;
+
+		if (paths.size() >= MAX_PATHS) {
+			return;
+		}
+		if (pathNodes.size() <= MAX_PATH_LENGTH) {
+			for (Link link : last.outgoing) {
+				if (!pathNodes.contains(link.to)) {
+					isEnd = false;
+					pathNodes.add(link.to);
+					findPaths(pathNodes);
+					pathNodes.remove(pathNodes.size() - 1);
+				}
+			}
+		}
+		if (isEnd && (pathNodes.size() > 2)) {
+			Path path = new Path(pathNodes);
+			paths.add(path);
+			timingsByName.put(path.timings.name, path.timings);
+			path.nodes[0].pathsFrom.add(path);
+			for (int ptrNode = 1; ptrNode < path.nodes.length; ptrNode++) {
+				for (Link link : path.nodes[ptrNode - 1].outgoing) {
+					if (link.to == path.nodes[ptrNode]) {
+						link.paths.add(path);
+						link.positions.add(ptrNode);
+					}
+				}
+			}
+		}
+	}
+
+	//
+	// attach()
+	// ========
+	// Starts tracing the events as the servers receive them.
+	//
+	public void attach() {
+		for (Node node : nodes) {
+			node.dp.server.addSampleListener(this);
+		}
+	}
+
+	//
+	// detach()
+	// ========
+	public void detach() {
+		for (Node node : nodes) {
+			node.dp.server.removeSampleListener(this);
+		}
+	}
+
+	//
+	// sampleReceived()
+	// ================
+	// Called by a server thread each time a diagnostic point samples its event.
+	//
+	@Override
+	public synchronized void sampleReceived(int harnessID, long timeStamp, double value) {
+		if ((harnessID < 0) || (harnessID >= nodesByID.length) || (nodesByID[harnessID] == null)) {
+			return;
+		}
+		Node node = nodesByID[harnessID];
+		long time = Math.round(node.dp.engineTime(timeStamp) * TICKS_PER_MILLISECOND);
+
+		if (time < lastReleased) {
+			// Events after this one have already been processed.
+			cntLate++;
+			return;
+		}
+		if (cntBuffered == MAX_BUFFERED) {
+			release();
+		}
+		push(time, node.index);
+		maxTimestamp = Math.max(maxTimestamp, time);
+		while ((cntBuffered > 0) && (heapTimestamps[0] <= maxTimestamp - lateness)) {
+			release();
+		}
+	}
+
+	//
+	// flush()
+	// =======
+	// Processes the events being held back.
+	//
+	public synchronized void flush() {
+		while (cntBuffered > 0) {
+			release();
+		}
+	}
+
+	//
+	// release()
+	// =========
+	// Takes the earliest event from the reorder buffer and processes it.
+	//
+	private void release() {
+		long timeStamp = heapTimestamps[0];
+		Node node = nodes.get(heapNodes[0]);
+
+		pop();
+		lastReleased = timeStamp;
+		cntEvents++;
+		process(node, timeStamp);
+	}
+
+	//
+	// process()
+	// =========
+	// Joins an event with the events that lead to it and then leaves it waiting
+	// for the events it leads to.
+	//
+	private void process(Node node, long timeStamp) {
+		Link latestInput = null;
+
+		for (Link link : node.incoming) {
+			if (!link.isPending) {
+				continue;
+			}
+			if (timeStamp - link.fromTimestamp > maxLatency) {
+				link.isPending = false;
+				link.timings.cntUnmatched++;
+			} else if (link.timings.type == LatencyTypes.HOP) {
+				match(link, timeStamp);
+			} else if ((latestInput == null) || (link.fromTimestamp > latestInput.fromTimestamp)) {
+				latestInput = link;
+			}
+		}
+		if (latestInput != null) {
+			match(latestInput, timeStamp);
+			// The block's earlier inputs are taken to have been superseded.
+			for (Link link : node.incoming) {
+				if (link.timings.type == LatencyTypes.BLOCK) {
+					link.isPending = false;
+				}
+			}
+		}
+
+		for (Link link : node.outgoing) {
+			if (link.isPending) {
+				link.timings.cntUnmatched++;
+			}
+			link.isPending = true;
+			link.fromTimestamp = timeStamp;
+		}
+		for (Path path : node.pathsFrom) {
+			path.origins[0] = timeStamp;
+		}
+	}
+
+	//
+	// match()
+	// =======
+	// Records the latency of a link and carries the origin of each path it is
+	// part of along to its next node.
+	//
+	private void match(Link link, long timeStamp) {
+		link.timings.add(timeStamp - link.fromTimestamp);
+		link.isPending = false;
+
+		for (int ptrPath = 0; ptrPath < link.paths.size(); ptrPath++) {
+			Path path = link.paths.get(ptrPath);
+			int position = link.positions.get(ptrPath);
+			long origin = path.origins[position - 1];
+			if (origin == NO_ORIGIN) {
+				continue;
+			}
+			path.origins[position - 1] = NO_ORIGIN;
+			if (position == path.nodes.length - 1) {
+				path.timings.add(timeStamp - origin);
+			} else {
+				path.origins[position] = origin;
+			}
+		}
+	}
+
+	//
+	// push()
+	// ======
+	private void push(long timeStamp, int ptrNode) {
+		if (cntBuffered == heapTimestamps.length) {
+			heapTimestamps = Arrays.copyOf(heapTimestamps, cntBuffered * 2);
+			heapNodes = Arrays.copyOf(heapNodes, cntBuffered * 2);
+		}
+		int ptr = cntBuffered++;
+		while (ptr > 0) {
+			int ptrParent = (ptr - 1) / 2;
+			if (!isBefore(timeStamp, ptrNode, heapTimestamps[ptrParent], heapNodes[ptrParent])) {
+				break;
+			}
+			heapTimestamps[ptr] = heapTimestamps[ptrParent];
+			heapNodes[ptr] = heapNodes[ptrParent];
+			ptr = ptrParent;
+		}
+		heapTimestamps[ptr] = timeStamp;
+		heapNodes[ptr] = ptrNode;
+	}
+
+	//
+	// pop()
+	// =====
+	// Removes the earliest event from the heap.
+	//
+	private void pop() {
+		cntBuffered--;
+		long timeStamp = heapTimestamps[cntBuffered];
+		int ptrNode = heapNodes[cntBuffered];
+		int ptr = 0;
+
+		while (true) {
+			int ptrChild = 2 * ptr + 1;
+			if (ptrChild >= cntBuffered) {
+				break;
+			}
+			if ((ptrChild + 1 < cntBuffered)
+				&& isBefore(heapTimestamps[ptrChild + 1], heapNodes[ptrChild + 1], heapTimestamps[ptrChild], heapNodes[ptrChild])) {
+				ptrChild++;
+			}
+			if (!isBefore(heapTimestamps[ptrChild], heapNodes[ptrChild], timeStamp, ptrNode)) {
+				break;
+			}
+			heapTimestamps[ptr] = heapTimestamps[ptrChild];
+			heapNodes[ptr] = heapNodes[ptrChild];
+			ptr = ptrChild;
+		}
+		heapTimestamps[ptr] = timeStamp;
+		heapNodes[ptr] = ptrNode;
+	}
+
+	//
+	// isBefore()
+	// ==========
+	private boolean isBefore(long timeStamp, int ptrNode, long otherTimeStamp, int ptrOtherNode) {
+		if (timeStamp != otherTimeStamp) {
+			return timeStamp < otherTimeStamp;
+		}
+		return nodes.get(ptrNode).rank < nodes.get(ptrOtherNode).rank;
+	}
+
+	//
+	// latency()
+	// =========
+	// Returns the latencies of the link or path with this name, such as
+	// "IED50_51.REQ -> IED50_51.CNF", or null if there is none.
+	//
+	public synchronized Latency latency(String name) {
+		Timings timings = timingsByName.get(name);
+		return (timings == null) ? null : new Latency(timings);
+	}
+
+	//
+	// latency()
+	// =========
+	// Returns the latencies of the link from one event to another, for example
+	// latency("IED50_51", "REQ", "IED50_51", "CNF").
+	//
+	public Latency latency(String fromFB, String fromEvent, String toFB, String toEvent) {
+		return latency(fromFB + "." + fromEvent + " -> " + toFB + "." + toEvent);
+	}
+
+	//
+	// latencies()
+	// ===========
+	// Returns the latencies of every link and path of one type.
+	//
+	public synchronized List<Latency> latencies(LatencyTypes type) {
+		List<Latency> latencies = new ArrayList<Latency>();
+
+		for (Link link : links) {
+			if (link.timings.type == type) {
+				latencies.add(new Latency(link.timings));
+			}
+		}
+		if (type == LatencyTypes.PATH) {
+			for (Path path : paths) {
+				latencies.add(new Latency(path.timings));
+			}
+		}
+		return latencies;
+	}
+
+	//
+	// report()
+	// ========
+	// Describes the latencies of every link and path, one per line.
+	//
+	public String report() {
+		StringBuilder report = new StringBuilder();
+
+		for (LatencyTypes type : LatencyTypes.values()) {
+			for (Latency latency : latencies(type)) {
+				report.append(latency).append('\n');
+			}
+		}
+		return report.toString();
+	}
+
+	//
+	// set lateness()
+	// ==============
+	// How long in milliseconds each event is held back so that events that
+	// arrive out of order can be put back in order.
+	//
+	public synchronized void lateness(long milliseconds) {
+		lateness = Math.max(0, milliseconds) * TICKS_PER_MILLISECOND;
+	}
+
+	//
+	// set maxLatency()
+	// ================
+	// How long in milliseconds an event waits for the event it leads to before
+	// it is counted as unmatched.
+	//
+	public synchronized void maxLatency(long milliseconds) {
+		maxLatency = Math.max(0, milliseconds) * TICKS_PER_MILLISECOND;
+	}
+
+	//
+	// get eventCount()
+	// ================
+	// The number of events processed.
+	//
+	public synchronized long eventCount() {
+		return cntEvents;
+	}
+
+	//
+	// get lateCount()
+	// ===============
+	// The number of events that arrived too late to be put in order.
+	//
+	public synchronized long lateCount() {
+		return cntLate;
+	}
+
+	//
+	// get pathCount()
+	// ===============
+	public int pathCount() {
+		return paths.size();
+	}
+
+	//
+	// get linkCount()
+	// ===============
+	public int linkCount() {
+		return links.size();
+	}
+
+	//
+	// say()
+	// =====
+	// Output a console message for use during development.
+	//
+	private void say(String whatToSay) {
+		if (!isSilent) {
+			System.out.println(whatToSay);
+		}
+	}
+}
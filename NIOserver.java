@@ -40,6 +40,60 @@
 // 20.02.2021 BRD Added timestamp to the packet structure.
 // 18.03.2021 BRD Corrected error in unpackPacket() method that was not handling
 //                multiple packets in a single read.
+// 18.10.2026 BRD Tracks the average interval between the data packets from
+//                each diagnostic point so the engine can tune its poll time.
+// 18.10.2026 BRD Added a push delivery mode. Clients that advertise PUSH_ENABLED
+//                have their outbound packets written as soon as they are queued
+//                rather than when they next send a packet.
+// 18.10.2026 BRD Added sendPackets() to queue a batch of packets together.
+// 18.10.2026 BRD The inbound queues are now lock-free so agents running on virtual
+//                threads never block on them. The queues are created by the 
+//                constructor.
+// 18.10.2026 BRD Added deliver() and takeOutbound() so an in-process client such as
+//                the simulated runtime can exchange packets without a socket.
+// 18.10.2026 BRD Keeps streaming statistics of the values sampled by each
+//                diagnostic point as the packets arrive.
+// 18.10.2026 BRD Sample listeners are given each sampled value as it arrives.
+// 18.10.2026 BRD Samples that are not numbers are passed to the listeners as NaN
+//                so that event timings can be traced.
+// 18.10.2026 BRD Estimates the offset of each client's FORTE clock from the
+//                engine's clock from the trigger round trips.
+// 18.10.2026 BRD The inbound queues are bounded SpillQueues. Packets beyond the
+//                queue's memory capacity are spilled to a memory-mapped file.
+// 18.10.2026 BRD Packets are decoded in place in the read buffer. Agents can
+//                subscribe to the packets of a client, and packets that no
+//                subscription wants are thrown away before they are queued.
+// 18.10.2026 BRD flush() starts a new generation of the inbound queue rather than
+//                emptying it. A gate mode change starts one too, and the samples
+//                taken before the client changed mode are discarded as they 
+//                arrive.
+// 18.10.2026 BRD Added stop() so a server can be shut down and its port released.
+//                Sample listeners are given the harness ID of the point, which
+//                is its SIFBinstanceID plus the server's pointOffset, so points
+//                on different servers do not share an ID.
+// 18.10.2026 BRD The send times of the triggers waiting for a timestamp are kept in
+//                order, and a trigger whose timestamp never comes back is given
+//                up after TRIGGER_TIMEOUT, so one lost reply no longer stops the
+//                clock offsets being estimated.
+// 18.10.2026 BRD Stale and unwanted samples are thrown away before they reach the
+//                statistics and the sample listeners. Timestamps are always 
+//                queued, even for a muted client, so triggers still work.
+// 18.10.2026 BRD pushEnabled is an AtomicIntegerArray, since the agents read it
+//                without taking the pushLock.
+// 18.10.2026 BRD The trigger, gate mode, clock offset and statistics records are
+//                guarded by the clientLock, a ReentrantLock, rather than the 
+//                server's monitor, so the agents that call sendPacket(),
+//                clockOffset() and statistics() from virtual threads are not
+//                pinned to their carriers while they wait for it.
+// 18.10.2026 BRD Added set statistics() so each client's statistics can be given
+//                their own window sizes and percentile accuracy.
+// 18.10.2026 BRD Moved the SampleListener interface into SampleListener.java.
+//                The outbound queues are held in a List rather than a generic array.
+// 18.10.2026 BRD Removed queuePacket(), which nothing called any longer. Packets
+//                are unpacked by unpackPacket() before they are queued.
+// 18.10.2026 BRD A gate mode change starts a new generation of the inbound queue
+//                only when it is written to the client, not when it is queued
+//                as well.
 //
 package fde;
 
@@ -47,10 +101,13 @@ import java.net.*;
 import java.nio.ByteBuffer;
 import java.nio.channels.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
 import fde.DiagnosticAgent.AgentModes;
 import fde.ExitCodes;
 
-
 public class NIOserver implements Runnable {
 	//
 	// Define the default input buffer size to read TCP
@@ -75,14 +132,98 @@ public class NIOserver implements Runnable {
 
 	private String hostName = "";
 	private int listenerPortNumber = 0;
+	private int pointOffset = 0;
+	private volatile boolean isStopping = false;
 	private int serverStatus = ExitCodes.UNDEFINED;
 	private String replyPacket = "";
 	
 	// FIFO queue for packets
 	// ======================
-	Queue<NIOserverPacket>[] inFIFOqueue = new LinkedList[MAX_CLIENTS];
+	// The inbound queues hold a fixed number of packets in memory and spill
+	// the rest to disk, so a diagnostic point that is not being read cannot
+	// exhaust the heap.
+	SpillQueue[] inFIFOqueue = new SpillQueue[MAX_CLIENTS];
+	
+	// The outbound queues are filled by the agent threads and emptied by the
+	// server thread.
+	final List<Queue<NIOserverPacket>> outFIFOqueue = new ArrayList<Queue<NIOserverPacket>>(MAX_CLIENTS);
+	
+	// Push delivery
+	// =============
+	// Clients that have advertised PUSH_ENABLED, the selection key of their
+	// connection and any part of a write that the socket could not take yet.
+	// pushRequests holds the clients with packets that have been queued since
+	// the selector last looked. pushEnabled is 1 for a push-enabled client. It
+	// is changed under the pushLock but read by the agents without it.
+	private volatile Selector selector;
+	private final AtomicIntegerArray pushEnabled = new AtomicIntegerArray(MAX_CLIENTS);
+	private SelectionKey[] pushKeys = new SelectionKey[MAX_CLIENTS];
+	private ByteBuffer[] pendingWrite = new ByteBuffer[MAX_CLIENTS];
+	private Queue<Integer> pushRequests = new ConcurrentLinkedQueue<Integer>();
+	private final ReentrantLock pushLock = new ReentrantLock();
+	
+	// Packet arrival statistics
+	// =========================
+	// The timestamp of the last data packet from each client and a moving 
+	// average of the interval between them in milliseconds.
+	private long[] lastArrival = new long[MAX_CLIENTS];
+	private double[] arrivalInterval = new double[MAX_CLIENTS];
+	final static double ARRIVAL_SMOOTHING = 0.2;
+	
+	// Sampled value statistics
+	// ========================
+	// Created for a client the first time it sends a value or a script asks
+	// for its statistics.
+	private final DiagnosticPointStatistics[] statistics = new DiagnosticPointStatistics[MAX_CLIENTS];
+	private final CopyOnWriteArrayList<SampleListener> sampleListeners = new CopyOnWriteArrayList<SampleListener>();
+	
+	// Clock offsets
+	// =============
+	// The offset of each client's FORTE clock from the engine's, estimated from
+	// the trigger round trips. The clients of a server normally share a FORTE
+	// runtime, so serverClock pools the round trips of them all. triggerSent
+	// holds the engine times that the triggers still waiting for a timestamp
+	// were written to each client, oldest first, in a ring starting at 
+	// ptrTriggerSent. A trigger still waiting after TRIGGER_TIMEOUT milliseconds
+	// has lost its reply and is given up.
+	//
+	// These records, the gate mode changes and the statistics are read and
+	// written by both the server thread and the agents under the clientLock.
+	final static int MAX_TRIGGERS_PENDING = 8;
+	final static double TRIGGER_TIMEOUT = 1000;
+	private final ReentrantLock clientLock = new ReentrantLock();
+	private final ClockOffsetEstimator serverClock = new ClockOffsetEstimator();
+	private final ClockOffsetEstimator[] clocks = new ClockOffsetEstimator[MAX_CLIENTS];
+	private final double[][] triggerSent = new double[MAX_CLIENTS][MAX_TRIGGERS_PENDING];
+	private final int[] ptrTriggerSent = new int[MAX_CLIENTS];
+	private final int[] cntTriggersPending = new int[MAX_CLIENTS];
+	
+	// Subscriptions
+	// =============
+	// The subscriptions of the agents reading each client. A client with no
+	// subscriptions has all its packets queued, and a muted client has only its
+	// timestamps queued. The arrays are replaced rather than changed, under the 
+	// subscriptionLock, so the server thread can read them without locking.
+	// cntFiltered counts the packets each client sent that nobody wanted.
+	private static final SampleSubscription[] MUTED = new SampleSubscription[0];
+	private volatile SampleSubscription[][] subscriptions = new SampleSubscription[MAX_CLIENTS][];
+	private final ReentrantLock subscriptionLock = new ReentrantLock();
+	private final long[] cntFiltered = new long[MAX_CLIENTS];
+	
+	// Gate mode changes
+	// =================
+	// cntModesPending counts the gate mode changes queued for each client that
+	// have not been written yet. modeSent holds the engine time the last one
+	// was written. cntStale counts the samples discarded because they were
+	// taken before the client changed mode.
+	private final int[] cntModesPending = new int[MAX_CLIENTS];
+	private final double[] modeSent = new double[MAX_CLIENTS];
+	private final long[] cntStale = new long[MAX_CLIENTS];
 	
-	Queue<NIOserverPacket>[] outFIFOqueue = new LinkedList[MAX_CLIENTS];
+	// The powers of ten that parseValue() divides by. All of them are exact.
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+	};
 	
 	//
 	// NIOserver()
@@ -93,6 +234,13 @@ public class NIOserver implements Runnable {
 	public NIOserver(String hostName, int listenerPortNumber) {
 		this.hostName = hostName;
 		this.listenerPortNumber = listenerPortNumber;
+		
+		// Initialise the queues. This is done here rather than when the server
+		// starts so that agents can safely use a server before it is running.
+		for (int ptrQueue = 0; ptrQueue < MAX_CLIENTS; ptrQueue++) {
+			inFIFOqueue[ptrQueue] = new SpillQueue();
+			outFIFOqueue.add(new ConcurrentLinkedQueue<NIOserverPacket>());
+		}
 	}
 
 	//
@@ -134,13 +282,6 @@ public class NIOserver implements Runnable {
 		int packetLength = 0;
 		int SIFBinstanceID = 0;
 		NIOserverPacket packet = new NIOserverPacket();
-		boolean haveBuffer = false;
-		
-		// Initialise the queues
-		for (int ptrQueue = 0; ptrQueue < MAX_CLIENTS; ptrQueue++) {
-			inFIFOqueue[ptrQueue] = new LinkedList<NIOserverPacket>();
-			outFIFOqueue[ptrQueue] = new LinkedList<NIOserverPacket>();
-		}
 		
 		if (unitTesting) {
 			queueUnitTest();
@@ -155,7 +296,7 @@ public class NIOserver implements Runnable {
 			// Resolve the host address.
 			InetAddress host = InetAddress.getByName(hostName);
 
-			Selector selector = Selector.open();
+			selector = Selector.open();
 
 			// Open a non-blocking listener socket to accept all incoming connections.
 			ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
@@ -169,8 +310,13 @@ public class NIOserver implements Runnable {
 			serverStatus = ExitCodes.EXIT_SUCCESS;
 
 			// This is the section that manages all the traffic. It only
-			// exits if the server fails.
-			while (true) {
+			// exits if the server fails or is stopped.
+			while (!isStopping) {
+				// sendPacket() wakes the selector up when a packet is queued for
+				// a push-enabled client, so register write interest for those
+				// clients before waiting again.
+				armPushClients();
+				
 				if (selector.select() > 0) {
 					Set<SelectionKey> selectedKeys = selector.selectedKeys();
 					Iterator<SelectionKey> iterator = selectedKeys.iterator();
@@ -178,6 +324,10 @@ public class NIOserver implements Runnable {
 					while(iterator.hasNext()) {
 						key = (SelectionKey) iterator.next();
 						iterator.remove();
+						
+						if (!key.isValid()) {
+							continue;
+						}
 
 						if (key.isAcceptable()) {
 							// A client is trying to connect to this server.
@@ -186,13 +336,20 @@ public class NIOserver implements Runnable {
 							SocketChannel sc = serverSocketChannel.accept();
 							// Set this to non-blocking mode.
 							sc.configureBlocking(false);
-							// Set the socket to read and write mode.
-							sc.register(selector,  SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+							// Only ask for reads. Write interest is registered when there
+							// is something to push, otherwise the selector would spin on
+							// a socket that is always writable.
+							sc.register(selector,  SelectionKey.OP_READ);
 							say("Connection accepted on local address " + sc.getLocalAddress() + "\n");
 							cntConnections++;
 						}
 
-						if (key.isReadable()) {
+						if (key.isValid() && key.isWritable()) {
+							// A push-enabled client has packets waiting.
+							writePushedPackets(key);
+						}
+						
+						if (key.isValid() && key.isReadable()) {
 							// This session socket was opened as a result of a
 							// previous request for a connection on the server's
 							// listener socket. It is therefore able to read data
@@ -213,181 +370,309 @@ public class NIOserver implements Runnable {
 							if (sc.isConnected()) {
 								String dataPacket = new String (byteBuffer.array()).trim();
 								packetLength = dataPacket.length();
+								SIFBinstanceID = 0;
 								if (packetLength <= 0 ) {
 									// A null packet was received indicating
 									// that the server wishes to close this
 									// session.
-									sc.close();
+									closeSession(key);
 									say("Connection closed");
-									cntConnections--;
-									if (cntConnections < 0) {
-										cntConnections = 0;
-									}
 								} else {
-									// Refactored 18.02.2021
-									
-									do {
-										haveBuffer = false;
-										NIOserverPacket newPacket = unpackPacket(dataPacket);
-										//say("--> Received " + newPacket.command() + " " + dataPacket);
-									//	if (Integer.parseInt(newPacket.command()) == AgentModes.TIMESTAMP) {
-									//		say("Timestamp packet " + newPacket.timeStamp());
-									//	}
-										SIFBinstanceID = newPacket.SIFBinstanceID();
-										if (Integer.parseInt(newPacket.command()) != AgentModes.POLL_AGENT) {
-											//say("Queueing packet\n");
-											//if (newPacket.SIFBinstanceID() > 0) {
-											//say("packet command [" + newPacket.command() + "\n");
-											//say("timestamp received " + newPacket.timeStamp + "\n");
-											inFIFOqueue[newPacket.SIFBinstanceID()].add(newPacket);
-										//}	
-										}
-										if (newPacket.buffer.length() > 0) {
-											haveBuffer = true;
-											dataPacket = newPacket.buffer();
-										}
-										
-										// RA_BRD handle the buffer if there is data remaining. Put this section 
-										// in a loop to process the buffer until there is nothing left from this
-										// read.
-										// Original code refactored in 18.02.2021 to stop POLL packets getting queued needlessly.
-										// SIFBinstanceID = queuePacket(dataPacket);
-									} while (haveBuffer);
+									SIFBinstanceID = ingestPackets(dataPacket, key);
 								}
 								
-								// Is there data to send to this client?
-								if (SIFBinstanceID > 0) {
+								// Is there data to send to this client? Push-enabled clients
+								// are served by writePushedPackets() instead.
+								if ((SIFBinstanceID > 0) && (SIFBinstanceID < MAX_CLIENTS) && (pushEnabled.get(SIFBinstanceID) == 0)) {
 									if (outQueueSize(SIFBinstanceID) > 0) {
-										if (key.isWritable()) {
-											packet = getQueuedPacket(SIFBinstanceID);
-											//say("Sending [" + packet + "] to " + SIFBinstanceID);
-											ByteBuffer byteBuffer2 = ByteBuffer.wrap(packet.dataValue().getBytes());
-											sc.write(byteBuffer2);
-											byteBuffer2.clear();
-										}
+										packet = getQueuedPacket(SIFBinstanceID);
+										recordSent(SIFBinstanceID, packet);
+										//say("Sending [" + packet + "] to " + SIFBinstanceID);
+										ByteBuffer byteBuffer2 = ByteBuffer.wrap(packet.dataValue().getBytes());
+										sc.write(byteBuffer2);
+										byteBuffer2.clear();
 									}	
 								}
+							} else {
+								closeSession(key);
 							}
 						}
 					}	
 				}
-				Thread.currentThread().yield();
 			}
+			
+			// The server has been stopped. Close every session and the listener
+			// socket so the port can be used again.
+			for (SelectionKey sessionKey : selector.keys()) {
+				sessionKey.channel().close();
+			}
+			serverSocketChannel.close();
+			selector.close();
+			say("NIOserver on port " + listenerPortNumber + " stopped");
 		}
 		return serverStatus;
 	}
-
+	
 	//
-	// queuePacket()
-	// =============
-	// Splits up the data packet received into separate messages from each
-	// Agent Service Interface Function Block and queues them into the inbound
-	// FIFO message buffer for that connection.
+	// stop()
+	// ======
+	// Asks the server thread to close its connections and return from run(). 
+	// The caller should join the thread if it needs the port to be free.
 	//
-	// Packet structure
-	// ================
-	// Example packet containing two data message packets together:
+	public void stop() {
+		isStopping = true;
+		Selector currentSelector = selector;
+		if (currentSelector != null) {
+			currentSelector.wakeup();
+		}
+	}
+
 	//
-	//   *2|1|1613778713957|9|57.002834|&*1|2|1613778714041|6|-34.457&
+	// ingestPackets()
+	// ===============
+	// Unpacks every packet in the data that has been read and queues them in the
+	// inbound queues. Polls are not queued, and PUSH_ENABLED marks the client as
+	// push-enabled if it is connected through a socket.
 	//
-	// 	 Start of packet character - currently character "*".
-	//	 Command string. Identifies the purpose of the data packet. Always one of the AgentModes.
-	//   Field separator - currently "|".
-	// 	 SIFB instance ID - Integer.
-	// 	 Field separator. 
-	//   TimeStamp - time stamp for the data that represents the Linux epoch time in milliseconds.
-	//	 Field separator. 
-	//   Data field length - Integer.
-	//   Field separator. 
-	//   Data field - string.
-	//   End of packet marker - currently "&".
+	// returns  the SIFB instance ID of the last packet.
 	//
-	// Further information and examples of the packet structures is available in the document
-	// "Non-Blocking IO server design documentation" located with the other Fault Diagnostic 
-	// Engine Software Architecture documents.
-	// 
-	private int queuePacket(String dataPacket) {
-		int ptrStart = 0;
-		int ptrEnd = 0;
-		String packet = "";
+	private int ingestPackets(String dataPacket, SelectionKey key) {
+		int SIFBinstanceID = 0;
+		int ptrStart = dataPacket.indexOf(MESSAGE_START);
 		
-		String command = "";
+		// Refactored 18.02.2021 to stop POLL packets getting queued needlessly.
+		// Refactored 18.10.2026 to decode each packet in place in the buffer.
+		while (ptrStart >= 0) {
+			int ptrEnd = dataPacket.indexOf(END_OF_PACKET, ptrStart);
+			if (ptrEnd < 0) {
+				break;
+			}
+			SIFBinstanceID = ingestPacket(dataPacket, ptrStart + 1, ptrEnd, key);
+			ptrStart = dataPacket.indexOf(MESSAGE_START, ptrEnd);
+		}
+		return SIFBinstanceID;
+	}
+	
+	//
+	// ingestPacket()
+	// ==============
+	// Decodes the packet between ptrStart and ptrEnd in the buffer. The header is
+	// read without copying it out of the buffer. The value of a SAMPLED_DATA 
+	// packet is passed to the statistics and the sample listeners, and the packet
+	// is only built and queued if the client's subscriptions want it.
+	//
+	// returns  the SIFB instance ID of the packet.
+	//
+	private int ingestPacket(String buffer, int ptrStart, int ptrEnd, SelectionKey key) {
+		int command;
 		int SIFBinstanceID = 0;
 		long timeStamp = 0;
-		int fieldLen = 0;
-		String dataValue = "";
+		int ptrData = ptrEnd;
+		int ptrDataEnd = ptrEnd;
+		double value = Double.NaN;
 		
-		while (dataPacket.length() > 0) {
-			ptrStart = dataPacket.indexOf(MESSAGE_START, 0);
-			if (ptrStart == -1) {
-				break;
+		int ptrField = fieldEnd(buffer, ptrStart, ptrEnd);
+		try {
+			command = Integer.parseInt(buffer, ptrStart, ptrField, 10);
+		} catch (NumberFormatException nfe) {
+			// Invalid command.
+			return 0;
+		}
+		if (ptrField < ptrEnd) {
+			int ptrNext = fieldEnd(buffer, ptrField + 1, ptrEnd);
+			SIFBinstanceID = parseInt(buffer, ptrField + 1, ptrNext);
+			ptrField = ptrNext;
+		}
+		if (ptrField < ptrEnd) {
+			int ptrNext = fieldEnd(buffer, ptrField + 1, ptrEnd);
+			timeStamp = parseLong(buffer, ptrField + 1, ptrNext);
+			ptrField = ptrNext;
+		}
+		if (ptrField < ptrEnd) {
+			int ptrNext = fieldEnd(buffer, ptrField + 1, ptrEnd);
+			int fieldLen = parseInt(buffer, ptrField + 1, ptrNext);
+			if ((fieldLen > 0) && (ptrNext < ptrEnd)) {
+				ptrData = ptrNext + 1;
+				ptrDataEnd = Math.min(ptrData + fieldLen, ptrEnd);
 			}
+		}
+		if ((SIFBinstanceID < 0) || (SIFBinstanceID >= MAX_CLIENTS)) {
+			return 0;
+		}
+		
+		switch (command) {
+		case AgentModes.PUSH_ENABLED:
+			// The client has advertised that it accepts packets at any
+			// time, not just in reply to its own packets.
+			if (key != null) {
+				enablePush(SIFBinstanceID, key);
+			}
+			return SIFBinstanceID;
 			
-			ptrEnd = dataPacket.indexOf(END_OF_PACKET, 0);
-			if (ptrEnd == -1) {
-				break;
+		case AgentModes.POLL_AGENT:
+			return SIFBinstanceID;
+			
+		case AgentModes.TIMESTAMP:
+			// Timestamps answer triggers and calibrate the clock offsets, so 
+			// they are queued whatever the subscriptions.
+			recordTimestamp(SIFBinstanceID, timeStamp);
+			break;
+			
+		case AgentModes.SAMPLED_DATA:
+			// Samples taken before the last gate mode change, and those that no
+			// subscription wants, are thrown away before they are recorded.
+			if (isStale(SIFBinstanceID, timeStamp)) {
+				cntStale[SIFBinstanceID]++;
+				return SIFBinstanceID;
 			}
+			value = parseValue(buffer, ptrData, ptrDataEnd);
+			if (!isWanted(SIFBinstanceID, command, timeStamp, value)) {
+				cntFiltered[SIFBinstanceID]++;
+				return SIFBinstanceID;
+			}
+			recordArrival(SIFBinstanceID, timeStamp);
+			recordValue(SIFBinstanceID, timeStamp, value);
+			break;
 			
-			// There is a potential packet in the current buffer.
-			// Extract the message and clean-up the buffer.
-			packet = dataPacket.substring(ptrStart, ptrEnd);
-			dataPacket = dataPacket.substring(ptrEnd + 1);
-			command = "";
-			dataValue = "";		
+		default:
+			if (!isWanted(SIFBinstanceID, command, timeStamp, value)) {
+				cntFiltered[SIFBinstanceID]++;
+				return SIFBinstanceID;
+			}
+			break;
+		}
 		
-			ptrEnd = packet.indexOf(FIELD_SEPARATOR, 1);
-			if (ptrEnd > 0) {
-				command = packet.substring(1, ptrEnd);
-				
-				ptrStart = ptrEnd + 1;
-				ptrEnd = packet.indexOf(FIELD_SEPARATOR, ptrStart);
-				if (ptrEnd > 0) {
-					try {
-						SIFBinstanceID = Integer.valueOf(packet.substring(ptrStart, ptrEnd));
-					} catch (NumberFormatException nfe) {
-						SIFBinstanceID = 0;
-					}	
-					
-					if(ptrEnd > 0) {
-						ptrStart = ptrEnd + 1;
-						ptrEnd = packet.indexOf(FIELD_SEPARATOR, ptrStart);
-						if (ptrEnd > 0) {
-							try {
-								timeStamp = Long.valueOf(packet.substring(ptrStart, ptrEnd));
-							} catch (NumberFormatException nfe) {
-								timeStamp = 0;
-							}	
-												
-							ptrStart = ptrEnd + 1;
-							ptrEnd = packet.indexOf(FIELD_SEPARATOR, ptrStart);
-							if (ptrEnd > 0) {
-								try {
-									fieldLen = Integer.valueOf(packet.substring(ptrStart, ptrEnd));
-									if (fieldLen > 0) {
-										ptrStart = packet.indexOf(FIELD_SEPARATOR, ptrEnd) + 1;
-										dataValue = packet.substring(ptrStart, ptrStart + fieldLen);
-									}
-								} catch (NumberFormatException nfe) {
-								}
-							}
-						}	
-					}
-				}
-				
-				if (command.length() > 0) {
-					NIOserverPacket newPacket = new NIOserverPacket();
-					newPacket.command(command);
-					newPacket.SIFBinstanceID(SIFBinstanceID);
-					newPacket.timeStamp(timeStamp);
-					newPacket.dataValue(dataValue);
-					// Packet queue entries are indexed on the instance ID
-					// of the function block agent.
-					inFIFOqueue[SIFBinstanceID].add(newPacket);
+		NIOserverPacket newPacket = new NIOserverPacket();
+		newPacket.command(Integer.toString(command));
+		newPacket.SIFBinstanceID(SIFBinstanceID);
+		newPacket.timeStamp(timeStamp);
+		newPacket.dataValue(buffer.substring(ptrData, ptrDataEnd));
+		inFIFOqueue[SIFBinstanceID].add(newPacket);
+		return SIFBinstanceID;
+	}
+	
+	//
+	// fieldEnd()
+	// ==========
+	// returns  the position of the next field separator, or ptrEnd if the
+	//          field is the last one in the packet.
+	//
+	private static int fieldEnd(String buffer, int ptrStart, int ptrEnd) {
+		int ptrField = buffer.indexOf(FIELD_SEPARATOR, ptrStart);
+		if ((ptrField < 0) || (ptrField > ptrEnd)) {
+			return ptrEnd;
+		}
+		return ptrField;
+	}
+	
+	//
+	// parseInt()
+	// ==========
+	// Parses a field of the buffer, returning zero if it is not a number.
+	//
+	private static int parseInt(String buffer, int ptrStart, int ptrEnd) {
+		try {
+			return Integer.parseInt(buffer, ptrStart, ptrEnd, 10);
+		} catch (NumberFormatException nfe) {
+			return 0;
+		}
+	}
+	
+	//
+	// parseLong()
+	// ===========
+	private static long parseLong(String buffer, int ptrStart, int ptrEnd) {
+		try {
+			return Long.parseLong(buffer, ptrStart, ptrEnd, 10);
+		} catch (NumberFormatException nfe) {
+			return 0;
+		}
+	}
+	
+	//
+	// parseValue()
+	// ============
+	// Parses a sampled value in the buffer. BOOL values are counted as 0 or 1 and
+	// anything that is not a number is NaN. Plain decimals of up to 15 digits are
+	// converted in place, which is exact because both the digits and the power
+	// of ten are exact doubles. Other numbers are left to Double.parseDouble().
+	//
+	static double parseValue(String buffer, int ptrStart, int ptrEnd) {
+		int length = ptrEnd - ptrStart;
+		
+		if (length <= 0) {
+			return Double.NaN;
+		} else if ((length == 4) && buffer.regionMatches(true, ptrStart, "TRUE", 0, 4)) {
+			return 1;
+		} else if ((length == 5) && buffer.regionMatches(true, ptrStart, "FALSE", 0, 5)) {
+			return 0;
+		}
+		
+		int ptr = ptrStart;
+		boolean isNegative = false;
+		if ((buffer.charAt(ptr) == '-') || (buffer.charAt(ptr) == '+')) {
+			isNegative = (buffer.charAt(ptr) == '-');
+			ptr++;
+		}
+		long digits = 0;
+		int cntDigits = 0;
+		int cntDecimals = -1;
+		for (; ptr < ptrEnd; ptr++) {
+			char ch = buffer.charAt(ptr);
+			if ((ch >= '0') && (ch <= '9')) {
+				digits = (digits * 10) + (ch - '0');
+				cntDigits++;
+				if (cntDecimals >= 0) {
+					cntDecimals++;
 				}
-			}	
+			} else if ((ch == '.') && (cntDecimals < 0)) {
+				cntDecimals = 0;
+			} else {
+				break;
+			}
 		}
-		return SIFBinstanceID;
-	}	
+		if ((ptr == ptrEnd) && (cntDigits > 0) && (cntDigits <= 15)) {
+			double value = (cntDecimals > 0) ? digits / POWERS_OF_TEN[cntDecimals] : digits;
+			return isNegative ? -value : value;
+		}
+		try {
+			return Double.parseDouble(buffer.substring(ptrStart, ptrEnd));
+		} catch (NumberFormatException nfe) {
+			return Double.NaN;
+		}
+	}
+	
+	//
+	// deliver()
+	// =========
+	// Accepts packets from an in-process client, such as the simulated runtime,
+	// as if they had been read from its socket. 
+	//
+	public void deliver(String dataPacket) {
+		if (dataPacket.length() > 0) {
+			ingestPackets(dataPacket, null);
+		}
+	}
+	
+	//
+	// takeOutbound()
+	// ==============
+	// Removes the next packet queued for an in-process client. This is the in-process
+	// equivalent of the reply the client would receive after sending a packet.
+	//
+	// returns  the packet, or an empty string if nothing is queued.
+	//
+	public String takeOutbound(int SIFBinstanceID) {
+		if ((SIFBinstanceID <= 0) || (SIFBinstanceID >= MAX_CLIENTS)) {
+			return "";
+		}
+		NIOserverPacket packet = outFIFOqueue.get(SIFBinstanceID).poll();
+		if (packet == null) {
+			return "";
+		}
+		recordSent(SIFBinstanceID, packet);
+		return packet.dataValue();
+	}
 	
 	//
 	// unpackPacket()
@@ -514,7 +799,7 @@ public class NIOserver implements Runnable {
 	//
 	// queueUnitTest()
 	// ===============
-	// Unit test that exercises the queuePacket() unpackPacket() methods with 
+	// Unit test that exercises the unpackPacket() method with 
 	// representative test packets.
 	// 
 	// Activate this in the class definition section by setting unitTesting = true;
@@ -528,8 +813,6 @@ public class NIOserver implements Runnable {
 		
 	//	testPacket = "+++*4|1|7|47.5998|&+++*4|2|15|123456789012.96|&+++*2|2|&__&";
 		
-	//	queuePacket(testPacket);
-		
 		NIOserverPacket newPacket = unpackPacket(testPacket);
 		
 		NIOserverPacket rpacket = new NIOserverPacket();
@@ -550,6 +833,23 @@ public class NIOserver implements Runnable {
 		return this.MAX_CLIENTS;
 	}
 	
+	//
+	// get pointOffset()
+	// =================
+	// The number added to the SIFBinstanceID of each of this server's clients 
+	// to give the point's harness ID. 
+	//
+	public int pointOffset() {
+		return pointOffset;
+	}
+	
+	//
+	// set pointOffset()
+	// =================
+	public void pointOffset(int pointOffset) {
+		this.pointOffset = pointOffset;
+	}
+	
 	//
 	// get hostName
 	// ============
@@ -571,6 +871,16 @@ public class NIOserver implements Runnable {
 		return inFIFOqueue[ptrQueue].size();
 	}
 	
+	//
+	// get inQueue()
+	// =============
+	// Returns the inbound queue of a client, for its depth, the packets that
+	// have been spilled to disk and the packets that have been dropped.
+	//
+	public SpillQueue inQueue(int ptrQueue) {
+		return inFIFOqueue[ptrQueue];
+	}
+	
 	//
 	// getPacket()
 	// ===========
@@ -578,9 +888,9 @@ public class NIOserver implements Runnable {
 	// application that is in the inbound FIFO queue.
 	//
 	public NIOserverPacket getPacket(int SIFBinstanceID) {		
-		NIOserverPacket packet = new NIOserverPacket();
-		if (inFIFOqueue[SIFBinstanceID].size() > 0) {
-			packet = inFIFOqueue[SIFBinstanceID].poll();
+		NIOserverPacket packet = inFIFOqueue[SIFBinstanceID].poll();
+		if (packet == null) {
+			packet = new NIOserverPacket();
 		}	
 		return packet;
 	}
@@ -590,17 +900,437 @@ public class NIOserver implements Runnable {
 	// =======
 	// Flushes a single inbound queue. This is commonly used when the 
 	// buffered data is no longer needed after a change of operating
-	// mode.
+	// mode. The queue starts a new generation, so the packets already
+	// in it are skipped rather than removed one by one.
 	//
 	public void flush(int ptrQueue) {
-		inFIFOqueue[ptrQueue].clear();
+		inFIFOqueue[ptrQueue].newGeneration();
+	}
+	
+	//
+	// recordArrival()
+	// ===============
+	// Updates the moving average of the interval between data packets using
+	// the timestamps applied by the function block.
+	//
+	private void recordArrival(int SIFBinstanceID, long timeStamp) {
+		long previous = lastArrival[SIFBinstanceID];
+		
+		lastArrival[SIFBinstanceID] = timeStamp;
+		if ((previous > 0) && (timeStamp > previous)) {
+			if (arrivalInterval[SIFBinstanceID] == 0) {
+				arrivalInterval[SIFBinstanceID] = timeStamp - previous;
+			} else {
+				arrivalInterval[SIFBinstanceID] += ARRIVAL_SMOOTHING * ((timeStamp - previous) - arrivalInterval[SIFBinstanceID]);
+			}
+		}
+	}
+	
+	//
+	// recordValue()
+	// =============
+	// Adds a sampled value to the statistics for its client and passes it to
+	// the sample listeners. BOOL values are counted as 0 or 1. Values that are
+	// not numbers are left out of the statistics and passed on as NaN.
+	//
+	private void recordValue(int SIFBinstanceID, long timeStamp, double value) {
+		statistics(SIFBinstanceID).add(timeStamp, value);
+		for (SampleListener listener : sampleListeners) {
+			listener.sampleReceived(pointOffset + SIFBinstanceID, timeStamp, value);
+		}
+	}
+	
+	//
+	// recordSent()
+	// ============
+	// Notes the engine time at which a trigger is written to its client, so 
+	// that the round trip can be timed when the timestamp comes back. A gate
+	// mode change takes effect when it is written, so the inbound queue starts
+	// a new generation then.
+	//
+	private void recordSent(int SIFBinstanceID, NIOserverPacket packet) {
+		clientLock.lock();
+		try {
+			String dataValue = packet.dataValue();
+		
+			if (dataValue.startsWith(MESSAGE_START + AgentModes.TRIGGER_DATA_VALUE + FIELD_SEPARATOR)
+				|| dataValue.startsWith(MESSAGE_START + AgentModes.TRIGGER_EVENT + FIELD_SEPARATOR)) {
+				if (cntTriggersPending[SIFBinstanceID] == MAX_TRIGGERS_PENDING) {
+					// Too many replies have gone missing. Give up the oldest.
+					ptrTriggerSent[SIFBinstanceID] = (ptrTriggerSent[SIFBinstanceID] + 1) % MAX_TRIGGERS_PENDING;
+					cntTriggersPending[SIFBinstanceID]--;
+				}
+				triggerSent[SIFBinstanceID][(ptrTriggerSent[SIFBinstanceID] + cntTriggersPending[SIFBinstanceID]) % MAX_TRIGGERS_PENDING] 
+					= ClockOffsetEstimator.engineTime();
+				cntTriggersPending[SIFBinstanceID]++;
+			} else if (isModeChange(dataValue)) {
+				// Anything that arrived while the change was waiting to be 
+				// written was sampled in the old mode.
+				modeSent[SIFBinstanceID] = ClockOffsetEstimator.engineTime();
+				cntModesPending[SIFBinstanceID] = Math.max(0, cntModesPending[SIFBinstanceID] - 1);
+				inFIFOqueue[SIFBinstanceID].newGeneration();
+			}
+		} finally {
+			clientLock.unlock();
+		}
+	}
+	
+	//
+	// recordQueued()
+	// ==============
+	// Counts the gate mode changes queued for a client. Samples that arrive
+	// while a change is waiting to be written are discarded. The new generation
+	// of the inbound queue is started by recordSent() when the change is 
+	// written, so a change starts only one.
+	//
+	private void recordQueued(int SIFBinstanceID, String packetData) {
+		clientLock.lock();
+		try {
+			if (isModeChange(packetData)) {
+				cntModesPending[SIFBinstanceID]++;
+			}
+		} finally {
+			clientLock.unlock();
+		}
+	}
+	
+	//
+	// isModeChange()
+	// ==============
+	private static boolean isModeChange(String packetData) {
+		return (packetData.startsWith(MESSAGE_START + AgentModes.PASSTHROUGH_ENABLED + FIELD_SEPARATOR)
+			|| packetData.startsWith(MESSAGE_START + AgentModes.TRIGGER_ENABLED + FIELD_SEPARATOR));
+	}
+	
+	//
+	// isStale()
+	// =========
+	// True if a sample was taken before its client changed gate mode. While a
+	// change is waiting to be written every sample is stale. Afterwards, the
+	// samples still in flight are recognised by their timestamps, once the
+	// client's clock offset is known well enough to tell.
+	//
+	private boolean isStale(int SIFBinstanceID, long timeStamp) {
+		clientLock.lock();
+		try {
+			if (cntModesPending[SIFBinstanceID] > 0) {
+				return true;
+			}
+			if (modeSent[SIFBinstanceID] == 0) {
+				return false;
+			}
+			ClockOffsetEstimator clock = clockOffset(SIFBinstanceID);
+			if (!clock.isCalibrated()) {
+				return false;
+			}
+			return (timeStamp < clock.toForteTime(modeSent[SIFBinstanceID]) - clock.uncertainty());
+		} finally {
+			clientLock.unlock();
+		}
+	}
+	
+	//
+	// get staleCount()
+	// ================
+	// The number of samples from a client that were discarded because they 
+	// were taken before it changed gate mode.
+	//
+	public long staleCount(int SIFBinstanceID) {
+		if ((SIFBinstanceID <= 0) || (SIFBinstanceID >= MAX_CLIENTS)) {
+			return 0;
+		}
+		return cntStale[SIFBinstanceID];
+	}
+	
+	//
+	// recordTimestamp()
+	// =================
+	// Adds the round trip of a trigger to the clock offset estimates. The 
+	// timestamps come back in the order the triggers were written, so this 
+	// one belongs to the oldest trigger still waiting once those that have
+	// timed out are given up. When more than one trigger is still waiting, a
+	// lost reply could have left the timestamp paired with the wrong trigger,
+	// so the round trip is not used.
+	//
+	private void recordTimestamp(int SIFBinstanceID, long timeStamp) {
+		clientLock.lock();
+		try {
+			double receiveTime = ClockOffsetEstimator.engineTime();
+			double sendTime = 0;
+		
+			while ((cntTriggersPending[SIFBinstanceID] > 0) 
+				   && (receiveTime - triggerSent[SIFBinstanceID][ptrTriggerSent[SIFBinstanceID]] > TRIGGER_TIMEOUT)) {
+				ptrTriggerSent[SIFBinstanceID] = (ptrTriggerSent[SIFBinstanceID] + 1) % MAX_TRIGGERS_PENDING;
+				cntTriggersPending[SIFBinstanceID]--;
+			}
+			if (cntTriggersPending[SIFBinstanceID] == 0) {
+				return;
+			}
+		
+			sendTime = triggerSent[SIFBinstanceID][ptrTriggerSent[SIFBinstanceID]];
+			if (cntTriggersPending[SIFBinstanceID] == 1) {
+				if (clocks[SIFBinstanceID] == null) {
+					clocks[SIFBinstanceID] = new ClockOffsetEstimator();
+				}
+				clocks[SIFBinstanceID].add(sendTime, timeStamp, receiveTime);
+				serverClock.add(sendTime, timeStamp, receiveTime);
+			}
+			ptrTriggerSent[SIFBinstanceID] = (ptrTriggerSent[SIFBinstanceID] + 1) % MAX_TRIGGERS_PENDING;
+			cntTriggersPending[SIFBinstanceID]--;
+		} finally {
+			clientLock.unlock();
+		}
+	}
+	
+	//
+	// get clockOffset()
+	// =================
+	// Returns the estimate of the offset of a client's FORTE clock from the 
+	// engine's. Until the client itself has been triggered, the estimate pooled
+	// from all the clients of this server is returned.
+	//
+	public ClockOffsetEstimator clockOffset(int SIFBinstanceID) {
+		clientLock.lock();
+		try {
+			if ((SIFBinstanceID <= 0) || (SIFBinstanceID >= MAX_CLIENTS)) {
+				return serverClock;
+			}
+			if ((clocks[SIFBinstanceID] == null) || !clocks[SIFBinstanceID].isCalibrated()) {
+				return serverClock;
+			}
+			return clocks[SIFBinstanceID];
+		} finally {
+			clientLock.unlock();
+		}
+	}
+	
+	//
+	// get clockOffset()
+	// =================
+	// Returns the estimate of the offset of the FORTE clock pooled from all the
+	// clients of this server.
+	//
+	public ClockOffsetEstimator clockOffset() {
+		return serverClock;
+	}
+	
+	//
+	// addSampleListener()
+	// ===================
+	// Adds a listener for the sampled values. A listener that has already been
+	// added is not added again.
+	//
+	public void addSampleListener(SampleListener listener) {
+		sampleListeners.addIfAbsent(listener);
+	}
+	
+	//
+	// removeSampleListener()
+	// ======================
+	public void removeSampleListener(SampleListener listener) {
+		sampleListeners.remove(listener);
+	}
+	
+	//
+	// subscribe()
+	// ===========
+	// Adds a subscription to the packets of a client. Once a client has a 
+	// subscription, only the packets that one of its subscriptions wants are
+	// queued.
+	//
+	public void subscribe(int SIFBinstanceID, SampleSubscription subscription) {
+		if ((SIFBinstanceID <= 0) || (SIFBinstanceID >= MAX_CLIENTS)) {
+			return;
+		}
+		subscriptionLock.lock();
+		try {
+			SampleSubscription[] current = subscriptions[SIFBinstanceID];
+			if (current == null) {
+				current = MUTED;
+			}
+			for (SampleSubscription existing : current) {
+				if (existing == subscription) {
+					return;
+				}
+			}
+			SampleSubscription[] updated = Arrays.copyOf(current, current.length + 1);
+			updated[current.length] = subscription;
+			setSubscriptions(SIFBinstanceID, updated);
+		} finally {
+			subscriptionLock.unlock();
+		}
+	}
+	
+	//
+	// unsubscribe()
+	// =============
+	// Removes a subscription. When the last one is removed, all the client's
+	// packets are queued again.
+	//
+	public void unsubscribe(int SIFBinstanceID, SampleSubscription subscription) {
+		if ((SIFBinstanceID <= 0) || (SIFBinstanceID >= MAX_CLIENTS)) {
+			return;
+		}
+		subscriptionLock.lock();
+		try {
+			SampleSubscription[] current = subscriptions[SIFBinstanceID];
+			if (current == null) {
+				return;
+			}
+			for (int ptr = 0; ptr < current.length; ptr++) {
+				if (current[ptr] == subscription) {
+					SampleSubscription[] updated = null;
+					if (current.length > 1) {
+						updated = new SampleSubscription[current.length - 1];
+						System.arraycopy(current, 0, updated, 0, ptr);
+						System.arraycopy(current, ptr + 1, updated, ptr, current.length - ptr - 1);
+					}
+					setSubscriptions(SIFBinstanceID, updated);
+					return;
+				}
+			}
+		} finally {
+			subscriptionLock.unlock();
+		}
+	}
+	
+	//
+	// mute()
+	// ======
+	// Removes a client's subscriptions and throws its samples away as they
+	// arrive, before they reach the statistics and the sample listeners. Its
+	// timestamps are still queued so that it can be triggered.
+	//
+	public void mute(int SIFBinstanceID) {
+		if ((SIFBinstanceID <= 0) || (SIFBinstanceID >= MAX_CLIENTS)) {
+			return;
+		}
+		subscriptionLock.lock();
+		try {
+			setSubscriptions(SIFBinstanceID, MUTED);
+		} finally {
+			subscriptionLock.unlock();
+		}
+	}
+	
+	//
+	// unsubscribeAll()
+	// ================
+	// Removes a client's subscriptions, so all its packets are queued again.
+	//
+	public void unsubscribeAll(int SIFBinstanceID) {
+		if ((SIFBinstanceID <= 0) || (SIFBinstanceID >= MAX_CLIENTS)) {
+			return;
+		}
+		subscriptionLock.lock();
+		try {
+			setSubscriptions(SIFBinstanceID, null);
+		} finally {
+			subscriptionLock.unlock();
+		}
+	}
+	
+	//
+	// setSubscriptions()
+	// ==================
+	// Publishes the subscriptions of a client. The caller holds the
+	// subscriptionLock.
+	//
+	private void setSubscriptions(int SIFBinstanceID, SampleSubscription[] updated) {
+		SampleSubscription[][] replaced = subscriptions.clone();
+		replaced[SIFBinstanceID] = updated;
+		subscriptions = replaced;
+	}
+	
+	//
+	// isWanted()
+	// ==========
+	// Tests a packet against the subscriptions of its client. Every 
+	// subscription is tested so that each one sees the samples it wants.
+	//
+	private boolean isWanted(int SIFBinstanceID, int command, long timeStamp, double value) {
+		SampleSubscription[] current = subscriptions[SIFBinstanceID];
+		boolean isWanted = false;
+		
+		if (current == null) {
+			return true;
+		}
+		for (SampleSubscription subscription : current) {
+			isWanted |= subscription.wants(command, timeStamp, value);
+		}
+		return isWanted;
+	}
+	
+	//
+	// get filteredCount()
+	// ===================
+	// The number of packets from a client that were thrown away because no
+	// subscription wanted them.
+	//
+	public long filteredCount(int SIFBinstanceID) {
+		if ((SIFBinstanceID <= 0) || (SIFBinstanceID >= MAX_CLIENTS)) {
+			return 0;
+		}
+		return cntFiltered[SIFBinstanceID];
+	}
+	
+	//
+	// get statistics()
+	// ================
+	// Returns the statistics of the values sampled by a client, creating them
+	// if need be.
+	//
+	public DiagnosticPointStatistics statistics(int SIFBinstanceID) {
+		clientLock.lock();
+		try {
+			if ((SIFBinstanceID <= 0) || (SIFBinstanceID >= MAX_CLIENTS)) {
+				return new DiagnosticPointStatistics();
+			}
+			if (statistics[SIFBinstanceID] == null) {
+				statistics[SIFBinstanceID] = new DiagnosticPointStatistics();
+			}
+			return statistics[SIFBinstanceID];
+		} finally {
+			clientLock.unlock();
+		}
+	}
+	
+	//
+	// set statistics()
+	// ================
+	// Replaces the statistics kept for a client, for example with ones using
+	// different window sizes. Values already sampled are not carried over.
+	//
+	public void statistics(int SIFBinstanceID, DiagnosticPointStatistics pointStatistics) {
+		if ((SIFBinstanceID <= 0) || (SIFBinstanceID >= MAX_CLIENTS) || (pointStatistics == null)) {
+			return;
+		}
+		clientLock.lock();
+		try {
+			statistics[SIFBinstanceID] = pointStatistics;
+		} finally {
+			clientLock.unlock();
+		}
+	}
+	
+	//
+	// get arrivalInterval()
+	// =====================
+	// Returns the average interval between data packets from this client in 
+	// milliseconds, or zero if there has not been enough traffic to tell.
+	//
+	public int arrivalInterval(int SIFBinstanceID) {
+		if ((SIFBinstanceID <= 0) || (SIFBinstanceID >= MAX_CLIENTS)) {
+			return 0;
+		}
+		return (int) arrivalInterval[SIFBinstanceID];
 	}
 	
 	//
 	// get outQueueSize()
 	// ==================
 	public int outQueueSize(int ptrQueue) {
-		return outFIFOqueue[ptrQueue].size();
+		return outFIFOqueue.get(ptrQueue).size();
 	}
 	
 	//
@@ -616,14 +1346,167 @@ public class NIOserver implements Runnable {
 	// Used by the Fault Diagnostic Engine to add (i.e. buffer) an 
 	// outgoing packet into the queue. When the SIFB agent client 
 	// function block next polls the server, any queued outgoing 
-	// packets will be sent out.
+	// packets will be sent out. If the client is push-enabled, the
+	// selector is woken up to write the packet straight away.
 	
 	public void sendPacket(int SIFBinstanceID, String packetData) {
 		NIOserverPacket newPacket = new NIOserverPacket();
-		if (SIFBinstanceID <= MAX_CLIENTS) {
+		if (SIFBinstanceID < MAX_CLIENTS) {
 			newPacket.SIFBinstanceID(SIFBinstanceID);
 			newPacket.dataValue(packetData);
-			outFIFOqueue[SIFBinstanceID].add(newPacket);
+			recordQueued(SIFBinstanceID, packetData);
+			outFIFOqueue.get(SIFBinstanceID).add(newPacket);
+			if (pushEnabled.get(SIFBinstanceID) == 1) {
+				pushRequests.add(SIFBinstanceID);
+				selector.wakeup();
+			}
+		}
+	}
+	
+	//
+	// sendPackets()
+	// =============
+	// Queues a set of packets for several clients together. Push-enabled clients
+	// are all armed in the same pass of the selector, so each connection gets its
+	// packets in a single write and the connections are written back-to-back.
+	//
+	public void sendPackets(int[] SIFBinstanceIDs, String[] packetData) {
+		boolean isPushing = false;
+		
+		for (int ptr = 0; ptr < SIFBinstanceIDs.length; ptr++) {
+			if (SIFBinstanceIDs[ptr] < MAX_CLIENTS) {
+				NIOserverPacket newPacket = new NIOserverPacket();
+				newPacket.SIFBinstanceID(SIFBinstanceIDs[ptr]);
+				newPacket.dataValue(packetData[ptr]);
+				recordQueued(SIFBinstanceIDs[ptr], packetData[ptr]);
+				outFIFOqueue.get(SIFBinstanceIDs[ptr]).add(newPacket);
+				if (pushEnabled.get(SIFBinstanceIDs[ptr]) == 1) {
+					pushRequests.add(SIFBinstanceIDs[ptr]);
+					isPushing = true;
+				}
+			}
+		}
+		if (isPushing) {
+			selector.wakeup();
+		}
+	}
+	
+	//
+	// enablePush()
+	// ============
+	// Records that a client accepts pushed packets and remembers the
+	// connection to push them on. Anything already queued is pushed.
+	//
+	private void enablePush(int SIFBinstanceID, SelectionKey key) {
+		if ((SIFBinstanceID > 0) && (SIFBinstanceID < MAX_CLIENTS)) {
+			pushLock.lock();
+			try {
+				pushKeys[SIFBinstanceID] = key;
+				key.attach(SIFBinstanceID);
+				pushEnabled.set(SIFBinstanceID, 1);
+			} finally {
+				pushLock.unlock();
+			}
+			say("Push enabled for client " + SIFBinstanceID);
+			if (outQueueSize(SIFBinstanceID) > 0) {
+				pushRequests.add(SIFBinstanceID);
+			}
+		}
+	}
+	
+	//
+	// armPushClients()
+	// ================
+	// Runs on the server thread. Registers write interest for every push-enabled
+	// client that has had packets queued since the selector last looked. 
+	//
+	private void armPushClients() {
+		Integer SIFBinstanceID;
+		SelectionKey key;
+		
+		while ((SIFBinstanceID = pushRequests.poll()) != null) {
+			pushLock.lock();
+			try {
+				key = pushKeys[SIFBinstanceID];
+			} finally {
+				pushLock.unlock();
+			}
+			if ((key != null) && key.isValid()) {
+				key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+			}
+		}
+	}
+	
+	//
+	// writePushedPackets()
+	// ====================
+	// Runs on the server thread when a push-enabled client's socket is writable.
+	// Everything queued for the client is sent in a single write. Whatever the 
+	// socket cannot take is kept and write interest stays registered until it 
+	// has all gone.
+	//
+	private void writePushedPackets(SelectionKey key) throws Exception {
+		SocketChannel sc = (SocketChannel) key.channel();
+		int SIFBinstanceID = 0;
+		StringBuilder packets = new StringBuilder();
+		NIOserverPacket packet;
+		
+		if (!(key.attachment() instanceof Integer)) {
+			key.interestOps(SelectionKey.OP_READ);
+			return;
+		}
+		SIFBinstanceID = (Integer) key.attachment();
+		
+		if (pendingWrite[SIFBinstanceID] == null) {
+			while ((packet = outFIFOqueue.get(SIFBinstanceID).poll()) != null) {
+				recordSent(SIFBinstanceID, packet);
+				packets.append(packet.dataValue());
+			}
+			if (packets.length() > 0) {
+				pendingWrite[SIFBinstanceID] = ByteBuffer.wrap(packets.toString().getBytes());
+			}
+		}
+		
+		if (pendingWrite[SIFBinstanceID] != null) {
+			try {
+				sc.write(pendingWrite[SIFBinstanceID]);
+			} catch (Exception e) {
+				// The client has disconnected.
+				closeSession(key);
+				return;
+			}
+			if (!pendingWrite[SIFBinstanceID].hasRemaining()) {
+				pendingWrite[SIFBinstanceID] = null;
+			}
+		}
+		
+		if ((pendingWrite[SIFBinstanceID] == null) && (outFIFOqueue.get(SIFBinstanceID).isEmpty())) {
+			key.interestOps(SelectionKey.OP_READ);
+		}
+	}
+	
+	//
+	// closeSession()
+	// ==============
+	// Closes a client connection and forgets any push registration for it.
+	//
+	private void closeSession(SelectionKey key) throws Exception {
+		if (key.attachment() instanceof Integer) {
+			int SIFBinstanceID = (Integer) key.attachment();
+			pushLock.lock();
+			try {
+				pushEnabled.set(SIFBinstanceID, 0);
+				pushKeys[SIFBinstanceID] = null;
+				pendingWrite[SIFBinstanceID] = null;
+			} finally {
+				pushLock.unlock();
+			}
+		}
+		key.cancel();
+		key.channel().close();
+		cntConnections--;
+		if (cntConnections < 0) {
+			cntConnections = 0;
 		}
 	}
 	
@@ -631,9 +1514,9 @@ public class NIOserver implements Runnable {
 	// getQueuedPacket()
 	// =================
 	private NIOserverPacket getQueuedPacket(int SIFBinstanceID) {		
-		NIOserverPacket packet = new NIOserverPacket();
-		if (outFIFOqueue[SIFBinstanceID].size() > 0) {
-			packet = outFIFOqueue[SIFBinstanceID].poll();
+		NIOserverPacket packet = outFIFOqueue.get(SIFBinstanceID).poll();
+		if (packet == null) {
+			packet = new NIOserverPacket();
 		}	
 		return packet;
 	}
@@ -17,6 +17,7 @@
 // 20.02.2021 BRD Added timestamp to the packet structure.
 // 22.03.2021 BRD Added a way to return the remaining buffer in the packet.
 //                This is needed in the NIOserver function unpackPacket().
+// 18.10.2026 BRD Added the generation of the queue the packet was added to.
 //
 package fde;
 
@@ -26,6 +27,7 @@ public class NIOserverPacket {
 	String dataValue = "";
 	long timeStamp = 0;
 	String buffer = "";
+	int generation = 0;
 
 	//
 	// get command()
@@ -83,6 +85,20 @@ public class NIOserverPacket {
 		return this.timeStamp;
 	}
 	
+	//
+	// get generation()
+	// ================
+	public int generation() {
+		return this.generation;
+	}
+	
+	//
+	// set generation()
+	// ================
+	public void generation(int generation) {
+		this.generation = generation;
+	}
+	
 	//
 	// get buffer()
 	// ============
@@ -0,0 +1,175 @@
+//
+// QUANTILE HISTOGRAM
+// ==================
+// An approximate histogram that answers quantile queries such as the median or
+// the 99th percentile of a stream of values. Values can be removed again, so it
+// can follow a sliding window.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// Values are counted in buckets whose widths grow logarithmically with the
+// magnitude of the value, in the style of an HDR histogram. A quantile is
+// reported to within the relative accuracy the histogram was created with (1%
+// by default) whatever the spread of the values, using a fixed amount of memory
+// and without allocating memory as values are added or removed.
+//
+// Magnitudes below MIN_MAGNITUDE are counted as zero and magnitudes above
+// MAX_MAGNITUDE are counted in the top bucket.
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+//
+package fde;
+
+public class QuantileHistogram {
+	public static final double DEFAULT_ACCURACY = 0.01;
+	public static final double MIN_MAGNITUDE = 1e-9;
+	public static final double MAX_MAGNITUDE = 1e12;
+
+	private final double gamma;
+	private final double logGamma;
+	private final int offset;
+	private final long[] positive;
+	private final long[] negative;
+	private long cntZero = 0;
+	private long count = 0;
+
+	//
+	// QuantileHistogram()
+	// ===================
+	public QuantileHistogram() {
+		this(DEFAULT_ACCURACY);
+	}
+
+	//
+	// QuantileHistogram()
+	// ===================
+	// accuracy  The relative accuracy of the quantiles, for example 0.01 for 1%.
+	//
+	public QuantileHistogram(double accuracy) {
+		if ((accuracy <= 0) || (accuracy >= 1)) {
+			throw new IllegalArgumentException("The accuracy must be between 0 and 1");
+		}
+		gamma = (1 + accuracy) / (1 - accuracy);
+		logGamma = Math.log(gamma);
+		offset = (int) Math.floor(Math.log(MIN_MAGNITUDE) / logGamma);
+		int cntBuckets = (int) Math.ceil(Math.log(MAX_MAGNITUDE) / logGamma) - offset + 1;
+		positive = new long[cntBuckets];
+		negative = new long[cntBuckets];
+	}
+
+	//
+	// add()
+	// =====
+	// Counts a value. NaN is ignored.
+	//
+	public void add(double value) {
+		update(value, 1);
+	}
+
+	//
+	// remove()
+	// ========
+	// Removes a value that was added earlier.
+	//
+	public void remove(double value) {
+		update(value, -1);
+	}
+
+	//
+	// update()
+	// ========
+	private void update(double value, int change) {
+		if (Double.isNaN(value)) {
+			return;
+		}
+		double magnitude = Math.abs(value);
+		if (magnitude < MIN_MAGNITUDE) {
+			if (cntZero + change < 0) {
+				return;
+			}
+			cntZero += change;
+		} else {
+			long[] buckets = (value > 0) ? positive : negative;
+			int ptrBucket = bucket(magnitude);
+			if (buckets[ptrBucket] + change < 0) {
+				return;
+			}
+			buckets[ptrBucket] += change;
+		}
+		count += change;
+	}
+
+	//
+	// clear()
+	// =======
+	public void clear() {
+		java.util.Arrays.fill(positive, 0);
+		java.util.Arrays.fill(negative, 0);
+		cntZero = 0;
+		count = 0;
+	}
+
+	//
+	// get count()
+	// ===========
+	public long count() {
+		return count;
+	}
+
+	//
+	// quantile()
+	// ==========
+	// Returns the value below which the fraction q of the values fall, for
+	// example 0.5 for the median. Returns NaN if there are no values.
+	//
+	public double quantile(double q) {
+		if (count == 0) {
+			return Double.NaN;
+		}
+		long rank = (long) Math.floor(Math.max(0, Math.min(1, q)) * (count - 1));
+		long cntSeen = 0;
+
+		// The most negative values are in the highest negative buckets.
+		for (int ptrBucket = negative.length - 1; ptrBucket >= 0; ptrBucket--) {
+			cntSeen += negative[ptrBucket];
+			if (cntSeen > rank) {
+				return -value(ptrBucket);
+			}
+		}
+		cntSeen += cntZero;
+		if (cntSeen > rank) {
+			return 0;
+		}
+		for (int ptrBucket = 0; ptrBucket < positive.length; ptrBucket++) {
+			cntSeen += positive[ptrBucket];
+			if (cntSeen > rank) {
+				return value(ptrBucket);
+			}
+		}
+		return value(positive.length - 1);
+	}
+
+	//
+	// bucket()
+	// ========
+	// The bucket that holds values of this magnitude.
+	//
+	private int bucket(double magnitude) {
+		int ptrBucket = (int) Math.ceil(Math.log(magnitude) / logGamma) - offset;
+		return Math.max(0, Math.min(positive.length - 1, ptrBucket));
+	}
+
+	//
+	// value()
+	// =======
+	// The value that represents a bucket. It is within the relative accuracy of
+	// every value in the bucket.
+	//
+	private double value(int ptrBucket) {
+		return 2 * Math.pow(gamma, ptrBucket + offset) / (gamma + 1);
+	}
+}
@@ -0,0 +1,196 @@
+//
+// RUNNING STATISTICS
+// ==================
+// Incremental statistics over a stream of values: count, minimum, maximum,
+// mean, variance and an exponentially weighted moving average. Each value is
+// added in constant time without allocating memory, and every statistic can be
+// read at any time in constant time.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// The mean and variance are calculated with Welford's method, which stays
+// accurate over long runs where summing the values and their squares would
+// lose precision. A script can use its own instance to summarise the results
+// of a test:
+//
+//     RunningStatistics tripTimes = new RunningStatistics();
+//     ...
+//     tripTimes.add(end_overcurrent - start_overcurrent);
+//     ...
+//     say("Average trip time = " + tripTimes.mean() + " +/- " + tripTimes.stdDev());
+//
+// An instance is not thread safe. DiagnosticPointStatistics guards the ones it
+// keeps for each diagnostic point.
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+//
+package fde;
+
+public class RunningStatistics {
+	// The default weight given to each new value by the moving average.
+	public static final double DEFAULT_EWMA_ALPHA = 0.1;
+
+	private final double alpha;
+
+	private long count = 0;
+	private double min = Double.NaN;
+	private double max = Double.NaN;
+	private double mean = 0;
+	private double m2 = 0;
+	private double ewma = Double.NaN;
+	private double last = Double.NaN;
+
+	//
+	// RunningStatistics()
+	// ===================
+	public RunningStatistics() {
+		this(DEFAULT_EWMA_ALPHA);
+	}
+
+	//
+	// RunningStatistics()
+	// ===================
+	// alpha  The weight between 0 and 1 given to each new value by the moving
+	//        average. Larger values follow changes more quickly.
+	//
+	public RunningStatistics(double alpha) {
+		if ((alpha <= 0) || (alpha > 1)) {
+			throw new IllegalArgumentException("The moving average weight must be between 0 and 1");
+		}
+		this.alpha = alpha;
+	}
+
+	//
+	// add()
+	// =====
+	public void add(double value) {
+		count++;
+		if (count == 1) {
+			min = value;
+			max = value;
+			ewma = value;
+		} else {
+			if (value < min) {
+				min = value;
+			}
+			if (value > max) {
+				max = value;
+			}
+			ewma += alpha * (value - ewma);
+		}
+		double delta = value - mean;
+		mean += delta / count;
+		m2 += delta * (value - mean);
+		last = value;
+	}
+
+	//
+	// reset()
+	// =======
+	public void reset() {
+		count = 0;
+		min = Double.NaN;
+		max = Double.NaN;
+		mean = 0;
+		m2 = 0;
+		ewma = Double.NaN;
+		last = Double.NaN;
+	}
+
+	//
+	// copy()
+	// ======
+	// Copies the statistics held by another instance into this one.
+	//
+	public void copy(RunningStatistics source) {
+		count = source.count;
+		min = source.min;
+		max = source.max;
+		mean = source.mean;
+		m2 = source.m2;
+		ewma = source.ewma;
+		last = source.last;
+	}
+
+	//
+	// get count()
+	// ===========
+	public long count() {
+		return count;
+	}
+
+	//
+	// get min()
+	// =========
+	// The smallest value, or NaN if there are none.
+	//
+	public double min() {
+		return min;
+	}
+
+	//
+	// get max()
+	// =========
+	// The largest value, or NaN if there are none.
+	//
+	public double max() {
+		return max;
+	}
+
+	//
+	// get mean()
+	// ==========
+	// The mean, or NaN if there are no values.
+	//
+	public double mean() {
+		return (count == 0) ? Double.NaN : mean;
+	}
+
+	//
+	// get variance()
+	// ==============
+	// The sample variance, or NaN if there are fewer than two values.
+	//
+	public double variance() {
+		return (count < 2) ? Double.NaN : m2 / (count - 1);
+	}
+
+	//
+	// get stdDev()
+	// ============
+	// The sample standard deviation, or NaN if there are fewer than two values.
+	//
+	public double stdDev() {
+		return Math.sqrt(variance());
+	}
+
+	//
+	// get ewma()
+	// ==========
+	// The exponentially weighted moving average, or NaN if there are no values.
+	//
+	public double ewma() {
+		return ewma;
+	}
+
+	//
+	// get last()
+	// ==========
+	// The most recent value, or NaN if there are none.
+	//
+	public double last() {
+		return last;
+	}
+
+	//
+	// toString()
+	// ==========
+	@Override
+	public String toString() {
+		return String.format("n=%d min=%.4g max=%.4g mean=%.4g sd=%.4g ewma=%.4g", count, min, max, mean(), stdDev(), ewma);
+	}
+}
@@ -0,0 +1,36 @@
+//
+// ST COMPILE EXCEPTION
+// ====================
+// Thrown by the STCompiler when an algorithm uses Structured Text that it does
+// not support or that is not valid.
+//
+// (c) AUT University - 2026
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+//
+package fde;
+
+public class STCompileException extends Exception {
+	private static final long serialVersionUID = 1L;
+
+	private final int lineNumber;
+
+	//
+	// STCompileException()
+	// ====================
+	public STCompileException(String description, int lineNumber) {
+		super("Line " + lineNumber + ": " + description);
+		this.lineNumber = lineNumber;
+	}
+
+	//
+	// get lineNumber()
+	// ================
+	// The line of the algorithm where the error was found.
+	//
+	public int lineNumber() {
+		return lineNumber;
+	}
+}
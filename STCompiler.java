@@ -0,0 +1,1302 @@
+//
+// STRUCTURED TEXT COMPILER
+// ========================
+// Compiles the IEC 61131-3 Structured Text algorithms of a basic function block
+// type into a tree of Java closures. A compiled algorithm runs at close to native
+// speed, so a diagnostic script can use the function block's own algorithm as a
+// golden model that computes the expected outputs for any inputs.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// The variables of the function block (inputs, outputs and internal variables)
+// are held in a double[] with one slot for each variable, in the order they were
+// declared in the type definition. BOOL values are held as 0 or 1. Values are
+// narrowed to the declared type whenever they are assigned, so REAL variables
+// have the single precision rounding that FORTE has and INT variables wrap at 16
+// bits. Variables of other types are treated as LREAL.
+//
+// The subset of Structured Text supported is:
+//
+//     Statements     :=  IF ELSIF ELSE  CASE  FOR  WHILE  REPEAT  EXIT  RETURN
+//     Operators      **  -  NOT  *  /  MOD  +  <  >  <=  >=  =  <>  AND  &  XOR  OR
+//     Literals       42  16#FF  1.5E3  TRUE  REAL#1.5  INT#5  T#1s500ms
+//     Functions      ABS SQRT LN LOG EXP SIN COS TAN ASIN ACOS ATAN EXPT TRUNC
+//                    MIN MAX LIMIT SEL MUX and the <type>_TO_<type> conversions.
+//
+// Strings, arrays, structures and calls to other function blocks are not
+// supported and are reported as compile errors.
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+//
+package fde;
+
+import static fde.Constants.NOT_FOUND;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class STCompiler {
+	// The static type of an expression.
+	enum STTypes {
+		BOOL,
+		INT,
+		REAL
+	}
+
+	// A compiled algorithm.
+	public interface Program {
+		void run(double[] values);
+	}
+
+	interface Expr {
+		double eval(double[] values);
+	}
+
+	interface Stmt {
+		int exec(double[] values);
+	}
+
+	// How a statement finished.
+	final static int NORMAL = 0;
+	final static int EXIT = 1;
+	final static int RETURN = 2;
+
+	// A loop that runs more times than this is assumed to be stuck.
+	final static int MAX_ITERATIONS = 10000000;
+
+	final static Set<String> KEYWORDS = new HashSet<String>(Arrays.asList(
+		"IF", "THEN", "ELSIF", "ELSE", "END_IF", "CASE", "OF", "END_CASE", "FOR", "TO", "BY", "DO",
+		"END_FOR", "WHILE", "END_WHILE", "REPEAT", "UNTIL", "END_REPEAT", "EXIT", "RETURN",
+		"AND", "OR", "XOR", "NOT", "MOD", "TRUE", "FALSE"));
+
+	// Token kinds.
+	private final static int IDENTIFIER = 1;
+	private final static int NUMBER = 2;
+	private final static int SYMBOL = 3;
+	private final static int END = 4;
+
+	private final Map<String, Integer> slots = new HashMap<String, Integer>();
+	private final List<Integer> slotDataTypes = new ArrayList<Integer>();
+
+	private List<Token> tokens;
+	private int ptrToken;
+
+	//
+	// STCompiler()
+	// ============
+	// Creates a compiler for the algorithms of a function block type. The
+	// function block's variables are the variables the algorithms can use.
+	//
+	public STCompiler(FunctionBlock fb) {
+		for (int ptrVar = 0; ptrVar < fb.VarCount(); ptrVar++) {
+			FunctionBlockVariable fbVar = fb.Var(ptrVar);
+			slots.put(fbVar.Name().toUpperCase(), ptrVar);
+			slotDataTypes.add(fbVar.DataType());
+		}
+	}
+
+	//
+	// get slotCount()
+	// ===============
+	// The size of the values array a compiled program needs.
+	//
+	public int slotCount() {
+		return slotDataTypes.size();
+	}
+
+	//
+	// get slot()
+	// ==========
+	// The index of a variable in the values array, or NOT_FOUND.
+	//
+	public int slot(String varName) {
+		Integer slot = slots.get(varName.toUpperCase());
+		return (slot == null) ? NOT_FOUND : slot;
+	}
+
+	//
+	// get dataType()
+	// ==============
+	// The declared data type of the variable in a slot.
+	//
+	public int dataType(int slot) {
+		return slotDataTypes.get(slot);
+	}
+
+	//
+	// compile()
+	// =========
+	// Compiles the Structured Text of one algorithm.
+	//
+	public Program compile(String source) throws STCompileException {
+		tokens = tokenize(source);
+		ptrToken = 0;
+		Stmt body = statements();
+		if (peek().kind != END) {
+			throw error("Unexpected '" + peek().text + "'");
+		}
+		return values -> body.exec(values);
+	}
+
+	//
+	// narrow()
+	// ========
+	// Converts a value to the precision of a variable's data type.
+	//
+	static double narrow(int dataType, double value) {
+		switch (dataType) {
+		case DataTypes.DATATYPE_REAL:
+			return (float) value;
+		case DataTypes.DATATYPE_INT:
+			return (short) (long) value;
+		case DataTypes.DATATYPE_LINT:
+			return (long) value;
+		case DataTypes.DATATYPE_BOOL:
+			return (value != 0) ? 1 : 0;
+		}
+		return value;
+	}
+
+	// =====================================================================
+	// Statements
+	// =====================================================================
+
+	//
+	// statements()
+	// ============
+	// Compiles statements up to the next keyword that ends the enclosing
+	// statement, or the end of the algorithm.
+	//
+	private Stmt statements() throws STCompileException {
+		List<Stmt> list = new ArrayList<Stmt>();
+
+		while (true) {
+			Token token = peek();
+			if ((token.kind == END) || isTerminator(token) || isCaseLabel()) {
+				break;
+			}
+			Stmt stmt = statement();
+			if (stmt != null) {
+				list.add(stmt);
+			}
+		}
+
+		Stmt[] block = list.toArray(new Stmt[list.size()]);
+		if (block.length == 1) {
+			return block[0];
+		}
+		return values -> {
+			for (Stmt stmt : block) {
+				int flow = stmt.exec(values);
+				if (flow != NORMAL) {
+					return flow;
+				}
+			}
+			return NORMAL;
+		};
+	}
+
+	//
+	// isTerminator()
+	// ==============
+	private boolean isTerminator(Token token) {
+		if (token.kind != IDENTIFIER) {
+			return false;
+		}
+		switch (token.text) {
+		case "ELSIF":
+		case "ELSE":
+		case "END_IF":
+		case "END_CASE":
+		case "END_FOR":
+		case "END_WHILE":
+		case "UNTIL":
+			return true;
+		}
+		return false;
+	}
+
+	//
+	// isCaseLabel()
+	// =============
+	// A statement can never start with a number, so a number marks the label
+	// of the next branch of a CASE statement.
+	//
+	private boolean isCaseLabel() {
+		Token token = peek();
+		return (token.kind == NUMBER) || ((token.kind == SYMBOL) && token.text.equals("-") && (peek(1).kind == NUMBER));
+	}
+
+	//
+	// statement()
+	// ===========
+	private Stmt statement() throws STCompileException {
+		Token token = next();
+
+		if (token.kind == SYMBOL && token.text.equals(";")) {
+			return null;
+		}
+		if (token.kind != IDENTIFIER) {
+			throw error("Expected a statement but found '" + token.text + "'", token);
+		}
+
+		switch (token.text) {
+		case "IF":
+			return ifStatement();
+		case "CASE":
+			return caseStatement();
+		case "FOR":
+			return forStatement();
+		case "WHILE":
+			return whileStatement();
+		case "REPEAT":
+			return repeatStatement();
+		case "EXIT":
+			expectSymbol(";");
+			return values -> EXIT;
+		case "RETURN":
+			expectSymbol(";");
+			return values -> RETURN;
+		}
+
+		if (KEYWORDS.contains(token.text)) {
+			throw error("Unexpected " + token.text, token);
+		}
+
+		// Assignment.
+		int slot = variable(token);
+		expectSymbol(":=");
+		Node node = expression();
+		expectSymbol(";");
+		return assignment(slot, node);
+	}
+
+	//
+	// assignment()
+	// ============
+	private Stmt assignment(int slot, Node node) {
+		Expr expr = node.expr;
+		switch (slotDataTypes.get(slot)) {
+		case DataTypes.DATATYPE_REAL:
+			return values -> {
+				values[slot] = (float) expr.eval(values);
+				return NORMAL;
+			};
+		case DataTypes.DATATYPE_INT:
+			return values -> {
+				values[slot] = (short) (long) expr.eval(values);
+				return NORMAL;
+			};
+		case DataTypes.DATATYPE_LINT:
+			return values -> {
+				values[slot] = (long) expr.eval(values);
+				return NORMAL;
+			};
+		case DataTypes.DATATYPE_BOOL:
+			return values -> {
+				values[slot] = (expr.eval(values) != 0) ? 1 : 0;
+				return NORMAL;
+			};
+		default:
+			return values -> {
+				values[slot] = expr.eval(values);
+				return NORMAL;
+			};
+		}
+	}
+
+	//
+	// ifStatement()
+	// =============
+	private Stmt ifStatement() throws STCompileException {
+		List<Expr> conditions = new ArrayList<Expr>();
+		List<Stmt> branches = new ArrayList<Stmt>();
+		Stmt otherwise = null;
+
+		conditions.add(condition());
+		expectKeyword("THEN");
+		branches.add(statements());
+		while (isKeyword("ELSIF")) {
+			next();
+			conditions.add(condition());
+			expectKeyword("THEN");
+			branches.add(statements());
+		}
+		if (isKeyword("ELSE")) {
+			next();
+			otherwise = statements();
+		}
+		expectKeyword("END_IF");
+		optionalSemicolon();
+
+		Expr[] tests = conditions.toArray(new Expr[conditions.size()]);
+		Stmt[] bodies = branches.toArray(new Stmt[branches.size()]);
+		Stmt elseBody = otherwise;
+		return values -> {
+			for (int ptr = 0; ptr < tests.length; ptr++) {
+				if (tests[ptr].eval(values) != 0) {
+					return bodies[ptr].exec(values);
+				}
+			}
+			return (elseBody == null) ? NORMAL : elseBody.exec(values);
+		};
+	}
+
+	//
+	// caseStatement()
+	// ===============
+	private Stmt caseStatement() throws STCompileException {
+		Token start = peek();
+		Node selector = expression();
+		if (selector.type != STTypes.INT) {
+			throw error("CASE selector must be an integer", start);
+		}
+		expectKeyword("OF");
+
+		List<long[]> labels = new ArrayList<long[]>();
+		List<Stmt> branches = new ArrayList<Stmt>();
+		Stmt otherwise = null;
+
+		while (isCaseLabel()) {
+			// Each label is a value or a range. The ranges of a branch are
+			// held as pairs of low and high values.
+			List<Long> ranges = new ArrayList<Long>();
+			do {
+				long low = caseValue();
+				long high = low;
+				if (isSymbol("..")) {
+					next();
+					high = caseValue();
+				}
+				ranges.add(low);
+				ranges.add(high);
+			} while (isSymbol(",") && next() != null);
+			expectSymbol(":");
+
+			long[] range = new long[ranges.size()];
+			for (int ptr = 0; ptr < range.length; ptr++) {
+				range[ptr] = ranges.get(ptr);
+			}
+			labels.add(range);
+			branches.add(statements());
+		}
+		if (isKeyword("ELSE")) {
+			next();
+			otherwise = statements();
+		}
+		expectKeyword("END_CASE");
+		optionalSemicolon();
+
+		Expr select = selector.expr;
+		long[][] ranges = labels.toArray(new long[labels.size()][]);
+		Stmt[] bodies = branches.toArray(new Stmt[branches.size()]);
+		Stmt elseBody = otherwise;
+		return values -> {
+			long value = (long) select.eval(values);
+			for (int ptr = 0; ptr < ranges.length; ptr++) {
+				for (int ptrRange = 0; ptrRange < ranges[ptr].length; ptrRange += 2) {
+					if ((value >= ranges[ptr][ptrRange]) && (value <= ranges[ptr][ptrRange + 1])) {
+						return bodies[ptr].exec(values);
+					}
+				}
+			}
+			return (elseBody == null) ? NORMAL : elseBody.exec(values);
+		};
+	}
+
+	//
+	// caseValue()
+	// ===========
+	private long caseValue() throws STCompileException {
+		boolean isNegative = false;
+		if (isSymbol("-")) {
+			next();
+			isNegative = true;
+		}
+		Token token = next();
+		if ((token.kind != NUMBER) || (token.type != STTypes.INT)) {
+			throw error("CASE labels must be integers", token);
+		}
+		return isNegative ? -(long) token.value : (long) token.value;
+	}
+
+	//
+	// forStatement()
+	// ==============
+	private Stmt forStatement() throws STCompileException {
+		int slot = variable(next());
+		expectSymbol(":=");
+		Expr from = expression().expr;
+		expectKeyword("TO");
+		Expr to = expression().expr;
+		Expr by = values -> 1;
+		if (isKeyword("BY")) {
+			next();
+			by = expression().expr;
+		}
+		expectKeyword("DO");
+		Stmt body = statements();
+		expectKeyword("END_FOR");
+		optionalSemicolon();
+
+		int dataType = slotDataTypes.get(slot);
+		Expr step = by;
+		return values -> {
+			double last = to.eval(values);
+			double increment = step.eval(values);
+			int cntIterations = 0;
+			values[slot] = narrow(dataType, from.eval(values));
+			while ((increment >= 0) ? (values[slot] <= last) : (values[slot] >= last)) {
+				int flow = body.exec(values);
+				if (flow == EXIT) {
+					break;
+				} else if (flow == RETURN) {
+					return RETURN;
+				}
+				checkIterations(++cntIterations);
+				values[slot] = narrow(dataType, values[slot] + increment);
+			}
+			return NORMAL;
+		};
+	}
+
+	//
+	// whileStatement()
+	// ================
+	private Stmt whileStatement() throws STCompileException {
+		Expr test = condition();
+		expectKeyword("DO");
+		Stmt body = statements();
+		expectKeyword("END_WHILE");
+		optionalSemicolon();
+
+		return values -> {
+			int cntIterations = 0;
+			while (test.eval(values) != 0) {
+				int flow = body.exec(values);
+				if (flow == EXIT) {
+					break;
+				} else if (flow == RETURN) {
+					return RETURN;
+				}
+				checkIterations(++cntIterations);
+			}
+			return NORMAL;
+		};
+	}
+
+	//
+	// repeatStatement()
+	// =================
+	private Stmt repeatStatement() throws STCompileException {
+		Stmt body = statements();
+		expectKeyword("UNTIL");
+		Expr test = condition();
+		expectKeyword("END_REPEAT");
+		optionalSemicolon();
+
+		return values -> {
+			int cntIterations = 0;
+			do {
+				int flow = body.exec(values);
+				if (flow == EXIT) {
+					break;
+				} else if (flow == RETURN) {
+					return RETURN;
+				}
+				checkIterations(++cntIterations);
+			} while (test.eval(values) == 0);
+			return NORMAL;
+		};
+	}
+
+	//
+	// checkIterations()
+	// =================
+	private static void checkIterations(int cntIterations) {
+		if (cntIterations > MAX_ITERATIONS) {
+			throw new IllegalStateException("Loop did not finish after " + MAX_ITERATIONS + " iterations");
+		}
+	}
+
+	// =====================================================================
+	// Expressions
+	// =====================================================================
+
+	//
+	// Node
+	// ====
+	// A compiled expression and its type.
+	//
+	private static class Node {
+		final STTypes type;
+		final Expr expr;
+
+		Node(STTypes type, Expr expr) {
+			this.type = type;
+			this.expr = expr;
+		}
+	}
+
+	//
+	// condition()
+	// ===========
+	private Expr condition() throws STCompileException {
+		Token start = peek();
+		Node node = expression();
+		if (node.type != STTypes.BOOL) {
+			throw error("Condition must be BOOL", start);
+		}
+		return node.expr;
+	}
+
+	//
+	// expression()
+	// ============
+	// OR has the lowest precedence, then XOR, AND, equality, comparison,
+	// addition, multiplication, negation and exponentiation.
+	//
+	private Node expression() throws STCompileException {
+		Node left = xorExpression();
+		while (isKeyword("OR")) {
+			Token op = next();
+			left = logical(op, left, xorExpression());
+		}
+		return left;
+	}
+
+	private Node xorExpression() throws STCompileException {
+		Node left = andExpression();
+		while (isKeyword("XOR")) {
+			Token op = next();
+			left = logical(op, left, andExpression());
+		}
+		return left;
+	}
+
+	private Node andExpression() throws STCompileException {
+		Node left = equality();
+		while (isKeyword("AND") || isSymbol("&")) {
+			Token op = next();
+			left = logical(op, left, equality());
+		}
+		return left;
+	}
+
+	private Node equality() throws STCompileException {
+		Node left = comparison();
+		while (isSymbol("=") || isSymbol("<>")) {
+			Token op = next();
+			Node right = comparison();
+			Expr a = left.expr;
+			Expr b = right.expr;
+			if ((left.type == STTypes.BOOL) != (right.type == STTypes.BOOL)) {
+				throw error("Cannot compare BOOL with a number", op);
+			}
+			if (op.text.equals("=")) {
+				left = new Node(STTypes.BOOL, values -> (a.eval(values) == b.eval(values)) ? 1 : 0);
+			} else {
+				left = new Node(STTypes.BOOL, values -> (a.eval(values) != b.eval(values)) ? 1 : 0);
+			}
+		}
+		return left;
+	}
+
+	private Node comparison() throws STCompileException {
+		Node left = additive();
+		while (isSymbol("<") || isSymbol(">") || isSymbol("<=") || isSymbol(">=")) {
+			Token op = next();
+			Node right = additive();
+			numeric(op, left, right);
+			Expr a = left.expr;
+			Expr b = right.expr;
+			switch (op.text) {
+			case "<":
+				left = new Node(STTypes.BOOL, values -> (a.eval(values) < b.eval(values)) ? 1 : 0);
+				break;
+			case ">":
+				left = new Node(STTypes.BOOL, values -> (a.eval(values) > b.eval(values)) ? 1 : 0);
+				break;
+			case "<=":
+				left = new Node(STTypes.BOOL, values -> (a.eval(values) <= b.eval(values)) ? 1 : 0);
+				break;
+			default:
+				left = new Node(STTypes.BOOL, values -> (a.eval(values) >= b.eval(values)) ? 1 : 0);
+				break;
+			}
+		}
+		return left;
+	}
+
+	private Node additive() throws STCompileException {
+		Node left = multiplicative();
+		while (isSymbol("+") || isSymbol("-")) {
+			Token op = next();
+			Node right = multiplicative();
+			STTypes type = numeric(op, left, right);
+			Expr a = left.expr;
+			Expr b = right.expr;
+			if (op.text.equals("+")) {
+				left = new Node(type, values -> a.eval(values) + b.eval(values));
+			} else {
+				left = new Node(type, values -> a.eval(values) - b.eval(values));
+			}
+		}
+		return left;
+	}
+
+	private Node multiplicative() throws STCompileException {
+		Node left = unary();
+		while (isSymbol("*") || isSymbol("/") || isKeyword("MOD")) {
+			Token op = next();
+			Node right = unary();
+			STTypes type = numeric(op, left, right);
+			Expr a = left.expr;
+			Expr b = right.expr;
+			if (op.text.equals("*")) {
+				left = new Node(type, values -> a.eval(values) * b.eval(values));
+			} else if (op.text.equals("MOD")) {
+				if (type != STTypes.INT) {
+					throw error("MOD needs integer operands", op);
+				}
+				left = new Node(type, values -> {
+					long divisor = (long) b.eval(values);
+					return (divisor == 0) ? 0 : (long) a.eval(values) % divisor;
+				});
+			} else if (type == STTypes.INT) {
+				// Integer division truncates towards zero.
+				left = new Node(type, values -> {
+					long divisor = (long) b.eval(values);
+					return (divisor == 0) ? 0 : (long) a.eval(values) / divisor;
+				});
+			} else {
+				left = new Node(type, values -> a.eval(values) / b.eval(values));
+			}
+		}
+		return left;
+	}
+
+	private Node unary() throws STCompileException {
+		if (isSymbol("-")) {
+			Token op = next();
+			Node operand = unary();
+			if (operand.type == STTypes.BOOL) {
+				throw error("Cannot negate a BOOL", op);
+			}
+			Expr a = operand.expr;
+			return new Node(operand.type, values -> -a.eval(values));
+		} else if (isSymbol("+")) {
+			next();
+			return unary();
+		} else if (isKeyword("NOT")) {
+			next();
+			Node operand = unary();
+			Expr a = operand.expr;
+			if (operand.type == STTypes.BOOL) {
+				return new Node(STTypes.BOOL, values -> (a.eval(values) != 0) ? 0 : 1);
+			}
+			return new Node(STTypes.INT, values -> ~(long) a.eval(values));
+		}
+		return power();
+	}
+
+	private Node power() throws STCompileException {
+		Node left = primary();
+		while (isSymbol("**")) {
+			Token op = next();
+			Node right = primary();
+			numeric(op, left, right);
+			Expr a = left.expr;
+			Expr b = right.expr;
+			left = new Node(STTypes.REAL, values -> Math.pow(a.eval(values), b.eval(values)));
+		}
+		return left;
+	}
+
+	private Node primary() throws STCompileException {
+		Token token = next();
+
+		if (token.kind == NUMBER) {
+			double value = token.value;
+			return new Node(token.type, values -> value);
+		}
+		if ((token.kind == SYMBOL) && token.text.equals("(")) {
+			Node node = expression();
+			expectSymbol(")");
+			return node;
+		}
+		if (token.kind == IDENTIFIER) {
+			if (token.text.equals("TRUE")) {
+				return new Node(STTypes.BOOL, values -> 1);
+			} else if (token.text.equals("FALSE")) {
+				return new Node(STTypes.BOOL, values -> 0);
+			} else if (isSymbol("(")) {
+				return function(token);
+			}
+			int slot = variable(token);
+			return new Node(typeOf(slotDataTypes.get(slot)), values -> values[slot]);
+		}
+		throw error("Unexpected '" + token.text + "'", token);
+	}
+
+	//
+	// logical()
+	// =========
+	// AND, OR and XOR are logical on BOOL operands and bitwise on integers.
+	//
+	private Node logical(Token op, Node left, Node right) throws STCompileException {
+		Expr a = left.expr;
+		Expr b = right.expr;
+
+		if ((left.type == STTypes.BOOL) && (right.type == STTypes.BOOL)) {
+			switch (op.text) {
+			case "OR":
+				return new Node(STTypes.BOOL, values -> ((a.eval(values) != 0) || (b.eval(values) != 0)) ? 1 : 0);
+			case "XOR":
+				return new Node(STTypes.BOOL, values -> ((a.eval(values) != 0) != (b.eval(values) != 0)) ? 1 : 0);
+			default:
+				return new Node(STTypes.BOOL, values -> ((a.eval(values) != 0) && (b.eval(values) != 0)) ? 1 : 0);
+			}
+		} else if ((left.type == STTypes.INT) && (right.type == STTypes.INT)) {
+			switch (op.text) {
+			case "OR":
+				return new Node(STTypes.INT, values -> (long) a.eval(values) | (long) b.eval(values));
+			case "XOR":
+				return new Node(STTypes.INT, values -> (long) a.eval(values) ^ (long) b.eval(values));
+			default:
+				return new Node(STTypes.INT, values -> (long) a.eval(values) & (long) b.eval(values));
+			}
+		}
+		throw error(op.text + " needs BOOL or integer operands", op);
+	}
+
+	//
+	// numeric()
+	// =========
+	// Checks that both operands are numbers and returns the type of the result.
+	//
+	private STTypes numeric(Token op, Node left, Node right) throws STCompileException {
+		if ((left.type == STTypes.BOOL) || (right.type == STTypes.BOOL)) {
+			throw error("'" + op.text + "' cannot be applied to BOOL", op);
+		}
+		return ((left.type == STTypes.REAL) || (right.type == STTypes.REAL)) ? STTypes.REAL : STTypes.INT;
+	}
+
+	//
+	// function()
+	// ==========
+	// Compiles a call to one of the standard functions.
+	//
+	private Node function(Token name) throws STCompileException {
+		List<Node> args = new ArrayList<Node>();
+		expectSymbol("(");
+		if (!isSymbol(")")) {
+			args.add(expression());
+			while (isSymbol(",")) {
+				next();
+				args.add(expression());
+			}
+		}
+		expectSymbol(")");
+
+		String function = name.text;
+		if (function.contains("_TO_")) {
+			checkArgs(name, args, 1);
+			return conversion(name, function.substring(function.lastIndexOf("_TO_") + 4), args.get(0));
+		}
+
+		switch (function) {
+		case "ABS": {
+			checkArgs(name, args, 1);
+			Expr a = args.get(0).expr;
+			return new Node(args.get(0).type, values -> Math.abs(a.eval(values)));
+		}
+		case "SQRT":
+			return math(name, args, Math::sqrt);
+		case "LN":
+			return math(name, args, Math::log);
+		case "LOG":
+			return math(name, args, Math::log10);
+		case "EXP":
+			return math(name, args, Math::exp);
+		case "SIN":
+			return math(name, args, Math::sin);
+		case "COS":
+			return math(name, args, Math::cos);
+		case "TAN":
+			return math(name, args, Math::tan);
+		case "ASIN":
+			return math(name, args, Math::asin);
+		case "ACOS":
+			return math(name, args, Math::acos);
+		case "ATAN":
+			return math(name, args, Math::atan);
+
+		case "EXPT": {
+			checkArgs(name, args, 2);
+			Expr a = args.get(0).expr;
+			Expr b = args.get(1).expr;
+			return new Node(STTypes.REAL, values -> Math.pow(a.eval(values), b.eval(values)));
+		}
+		case "TRUNC": {
+			checkArgs(name, args, 1);
+			Expr a = args.get(0).expr;
+			return new Node(STTypes.INT, values -> (long) a.eval(values));
+		}
+		case "MIN":
+		case "MAX": {
+			if (args.size() < 2) {
+				throw error(function + " needs at least two arguments", name);
+			}
+			STTypes type = STTypes.INT;
+			Expr[] operands = new Expr[args.size()];
+			for (int ptr = 0; ptr < operands.length; ptr++) {
+				operands[ptr] = args.get(ptr).expr;
+				if (args.get(ptr).type == STTypes.REAL) {
+					type = STTypes.REAL;
+				}
+			}
+			boolean isMin = function.equals("MIN");
+			return new Node(type, values -> {
+				double result = operands[0].eval(values);
+				for (int ptr = 1; ptr < operands.length; ptr++) {
+					double value = operands[ptr].eval(values);
+					result = isMin ? Math.min(result, value) : Math.max(result, value);
+				}
+				return result;
+			});
+		}
+		case "LIMIT": {
+			checkArgs(name, args, 3);
+			Expr low = args.get(0).expr;
+			Expr in = args.get(1).expr;
+			Expr high = args.get(2).expr;
+			STTypes type = numeric(name, args.get(0), args.get(1));
+			type = numeric(name, new Node(type, in), args.get(2));
+			return new Node(type, values -> Math.max(low.eval(values), Math.min(in.eval(values), high.eval(values))));
+		}
+		case "SEL": {
+			checkArgs(name, args, 3);
+			Expr g = args.get(0).expr;
+			Expr in0 = args.get(1).expr;
+			Expr in1 = args.get(2).expr;
+			STTypes type = (args.get(1).type == STTypes.REAL) || (args.get(2).type == STTypes.REAL) ? STTypes.REAL : args.get(1).type;
+			return new Node(type, values -> (g.eval(values) != 0) ? in1.eval(values) : in0.eval(values));
+		}
+		case "MUX": {
+			if (args.size() < 2) {
+				throw error("MUX needs a selector and at least one input", name);
+			}
+			Expr k = args.get(0).expr;
+			STTypes type = args.get(1).type;
+			Expr[] inputs = new Expr[args.size() - 1];
+			for (int ptr = 0; ptr < inputs.length; ptr++) {
+				inputs[ptr] = args.get(ptr + 1).expr;
+				if (args.get(ptr + 1).type == STTypes.REAL) {
+					type = STTypes.REAL;
+				}
+			}
+			return new Node(type, values -> {
+				int ptr = (int) Math.max(0, Math.min(inputs.length - 1, (long) k.eval(values)));
+				return inputs[ptr].eval(values);
+			});
+		}
+		}
+		throw error("Unsupported function " + function, name);
+	}
+
+	//
+	// math()
+	// ======
+	private Node math(Token name, List<Node> args, java.util.function.DoubleUnaryOperator operator) throws STCompileException {
+		checkArgs(name, args, 1);
+		Expr a = args.get(0).expr;
+		return new Node(STTypes.REAL, values -> operator.applyAsDouble(a.eval(values)));
+	}
+
+	//
+	// conversion()
+	// ============
+	// Compiles a <type>_TO_<type> conversion. Conversions from REAL to an
+	// integer type round to the nearest value, then wrap to the target size.
+	//
+	private Node conversion(Token name, String targetType, Node arg) throws STCompileException {
+		Expr a = arg.expr;
+		boolean isReal = (arg.type == STTypes.REAL);
+
+		switch (targetType) {
+		case "BOOL":
+			return new Node(STTypes.BOOL, values -> (a.eval(values) != 0) ? 1 : 0);
+		case "REAL":
+			return new Node(STTypes.REAL, values -> (float) a.eval(values));
+		case "LREAL":
+			return new Node(STTypes.REAL, values -> a.eval(values));
+		case "SINT":
+			return integer(a, isReal, value -> (byte) value);
+		case "INT":
+			return integer(a, isReal, value -> (short) value);
+		case "DINT":
+			return integer(a, isReal, value -> (int) value);
+		case "LINT":
+		case "ULINT":
+		case "LWORD":
+		case "TIME":
+			return integer(a, isReal, value -> value);
+		case "USINT":
+		case "BYTE":
+			return integer(a, isReal, value -> value & 0xFFL);
+		case "UINT":
+		case "WORD":
+			return integer(a, isReal, value -> value & 0xFFFFL);
+		case "UDINT":
+		case "DWORD":
+			return integer(a, isReal, value -> value & 0xFFFFFFFFL);
+		}
+		throw error("Unsupported conversion " + name.text, name);
+	}
+
+	//
+	// integer()
+	// =========
+	private Node integer(Expr a, boolean isReal, java.util.function.LongUnaryOperator wrap) {
+		if (isReal) {
+			return new Node(STTypes.INT, values -> wrap.applyAsLong((long) Math.rint(a.eval(values))));
+		}
+		return new Node(STTypes.INT, values -> wrap.applyAsLong((long) a.eval(values)));
+	}
+
+	//
+	// checkArgs()
+	// ===========
+	private void checkArgs(Token name, List<Node> args, int cntArgs) throws STCompileException {
+		if (args.size() != cntArgs) {
+			throw error(name.text + " needs " + cntArgs + " argument" + ((cntArgs == 1) ? "" : "s"), name);
+		}
+	}
+
+	//
+	// variable()
+	// ==========
+	// Returns the slot of a variable reference.
+	//
+	private int variable(Token token) throws STCompileException {
+		if ((token.kind != IDENTIFIER) || KEYWORDS.contains(token.text)) {
+			throw error("Expected a variable but found '" + token.text + "'", token);
+		}
+		Integer slot = slots.get(token.text);
+		if (slot == null) {
+			throw error("Unknown variable " + token.text, token);
+		}
+		int dataType = slotDataTypes.get(slot);
+		if ((dataType == DataTypes.DATATYPE_STRING) || (dataType == DataTypes.DATATYPE_WSTRING)) {
+			throw error("STRING variables are not supported: " + token.text, token);
+		}
+		return slot;
+	}
+
+	//
+	// typeOf()
+	// ========
+	private static STTypes typeOf(int dataType) {
+		switch (dataType) {
+		case DataTypes.DATATYPE_BOOL:
+			return STTypes.BOOL;
+		case DataTypes.DATATYPE_INT:
+		case DataTypes.DATATYPE_LINT:
+			return STTypes.INT;
+		}
+		return STTypes.REAL;
+	}
+
+	// =====================================================================
+	// Tokens
+	// =====================================================================
+
+	//
+	// Token
+	// =====
+	private static class Token {
+		final int kind;
+		final String text;
+		final int line;
+		double value = 0;
+		STTypes type = STTypes.INT;
+
+		Token(int kind, String text, int line) {
+			this.kind = kind;
+			this.text = text;
+			this.line = line;
+		}
+	}
+
+	private Token peek() {
+		return tokens.get(ptrToken);
+	}
+
+	private Token peek(int offset) {
+		return tokens.get(Math.min(ptrToken + offset, tokens.size() - 1));
+	}
+
+	private Token next() {
+		Token token = tokens.get(ptrToken);
+		if (ptrToken < tokens.size() - 1) {
+			ptrToken++;
+		}
+		return token;
+	}
+
+	private boolean isKeyword(String keyword) {
+		return (peek().kind == IDENTIFIER) && peek().text.equals(keyword);
+	}
+
+	private boolean isSymbol(String symbol) {
+		return (peek().kind == SYMBOL) && peek().text.equals(symbol);
+	}
+
+	private void expectKeyword(String keyword) throws STCompileException {
+		if (!isKeyword(keyword)) {
+			throw error("Expected " + keyword + " but found '" + peek().text + "'");
+		}
+		next();
+	}
+
+	private void expectSymbol(String symbol) throws STCompileException {
+		if (!isSymbol(symbol)) {
+			throw error("Expected '" + symbol + "' but found '" + peek().text + "'");
+		}
+		next();
+	}
+
+	private void optionalSemicolon() {
+		if (isSymbol(";")) {
+			next();
+		}
+	}
+
+	private STCompileException error(String description) {
+		return error(description, peek());
+	}
+
+	private STCompileException error(String description, Token token) {
+		return new STCompileException(description, token.line);
+	}
+
+	//
+	// tokenize()
+	// ==========
+	// Splits the source into identifiers, numbers and symbols. Identifiers and
+	// keywords are converted to upper case since Structured Text is not case
+	// sensitive. Comments are skipped.
+	//
+	private List<Token> tokenize(String source) throws STCompileException {
+		List<Token> list = new ArrayList<Token>();
+		int line = 1;
+		int ptr = 0;
+		int length = source.length();
+
+		while (ptr < length) {
+			char ch = source.charAt(ptr);
+
+			if (ch == '\n') {
+				line++;
+				ptr++;
+			} else if (Character.isWhitespace(ch)) {
+				ptr++;
+			} else if (source.startsWith("(*", ptr)) {
+				int ptrEnd = source.indexOf("*)", ptr + 2);
+				if (ptrEnd < 0) {
+					throw new STCompileException("Comment is not closed", line);
+				}
+				for (int ptrChar = ptr; ptrChar < ptrEnd; ptrChar++) {
+					if (source.charAt(ptrChar) == '\n') {
+						line++;
+					}
+				}
+				ptr = ptrEnd + 2;
+			} else if (source.startsWith("//", ptr)) {
+				while ((ptr < length) && (source.charAt(ptr) != '\n')) {
+					ptr++;
+				}
+			} else if (Character.isLetter(ch) || (ch == '_')) {
+				int ptrStart = ptr;
+				while ((ptr < length) && (Character.isLetterOrDigit(source.charAt(ptr)) || (source.charAt(ptr) == '_'))) {
+					ptr++;
+				}
+				String word = source.substring(ptrStart, ptr).toUpperCase();
+				if ((ptr < length) && (source.charAt(ptr) == '#')) {
+					int ptrValue = ++ptr;
+					ptr = literalEnd(source, ptr);
+					list.add(typedLiteral(word, source.substring(ptrValue, ptr), line));
+				} else {
+					list.add(new Token(IDENTIFIER, word, line));
+				}
+			} else if (Character.isDigit(ch)) {
+				int ptrStart = ptr;
+				while ((ptr < length) && (Character.isDigit(source.charAt(ptr)) || (source.charAt(ptr) == '_'))) {
+					ptr++;
+				}
+				if ((ptr < length) && (source.charAt(ptr) == '#')) {
+					// A based integer such as 16#FF.
+					int base = Integer.parseInt(source.substring(ptrStart, ptr).replace("_", ""));
+					int ptrValue = ++ptr;
+					while ((ptr < length) && (Character.isLetterOrDigit(source.charAt(ptr)) || (source.charAt(ptr) == '_'))) {
+						ptr++;
+					}
+					list.add(number(source.substring(ptrStart, ptr), integerValue(source.substring(ptrValue, ptr), base, line), STTypes.INT, line));
+				} else {
+					boolean isReal = false;
+					if ((ptr + 1 < length) && (source.charAt(ptr) == '.') && Character.isDigit(source.charAt(ptr + 1))) {
+						isReal = true;
+						ptr++;
+						while ((ptr < length) && (Character.isDigit(source.charAt(ptr)) || (source.charAt(ptr) == '_'))) {
+							ptr++;
+						}
+					}
+					if ((ptr < length) && ((source.charAt(ptr) == 'E') || (source.charAt(ptr) == 'e'))) {
+						int ptrExponent = ptr + 1;
+						if ((ptrExponent < length) && ((source.charAt(ptrExponent) == '+') || (source.charAt(ptrExponent) == '-'))) {
+							ptrExponent++;
+						}
+						if ((ptrExponent < length) && Character.isDigit(source.charAt(ptrExponent))) {
+							isReal = true;
+							ptr = ptrExponent;
+							while ((ptr < length) && Character.isDigit(source.charAt(ptr))) {
+								ptr++;
+							}
+						}
+					}
+					String text = source.substring(ptrStart, ptr);
+					list.add(number(text, Double.parseDouble(text.replace("_", "")), isReal ? STTypes.REAL : STTypes.INT, line));
+				}
+			} else if ((ch == '\'') || (ch == '"')) {
+				throw new STCompileException("STRING literals are not supported", line);
+			} else {
+				String symbol = "";
+				for (String candidate : new String[] {":=", "<=", ">=", "<>", "**", ".."}) {
+					if (source.startsWith(candidate, ptr)) {
+						symbol = candidate;
+						break;
+					}
+				}
+				if (symbol.equals("")) {
+					if ("+-*/(),;<>=&:".indexOf(ch) < 0) {
+						throw new STCompileException("Unexpected character '" + ch + "'", line);
+					}
+					symbol = String.valueOf(ch);
+				}
+				list.add(new Token(SYMBOL, symbol, line));
+				ptr += symbol.length();
+			}
+		}
+		list.add(new Token(END, "end of algorithm", line));
+		return list;
+	}
+
+	//
+	// literalEnd()
+	// ============
+	// Finds the end of the value part of a typed literal such as REAL#-1.5E3
+	// or T#1s_500ms.
+	//
+	private static int literalEnd(String source, int ptr) {
+		int ptrStart = ptr;
+		while (ptr < source.length()) {
+			char ch = source.charAt(ptr);
+			char previous = (ptr > ptrStart) ? Character.toUpperCase(source.charAt(ptr - 1)) : ' ';
+			if (Character.isLetterOrDigit(ch) || (ch == '_') || (ch == '#')
+				|| ((ch == '.') && (ptr + 1 < source.length()) && Character.isDigit(source.charAt(ptr + 1)))
+				|| (((ch == '-') || (ch == '+')) && ((ptr == ptrStart) || (previous == 'E')))) {
+				ptr++;
+			} else {
+				break;
+			}
+		}
+		return ptr;
+	}
+
+	//
+	// typedLiteral()
+	// ==============
+	private Token typedLiteral(String prefix, String value, int line) throws STCompileException {
+		String text = prefix + "#" + value;
+		switch (prefix) {
+		case "T":
+		case "TIME":
+		case "LT":
+		case "LTIME":
+			Object milliseconds = SimulatedBlock.parseLiteral("T#" + value.replace("_", ""));
+			if (!(milliseconds instanceof Long)) {
+				throw new STCompileException("Invalid time " + text, line);
+			}
+			return number(text, (Long) milliseconds, STTypes.INT, line);
+
+		case "BOOL":
+			String flag = value.toUpperCase();
+			if (flag.equals("TRUE") || flag.equals("1")) {
+				return number(text, 1, STTypes.BOOL, line);
+			} else if (flag.equals("FALSE") || flag.equals("0")) {
+				return number(text, 0, STTypes.BOOL, line);
+			}
+			throw new STCompileException("Invalid BOOL " + text, line);
+
+		case "REAL":
+		case "LREAL":
+			try {
+				return number(text, Double.parseDouble(value.replace("_", "")), STTypes.REAL, line);
+			} catch (NumberFormatException nfe) {
+				throw new STCompileException("Invalid number " + text, line);
+			}
+
+		case "SINT":
+		case "INT":
+		case "DINT":
+		case "LINT":
+		case "USINT":
+		case "UINT":
+		case "UDINT":
+		case "ULINT":
+		case "BYTE":
+		case "WORD":
+		case "DWORD":
+		case "LWORD":
+			int base = 10;
+			String digits = value;
+			if (value.indexOf('#') > 0) {
+				base = Integer.parseInt(value.substring(0, value.indexOf('#')));
+				digits = value.substring(value.indexOf('#') + 1);
+			}
+			return number(text, integerValue(digits, base, line), STTypes.INT, line);
+		}
+		throw new STCompileException("Unsupported literal " + text, line);
+	}
+
+	//
+	// integerValue()
+	// ==============
+	private static long integerValue(String digits, int base, int line) throws STCompileException {
+		try {
+			return Long.parseLong(digits.replace("_", ""), base);
+		} catch (NumberFormatException nfe) {
+			throw new STCompileException("Invalid number " + digits, line);
+		}
+	}
+
+	//
+	// number()
+	// ========
+	private static Token number(String text, double value, STTypes type, int line) {
+		Token token = new Token(NUMBER, text, line);
+		token.value = value;
+		token.type = type;
+		return token;
+	}
+}
@@ -0,0 +1,25 @@
+//
+// SAMPLE LISTENER
+// ===============
+// Notified by the NIOserver thread of each value sampled by a diagnostic point,
+// after it has been added to the point's statistics.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// The point is identified by its harness ID rather than its SIFBinstanceID,
+// since the listener may be listening to several servers. The value is NaN
+// when the point sent something other than a number, such as the T sent by a
+// point that only captures an event. A listener must return quickly since it
+// holds up the packets behind it.
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version, moved out of NIOserver.java.
+//
+package fde;
+
+public interface SampleListener {
+	void sampleReceived(int harnessID, long timeStamp, double value);
+}
@@ -0,0 +1,128 @@
+//
+// SAMPLE SUBSCRIPTION
+// ===================
+// Registers an agent's interest in the packets from one diagnostic point. Once a
+// point has subscriptions, the NIOserver only queues the packets that at least
+// one of them wants, and throws the rest away as soon as their header has been
+// read. Scripts no longer need to flush() the points they are not reading.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// A subscription wants a packet when:
+//
+//   -  its command is one of the subscription's commands. By default these are
+//      SAMPLED_DATA and TIMESTAMP. The server queues TIMESTAMP packets whatever
+//      the subscriptions say, so that triggers and clock calibration still work.
+//
+//   -  for SAMPLED_DATA, the value passes the predicate, if there is one. Values
+//      that are not numbers, such as the samples of an event without data, are
+//      tested as NaN.
+//
+//   -  for SAMPLED_DATA, at least minInterval milliseconds of FORTE time have
+//      passed since the last sample the subscription wanted.
+//
+// The subscription is tested by the server thread, so the predicate must be
+// quick and must not block.
+//
+//     dp.subscribe(new SampleSubscription(500, value -> value > 30.0));
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+//
+package fde;
+
+import java.util.function.DoublePredicate;
+
+import fde.DiagnosticAgent.AgentModes;
+
+public class SampleSubscription {
+	private final long commands;
+	private final DoublePredicate predicate;
+	private final long minInterval;
+
+	// Only the server thread changes these.
+	private long lastSample = Long.MIN_VALUE;
+	private volatile long cntAccepted = 0;
+
+	//
+	// SampleSubscription()
+	// ====================
+	// Subscribes to every sampled value and the trigger timestamps.
+	//
+	public SampleSubscription() {
+		this(0, null);
+	}
+
+	//
+	// SampleSubscription()
+	// ====================
+	// minInterval  The shortest time in milliseconds between the samples wanted,
+	//              or zero for all of them.
+	//
+	// predicate    The test a sampled value must pass, or null to accept every
+	//              value.
+	//
+	// commands     The AgentModes of the packets wanted. If none are given,
+	//              SAMPLED_DATA and TIMESTAMP packets are wanted.
+	//
+	public SampleSubscription(long minInterval, DoublePredicate predicate, int... commands) {
+		long mask = 0;
+
+		if (minInterval < 0) {
+			throw new IllegalArgumentException("The minimum interval must not be negative");
+		}
+		if (commands.length == 0) {
+			commands = new int[] {AgentModes.SAMPLED_DATA, AgentModes.TIMESTAMP};
+		}
+		for (int command : commands) {
+			if ((command < 0) || (command >= 64)) {
+				throw new IllegalArgumentException("Unknown command " + command);
+			}
+			mask |= (1L << command);
+		}
+		this.commands = mask;
+		this.predicate = predicate;
+		this.minInterval = minInterval;
+	}
+
+	//
+	// wants()
+	// =======
+	// Tests a packet that has arrived and, if it is wanted, counts it.
+	//
+	boolean wants(int command, long timeStamp, double value) {
+		if ((command < 0) || (command >= 64) || ((commands & (1L << command)) == 0)) {
+			return false;
+		}
+		if (command == AgentModes.SAMPLED_DATA) {
+			if ((predicate != null) && !predicate.test(value)) {
+				return false;
+			}
+			if ((lastSample != Long.MIN_VALUE) && (timeStamp - lastSample < minInterval)) {
+				return false;
+			}
+			lastSample = timeStamp;
+		}
+		cntAccepted++;
+		return true;
+	}
+
+	//
+	// get acceptedCount()
+	// ===================
+	// The number of packets this subscription has wanted.
+	//
+	public long acceptedCount() {
+		return cntAccepted;
+	}
+
+	//
+	// get minInterval()
+	// =================
+	public long minInterval() {
+		return minInterval;
+	}
+}
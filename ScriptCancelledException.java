@@ -0,0 +1,25 @@
+//
+// SCRIPT CANCELLED EXCEPTION
+// ==========================
+// Thrown at a safe point in a diagnostic script when its ScriptContext has
+// been cancelled or has run out of its time budget. It unwinds the script
+// back to the agent, which records a partial result.
+//
+// (c) AUT University - 2026
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+//
+package fde;
+
+public class ScriptCancelledException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+	
+	//
+	// ScriptCancelledException()
+	// ==========================
+	public ScriptCancelledException(String reason) {
+		super(reason);
+	}
+}
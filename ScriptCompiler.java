@@ -0,0 +1,720 @@
+//
+// SCRIPT COMPILER
+// ===============
+// Compiles diagnostic scripts while the engine is running. The scripts held in
+// the diagnostic packages (.dpg) of an application are turned into Java source,
+// compiled in memory and registered with the ScriptRegistry. When a package is
+// changed, its scripts are compiled again and swapped in without restarting the
+// engine.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// The source generated for a script is a DiagnosticScript class that declares a
+// DiagnosticPoint variable for each diagnostic point in the package, named
+// FBNAME_EVENT, followed by the body of the script. This is the code that was
+// written by hand in the "Pre-processor generated code" blocks of the Scripts
+// class. A script is registered as fbName.scriptName, so each instance of a
+// function block type gets its own copy of the type's scripts.
+//
+// The source is compiled with the system Java compiler through javax.tools,
+// entirely in memory, and the class is defined as a hidden class in the fde
+// package so that it can use the engine's package-private classes just as the
+// scripts in the Scripts class do. A script must compile to a single class:
+// lambdas can be used but inner and anonymous classes cannot. The name of the
+// class includes a hash of the script, so each version of a script is a new
+// class and the old version keeps running for any agent that is part way
+// through it. A hidden class is not known to any class loader, so an old
+// version is unloaded once the registry and the agents no longer hold it.
+// On Java 17 the class that implements a lambda cannot call back into a
+// hidden class, so a script that uses lambdas is defined as an ordinary class
+// instead, and its old versions stay loaded until the engine is restarted.
+//
+// The class file for each source is cached on disk under the SHA-256 hash of
+// the source. An unchanged script is loaded from the cache in a millisecond or
+// two rather than being compiled again.
+//
+// refresh() is called by the team coordinator, so it only looks for changed
+// packages. They are compiled on the compiler's own thread, and their scripts
+// are swapped into the registry when they are ready.
+//
+// The names in a package are not trusted. The script names and the diagnostic
+// point names are escaped when they are written into string literals. Each
+// point's variable is its name with the characters that cannot be used in a 
+// Java identifier replaced by '_'. A point named twice is declared once, and if
+// two points give the same variable, or one would hide a variable the script 
+// is given, the later one has _2, _3 and so on added.
+//
+// The compiler is only available when the engine runs on a JDK rather than a
+// JRE.
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+// 18.10.2026 BRD refresh() compiles changed packages on a background thread. The
+//                names from the packages are escaped and made into valid,
+//                distinct variable names.
+// 18.10.2026 BRD Scripts are defined as hidden classes so that old versions can
+//                be unloaded, except for scripts that use lambdas.
+//
+package fde;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.ref.WeakReference;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.lang.model.SourceVersion;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+public class ScriptCompiler {
+	// The package that generated scripts are compiled into.
+	final static String SCRIPT_PACKAGE = "fde";
+	
+	// The internal name of the class that bootstraps lambdas.
+	private final static String LAMBDA_FACTORY = "java/lang/invoke/LambdaMetafactory";
+	
+	// Marks the line before the body in a generated script.
+	private final static String BODY_MARKER = "// Script body";
+	
+	// The names that the generated run() method already uses, which the
+	// diagnostic point variables must not hide.
+	private final static String[] RESERVED_NAMES = {"agentName", "dps", "server", "belief", "points", "isSilent"};
+
+	private boolean isSilent = false;
+
+	private final ScriptRegistry registry;
+	private final String cacheDirectory;
+	private final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+	private ErrorHandler errorHandler = new ErrorHandler();
+
+	// The diagnostic package of each function block that has scripts, and the
+	// time the package was last changed. compiling holds the packages being
+	// compiled in the background.
+	private final Map<String, String> packageFiles = new ConcurrentHashMap<String, String>();
+	private final Map<String, Long> packageTimes = new ConcurrentHashMap<String, Long>();
+	private final Map<String, Future<Integer>> compiling = new ConcurrentHashMap<String, Future<Integer>>();
+	
+	// The hidden class of each version of a script that is still loaded. The
+	// references are weak so that an old version can be unloaded once no
+	// registry entry or agent holds it.
+	private final Map<String, WeakReference<Class<?>>> loadedClasses = new ConcurrentHashMap<String, WeakReference<Class<?>>>();
+	private final ExecutorService compileExecutor = Executors.newSingleThreadExecutor(task -> {
+		Thread thread = new Thread(task, "ScriptCompiler");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private long cntCompiled = 0;
+	private long cntCacheHits = 0;
+
+	//
+	// ScriptCompiler()
+	// ================
+	// registry        The registry compiled scripts are registered with.
+	//
+	// cacheDirectory  The folder that compiled classes are cached in, or null
+	//                 to compile every script each time.
+	//
+	public ScriptCompiler(ScriptRegistry registry, String cacheDirectory) {
+		this.registry = registry;
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	//
+	// isAvailable()
+	// =============
+	// True if the engine is running on a JDK that includes the compiler.
+	//
+	public boolean isAvailable() {
+		return compiler != null;
+	}
+
+	//
+	// compilePackages()
+	// =================
+	// Compiles the scripts in the diagnostic package of every function block in
+	// the application, binds them to the diagnostic points in dps and registers
+	// them.
+	//
+	// returns  the number of scripts registered.
+	//
+	public int compilePackages(FunctionBlockApp fbapp, String applicationPath, DiagnosticPoints dps) {
+		int cntRegistered = 0;
+
+		for (int ptrfb = 0; ptrfb < fbapp.fbCount(); ptrfb++) {
+			FunctionBlock fb = fbapp.getfb(ptrfb);
+			String packageFile = applicationPath + fb.Type() + ".dpg";
+			if (new File(packageFile).exists()) {
+				cntRegistered += compilePackage(fb.Name(), packageFile, dps);
+			}
+		}
+		return cntRegistered;
+	}
+
+	//
+	// refresh()
+	// =========
+	// Starts compiling the scripts of any diagnostic package that has changed 
+	// since it was last compiled. The compile runs on the compiler's thread and 
+	// swaps the scripts into the registry when it finishes. An agent that is
+	// running the old version of a script finishes with it; its next goal uses
+	// the new version. Called periodically by the team coordinator, which it 
+	// does not hold up.
+	//
+	// returns  the number of scripts swapped in by the compiles that have 
+	//          finished since refresh() was last called.
+	//
+	public int refresh(DiagnosticPoints dps) {
+		int cntSwapped = 0;
+
+		for (Map.Entry<String, Future<Integer>> entry : compiling.entrySet()) {
+			if (entry.getValue().isDone()) {
+				compiling.remove(entry.getKey());
+				try {
+					cntSwapped += entry.getValue().get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException e) {
+					say("Could not compile the scripts of " + entry.getKey() + ": " + e.getCause());
+				}
+			}
+		}
+
+		for (Map.Entry<String, String> entry : packageFiles.entrySet()) {
+			String fbName = entry.getKey();
+			String packageFile = entry.getValue();
+			File file = new File(packageFile);
+			Long compiledTime = packageTimes.get(fbName);
+			if (file.exists() && (compiledTime != null) && (file.lastModified() != compiledTime) && !compiling.containsKey(fbName)) {
+				say("Diagnostic package " + packageFile + " has changed.");
+				packageTimes.put(fbName, file.lastModified());
+				compiling.put(fbName, compileExecutor.submit(() -> compilePackage(fbName, packageFile, dps)));
+			}
+		}
+		return cntSwapped;
+	}
+
+	//
+	// get isCompiling()
+	// =================
+	// True while a changed package is being compiled in the background.
+	//
+	public boolean isCompiling() {
+		return !compiling.isEmpty();
+	}
+
+	//
+	// shutdown()
+	// ==========
+	// Stops the background compiles. A compile that has started is finished.
+	//
+	public void shutdown() {
+		compileExecutor.shutdown();
+	}
+
+	//
+	// compilePackage()
+	// ================
+	// Compiles and registers the scripts in a diagnostic package. Scripts and
+	// diagnostic points with no name, and a second script with the same name,
+	// are left out.
+	//
+	private synchronized int compilePackage(String fbName, String packageFile, DiagnosticPoints dps) {
+		Diagnostics diag = new Diagnostics();
+		Set<String> scriptNames = new HashSet<String>();
+		int cntRegistered = 0;
+
+		packageTimes.put(fbName, new File(packageFile).lastModified());
+		if (diag.loadDiagnostics(packageFile) != XMLErrorCodes.LOADED) {
+			errorHandler.addDescription("Cannot load " + packageFile + ": " + diag.lastErrorDescription());
+			return 0;
+		}
+		if (diag.countScripts() == 0) {
+			return 0;
+		}
+		packageFiles.put(fbName, packageFile);
+
+		List<String> pointNames = new ArrayList<String>();
+		for (int ptrDP = 0; ptrDP < diag.countDP(); ptrDP++) {
+			if (diag.Event(ptrDP).trim().equals("")) {
+				errorHandler.addDescription("A diagnostic point in " + packageFile + " has no event name.");
+			} else if (!pointNames.contains(fbName + "." + diag.Event(ptrDP))) {
+				pointNames.add(fbName + "." + diag.Event(ptrDP));
+			}
+		}
+
+		for (int ptrScript = 0; ptrScript < diag.countScripts(); ptrScript++) {
+			if (diag.ScriptName(ptrScript).trim().equals("")) {
+				say("A script in " + packageFile + " has no name and was not compiled.");
+				continue;
+			}
+			String scriptName = fbName + "." + diag.ScriptName(ptrScript);
+			if (!scriptNames.add(scriptName)) {
+				say("Script " + scriptName + " is named twice in " + packageFile + ". Only the first was compiled.");
+				continue;
+			}
+			String source = generate(scriptName, pointNames, diag.ScriptSource(ptrScript));
+			DiagnosticScript script = compile(className(scriptName, pointNames, diag.ScriptSource(ptrScript)), source);
+
+			if ((script != null) && registry.bind(script, dps)) {
+				registry.register(script);
+				if ((!diag.ScriptAgent(ptrScript).equals("")) && (!diag.ScriptGoal(ptrScript).equals(""))) {
+					registry.bind(diag.ScriptAgent(ptrScript), diag.ScriptGoal(ptrScript), scriptName);
+				}
+				say("Registered script " + scriptName);
+				cntRegistered++;
+			} else if (script == null) {
+				say("Script " + scriptName + " in " + packageFile + " did not compile:\n" + errorHandler.Description());
+			}
+		}
+		return cntRegistered;
+	}
+
+	//
+	// generate()
+	// ==========
+	// Generates the source of a DiagnosticScript class from the body of a script.
+	//
+	// scriptName  The name the script is registered under.
+	//
+	// pointNames  The diagnostic points the script uses, as fbName.eventName.
+	//
+	// body        The statements of the script. They can use the diagnostic
+	//             points, the belief being built, agentName, dps, server, say()
+	//             and delay().
+	//
+	public String generate(String scriptName, List<String> pointNames, String body) {
+		StringBuilder source = new StringBuilder();
+		String className = className(scriptName, pointNames, body);
+		Map<String, String> variables = variableNames(pointNames);
+
+		source.append("package " + SCRIPT_PACKAGE + ";\n\n");
+		source.append("import static fde.Constants.*;\n");
+		source.append("import java.util.*;\n\n");
+		source.append("public class " + className + " implements DiagnosticScript {\n");
+		source.append("\tprivate static boolean isSilent = false;\n");
+		source.append("\tprivate Map<String, DiagnosticPoint> points = new HashMap<String, DiagnosticPoint>();\n");
+		source.append("\n\tpublic String name() {\n\t\treturn " + literal(scriptName) + ";\n\t}\n\n");
+
+		source.append("\tpublic String[] diagnosticPoints() {\n\t\treturn new String[] {");
+		int cntPoints = 0;
+		for (String pointName : variables.keySet()) {
+			source.append(((cntPoints++ > 0) ? ", " : "") + literal(pointName));
+		}
+		source.append("};\n\t}\n\n");
+
+		source.append("\tpublic void bind(Map<String, DiagnosticPoint> points) {\n");
+		source.append("\t\tthis.points = points;\n");
+		source.append("\t}\n\n");
+
+		// The diagnostic points are local variables, as they are in the scripts
+		// written by hand, so that lambdas in the body do not capture the script.
+		source.append("\tpublic Belief run(String agentName, DiagnosticPoints dps, NIOserver server) {\n");
+		for (Map.Entry<String, String> variable : variables.entrySet()) {
+			source.append("\t\tDiagnosticPoint " + variable.getValue() + " = points.get(" + literal(variable.getKey()) + ");\n");
+		}
+		source.append("\t\tBelief belief = new Belief();\n");
+		source.append("\t\tbelief.Name(" + literal(scriptName) + ");\n");
+		source.append("\t\tbelief.BeliefType(BeliefTypes.DYNAMIC);\n");
+		source.append("\t\tbelief.Veracity(VeracityTypes.UNDETERMINED);\n");
+		source.append("\t\t" + BODY_MARKER + "\n");
+		source.append(body);
+		source.append("\n\t\treturn belief;\n\t}\n\n");
+
+		source.append("\tprivate static void say(String whatToSay) {\n\t\tif (!isSilent) {\n\t\t\tSystem.out.println(whatToSay);\n\t\t}\n\t}\n\n");
+		source.append("\tprivate static void delay(long milliseconds) {\n\t\tScriptContext.sleep(milliseconds);\n\t}\n");
+		source.append("}\n");
+		return source.toString();
+	}
+
+	//
+	// variableNames()
+	// ===============
+	// Gives each diagnostic point, in order and once, the name of the variable
+	// that holds it in the generated script.
+	//
+	static Map<String, String> variableNames(List<String> pointNames) {
+		Map<String, String> variables = new LinkedHashMap<String, String>();
+		Set<String> used = new HashSet<String>(Arrays.asList(RESERVED_NAMES));
+
+		for (String pointName : pointNames) {
+			if (variables.containsKey(pointName)) {
+				continue;
+			}
+			StringBuilder name = new StringBuilder();
+			for (char ch : pointName.toCharArray()) {
+				name.append(Character.isJavaIdentifierPart(ch) && !Character.isIdentifierIgnorable(ch) ? ch : '_');
+			}
+			if ((name.length() == 0) || !Character.isJavaIdentifierStart(name.charAt(0))) {
+				name.insert(0, '_');
+			}
+			if (SourceVersion.isKeyword(name)) {
+				name.append('_');
+			}
+			String variable = name.toString();
+			for (int suffix = 2; used.contains(variable); suffix++) {
+				variable = name + "_" + suffix;
+			}
+			used.add(variable);
+			variables.put(pointName, variable);
+		}
+		return variables;
+	}
+
+	//
+	// literal()
+	// =========
+	// A Java string literal holding the text, with anything that would end the
+	// literal or the line escaped.
+	//
+	static String literal(String text) {
+		StringBuilder literal = new StringBuilder("\"");
+		for (char ch : text.toCharArray()) {
+			switch (ch) {
+			case '"':
+				literal.append("\\\"");
+				break;
+			case '\\':
+				literal.append("\\\\");
+				break;
+			case '\n':
+				literal.append("\\n");
+				break;
+			case '\r':
+				literal.append("\\r");
+				break;
+			default:
+				// Unicode escapes are read before the literal is, so the other
+				// control characters are written as octal escapes.
+				if ((ch < ' ') || (ch == 0x7f)) {
+					literal.append(String.format("\\%03o", (int) ch));
+				} else {
+					literal.append(ch);
+				}
+				break;
+			}
+		}
+		return literal.append('"').toString();
+	}
+
+	//
+	// compile()
+	// =========
+	// Compiles the source of a DiagnosticScript class, or loads it from the
+	// cache, and creates an instance of it.
+	//
+	// returns  the script, or null if it could not be compiled. The reason is
+	//          given by lastErrorDescription().
+	//
+	public synchronized DiagnosticScript compile(String className, String source) {
+		String hash = hash(source);
+		Path cacheFile = (cacheDirectory == null) ? null : Paths.get(cacheDirectory, hash + ".class");
+		errorHandler.clear();
+
+		if ((cacheFile != null) && Files.exists(cacheFile)) {
+			try {
+				DiagnosticScript script = instantiate(className, Files.readAllBytes(cacheFile));
+				cntCacheHits++;
+				return script;
+			} catch (IOException | LinkageError | ReflectiveOperationException e) {
+				// The cached class is unreadable or no longer links with the
+				// engine. Compile it again.
+				say("Discarding cached script " + cacheFile + ": " + e);
+			}
+		}
+
+		byte[] classBytes = compileClass(className, source);
+		if (classBytes == null) {
+			return null;
+		}
+		cntCompiled++;
+
+		try {
+			DiagnosticScript script = instantiate(className, classBytes);
+			if (cacheFile != null) {
+				writeCache(cacheFile, classBytes);
+			}
+			return script;
+		} catch (LinkageError | ReflectiveOperationException e) {
+			errorHandler.addDescription("Cannot load " + className + ": " + e);
+			return null;
+		}
+	}
+
+	//
+	// compileClass()
+	// ==============
+	// Compiles the source in memory and returns the class file.
+	//
+	private byte[] compileClass(String className, String source) {
+		if (compiler == null) {
+			errorHandler.addDescription("The Java compiler is not available. Run the engine on a JDK to compile scripts.");
+			return null;
+		}
+
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		StandardJavaFileManager standardManager = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8);
+		MemoryFileManager fileManager = new MemoryFileManager(standardManager);
+		List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"), "-g", "-nowarn");
+
+		boolean isCompiled = compiler.getTask(null, fileManager, diagnostics, options, null,
+				Arrays.asList(new SourceFile(SCRIPT_PACKAGE + "." + className, source))).call();
+
+		if (!isCompiled) {
+			// Errors in a generated script are reported against the lines of
+			// the script body rather than the generated class.
+			int bodyLine = 0;
+			int ptrBody = source.indexOf(BODY_MARKER);
+			if (ptrBody >= 0) {
+				bodyLine = source.substring(0, ptrBody).split("\n", -1).length;
+			}
+			for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+				if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+					long line = diagnostic.getLineNumber();
+					String where = ((bodyLine > 0) && (line > bodyLine)) ? "script line " + (line - bodyLine) : "line " + line;
+					errorHandler.addDescription(className + " " + where + ": " + diagnostic.getMessage(null));
+				}
+			}
+			return null;
+		}
+		if (fileManager.classFiles.size() != 1) {
+			errorHandler.addDescription(className + " must compile to a single class. Inner and anonymous classes are not supported.");
+			return null;
+		}
+		return fileManager.classFiles.values().iterator().next().toByteArray();
+	}
+
+	//
+	// instantiate()
+	// =============
+	// Defines the class in the fde package, unless this version of the script
+	// is still loaded, and creates an instance of it. The class is a hidden
+	// class unless the script uses lambdas.
+	//
+	private DiagnosticScript instantiate(String className, byte[] classBytes) throws ReflectiveOperationException {
+		WeakReference<Class<?>> loaded = loadedClasses.get(className);
+		Class<?> scriptClass = (loaded == null) ? null : loaded.get();
+
+		if (scriptClass == null) {
+			loadedClasses.values().removeIf(reference -> reference.get() == null);
+			if (!usesLambdas(classBytes)) {
+				scriptClass = MethodHandles.lookup().defineHiddenClass(classBytes, true).lookupClass();
+			} else {
+				try {
+					scriptClass = Class.forName(SCRIPT_PACKAGE + "." + className, false, ScriptCompiler.class.getClassLoader());
+				} catch (ClassNotFoundException e) {
+					scriptClass = MethodHandles.lookup().defineClass(classBytes);
+				}
+			}
+			loadedClasses.put(className, new WeakReference<Class<?>>(scriptClass));
+		}
+		if (!DiagnosticScript.class.isAssignableFrom(scriptClass)) {
+			throw new ClassCastException(scriptClass.getName() + " is not a DiagnosticScript");
+		}
+		return (DiagnosticScript) scriptClass.getDeclaredConstructor().newInstance();
+	}
+
+	//
+	// usesLambdas()
+	// =============
+	// True if a class file bootstraps lambdas through the LambdaMetafactory,
+	// whose name is then in the class file's constant pool.
+	//
+	static boolean usesLambdas(byte[] classBytes) {
+		byte[] name = LAMBDA_FACTORY.getBytes(StandardCharsets.UTF_8);
+
+		for (int ptr = 0; ptr + name.length <= classBytes.length; ptr++) {
+			int ptrName = 0;
+			while ((ptrName < name.length) && (classBytes[ptr + ptrName] == name[ptrName])) {
+				ptrName++;
+			}
+			if (ptrName == name.length) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	//
+	// writeCache()
+	// ============
+	// Writes the class file next to its final name and then moves it into place,
+	// so an engine reading the cache never sees a partly written class.
+	//
+	private void writeCache(Path cacheFile, byte[] classBytes) {
+		try {
+			Files.createDirectories(cacheFile.getParent());
+			Path tempFile = Files.createTempFile(cacheFile.getParent(), "script", ".tmp");
+			Files.write(tempFile, classBytes);
+			try {
+				Files.move(tempFile, cacheFile, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			say("Cannot cache script in " + cacheFile + ": " + e.getMessage());
+		}
+	}
+
+	//
+	// hash()
+	// ======
+	// The SHA-256 hash of the source and the Java version, in hex.
+	//
+	static String hash(String source) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(System.getProperty("java.specification.version").getBytes(StandardCharsets.UTF_8));
+			byte[] hash = digest.digest(source.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder();
+			for (byte b : hash) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform provides SHA-256.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	//
+	// className()
+	// ===========
+	// A valid Java class name for a version of a script. It is made from the
+	// script's name and a hash of its contents.
+	//
+	static String className(String scriptName, List<String> pointNames, String body) {
+		StringBuilder name = new StringBuilder("Script_");
+		for (char ch : scriptName.toCharArray()) {
+			name.append(Character.isJavaIdentifierPart(ch) ? ch : '_');
+		}
+		name.append("_" + hash(scriptName + "\n" + pointNames + "\n" + body).substring(0, 16));
+		return name.toString();
+	}
+
+	//
+	// get cntCompiled()
+	// =================
+	public long cntCompiled() {
+		return cntCompiled;
+	}
+
+	//
+	// get cntCacheHits()
+	// ==================
+	public long cntCacheHits() {
+		return cntCacheHits;
+	}
+
+	//
+	// lastErrorDescription()
+	// ======================
+	public String lastErrorDescription() {
+		return errorHandler.Description();
+	}
+
+	//
+	// say()
+	// =====
+	// Output a console message for use during development.
+	//
+	private void say(String whatToSay) {
+		if (!isSilent) {
+			System.out.println(whatToSay);
+		}
+	}
+
+	//
+	// SourceFile
+	// ==========
+	// A source file held in a string.
+	//
+	private static class SourceFile extends SimpleJavaFileObject {
+		private final String source;
+
+		SourceFile(String className, String source) {
+			super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+			this.source = source;
+		}
+
+		@Override
+		public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+			return source;
+		}
+	}
+
+	//
+	// ClassFile
+	// =========
+	// A class file written to memory by the compiler.
+	//
+	private static class ClassFile extends SimpleJavaFileObject {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		ClassFile(String className) {
+			super(URI.create("bytes:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+		}
+
+		@Override
+		public OutputStream openOutputStream() {
+			return bytes;
+		}
+
+		byte[] toByteArray() {
+			return bytes.toByteArray();
+		}
+	}
+
+	//
+	// MemoryFileManager
+	// =================
+	// Keeps the class files the compiler writes in memory.
+	//
+	private static class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+		final Map<String, ClassFile> classFiles = new LinkedHashMap<String, ClassFile>();
+
+		MemoryFileManager(StandardJavaFileManager fileManager) {
+			super(fileManager);
+		}
+
+		@Override
+		public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+			ClassFile classFile = new ClassFile(className);
+			classFiles.put(className, classFile);
+			return classFile;
+		}
+	}
+}
@@ -0,0 +1,299 @@
+//
+// SCRIPT CONTEXT
+// ==============
+// The execution context of a diagnostic script. It holds a cancellation token
+// and the wall-clock and CPU time budgets for the script. Every wait that a
+// script makes, whether in a DiagnosticPoint or in the script's own delay(), 
+// is a safe point that checks the context. When the context is cancelled or
+// a budget runs out, the script is unwound with a ScriptCancelledException.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// The agent creates a context for each goal and enters it on its own thread
+// before running the script:
+//
+//     ScriptContext context = new ScriptContext(goalName, wallBudget, cpuBudget);
+//     context.enter();
+//     try {
+//         ... run the script ...
+//         context.finished();
+//     } catch (ScriptCancelledException e) {
+//         ... record a partial result ...
+//     } finally {
+//         context.exit();
+//     }
+//
+// Any other thread, normally the team coordinator, can call cancel() to stop
+// the script. Waits in the context sleep on a latch that cancel() releases, so
+// a cancelled script is unwound straight away rather than at the end of its
+// current delay.
+//
+// The context also remembers the diagnostic point gates the script has closed.
+// If the script does not reach finished(), because it was cancelled, pre-empted
+// or failed, they are re-opened, so the application is not left with its data
+// flow blocked.
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+// 18.10.2026 BRD Budgets and waits use the EngineClock, so a wall-clock budget is
+//                measured in virtual time when a VirtualClock is installed.
+// 18.10.2026 BRD Holds the fault belief the script has been asked to diagnose.
+// 18.10.2026 BRD The closed gates are re-opened whenever the script ends without
+//                finishing, not only when it is cancelled.
+//
+package fde;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+public class ScriptContext {
+	private static final ThreadLocal<ScriptContext> currentContext = new ThreadLocal<ScriptContext>();
+	private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+	
+	private final String scriptName;
+	private final long wallBudget;      // Milliseconds, or zero for no limit.
+	private final long cpuBudget;       // Milliseconds, or zero for no limit.
+	
+	private long startTime = 0;
+	private long startCpuTime = 0;
+	private Thread scriptThread = null;
+	
+	private volatile String cancelReason = null;
+	private final CountDownLatch cancelled = new CountDownLatch(1);
+	
+	private List<DiagnosticPoint> closedGates = new CopyOnWriteArrayList<DiagnosticPoint>();
+	private volatile Belief belief = null;
+	private boolean isFinished = false;
+	
+	//
+	// ScriptContext()
+	// ===============
+	// scriptName  Used in messages and in the reason for a cancellation.
+	//
+	// wallBudget  The longest the script may run in milliseconds, or zero for
+	//             no limit.
+	//
+	// cpuBudget   The most CPU time the script may use in milliseconds, or
+	//             zero for no limit.
+	//
+	public ScriptContext(String scriptName, long wallBudget, long cpuBudget) {
+		this.scriptName = scriptName;
+		this.wallBudget = wallBudget;
+		this.cpuBudget = cpuBudget;
+	}
+	
+	//
+	// enter()
+	// =======
+	// Makes this the context of the script running on the current thread and
+	// starts its budgets.
+	//
+	public void enter() {
+		scriptThread = Thread.currentThread();
+		startTime = EngineClock.clock().currentTimeMillis();
+		startCpuTime = cpuTime();
+		currentContext.set(this);
+	}
+	
+	//
+	// finished()
+	// ==========
+	// Records that the script ran to its end.
+	//
+	public void finished() {
+		isFinished = true;
+	}
+	
+	//
+	// exit()
+	// ======
+	// Leaves the context. If the script did not finish, because it was 
+	// cancelled, pre-empted or threw an exception, any gates it left closed
+	// are re-opened.
+	//
+	public void exit() {
+		if (!isFinished || isCancelled()) {
+			for (DiagnosticPoint dp : closedGates) {
+				dp.gateOpen();
+			}
+		}
+		closedGates.clear();
+		currentContext.remove();
+	}
+	
+	//
+	// current()
+	// =========
+	// The context of the script running on this thread, or null if the thread
+	// is not running a script.
+	//
+	public static ScriptContext current() {
+		return currentContext.get();
+	}
+	
+	//
+	// cancel()
+	// ========
+	// Asks the script to stop. It is unwound at its next safe point, or
+	// straight away if it is waiting.
+	//
+	public void cancel(String reason) {
+		if (cancelReason == null) {
+			cancelReason = reason;
+		}
+		cancelled.countDown();
+		EngineClock.clock().wakeWaiters();
+	}
+	
+	//
+	// isCancelled()
+	// =============
+	public boolean isCancelled() {
+		return (cancelReason != null);
+	}
+	
+	//
+	// checkpoint()
+	// ============
+	// The safe point called by every wait in the scripts and diagnostic points.
+	// Gives the agent the chance to pre-empt its goal, then checks the context
+	// of the script running on this thread, if there is one.
+	//
+	public static void checkpoint() {
+		DiagnosticAgent.checkpoint();
+		ScriptContext context = currentContext.get();
+		if (context != null) {
+			context.check();
+		}
+	}
+	
+	//
+	// check()
+	// =======
+	// Cancels the script if it has used up either of its budgets, and throws
+	// if it has been cancelled.
+	//
+	public void check() {
+		if ((wallBudget > 0) && (elapsedTime() > wallBudget)) {
+			cancel(scriptName + " exceeded its time budget of " + wallBudget + " ms");
+		}
+		if ((cpuBudget > 0) && (Thread.currentThread() == scriptThread) && (cpuTimeUsed() > cpuBudget)) {
+			cancel(scriptName + " exceeded its CPU budget of " + cpuBudget + " ms");
+		}
+		if (cancelReason != null) {
+			throw new ScriptCancelledException(cancelReason);
+		}
+	}
+	
+	//
+	// sleep()
+	// =======
+	// Waits for the given time at a safe point. When the current thread is 
+	// running a script, the wait ends early if the script is cancelled or its
+	// wall-clock budget runs out.
+	//
+	public static void sleep(long milliseconds) {
+		checkpoint();
+		ScriptContext context = currentContext.get();
+		try {
+			if (context == null) {
+				EngineClock.clock().sleep(milliseconds);
+			} else {
+				if (context.wallBudget > 0) {
+					milliseconds = Math.max(0, Math.min(milliseconds, context.wallBudget - context.elapsedTime() + 1));
+				}
+				EngineClock.clock().sleep(milliseconds, context.cancelled);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		checkpoint();
+	}
+	
+	//
+	// gateClosed()
+	// ============
+	// Records that the script has closed the gate on this diagnostic point.
+	//
+	void gateClosed(DiagnosticPoint dp) {
+		if (!closedGates.contains(dp)) {
+			closedGates.add(dp);
+		}
+	}
+	
+	//
+	// gateOpened()
+	// ============
+	void gateOpened(DiagnosticPoint dp) {
+		closedGates.remove(dp);
+	}
+	
+	//
+	// get belief()
+	// ============
+	// The fault belief the script was started to diagnose, or null if it was
+	// not started for a belief.
+	//
+	public Belief belief() {
+		return belief;
+	}
+	
+	//
+	// set belief()
+	// ============
+	public void belief(Belief belief) {
+		this.belief = belief;
+	}
+	
+	//
+	// get scriptName()
+	// ================
+	public String scriptName() {
+		return scriptName;
+	}
+	
+	//
+	// get cancelReason()
+	// ==================
+	public String cancelReason() {
+		return (cancelReason == null) ? "" : cancelReason;
+	}
+	
+	//
+	// get elapsedTime()
+	// =================
+	// Milliseconds since the script started.
+	//
+	public long elapsedTime() {
+		return EngineClock.clock().currentTimeMillis() - startTime;
+	}
+	
+	//
+	// get cpuTimeUsed()
+	// =================
+	// Milliseconds of CPU time the script has used. This can only be measured
+	// on the script's own thread; elsewhere it returns zero.
+	//
+	public long cpuTimeUsed() {
+		if (Thread.currentThread() != scriptThread) {
+			return 0;
+		}
+		return (cpuTime() - startCpuTime) / 1000000;
+	}
+	
+	//
+	// cpuTime()
+	// =========
+	private static long cpuTime() {
+		if (threadMXBean.isCurrentThreadCpuTimeSupported()) {
+			return threadMXBean.getCurrentThreadCpuTime();
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,455 @@
+//
+// SCRIPT REGISTRY
+// ===============
+// Finds the diagnostic scripts available to the agents and binds them to the
+// goals of each agent. It replaces the switch statements on the agent's name
+// that chose which script an agent ran.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// Scripts come from three places:
+//
+//   1. The methods of the Scripts class. Each public method that takes the
+//      agent's name, the diagnostic points and the server (or just the points
+//      and the server) and returns a Belief or a boolean is registered under
+//      its method name. The method is looked up once and invoked through a
+//      cached MethodHandle.
+//
+//   2. DiagnosticScript implementations on the engine's class path, found with
+//      the ServiceLoader.
+//
+//   3. DiagnosticScript implementations in jar files or class folders in the
+//      application's scripts directory, also found with the ServiceLoader.
+//
+// A script found later replaces a script of the same name found earlier, so an
+// application can override the built-in scripts.
+//
+// Each agent and goal is bound to a script by name. An agent that has no script
+// bound for a goal has nothing to do for that goal.
+//
+// Fault beliefs are bound to the script that diagnoses them by the belief's name,
+// or by the start of it. The beliefs asserted by the anomaly detectors are named
+// fbName.eventName.detector, so binding "PUMP" routes every anomaly on the PUMP
+// block to one script and binding "PUMP.REQ" only those on its REQ event. The
+// longest binding that matches is used.
+//
+// Scripts held in the diagnostic packages are compiled and registered by the
+// ScriptCompiler.
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+// 18.10.2026 BRD A single script can be bound to the diagnostic points so that
+//                compiled scripts can be swapped in while the engine runs.
+// 18.10.2026 BRD Fault beliefs can be bound to the script that diagnoses them.
+// 18.10.2026 BRD The built-in scripts the standard agents run declare their
+//                diagnostic points, so they are checked and bound when the
+//                harness is created.
+//
+package fde;
+
+import static fde.Constants.*;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ScriptRegistry {
+	// The folder below the application path that holds script plugins.
+	public static final String SCRIPT_DIRECTORY = "scripts";
+
+	private boolean isSilent = false;
+
+	private final Map<String, DiagnosticScript> scripts = new ConcurrentHashMap<String, DiagnosticScript>();
+	private final Map<String, String> bindings = new ConcurrentHashMap<String, String>();
+	private final Map<String, String> beliefBindings = new ConcurrentHashMap<String, String>();
+	private final List<String> errors = new ArrayList<String>();
+	private final Scripts builtInScripts = new Scripts();
+
+	//
+	// ScriptRegistry()
+	// ================
+	// Creates a registry holding the built-in scripts, the scripts on the class
+	// path and the default goal bindings.
+	//
+	public ScriptRegistry() {
+		registerMethods(builtInScripts);
+		loadServices(getClass().getClassLoader());
+		bindDefaults();
+	}
+
+	//
+	// bindDefaults()
+	// ==============
+	// The scripts each of the standard agents has always run.
+	//
+	private void bindDefaults() {
+		declarePoints("alphaMonitor", "CURRENT_A_TO_D.REQ");
+		declarePoints("betaMonitor", "IED50_51.REQ", "IED50_51.CNF", "IED50_51.RESET_OUT", "IED50_51.CLEAR");
+		declarePoints("Overcurrent", "IED50_51.REQ", "IED50_51.CNF", "IED50_51.RESET_OUT", "IED50_51.CLEAR");
+		declarePoints("tripMux", "trip_multiplexer.CB_TRIP", "trip_multiplexer.CB_RESET");
+		declarePoints("gimbal2", "F_TO_C_CONV.REQ", "F_TO_C_CONV.ERROR", "F_TO_C_CONV.CNF");
+		
+		bind("alpha", WATCH_FOR_FAULTS, "alphaMonitor");
+		bind("beta", WATCH_FOR_FAULTS, "betaMonitor");
+		bind("beta", DIAGNOSE_FAULTS, "betaOvercurrent");
+		bind("Beta", DIAGNOSE_FAULTS, "Overcurrent");
+		bind("marvin", DIAGNOSE_FAULTS, "gimbal2");
+		bind("dennis", DIAGNOSE_FAULTS, "tripMux");
+	}
+
+	//
+	// declarePoints()
+	// ===============
+	// Declares the diagnostic points a built-in script uses.
+	//
+	private void declarePoints(String scriptName, String... pointNames) {
+		DiagnosticScript script = scripts.get(scriptName);
+		if (script instanceof MethodScript) {
+			((MethodScript) script).points = pointNames;
+		}
+	}
+	
+	//
+	// register()
+	// ==========
+	public void register(DiagnosticScript script) {
+		scripts.put(script.name(), script);
+	}
+
+	//
+	// find()
+	// ======
+	// Returns the script with this name, or null if there is none.
+	//
+	public DiagnosticScript find(String scriptName) {
+		return scripts.get(scriptName);
+	}
+
+	//
+	// count()
+	// =======
+	public int count() {
+		return scripts.size();
+	}
+
+	//
+	// bind()
+	// ======
+	// Makes an agent run a script when it is given a goal.
+	//
+	public void bind(String agentName, String goalName, String scriptName) {
+		bindings.put(agentName + "." + goalName, scriptName);
+	}
+
+	//
+	// unbind()
+	// ========
+	public void unbind(String agentName, String goalName) {
+		bindings.remove(agentName + "." + goalName);
+	}
+
+	//
+	// scriptFor()
+	// ===========
+	// Returns the script bound to an agent's goal, or null if there is none.
+	//
+	public DiagnosticScript scriptFor(String agentName, String goalName) {
+		String scriptName = bindings.get(agentName + "." + goalName);
+		return (scriptName == null) ? null : scripts.get(scriptName);
+	}
+
+	//
+	// isBound()
+	// =========
+	// True if the agent runs this script for the goal.
+	//
+	public boolean isBound(String agentName, String goalName, String scriptName) {
+		return scriptName.equals(bindings.get(agentName + "." + goalName));
+	}
+	
+	//
+	// bindBelief()
+	// ============
+	// Makes a script diagnose the fault beliefs whose names are beliefName or
+	// start with beliefName followed by a dot.
+	//
+	public void bindBelief(String beliefName, String scriptName) {
+		beliefBindings.put(beliefName, scriptName);
+	}
+	
+	//
+	// unbindBelief()
+	// ==============
+	public void unbindBelief(String beliefName) {
+		beliefBindings.remove(beliefName);
+	}
+	
+	//
+	// scriptForBelief()
+	// =================
+	// Returns the name of the script bound to a fault belief, or null if no
+	// registered script is bound to it.
+	//
+	public String scriptForBelief(String beliefName) {
+		String name = beliefName;
+		
+		while ((name != null) && (name.length() > 0)) {
+			String scriptName = beliefBindings.get(name);
+			if ((scriptName != null) && (scripts.get(scriptName) != null)) {
+				return scriptName;
+			}
+			int ptrSeparator = name.lastIndexOf('.');
+			name = (ptrSeparator > 0) ? name.substring(0, ptrSeparator) : null;
+		}
+		return null;
+	}
+	
+	//
+	// get errors()
+	// ============
+	// Describes the scripts that could not be loaded or bound.
+	//
+	public synchronized List<String> errors() {
+		return new ArrayList<String>(errors);
+	}
+
+	//
+	// load()
+	// ======
+	// Loads the scripts from the jar files and class folders in a directory. The
+	// directory itself is also searched, so a folder of compiled classes with its
+	// own META-INF/services entry works without being packaged into a jar.
+	//
+	// returns  the number of scripts loaded.
+	//
+	public int load(String directoryName) {
+		File directory = new File(directoryName);
+		List<URL> urls = new ArrayList<URL>();
+
+		if (!directory.isDirectory()) {
+			return 0;
+		}
+		try {
+			urls.add(directory.toURI().toURL());
+			File[] files = directory.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					if (file.isDirectory() || file.getName().endsWith(".jar")) {
+						urls.add(file.toURI().toURL());
+					}
+				}
+			}
+		} catch (MalformedURLException e) {
+			addError("Cannot load scripts from " + directoryName + ": " + e.getMessage());
+			return 0;
+		}
+
+		// The class loader stays open for as long as the scripts it loaded are
+		// registered.
+		URLClassLoader classLoader = new URLClassLoader(urls.toArray(new URL[urls.size()]), getClass().getClassLoader());
+		int cntLoaded = loadServices(classLoader);
+		say("Loaded " + cntLoaded + " script(s) from " + directoryName);
+		return cntLoaded;
+	}
+
+	//
+	// bind()
+	// ======
+	// Resolves the diagnostic points each script declared, once the diagnostic
+	// harness has been created. A script whose points are missing is removed so
+	// that it cannot fail part way through a goal.
+	//
+	public void bind(DiagnosticPoints dps) {
+		for (DiagnosticScript script : new ArrayList<DiagnosticScript>(scripts.values())) {
+			if (!bind(script, dps)) {
+				scripts.remove(script.name(), script);
+			}
+		}
+	}
+
+	//
+	// bind()
+	// ======
+	// Resolves the diagnostic points one script declared.
+	//
+	// returns  false if any of them are missing.
+	//
+	public boolean bind(DiagnosticScript script, DiagnosticPoints dps) {
+		Map<String, DiagnosticPoint> points = new HashMap<String, DiagnosticPoint>();
+		boolean isBound = true;
+
+		for (String pointName : script.diagnosticPoints()) {
+			int ptrSeparator = pointName.lastIndexOf('.');
+			DiagnosticPoint dp = null;
+			if (ptrSeparator > 0) {
+				dp = dps.find(pointName.substring(0, ptrSeparator), pointName.substring(ptrSeparator + 1));
+			}
+			if (dp == null) {
+				addError("Script " + script.name() + " needs diagnostic point " + pointName + " which is not in the harness.");
+				isBound = false;
+			} else {
+				points.put(pointName, dp);
+			}
+		}
+
+		if (isBound) {
+			script.bind(points);
+		}
+		return isBound;
+	}
+
+	//
+	// loadServices()
+	// ==============
+	private int loadServices(ClassLoader classLoader) {
+		int cntLoaded = 0;
+
+		try {
+			for (DiagnosticScript script : ServiceLoader.load(DiagnosticScript.class, classLoader)) {
+				// The parent class loader's scripts are found again through the
+				// child, so only count the ones that are new.
+				if (scripts.get(script.name()) == null || scripts.get(script.name()).getClass() != script.getClass()) {
+					register(script);
+					cntLoaded++;
+				}
+			}
+		} catch (ServiceConfigurationError e) {
+			addError("Cannot load script: " + e.getMessage());
+		}
+		return cntLoaded;
+	}
+
+	//
+	// registerMethods()
+	// =================
+	// Registers each script method of the Scripts class.
+	//
+	private void registerMethods(Scripts target) {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		MethodType scriptType = MethodType.methodType(Object.class, String.class, DiagnosticPoints.class, NIOserver.class);
+
+		for (Method method : Scripts.class.getDeclaredMethods()) {
+			Class<?>[] parameters = method.getParameterTypes();
+			Class<?> returnType = method.getReturnType();
+
+			if (!Modifier.isPublic(method.getModifiers()) || Modifier.isStatic(method.getModifiers())) {
+				continue;
+			}
+			if ((returnType != Belief.class) && (returnType != boolean.class)) {
+				continue;
+			}
+			try {
+				MethodHandle handle = lookup.unreflect(method).bindTo(target);
+				if ((parameters.length == 3) && (parameters[0] == String.class)
+					&& (parameters[1] == DiagnosticPoints.class) && (parameters[2] == NIOserver.class)) {
+					// script(agentName, dps, server)
+				} else if ((parameters.length == 2) && (parameters[0] == DiagnosticPoints.class) && (parameters[1] == NIOserver.class)) {
+					// script(dps, server) does not use the agent's name.
+					handle = MethodHandles.dropArguments(handle, 0, String.class);
+				} else {
+					continue;
+				}
+				register(new MethodScript(method.getName(), handle.asType(scriptType), target));
+			} catch (IllegalAccessException e) {
+				addError("Cannot register script " + method.getName() + ": " + e.getMessage());
+			}
+		}
+	}
+
+	//
+	// MethodScript
+	// ============
+	// Adapts a method of the Scripts class to a DiagnosticScript. A method that
+	// returns a boolean has its result turned into a belief. The points the
+	// script declared are bound to the fields of the Scripts instance.
+	//
+	private static class MethodScript implements DiagnosticScript {
+		private final String name;
+		private final MethodHandle handle;
+		private final Scripts target;
+		private String[] points = new String[0];
+		private volatile boolean isBound = false;
+
+		MethodScript(String name, MethodHandle handle, Scripts target) {
+			this.name = name;
+			this.handle = handle;
+			this.target = target;
+		}
+
+		@Override
+		public String name() {
+			return name;
+		}
+
+		@Override
+		public String[] diagnosticPoints() {
+			return points;
+		}
+
+		@Override
+		public void bind(Map<String, DiagnosticPoint> points) {
+			target.bind(points);
+			isBound = true;
+		}
+
+		@Override
+		public Belief run(String agentName, DiagnosticPoints dps, NIOserver server) {
+			Object result;
+			if ((points.length > 0) && !isBound) {
+				throw new ScriptCancelledException("Script " + name + " has not been bound to its diagnostic points.");
+			}
+			try {
+				result = (Object) handle.invokeExact(agentName, dps, server);
+			} catch (RuntimeException | Error e) {
+				// Lets cancellation and pre-emption reach the agent.
+				throw e;
+			} catch (Throwable e) {
+				throw new IllegalStateException("Script " + name + " failed", e);
+			}
+
+			if (result instanceof Belief) {
+				return (Belief) result;
+			}
+			Belief belief = new Belief();
+			belief.BeliefType(BeliefTypes.DYNAMIC);
+			belief.Veracity(Boolean.TRUE.equals(result) ? VeracityTypes.TRUE : VeracityTypes.FALSE);
+			belief.Description(name);
+			return belief;
+		}
+	}
+
+	//
+	// addError()
+	// ==========
+	private synchronized void addError(String description) {
+		errors.add(description);
+		say(description);
+	}
+
+	//
+	// say()
+	// =====
+	// Output a console message for use during development.
+	//
+	private void say(String whatToSay) {
+		if (!isSilent) {
+			System.out.println(whatToSay);
+		}
+	}
+}
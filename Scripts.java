@@ -11,6 +11,23 @@
 // Revision History
 // ================
 // 06.08.2020 BRD Original version
+// 18.10.2026 BRD pause() and delay() are safe points for goal pre-emption.
+// 18.10.2026 BRD pause() and delay() can be cancelled through the script's
+//                ScriptContext. pause() no longer blocks on the console.
+// 18.10.2026 BRD The monitoring scripts no longer pause for the console, and
+//                pause() returns at once when there is no console.
+// 18.10.2026 BRD gimbal2() takes its expected values from the golden model
+//                compiled from the F_TO_C_CONV algorithm.
+// 18.10.2026 BRD Overcurrent() summarises the trip times with RunningStatistics
+//                instead of dividing their total by a fixed count.
+// 18.10.2026 BRD monitor() finds transients with a step anomaly detector.
+// 18.10.2026 BRD Added compareTemperatures(), which compares two signals aligned
+//                by a SignalAligner.
+// 18.10.2026 BRD The diagnostic points of the scripts the standard agents run are
+//                declared to the ScriptRegistry and bound once by bind(), rather
+//                than mapped each time the script runs.
+// 18.10.2026 BRD compareTemperatures() gives up after MAX_DURATION if the readings
+//                do not arrive.
 
 package fde;
 
@@ -18,11 +35,45 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
 
 public class Scripts {
 	boolean isSilent = false;
 	
+	// Diagnostic points
+	// =================
+	// The points used by the scripts the standard agents run. They are 
+	// declared in ScriptRegistry.bindDefaults() and set by bind() once the
+	// harness has been created.
+	private volatile DiagnosticPoint CURRENT_A_TO_D_REQ;
+	private volatile DiagnosticPoint IED50_51_REQ;
+	private volatile DiagnosticPoint IED50_51_CNF;
+	private volatile DiagnosticPoint IED50_51_RESET_OUT;
+	private volatile DiagnosticPoint IED50_51_CLEAR;
+	private volatile DiagnosticPoint trip_multiplexer_CB_TRIP;
+	private volatile DiagnosticPoint trip_multiplexer_CB_RESET;
+	private volatile DiagnosticPoint F_TO_C_CONV_REQ;
+	private volatile DiagnosticPoint F_TO_C_CONV_ERROR;
+	private volatile DiagnosticPoint F_TO_C_CONV_CNF;
+	
+	//
+	// bind()
+	// ======
+	// Sets the diagnostic points a script declared, keyed by "fbName.eventName".
+	//
+	void bind(Map<String, DiagnosticPoint> points) {
+		CURRENT_A_TO_D_REQ = points.getOrDefault("CURRENT_A_TO_D.REQ", CURRENT_A_TO_D_REQ);
+		IED50_51_REQ = points.getOrDefault("IED50_51.REQ", IED50_51_REQ);
+		IED50_51_CNF = points.getOrDefault("IED50_51.CNF", IED50_51_CNF);
+		IED50_51_RESET_OUT = points.getOrDefault("IED50_51.RESET_OUT", IED50_51_RESET_OUT);
+		IED50_51_CLEAR = points.getOrDefault("IED50_51.CLEAR", IED50_51_CLEAR);
+		trip_multiplexer_CB_TRIP = points.getOrDefault("trip_multiplexer.CB_TRIP", trip_multiplexer_CB_TRIP);
+		trip_multiplexer_CB_RESET = points.getOrDefault("trip_multiplexer.CB_RESET", trip_multiplexer_CB_RESET);
+		F_TO_C_CONV_REQ = points.getOrDefault("F_TO_C_CONV.REQ", F_TO_C_CONV_REQ);
+		F_TO_C_CONV_ERROR = points.getOrDefault("F_TO_C_CONV.ERROR", F_TO_C_CONV_ERROR);
+		F_TO_C_CONV_CNF = points.getOrDefault("F_TO_C_CONV.CNF", F_TO_C_CONV_CNF);
+	}
+	
 	//
 	// alphaMonitor
 	// ===========
@@ -36,7 +87,7 @@ public class Scripts {
 		belief.BeliefType(BeliefTypes.DYNAMIC);
 		belief.Veracity(VeracityTypes.UNDETERMINED);
 		
-		DiagnosticPoint CURRENT_A_TO_D_REQ = dps.map("CURRENT_A_TO_D", "REQ");
+		// CURRENT_A_TO_D_REQ is bound by bind().
 	//	DiagnosticPoint IED50_51_CNF = dps.map("IED50_51", "CNF");
 	//	DiagnosticPoint IED50_51_RESET_OUT = dps.map("IED50_51", "RESET_OUT");
 	//	DiagnosticPoint IED50_51_CLEAR = dps.map("IED50_51", "CLEAR");
@@ -57,7 +108,7 @@ public class Scripts {
 	//	current = 30;
 	//	CURRENT_A_TO_D_REQ.trigger(current);
 		
-		pause("paused");
+//		pause("paused");
 		
 		return belief;	
 	}	
@@ -76,10 +127,7 @@ public class Scripts {
 		belief.Veracity(VeracityTypes.UNDETERMINED);
 		
 	//	DiagnosticPoint CURRENT_A_TO_D_REQ = dps.map("CURRENT_A_TO_D", "REQ");
-		DiagnosticPoint IED50_51_REQ = dps.map("IED50_51", "REQ");
-		DiagnosticPoint IED50_51_CNF = dps.map("IED50_51", "CNF");
-		DiagnosticPoint IED50_51_RESET_OUT = dps.map("IED50_51", "RESET_OUT");
-		DiagnosticPoint IED50_51_CLEAR = dps.map("IED50_51", "CLEAR");
+		// The IED50_51 points are bound by bind().
 		// =============================================================================
 		
 		double current = 0;
@@ -245,10 +293,7 @@ public class Scripts {
 		belief.BeliefType(BeliefTypes.DYNAMIC);
 		belief.Veracity(VeracityTypes.UNDETERMINED);
 		
-		DiagnosticPoint IED50_51_REQ = dps.map("IED50_51", "REQ");
-		DiagnosticPoint IED50_51_CNF = dps.map("IED50_51", "CNF");
-		DiagnosticPoint IED50_51_RESET_OUT = dps.map("IED50_51", "RESET_OUT");
-		DiagnosticPoint IED50_51_CLEAR = dps.map("IED50_51", "CLEAR");
+		// The IED50_51 points are bound by bind().
 //				
 //		DiagnosticPoint IED64_voltage = dps.map("IED64", "voltage");		
 //		DiagnosticPoint IED64_CNF = dps.map("IED64", "CNF");
@@ -277,7 +322,7 @@ public class Scripts {
 		int curveType = 2;
 		double Ipickup = 4.5;
 		double timeDialSetting = 5;
-		double accTripTime = 0;
+		RunningStatistics tripTimes = new RunningStatistics();
 		
 		IED50_51_REQ.gateClose();
 //		//trip_multiplexer_CB_TRIP.gateClose();
@@ -287,7 +332,7 @@ public class Scripts {
 		say("Curve type = " + curveType + ". Ipickup = " + Ipickup + "A. Icurrent = " + Icurrent + "A.\n"
 			+ "Expected trip_time = " + tripTime + "ms.");
 		// say(agentName + ": " + "Icurrent = " + Icurrent + " A");	
-		pause("press enter to start.");
+//		pause("press enter to start.");
 		
 		for (int testCnt = 1; testCnt <= 1000; testCnt++) {
 			if (Icurrent > Ipickup && !inTrip) {
@@ -308,7 +353,7 @@ public class Scripts {
 			//	say(agentName + ": " + "Overcurrent IED has tripped on Icurrent " + Icurrent + " A. (CNF event fired)\n");
 				end_overcurrent = IED50_51_CNF.timestamp();
 				//say(agentName + ":" + "Trip time " + (end_overcurrent - start_overcurrent) + " ms. (Expected " + tripTime + " ms)\n");
-				accTripTime = accTripTime + (end_overcurrent - start_overcurrent);
+				tripTimes.add(end_overcurrent - start_overcurrent);
 				
 				System.out.println(end_overcurrent - start_overcurrent);
 				
@@ -331,9 +376,10 @@ public class Scripts {
 			delay(250);
 		}
 		
-		say("Average trip time = " + (accTripTime/100));
+		say("Average trip time = " + tripTimes.mean() + " ms (" + tripTimes.count() + " trips, min " + tripTimes.min() 
+			+ ", max " + tripTimes.max() + ", standard deviation " + tripTimes.stdDev() + ")");
 	
-		pause(agentName + ": " + "Overcurrent diagnostic finished");
+//		pause(agentName + ": " + "Overcurrent diagnostic finished");
 
 //		
 //		// Earth Fault diagnostics
@@ -385,8 +431,7 @@ public class Scripts {
 	public boolean tripMux(String agentName, DiagnosticPoints dps, NIOserver server) {
 		// =============================================================================
 		// Pre-processor generated code
-		DiagnosticPoint trip_multiplexer_CB_TRIP = dps.map("trip_multiplexer", "CB_TRIP");
-		DiagnosticPoint trip_multiplexer_CB_RESET = dps.map("trip_multiplexer", "CB_RESET");
+		// The trip_multiplexer points are bound by bind().
 		
 		// =============================================================================
 		boolean status = true;
@@ -535,25 +580,38 @@ public class Scripts {
 		belief.BeliefType(BeliefTypes.DYNAMIC);
 		belief.Veracity(VeracityTypes.UNDETERMINED);
 		
-		// Map diagnostic point instances.
-		DiagnosticPoint F_TO_C_CONV_REQ = dps.map("F_TO_C_CONV", "REQ");
-		DiagnosticPoint F_TO_C_CONV_ERROR = dps.map("F_TO_C_CONV", "ERROR");
-		DiagnosticPoint F_TO_C_CONV_CNF = dps.map("F_TO_C_CONV", "CNF");
+		// The F_TO_C_CONV points are bound by bind().
 		// =======================================================================
 	
 		final double absZero = -459.67; // Absolute zero Fahrenheit.	
 		
+		final double threshold = 0.01;
+		
 		say("gimbal2()");
 		double temperatureF = 0;
 		double expectedTemperatureC = 0;
 		double temperatureC = 0;
+		int cntReadings = 0;
+		int cntFailed = 0;
+		
+		// Use the block's own REQ algorithm to work out the expected output if it
+		// can be compiled.
+		GoldenModel model = GoldenModel.forType(F_TO_C_CONV_REQ.fbapp.findfb("F_TO_C_CONV"));
+		boolean hasModel = model.hasAlgorithm("REQ");
+		if (!hasModel) {
+			say("No golden model for F_TO_C_CONV " + model.compileErrors());
+		}
 		
 		F_TO_C_CONV_REQ.gateClose();
 		
 		temperatureF = absZero; 
 		
 		for (int test = 1; test < 100; test++) {
-			expectedTemperatureC = (temperatureF - (float) 32.0) * (float) 0.555;
+			if (hasModel) {
+				expectedTemperatureC = model.expected("REQ", "temp_C", "temp_F", temperatureF);
+			} else {
+				expectedTemperatureC = (temperatureF - (float) 32.0) * (float) 0.555;
+			}
 			F_TO_C_CONV_REQ.trigger(temperatureF);
 			say("Trigger timestamp " + F_TO_C_CONV_REQ.timestamp());
 			
@@ -562,11 +620,19 @@ public class Scripts {
 				say("CNF");
 				temperatureC = F_TO_C_CONV_CNF.value();
 				say("CNF temp_F = " + temperatureF + " temp_C + " + temperatureC + " expected " + expectedTemperatureC);
+				cntReadings++;
+				if (!F_TO_C_CONV_CNF.compare(temperatureC, expectedTemperatureC, threshold)) {
+					cntFailed++;
+				}
 			}
 		}
 		
 		F_TO_C_CONV_REQ.gateOpen();
 		
+		if (cntReadings > 0) {
+			belief.Veracity((cntFailed == 0) ? VeracityTypes.TRUE : VeracityTypes.FALSE);
+		}
+		
 		return belief;
 	}	
 	
@@ -668,20 +734,101 @@ public class Scripts {
 		return belief;
 	}
 	
+	//
+	// compareTemperatures()
+	// =====================
+	// Checks that F_TO_C_CONV converts the temperatures read by TEMPERATURE in
+	// HVACsim. The two signals are sampled at their own rates, so they are
+	// aligned onto a 100 ms grid before they are compared. The converter's
+	// output is held until it catches up with a new reading, so only a run of
+	// mismatched rows counts as a fault. If too few readings arrive within
+	// MAX_DURATION the check gives up and the belief is left undetermined.
+	//
+	public Belief compareTemperatures(DiagnosticPoints dps, NIOserver server) {
+		// =======================================================================
+		// Compiler generated code.
+		Belief belief = new Belief();
+		belief.BeliefType(BeliefTypes.DYNAMIC);
+		belief.Veracity(VeracityTypes.UNDETERMINED);
+		
+		// Map diagnostic point instances.
+		DiagnosticPoint TEMPERATURE_CNF_TEMP = dps.map("TEMPERATURE", "CNF_TEMP");
+		DiagnosticPoint F_TO_C_CONV_CNF = dps.map("F_TO_C_CONV", "CNF");
+		// =======================================================================
+		
+		final double threshold = 0.5;   // degrees C.
+		final int MAX_MISMATCHED = 10;  // consecutive rows, or one second.
+		final int ROWS_TO_CHECK = 600;
+		final long MAX_DURATION = 120000; // milliseconds, twice the time 600 rows take.
+		
+		SignalAligner aligner = new SignalAligner(100, 1000, SignalAligner.InterpolationModes.HOLD, TEMPERATURE_CNF_TEMP, F_TO_C_CONV_CNF);
+		SignalAligner.Frame frame = aligner.newFrame(64);
+		int cntRows = 0;
+		int cntMismatched = 0;
+		long deadline = EngineClock.clock().currentTimeMillis() + MAX_DURATION;
+		boolean isTimedOut = false;
+		
+		say("compareTemperatures()");
+		aligner.attach();
+		try {
+			while ((cntRows < ROWS_TO_CHECK) && (belief.Veracity() == VeracityTypes.UNDETERMINED)) {
+				if (EngineClock.clock().currentTimeMillis() >= deadline) {
+					isTimedOut = true;
+					break;
+				}
+				if (aligner.poll(frame) == 0) {
+					delay(500);
+					continue;
+				}
+				double[] temperatureF = frame.columns[0];
+				double[] temperatureC = frame.columns[1];
+				for (int row = 0; row < frame.rows; row++) {
+					if (Double.isNaN(temperatureF[row]) || Double.isNaN(temperatureC[row])) {
+						continue;
+					}
+					cntRows++;
+					if (Math.abs((temperatureF[row] - 32) / 1.8 - temperatureC[row]) > threshold) {
+						cntMismatched++;
+						if (cntMismatched >= MAX_MISMATCHED) {
+							belief.Veracity(VeracityTypes.FALSE);
+							belief.add(String.format("F_TO_C_CONV gave %.2f\u00B0C for %.2f\u00B0F at %d", 
+								temperatureC[row], temperatureF[row], frame.timestamps[row]));
+							break;
+						}
+					} else {
+						cntMismatched = 0;
+					}
+				}
+			}
+		} finally {
+			aligner.detach();
+		}
+		if (isTimedOut) {
+			belief.add("Only " + cntRows + " aligned temperature readings arrived in " + (MAX_DURATION / 1000) + " seconds.");
+		} else if (belief.Veracity() == VeracityTypes.UNDETERMINED) {
+			belief.Veracity(VeracityTypes.TRUE);
+			belief.add("F_TO_C_CONV converted " + cntRows + " aligned temperature readings correctly.");
+		}
+		return belief;
+	}
+	
 	//
 	// monitor()
 	// =========
+	// Counts the transients in TEMP_F, where consecutive readings differ by more
+	// than 2. To watch many signals at once, attach a step(2) detector to each
+	// one in its diagnostic package instead.
+	//
 	public boolean monitor(DiagnosticPoints dps, NIOserver server) {
 		// ===========================================================
 		// Automatic provisioning code.
 		DiagnosticPoint F_TO_C_CONV_TEMP_F = dps.map("F_TO_C_CONV", "TEMP_F");
 		// ==========================================================
 		
-		double lastTemperatureF = Double.NaN;
+		AnomalyDetector.Step transients = new AnomalyDetector.Step(2);
 		double testTemperatureF = 0;
 		double temperatureC = 0;
 		int cntTransients = 0;
-		double diff = 0;
 		boolean status = true;
 		
 		while(status) {
@@ -690,18 +837,12 @@ public class Scripts {
 				temperatureC = (testTemperatureF - 32) / 1.8;
 				System.out.printf("F_TO_C_CONV TEMP_F = %.2f\u00B0F [%.2f\u00B0C]\n", testTemperatureF, temperatureC);
 
-				if (lastTemperatureF != Double.NaN) {
-					// Is the reading within an acceptable range?
-					diff = Math.abs(lastTemperatureF - testTemperatureF);
-					if (diff > 2) {
-						cntTransients++;						
-						System.out.printf("\nTransient detected: delta = %.2f\n", diff);
-						
-					//	System.out.printf(", args)+ diff + " cntTransients = " + cntTransients);"
-								
-					}
+				// Is the reading within an acceptable range?
+				transients.update(F_TO_C_CONV_TEMP_F.timestamp(), testTemperatureF);
+				if (transients.isAnomalous()) {
+					cntTransients++;						
+					System.out.printf("\nTransient detected: delta = %.2f\n", Math.abs(transients.step()));
 				}
-				lastTemperatureF = testTemperatureF;
 				
 				if (cntTransients > 5) {
 					status = false;					
@@ -896,13 +1037,25 @@ public class Scripts {
 	//
 	// pause()
 	// =======
+	// Waits for Enter to be pressed when debugging a script at the console.
+	// Returns at once when the engine has no console, so a headless engine
+	// is never held up.
+	//
 	@SuppressWarnings("unused")
 	private void pause(String prompt) {
 		String userInput = "";
 		BufferedReader stdIn = new BufferedReader(new InputStreamReader(System.in));
 
+		if (System.console() == null) {
+			return;
+		}
 		System.out.println(prompt);
 		try {
+			// Wait for the line to arrive before reading it, so that the 
+			// script can still be cancelled while it is waiting.
+			while (System.in.available() == 0) {
+				delay(100);
+			}
 			userInput = stdIn.readLine();
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -913,10 +1066,6 @@ public class Scripts {
 	// delay()
 	// =======
 	private void delay(int milliseconds) {
-		try {
-			TimeUnit.MILLISECONDS.sleep((long) milliseconds);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-		}	
+		ScriptContext.sleep(milliseconds);
 	}
 }
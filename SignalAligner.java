@@ -0,0 +1,431 @@
+//
+// SIGNAL ALIGNER
+// ==============
+// Aligns the values sampled by several diagnostic points onto a common time
+// grid, so that a script can compare signals that are sampled at different
+// rates by different AGENT_GATE instances.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// The grid has one row every period milliseconds of engine time. The points may
+// run on devices whose clocks differ, so the timestamp of each sample is first
+// converted to engine time with the clock offset estimated for its point, to the
+// nearest millisecond. A point whose clock offset has not yet been estimated is
+// taken to agree with the engine. Each row holds the value of every signal at
+// that moment, found in one of two ways:
+//
+//   HOLD    The last value sampled at or before the row's time.
+//
+//   LINEAR  Interpolated between the values sampled either side of the row's
+//           time. A signal with no value after the row's time yet is held.
+//
+// A signal with no value at or before the row's time is NaN.
+//
+// A row is completed as soon as every signal has sampled a value after the
+// row's time. A signal that is quiet cannot hold up the others for long: once
+// any signal is lateness milliseconds past a row's time, the row is completed
+// with what is known. The values of each signal must arrive in timestamp order,
+// which they do since each point has its own connection; a value older than one
+// already seen is ignored.
+//
+// The completed rows are read in columnar frames, with one array of primitive
+// values per signal, so they can be processed in tight loops:
+//
+//     SignalAligner aligner = new SignalAligner(100, 500, SignalAligner.InterpolationModes.LINEAR,
+//                                               TEMPERATURE_CNF_TEMP, F_TO_C_CONV_CNF);
+//     SignalAligner.Frame frame = aligner.newFrame(64);
+//     aligner.attach();
+//     ...
+//     while (aligner.poll(frame) > 0) {
+//         for (int row = 0; row < frame.rows; row++) {
+//             difference = frame.columns[0][row] - frame.columns[1][row];
+//             ...
+//
+// The samples and rows are held in fixed size ring buffers. If the rows are not
+// read quickly enough the oldest are dropped and counted. Reading a frame does
+// not allocate memory.
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+// 18.10.2026 BRD The samples are aligned in engine time, using the clock offset of
+//                each point, rather than on their raw FORTE timestamps.
+//
+package fde;
+
+import java.util.Arrays;
+
+public class SignalAligner implements SampleListener {
+	// The number of samples held for each signal while they wait to be
+	// aligned.
+	public static final int SAMPLE_CAPACITY = 4096;
+
+	// The number of completed rows held until they are read.
+	public static final int ROW_CAPACITY = 4096;
+
+	public enum InterpolationModes {
+		HOLD,
+		LINEAR
+	}
+
+	private final long period;
+	private final long lateness;
+	private final InterpolationModes interpolationMode;
+	private final DiagnosticPoint[] dps;
+	private int[] signalsByID = new int[0];
+
+	// Samples
+	// =======
+	// The samples of each signal that have not yet been passed by the grid,
+	// and the last sample that has.
+	private final long[][] sampleTimestamps;
+	private final double[][] sampleValues;
+	private final int[] sampleHead;
+	private final int[] sampleCount;
+	private final long[] lastTimestamp;
+	private final long[] previousTimestamp;
+	private final double[] previousValue;
+	private long maxTimestamp = Long.MIN_VALUE;
+
+	// Rows
+	// ====
+	private final long[] rowTimestamps = new long[ROW_CAPACITY];
+	private final double[][] rowValues;
+	private int rowHead = 0;
+	private int rowCount = 0;
+	private long nextRow = Long.MIN_VALUE;
+
+	private long cntRows = 0;
+	private long cntDroppedRows = 0;
+	private long cntDroppedSamples = 0;
+
+	//
+	// Frame
+	// =====
+	// A block of aligned rows. columns[signal][row] is the value of a signal at
+	// timestamps[row]. Only the first rows entries of each array are valid.
+	//
+	public static class Frame {
+		public final long[] timestamps;
+		public final double[][] columns;
+		public int rows = 0;
+
+		Frame(int cntSignals, int capacity) {
+			timestamps = new long[capacity];
+			columns = new double[cntSignals][capacity];
+		}
+
+		//
+		// get capacity()
+		// ==============
+		public int capacity() {
+			return timestamps.length;
+		}
+	}
+
+	//
+	// SignalAligner()
+	// ===============
+	// Aligns the signals by holding their last value.
+	//
+	public SignalAligner(long period, long lateness, DiagnosticPoint... dps) {
+		this(period, lateness, InterpolationModes.HOLD, dps);
+	}
+
+	//
+	// SignalAligner()
+	// ===============
+	// period             The time between the rows of the grid in milliseconds.
+	//
+	// lateness           How long in milliseconds a row waits for a quiet signal.
+	//
+	// interpolationMode  How the value of a signal between its samples is found.
+	//
+	// dps                The diagnostic points to align, one column each.
+	//
+	public SignalAligner(long period, long lateness, InterpolationModes interpolationMode, DiagnosticPoint... dps) {
+		if ((period < 1) || (lateness < 0)) {
+			throw new IllegalArgumentException("The period must be positive and the lateness at least zero");
+		}
+		if (dps.length == 0) {
+			throw new IllegalArgumentException("There are no diagnostic points to align");
+		}
+		this.period = period;
+		this.lateness = lateness;
+		this.interpolationMode = interpolationMode;
+		this.dps = dps.clone();
+
+		int cntSignals = dps.length;
+		sampleTimestamps = new long[cntSignals][SAMPLE_CAPACITY];
+		sampleValues = new double[cntSignals][SAMPLE_CAPACITY];
+		sampleHead = new int[cntSignals];
+		sampleCount = new int[cntSignals];
+		lastTimestamp = new long[cntSignals];
+		previousTimestamp = new long[cntSignals];
+		previousValue = new double[cntSignals];
+		rowValues = new double[cntSignals][ROW_CAPACITY];
+		Arrays.fill(lastTimestamp, Long.MIN_VALUE);
+		Arrays.fill(previousTimestamp, Long.MIN_VALUE);
+		Arrays.fill(previousValue, Double.NaN);
+
+		for (int ptrSignal = 0; ptrSignal < cntSignals; ptrSignal++) {
+			int harnessID = dps[ptrSignal].harnessID();
+			if (harnessID < 0) {
+				throw new IllegalArgumentException("Diagnostic point " + dps[ptrSignal].fbName + "." + dps[ptrSignal].fbEventName + " has not been deployed");
+			}
+			if (harnessID >= signalsByID.length) {
+				int length = signalsByID.length;
+				signalsByID = Arrays.copyOf(signalsByID, harnessID + 1);
+				Arrays.fill(signalsByID, length, signalsByID.length, -1);
+			}
+			if (signalsByID[harnessID] >= 0) {
+				throw new IllegalArgumentException("Diagnostic point " + dps[ptrSignal].fbName + "." + dps[ptrSignal].fbEventName + " is aligned twice");
+			}
+			signalsByID[harnessID] = ptrSignal;
+		}
+	}
+
+	//
+	// attach()
+	// ========
+	// Starts aligning the values as the servers receive them.
+	//
+	public void attach() {
+		for (DiagnosticPoint dp : dps) {
+			dp.server.addSampleListener(this);
+		}
+	}
+
+	//
+	// detach()
+	// ========
+	public void detach() {
+		for (DiagnosticPoint dp : dps) {
+			dp.server.removeSampleListener(this);
+		}
+	}
+
+	//
+	// newFrame()
+	// ==========
+	// Creates a frame that can hold up to capacity rows.
+	//
+	public Frame newFrame(int capacity) {
+		return new Frame(dps.length, capacity);
+	}
+
+	//
+	// sampleReceived()
+	// ================
+	// Called by a server thread with each sampled value. The FORTE timestamp
+	// is converted to engine time.
+	//
+	@Override
+	public void sampleReceived(int harnessID, long timeStamp, double value) {
+		if ((harnessID < 0) || (harnessID >= signalsByID.length) || (signalsByID[harnessID] < 0)) {
+			return;
+		}
+		int ptrSignal = signalsByID[harnessID];
+		add(ptrSignal, Math.round(dps[ptrSignal].engineTime(timeStamp)), value);
+	}
+
+	//
+	// add()
+	// =====
+	// Adds a sample to a signal and completes the rows it makes ready. The 
+	// timestamp is in engine time. A value that is not a number only shows that
+	// the signal has got this far.
+	//
+	public synchronized void add(int ptrSignal, long timeStamp, double value) {
+		if (timeStamp < lastTimestamp[ptrSignal]) {
+			cntDroppedSamples++;
+			return;
+		}
+		lastTimestamp[ptrSignal] = timeStamp;
+		maxTimestamp = Math.max(maxTimestamp, timeStamp);
+		if (nextRow == Long.MIN_VALUE) {
+			nextRow = Math.floorDiv(timeStamp, period) * period;
+		}
+
+		if (!Double.isNaN(value)) {
+			if (sampleCount[ptrSignal] == SAMPLE_CAPACITY) {
+				// The grid is too far behind; the oldest sample becomes the
+				// last one it has passed.
+				int ptrOldest = sampleHead[ptrSignal];
+				previousTimestamp[ptrSignal] = sampleTimestamps[ptrSignal][ptrOldest];
+				previousValue[ptrSignal] = sampleValues[ptrSignal][ptrOldest];
+				sampleHead[ptrSignal] = (ptrOldest + 1) % SAMPLE_CAPACITY;
+				sampleCount[ptrSignal]--;
+				cntDroppedSamples++;
+			}
+			int ptrTail = (sampleHead[ptrSignal] + sampleCount[ptrSignal]) % SAMPLE_CAPACITY;
+			sampleTimestamps[ptrSignal][ptrTail] = timeStamp;
+			sampleValues[ptrSignal][ptrTail] = value;
+			sampleCount[ptrSignal]++;
+		}
+		completeRows();
+	}
+
+	//
+	// completeRows()
+	// ==============
+	private void completeRows() {
+		// After a long silence, such as the application restarting, the rows
+		// that could not all be kept are skipped.
+		long lastRow = maxTimestamp - lateness;
+		if ((lastRow - nextRow) / period > ROW_CAPACITY) {
+			nextRow = Math.floorDiv(lastRow, period) * period - (ROW_CAPACITY - 1) * period;
+		}
+		while (isReady(nextRow)) {
+			completeRow(nextRow);
+			nextRow += period;
+		}
+	}
+
+	//
+	// isReady()
+	// =========
+	// A row is ready when every signal has gone past it, or when the row is too
+	// late to wait for the signals that have not.
+	//
+	private boolean isReady(long rowTimestamp) {
+		if (maxTimestamp - rowTimestamp >= lateness) {
+			return true;
+		}
+		for (int ptrSignal = 0; ptrSignal < dps.length; ptrSignal++) {
+			if (lastTimestamp[ptrSignal] <= rowTimestamp) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	//
+	// completeRow()
+	// =============
+	private void completeRow(long rowTimestamp) {
+		if (rowCount == ROW_CAPACITY) {
+			rowHead = (rowHead + 1) % ROW_CAPACITY;
+			rowCount--;
+			cntDroppedRows++;
+		}
+		int ptrRow = (rowHead + rowCount) % ROW_CAPACITY;
+		rowTimestamps[ptrRow] = rowTimestamp;
+
+		for (int ptrSignal = 0; ptrSignal < dps.length; ptrSignal++) {
+			long[] timestamps = sampleTimestamps[ptrSignal];
+			double[] values = sampleValues[ptrSignal];
+
+			// Pass the samples at or before the row.
+			while ((sampleCount[ptrSignal] > 0) && (timestamps[sampleHead[ptrSignal]] <= rowTimestamp)) {
+				previousTimestamp[ptrSignal] = timestamps[sampleHead[ptrSignal]];
+				previousValue[ptrSignal] = values[sampleHead[ptrSignal]];
+				sampleHead[ptrSignal] = (sampleHead[ptrSignal] + 1) % SAMPLE_CAPACITY;
+				sampleCount[ptrSignal]--;
+			}
+
+			double value = previousValue[ptrSignal];
+			if ((interpolationMode == InterpolationModes.LINEAR) && (sampleCount[ptrSignal] > 0) && !Double.isNaN(value)) {
+				long nextTimestamp = timestamps[sampleHead[ptrSignal]];
+				double nextValue = values[sampleHead[ptrSignal]];
+				double fraction = (double) (rowTimestamp - previousTimestamp[ptrSignal]) / (nextTimestamp - previousTimestamp[ptrSignal]);
+				value += fraction * (nextValue - value);
+			}
+			rowValues[ptrSignal][ptrRow] = value;
+		}
+		rowCount++;
+		cntRows++;
+	}
+
+	//
+	// poll()
+	// ======
+	// Moves as many completed rows as the frame will hold into it, oldest
+	// first.
+	//
+	// returns  the number of rows in the frame, which is zero if none are
+	//          ready.
+	//
+	public synchronized int poll(Frame frame) {
+		int cntCopy = Math.min(rowCount, frame.capacity());
+		int cntFirst = Math.min(cntCopy, ROW_CAPACITY - rowHead);
+
+		// The rows may wrap around the end of the ring buffer.
+		System.arraycopy(rowTimestamps, rowHead, frame.timestamps, 0, cntFirst);
+		System.arraycopy(rowTimestamps, 0, frame.timestamps, cntFirst, cntCopy - cntFirst);
+		for (int ptrSignal = 0; ptrSignal < dps.length; ptrSignal++) {
+			System.arraycopy(rowValues[ptrSignal], rowHead, frame.columns[ptrSignal], 0, cntFirst);
+			System.arraycopy(rowValues[ptrSignal], 0, frame.columns[ptrSignal], cntFirst, cntCopy - cntFirst);
+		}
+		rowHead = (rowHead + cntCopy) % ROW_CAPACITY;
+		rowCount -= cntCopy;
+		frame.rows = cntCopy;
+		return cntCopy;
+	}
+
+	//
+	// flush()
+	// =======
+	// Completes the rows up to the latest sample without waiting for the
+	// quiet signals.
+	//
+	public synchronized void flush() {
+		while ((nextRow != Long.MIN_VALUE) && (nextRow <= maxTimestamp)) {
+			completeRow(nextRow);
+			nextRow += period;
+		}
+	}
+
+	//
+	// get signalCount()
+	// =================
+	public int signalCount() {
+		return dps.length;
+	}
+
+	//
+	// get signalName()
+	// ================
+	// The name of the signal in a column, such as F_TO_C_CONV.CNF.
+	//
+	public String signalName(int ptrSignal) {
+		return dps[ptrSignal].fbName + "." + dps[ptrSignal].fbEventName;
+	}
+
+	//
+	// get period()
+	// ============
+	public long period() {
+		return period;
+	}
+
+	//
+	// get rowCount()
+	// ==============
+	// The number of rows completed since the aligner was created.
+	//
+	public synchronized long rowCount() {
+		return cntRows;
+	}
+
+	//
+	// get droppedRows()
+	// =================
+	// The number of completed rows dropped because they were not read in time.
+	//
+	public synchronized long droppedRows() {
+		return cntDroppedRows;
+	}
+
+	//
+	// get droppedSamples()
+	// ====================
+	// The number of samples dropped because they arrived out of order or the
+	// grid was too far behind to hold them.
+	//
+	public synchronized long droppedSamples() {
+		return cntDroppedSamples;
+	}
+}
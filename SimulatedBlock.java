@@ -0,0 +1,269 @@
+//
+// SIMULATED FUNCTION BLOCK
+// ========================
+// The run-time state of one function block instance executed by the
+// SimulatedRuntime. It holds the current value of every input and output
+// variable and gives the block's behaviour access to its values, its
+// parameters, the clock and the events it can fire.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// Values are held as Java objects: Boolean, Long, Double or String. The getters
+// convert between them so a behaviour does not need to know exactly how a value
+// arrived. Parameters and initial values are parsed from their IEC 61499 literal
+// form, for example TRUE, 42, 3.5, 'text' or T#100ms.
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+//
+package fde;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class SimulatedBlock {
+	private final FunctionBlock fb;
+	private final FunctionBlockBehaviour behaviour;
+	final SimulatedRuntime runtime;
+
+	private final Map<String, Object> values = new HashMap<String, Object>();
+
+	// The source of each connected data input, as the name of the source block
+	// and the name of its output.
+	final Map<String, String[]> inputSources = new HashMap<String, String[]>();
+
+	//
+	// SimulatedBlock()
+	// ================
+	SimulatedBlock(FunctionBlock fb, FunctionBlockBehaviour behaviour, SimulatedRuntime runtime) {
+		this.fb = fb;
+		this.behaviour = behaviour;
+		this.runtime = runtime;
+
+		for (int ptrVar = 0; ptrVar < fb.VarCount(); ptrVar++) {
+			FunctionBlockVariable fbVar = fb.Var(ptrVar);
+			if ((fbVar.InitialValue() != null) && (!fbVar.InitialValue().equals(""))) {
+				values.put(fbVar.Name(), parseLiteral(fbVar.InitialValue()));
+			}
+		}
+		for (int ptrParameter = 0; ptrParameter < fb.ParameterCount(); ptrParameter++) {
+			FunctionBlockParameter parameter = fb.Parameter(ptrParameter);
+			values.put(parameter.Name(), parseLiteral(parameter.Value()));
+		}
+	}
+
+	//
+	// get name()
+	// ==========
+	public String name() {
+		return fb.Name();
+	}
+
+	//
+	// get type()
+	// ==========
+	public String type() {
+		return fb.Type();
+	}
+
+	//
+	// get fb()
+	// ========
+	// The function block definition this block was created from.
+	//
+	public FunctionBlock fb() {
+		return fb;
+	}
+
+	//
+	// get behaviour()
+	// ===============
+	FunctionBlockBehaviour behaviour() {
+		return behaviour;
+	}
+
+	//
+	// get value()
+	// ===========
+	// The current value of an input or output, or null if it has not been set.
+	//
+	public Object value(String name) {
+		return values.get(name);
+	}
+
+	//
+	// set value()
+	// ===========
+	public void value(String name, Object value) {
+		values.put(name, value);
+	}
+
+	//
+	// getReal()
+	// =========
+	public double getReal(String name) {
+		Object value = values.get(name);
+		if (value instanceof Number) {
+			return ((Number) value).doubleValue();
+		} else if (value instanceof Boolean) {
+			return ((Boolean) value) ? 1 : 0;
+		} else if (value instanceof String) {
+			try {
+				return Double.parseDouble((String) value);
+			} catch (NumberFormatException nfe) {
+				return 0;
+			}
+		}
+		return 0;
+	}
+
+	//
+	// getInt()
+	// ========
+	public long getInt(String name) {
+		Object value = values.get(name);
+		if (value instanceof Number) {
+			return ((Number) value).longValue();
+		}
+		return Math.round(getReal(name));
+	}
+
+	//
+	// getBool()
+	// =========
+	public boolean getBool(String name) {
+		Object value = values.get(name);
+		if (value instanceof Boolean) {
+			return (Boolean) value;
+		}
+		return getReal(name) != 0;
+	}
+
+	//
+	// getString()
+	// ===========
+	public String getString(String name) {
+		Object value = values.get(name);
+		return (value == null) ? "" : value.toString();
+	}
+
+	//
+	// fire()
+	// ======
+	// Fires an output event. It is delivered to every connected input event
+	// in the order the events were fired.
+	//
+	public void fire(String eventName) {
+		runtime.fire(this, eventName);
+	}
+
+	//
+	// schedule()
+	// ==========
+	// Delivers an event to this block's own behaviour after a delay in
+	// milliseconds. This is how a block implements timers and cycles.
+	//
+	public void schedule(long delay, String eventName) {
+		runtime.schedule(this, delay, eventName);
+	}
+
+	//
+	// now()
+	// =====
+	// The current time in epoch milliseconds from the engine's clock.
+	//
+	public long now() {
+		return EngineClock.clock().currentTimeMillis();
+	}
+
+	//
+	// parseLiteral()
+	// ==============
+	// Converts an IEC 61499 literal into a value. Times such as T#100ms are
+	// converted to milliseconds.
+	//
+	static Object parseLiteral(String literal) {
+		String text = literal.trim();
+		String upper = text.toUpperCase();
+
+		if (upper.equals("TRUE")) {
+			return Boolean.TRUE;
+		} else if (upper.equals("FALSE")) {
+			return Boolean.FALSE;
+		} else if (upper.startsWith("T#") || upper.startsWith("TIME#")) {
+			return parseTime(upper.substring(upper.indexOf('#') + 1));
+		} else if ((text.length() >= 2) && (text.startsWith("'") || text.startsWith("\""))
+				   && (text.charAt(text.length() - 1) == text.charAt(0))) {
+			return text.substring(1, text.length() - 1);
+		}
+
+		// Typed literals such as REAL#1.5 keep only their value.
+		if (text.indexOf('#') > 0) {
+			text = text.substring(text.indexOf('#') + 1);
+		}
+		try {
+			return Long.valueOf(text);
+		} catch (NumberFormatException nfe) {
+		}
+		try {
+			return Double.valueOf(text);
+		} catch (NumberFormatException nfe) {
+		}
+		return literal;
+	}
+
+	//
+	// parseTime()
+	// ===========
+	// Converts the value part of a time literal such as 1s500ms into
+	// milliseconds.
+	//
+	private static Long parseTime(String duration) {
+		double milliseconds = 0;
+		int ptr = 0;
+
+		while (ptr < duration.length()) {
+			int ptrUnit = ptr;
+			while ((ptrUnit < duration.length()) &&
+				   (Character.isDigit(duration.charAt(ptrUnit)) || (duration.charAt(ptrUnit) == '.'))) {
+				ptrUnit++;
+			}
+			int ptrNext = ptrUnit;
+			while ((ptrNext < duration.length()) && Character.isLetter(duration.charAt(ptrNext))) {
+				ptrNext++;
+			}
+			if (ptrUnit == ptr) {
+				break;
+			}
+			double amount = Double.parseDouble(duration.substring(ptr, ptrUnit));
+			switch (duration.substring(ptrUnit, ptrNext)) {
+			case "D":
+				milliseconds += amount * 86400000;
+				break;
+			case "H":
+				milliseconds += amount * 3600000;
+				break;
+			case "M":
+				milliseconds += amount * 60000;
+				break;
+			case "S":
+				milliseconds += amount * 1000;
+				break;
+			case "US":
+				milliseconds += amount / 1000;
+				break;
+			case "NS":
+				milliseconds += amount / 1000000;
+				break;
+			default:
+				milliseconds += amount;
+				break;
+			}
+			ptr = ptrNext;
+		}
+		return Math.round(milliseconds);
+	}
+}
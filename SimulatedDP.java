@@ -0,0 +1,271 @@
+//
+// SIMULATED DIAGNOSTIC POINT
+// ==========================
+// The built-in behaviour of the DP function block when the application is run
+// by the SimulatedRuntime. It stands in for the FORTE DP composite block and its
+// AGENT_GATE, speaking the same packet protocol to the engine's NIOserver.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// The block uses the same parameters that createHarness() writes into the boot
+// file: DATA_TYPE, POLL_TIME, ADDRESS, PORT and INST_ID.
+//
+// While the gate is open (PASSTHROUGH_ENABLED) each DATA_IN event is sampled to
+// the engine as a SAMPLED_DATA packet and passed straight on to DATA_OUT. While
+// the gate is closed (TRIGGER_ENABLED) the input is still sampled but only the
+// agent's triggers reach DATA_OUT. Each trigger is acknowledged with a TIMESTAMP
+// packet. Every POLL_TIME the block collects the packets the engine has queued
+// for it, exactly as the FORTE block polls the server.
+//
+// A SAMPLE_FILTER packet carries "minInterval,deadband". From then on a value is
+// only sampled when minInterval milliseconds have passed since the last one sent
+// and it differs from that one by more than the deadband. "-1" stops sampling
+// altogether and "0,0" samples every value again.
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+// 18.10.2026 BRD Handles the SAMPLE_FILTER command.
+//
+package fde;
+
+import fde.DiagnosticAgent.AgentModes;
+import fde.DiagnosticAgent.PacketDelimiters;
+
+public class SimulatedDP implements FunctionBlockBehaviour {
+	final static String POLL_EVENT = "POLL";
+
+	private SimulatedRuntime.Transport transport;
+	private int SIFBinstanceID = 0;
+	private int dataType = DataTypes.DATATYPE_REAL;
+	private String dataTypeName = "REAL";
+	private long pollTime = DiagnosticPoint.DEFAULT_POLL_TIME;
+	private int currentAgentMode = AgentModes.PASSTHROUGH_ENABLED;
+	private boolean isStarted = false;
+
+	// Sample filter
+	// =============
+	private boolean isSampling = true;
+	private long filterInterval = 0;
+	private double deadband = 0;
+	private long lastSentTime = Long.MIN_VALUE;
+	private double lastSentValue = Double.NaN;
+
+	//
+	// initialise()
+	// ============
+	@Override
+	public void initialise(SimulatedBlock block) {
+		SIFBinstanceID = (int) block.getInt("INST_ID");
+		dataType = (int) block.getInt("DATA_TYPE");
+		dataTypeName = new FunctionBlockVariable().StringFromDataType(dataType);
+		if (block.getInt("POLL_TIME") > 0) {
+			pollTime = block.getInt("POLL_TIME");
+		}
+	}
+
+	//
+	// event()
+	// =======
+	@Override
+	public void event(SimulatedBlock block, String eventName) {
+		switch (eventName) {
+		case "START":
+			// START is connected to both COLD and WARM, so only start once.
+			if (!isStarted) {
+				isStarted = true;
+				transport = block.runtime.transport(SIFBinstanceID, block.getString("ADDRESS"), (int) block.getInt("PORT"));
+				block.schedule(pollTime, POLL_EVENT);
+			}
+			break;
+
+		case "DATA_IN":
+			Object value = block.value("DATA_IN_" + dataTypeName);
+			if ((transport != null) && isWanted(block, value)) {
+				sendPacket(block, AgentModes.SAMPLED_DATA, format(value));
+			}
+			if (currentAgentMode == AgentModes.PASSTHROUGH_ENABLED) {
+				block.value("DATA_OUT_" + dataTypeName, value);
+				block.fire("DATA_OUT");
+			}
+			break;
+
+		case POLL_EVENT:
+			String packets = transport.receive();
+			if (packets.length() > 0) {
+				processPackets(block, packets);
+			}
+			block.schedule(pollTime, POLL_EVENT);
+			break;
+		}
+	}
+
+	//
+	// processPackets()
+	// ================
+	// Carries out the commands in the packets received from the engine. Each
+	// packet has the form *command|length|value|& or just *command|&.
+	//
+	private void processPackets(SimulatedBlock block, String packets) {
+		int ptrStart = packets.indexOf(PacketDelimiters.START_OF_PACKET);
+
+		while (ptrStart >= 0) {
+			int ptrEnd = packets.indexOf(PacketDelimiters.END_OF_PACKET, ptrStart);
+			if (ptrEnd < 0) {
+				break;
+			}
+			String[] fields = packets.substring(ptrStart + 1, ptrEnd).split("\\" + PacketDelimiters.FIELD_SEPARATOR, -1);
+			String dataValue = (fields.length > 2) ? fields[2] : "";
+			int command = AgentModes.UNDEFINED;
+			try {
+				command = Integer.parseInt(fields[0]);
+			} catch (NumberFormatException nfe) {
+			}
+
+			switch (command) {
+			case AgentModes.PASSTHROUGH_ENABLED:
+			case AgentModes.TRIGGER_ENABLED:
+				currentAgentMode = command;
+				break;
+
+			case AgentModes.TRIGGER_DATA_VALUE:
+				block.value("DATA_OUT_" + dataTypeName, convert(dataValue));
+				block.fire("DATA_OUT");
+				sendPacket(block, AgentModes.TIMESTAMP, "");
+				break;
+
+			case AgentModes.TRIGGER_EVENT:
+				block.fire("DATA_OUT");
+				sendPacket(block, AgentModes.TIMESTAMP, "");
+				break;
+
+			case AgentModes.SET_POLL_TIME:
+				try {
+					pollTime = Math.max(1, Long.parseLong(dataValue.trim()));
+				} catch (NumberFormatException nfe) {
+				}
+				break;
+
+			case AgentModes.SAMPLE_FILTER:
+				setSampleFilter(dataValue);
+				break;
+			}
+			ptrStart = packets.indexOf(PacketDelimiters.START_OF_PACKET, ptrEnd);
+		}
+	}
+
+	//
+	// setSampleFilter()
+	// =================
+	// Sets the sample filter from the value of a SAMPLE_FILTER packet. A value
+	// that cannot be read leaves the filter as it was.
+	//
+	private void setSampleFilter(String dataValue) {
+		String[] fields = dataValue.trim().split(",");
+
+		try {
+			long interval = Long.parseLong(fields[0].trim());
+			double band = (fields.length > 1) ? Double.parseDouble(fields[1].trim()) : 0;
+			isSampling = (interval >= 0);
+			filterInterval = Math.max(0, interval);
+			deadband = Math.abs(band);
+			lastSentTime = Long.MIN_VALUE;
+			lastSentValue = Double.NaN;
+		} catch (NumberFormatException nfe) {
+		}
+	}
+
+	//
+	// isWanted()
+	// ==========
+	// Applies the sample filter to a value, noting it as sent if it passes.
+	// Values that are not numbers, such as events, are not held back by the
+	// deadband.
+	//
+	private boolean isWanted(SimulatedBlock block, Object value) {
+		long now = block.now();
+		double number = Double.NaN;
+
+		if (!isSampling) {
+			return false;
+		}
+		if ((lastSentTime != Long.MIN_VALUE) && (now - lastSentTime < filterInterval)) {
+			return false;
+		}
+		if (value instanceof Number) {
+			number = ((Number) value).doubleValue();
+			if ((deadband > 0) && !Double.isNaN(lastSentValue) && (Math.abs(number - lastSentValue) <= deadband)) {
+				return false;
+			}
+		}
+		lastSentTime = now;
+		lastSentValue = number;
+		return true;
+	}
+
+	//
+	// sendPacket()
+	// ============
+	// Sends a packet to the engine in the form *command|id|timestamp|length|value|&
+	//
+	private void sendPacket(SimulatedBlock block, int command, String dataValue) {
+		transport.send(PacketDelimiters.START_OF_PACKET + command + PacketDelimiters.FIELD_SEPARATOR
+					   + SIFBinstanceID + PacketDelimiters.FIELD_SEPARATOR
+					   + block.now() + PacketDelimiters.FIELD_SEPARATOR
+					   + dataValue.length() + PacketDelimiters.FIELD_SEPARATOR
+					   + dataValue + PacketDelimiters.FIELD_SEPARATOR + PacketDelimiters.END_OF_PACKET);
+	}
+
+	//
+	// format()
+	// ========
+	// Formats a sampled value the way FORTE sends values of this data type.
+	//
+	private String format(Object value) {
+		if (value == null) {
+			return "";
+		}
+		switch (dataType) {
+		case DataTypes.DATATYPE_INT:
+		case DataTypes.DATATYPE_LINT:
+			if (value instanceof Number) {
+				return Long.toString(((Number) value).longValue());
+			}
+			break;
+
+		case DataTypes.DATATYPE_REAL:
+		case DataTypes.DATATYPE_LREAL:
+			if (value instanceof Number) {
+				return Double.toString(((Number) value).doubleValue());
+			}
+			break;
+		}
+		return value.toString();
+	}
+
+	//
+	// convert()
+	// =========
+	// Converts a value sent by the engine to the data type of this point.
+	//
+	private Object convert(String dataValue) {
+		try {
+			switch (dataType) {
+			case DataTypes.DATATYPE_INT:
+			case DataTypes.DATATYPE_LINT:
+				return Math.round(Double.parseDouble(dataValue));
+
+			case DataTypes.DATATYPE_REAL:
+			case DataTypes.DATATYPE_LREAL:
+				return Double.valueOf(dataValue);
+
+			case DataTypes.DATATYPE_BOOL:
+				return SimulatedBlock.parseLiteral(dataValue);
+			}
+		} catch (NumberFormatException nfe) {
+		}
+		return dataValue;
+	}
+}
@@ -0,0 +1,657 @@
+//
+// SIMULATED RUNTIME
+// =================
+// An in-process stand-in for FORTE. It executes a loaded FunctionBlockApp,
+// including the DP blocks inserted by createHarness(), so that the diagnostic
+// engine and its scripts can be exercised without FORTE or the C++ diagnostic
+// function blocks.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// Each function block instance is given a behaviour chosen by its type. The DP,
+// START and E_CYCLE types have built-in behaviours. The behaviours of the other
+// types in the application are registered before the runtime is started:
+//
+//     SimulatedRuntime runtime = new SimulatedRuntime(fbapp, skills.servers());
+//     runtime.behaviour("GIMBAL", () -> new GimbalBehaviour());
+//     runtime.start();
+//
+// A type without a behaviour still receives its events and samples its inputs,
+// but never fires any events of its own.
+//
+// Events follow the IEC 61499 event and WITH semantics. When an input event
+// arrives, the data inputs listed in its WITH qualifiers are sampled from the
+// outputs they are connected to before the behaviour runs. Blocks without a type
+// definition sample all of their connected inputs. Events fired at the same time
+// are delivered in the order they were fired. All the blocks run on the runtime's
+// own thread, like the blocks in a single FORTE resource.
+//
+// The runtime takes its time from the EngineClock. With a VirtualClock installed
+// it runs as fast as the engine can keep up with it.
+//
+// The diagnostic points talk to the engine's NIOserver either in memory, through
+// NIOserver.deliver() and takeOutbound(), or over a real socket using the same
+// packet protocol as FORTE. The socket transport exercises the whole network path
+// but should only be used with the system clock.
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+//
+package fde;
+
+import static fde.Constants.NOT_FOUND;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
+
+import fde.DiagnosticAgent.AgentModes;
+import fde.DiagnosticAgent.PacketDelimiters;
+
+public class SimulatedRuntime implements Runnable {
+	public enum TransportModes {
+		IN_MEMORY,
+		SOCKET
+	}
+
+	// How long the runtime waits when it has nothing scheduled.
+	final static int IDLE_TIME = 100;
+
+	// The event ports of the built-in blocks, which have no type definition
+	// to tell event connections from data connections.
+	final static Set<String> BUILT_IN_EVENTS = new HashSet<String>(Arrays.asList(
+		"COLD", "WARM", "STOP", "START", "DATA_IN", "DATA_OUT", "EO"));
+
+	private boolean isSilent = false;
+
+	private final FunctionBlockApp fbapp;
+	private final List<NIOserver> servers;
+	private TransportModes transportMode = TransportModes.IN_MEMORY;
+
+	private final Map<String, Supplier<FunctionBlockBehaviour>> behaviours = new HashMap<String, Supplier<FunctionBlockBehaviour>>();
+	private final Map<String, SimulatedBlock> blocks = new LinkedHashMap<String, SimulatedBlock>();
+	private final Map<String, List<String[]>> eventConnections = new HashMap<String, List<String[]>>();
+	private final List<Transport> transports = new ArrayList<Transport>();
+
+	// The events waiting to be delivered, in time order.
+	private final PriorityQueue<ScheduledEvent> events = new PriorityQueue<ScheduledEvent>();
+	private long sequence = 0;
+
+	private volatile boolean isRunning = false;
+	private final CountDownLatch stopped = new CountDownLatch(1);
+	private Thread runtimeThread = null;
+
+	private volatile long cntEvents = 0;
+	private volatile long cntPackets = 0;
+	private long startTime = 0;
+
+	//
+	// SimulatedRuntime()
+	// ==================
+	// fbapp    The application to run. The diagnostic harness should already have
+	//          been inserted into it.
+	//
+	// servers  The engine's servers. Each diagnostic point uses the server that
+	//          listens on the PORT it was configured with. The list is read when
+	//          the points start, so it can be filled in by createHarness() after
+	//          the runtime has been created.
+	//
+	public SimulatedRuntime(FunctionBlockApp fbapp, List<NIOserver> servers) {
+		this.fbapp = fbapp;
+		this.servers = servers;
+
+		behaviour("DP", () -> new SimulatedDP());
+		behaviour("START", () -> new RestartBehaviour());
+		behaviour("E_RESTART", () -> new RestartBehaviour());
+		behaviour("E_CYCLE", () -> new CycleBehaviour());
+	}
+
+	//
+	// SimulatedRuntime()
+	// ==================
+	public SimulatedRuntime(FunctionBlockApp fbapp, NIOserver server) {
+		this(fbapp, Arrays.asList(server));
+	}
+
+	//
+	// behaviour()
+	// ===========
+	// Registers the behaviour for a function block type. The factory is called
+	// once for each instance of the type.
+	//
+	public void behaviour(String fbType, Supplier<FunctionBlockBehaviour> factory) {
+		behaviours.put(fbType, factory);
+	}
+
+	//
+	// set transportMode()
+	// ===================
+	// Chooses how the diagnostic points reach the engine. Must be set before
+	// the runtime is started.
+	//
+	public void transportMode(TransportModes transportMode) {
+		this.transportMode = transportMode;
+	}
+
+	//
+	// get transportMode()
+	// ===================
+	public TransportModes transportMode() {
+		return transportMode;
+	}
+
+	//
+	// start()
+	// =======
+	// Starts the runtime on its own thread.
+	//
+	public void start() {
+		runtimeThread = new Thread(this, "SimulatedRuntime");
+		runtimeThread.setDaemon(true);
+		runtimeThread.start();
+	}
+
+	//
+	// stop()
+	// ======
+	// Stops the runtime and waits for its thread to finish.
+	//
+	public void stop() {
+		stopped.countDown();
+		EngineClock.clock().wakeWaiters();
+		if ((runtimeThread != null) && (runtimeThread != Thread.currentThread())) {
+			try {
+				runtimeThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	//
+	// run()
+	// =====
+	// Builds the blocks, fires the START block and then delivers the scheduled
+	// events as they fall due until the runtime is stopped.
+	//
+	public void run() {
+		EngineClock clock = EngineClock.clock();
+
+		// Attach to the clock so that virtual time waits for the application.
+		clock.attach();
+		try {
+			build();
+			startTime = clock.currentTimeMillis();
+			isRunning = true;
+			say("Simulated runtime started with " + blocks.size() + " function blocks");
+
+			for (SimulatedBlock block : blocks.values()) {
+				block.behaviour().initialise(block);
+			}
+
+			while (stopped.getCount() > 0) {
+				ScheduledEvent next = events.peek();
+				long now = clock.currentTimeMillis();
+				if (next == null) {
+					clock.sleep(IDLE_TIME, stopped);
+				} else if (next.time > now) {
+					clock.sleep(next.time - now, stopped);
+				} else {
+					events.poll();
+					dispatch(next);
+				}
+			}
+		} catch (InterruptedException e) {
+			// The runtime is being shut down.
+		} finally {
+			for (SimulatedBlock block : blocks.values()) {
+				block.behaviour().stop(block);
+			}
+			for (Transport transport : transports) {
+				transport.close();
+			}
+			isRunning = false;
+			clock.detach();
+			say("Simulated runtime stopped after " + cntEvents + " events");
+		}
+	}
+
+	//
+	// build()
+	// =======
+	// Creates a simulated block for every function block in the application and
+	// indexes the enabled connections.
+	//
+	private void build() {
+		blocks.clear();
+		eventConnections.clear();
+
+		for (int ptrfb = 0; ptrfb < fbapp.fbCount(); ptrfb++) {
+			FunctionBlock fb = fbapp.getfb(ptrfb);
+			Supplier<FunctionBlockBehaviour> factory = behaviours.get(fb.Type());
+			FunctionBlockBehaviour behaviour = null;
+			if (factory != null) {
+				behaviour = factory.get();
+			} else {
+				say("No behaviour for " + fb.Name() + " [" + fb.Type() + "]");
+				behaviour = (block, eventName) -> {};
+			}
+			blocks.put(fb.Name(), new SimulatedBlock(fb, behaviour, this));
+		}
+
+		for (int ptrConnection = 0; ptrConnection < fbapp.ConnectionCount(); ptrConnection++) {
+			FunctionBlockConnection fbconn = fbapp.Connection(ptrConnection);
+			SimulatedBlock source = blocks.get(fbconn.SourceFB());
+			SimulatedBlock destination = blocks.get(fbconn.DestinationFB());
+			if (!fbconn.Enabled() || (source == null) || (destination == null)) {
+				continue;
+			}
+			if (isEvent(source.fb(), fbconn.SourceName()) || isEvent(destination.fb(), fbconn.DestinationName())) {
+				eventConnections.computeIfAbsent(fbconn.SourceFB() + "." + fbconn.SourceName(), key -> new ArrayList<String[]>())
+								.add(new String[] {fbconn.DestinationFB(), fbconn.DestinationName()});
+			} else {
+				destination.inputSources.put(fbconn.DestinationName(), new String[] {fbconn.SourceFB(), fbconn.SourceName()});
+			}
+		}
+
+		// The START block cold-starts the application.
+		SimulatedBlock startBlock = blocks.get("START");
+		if (startBlock != null) {
+			schedule(startBlock, 0, "COLD");
+		}
+	}
+
+	//
+	// isEvent()
+	// =========
+	private boolean isEvent(FunctionBlock fb, String portName) {
+		if (fb.findEvent(portName) != NOT_FOUND) {
+			return true;
+		}
+		return (fb.findVar(portName) == NOT_FOUND) && BUILT_IN_EVENTS.contains(portName);
+	}
+
+	//
+	// fire()
+	// ======
+	// Queues an output event for every input event it is connected to.
+	//
+	void fire(SimulatedBlock block, String eventName) {
+		List<String[]> destinations = eventConnections.get(block.name() + "." + eventName);
+		if (destinations != null) {
+			long now = EngineClock.clock().currentTimeMillis();
+			for (String[] destination : destinations) {
+				events.add(new ScheduledEvent(now, sequence++, destination[0], destination[1], false));
+			}
+		}
+	}
+
+	//
+	// schedule()
+	// ==========
+	// Queues an event for a block's own behaviour after a delay.
+	//
+	void schedule(SimulatedBlock block, long delay, String eventName) {
+		long time = EngineClock.clock().currentTimeMillis() + Math.max(0, delay);
+		events.add(new ScheduledEvent(time, sequence++, block.name(), eventName, true));
+	}
+
+	//
+	// dispatch()
+	// ==========
+	// Delivers an event to its block, sampling the block's inputs first if it
+	// is an input event.
+	//
+	private void dispatch(ScheduledEvent event) {
+		SimulatedBlock block = blocks.get(event.fbName);
+		if (block == null) {
+			return;
+		}
+		if (!event.isInternal) {
+			sampleInputs(block, event.eventName);
+		}
+		cntEvents++;
+		block.behaviour().event(block, event.eventName);
+	}
+
+	//
+	// sampleInputs()
+	// ==============
+	// Copies the connected outputs into the data inputs that are sampled with
+	// this event.
+	//
+	private void sampleInputs(SimulatedBlock block, String eventName) {
+		int ptrEvent = block.fb().findEvent(eventName);
+
+		if ((ptrEvent != NOT_FOUND) && (block.fb().Event(ptrEvent).WithVarCount() > 0)) {
+			FunctionBlockEvent fbEvent = block.fb().Event(ptrEvent);
+			for (int ptrWith = 0; ptrWith < fbEvent.WithVarCount(); ptrWith++) {
+				sampleInput(block, fbEvent.WithVar(ptrWith));
+			}
+		} else {
+			for (String inputName : block.inputSources.keySet()) {
+				sampleInput(block, inputName);
+			}
+		}
+	}
+
+	//
+	// sampleInput()
+	// =============
+	private void sampleInput(SimulatedBlock block, String inputName) {
+		String[] source = block.inputSources.get(inputName);
+		if (source != null) {
+			SimulatedBlock sourceBlock = blocks.get(source[0]);
+			Object value = sourceBlock.value(source[1]);
+			if (value != null) {
+				block.value(inputName, value);
+			}
+		}
+	}
+
+	//
+	// transport()
+	// ===========
+	// Connects a diagnostic point to the server that listens on its port.
+	//
+	Transport transport(int SIFBinstanceID, String address, int port) {
+		NIOserver server = servers.get(0);
+		for (NIOserver candidate : servers) {
+			if (candidate.listenerPortNumber() == port) {
+				server = candidate;
+			}
+		}
+
+		Transport transport = null;
+		if (transportMode == TransportModes.SOCKET) {
+			transport = new SocketTransport(SIFBinstanceID, address.equals("") ? server.hostName() : address, port);
+		} else {
+			transport = new InMemoryTransport(SIFBinstanceID, server);
+		}
+		transports.add(transport);
+		return transport;
+	}
+
+	//
+	// get block()
+	// ===========
+	// The simulated block with this instance name, or null.
+	//
+	public SimulatedBlock block(String fbName) {
+		return blocks.get(fbName);
+	}
+
+	//
+	// isRunning()
+	// ===========
+	public boolean isRunning() {
+		return isRunning;
+	}
+
+	//
+	// get eventCount()
+	// ================
+	// The number of events delivered since the runtime started.
+	//
+	public long eventCount() {
+		return cntEvents;
+	}
+
+	//
+	// get packetCount()
+	// =================
+	// The number of packets the diagnostic points have sent to the engine.
+	//
+	public long packetCount() {
+		return cntPackets;
+	}
+
+	//
+	// get eventRate()
+	// ===============
+	// Events delivered per second of clock time.
+	//
+	public double eventRate() {
+		long elapsed = EngineClock.clock().currentTimeMillis() - startTime;
+		return (elapsed > 0) ? (cntEvents * 1000.0 / elapsed) : 0;
+	}
+
+	//
+	// say()
+	// =====
+	private void say(String whatToSay) {
+		if (!isSilent) {
+			System.out.println(whatToSay);
+		}
+	}
+
+	//
+	// ScheduledEvent
+	// ==============
+	// An event waiting to be delivered. Events due at the same time are
+	// delivered in the order they were scheduled.
+	//
+	private static class ScheduledEvent implements Comparable<ScheduledEvent> {
+		final long time;
+		final long sequence;
+		final String fbName;
+		final String eventName;
+		final boolean isInternal;
+
+		ScheduledEvent(long time, long sequence, String fbName, String eventName, boolean isInternal) {
+			this.time = time;
+			this.sequence = sequence;
+			this.fbName = fbName;
+			this.eventName = eventName;
+			this.isInternal = isInternal;
+		}
+
+		@Override
+		public int compareTo(ScheduledEvent other) {
+			if (time != other.time) {
+				return Long.compare(time, other.time);
+			}
+			return Long.compare(sequence, other.sequence);
+		}
+	}
+
+	//
+	// Transport
+	// =========
+	// The link between a simulated diagnostic point and the engine.
+	//
+	interface Transport {
+		// Sends packets to the engine.
+		void send(String packets);
+
+		// Returns the packets the engine has sent since the last call, or
+		// an empty string.
+		String receive();
+
+		void close();
+	}
+
+	//
+	// InMemoryTransport
+	// =================
+	// Hands packets straight to the server's queues.
+	//
+	class InMemoryTransport implements Transport {
+		private final int SIFBinstanceID;
+		private final NIOserver server;
+		private final StringBuilder received = new StringBuilder();
+
+		InMemoryTransport(int SIFBinstanceID, NIOserver server) {
+			this.SIFBinstanceID = SIFBinstanceID;
+			this.server = server;
+		}
+
+		@Override
+		public void send(String packets) {
+			server.deliver(packets);
+			cntPackets++;
+		}
+
+		@Override
+		public String receive() {
+			received.setLength(0);
+			String packet = server.takeOutbound(SIFBinstanceID);
+			while (packet.length() > 0) {
+				received.append(packet);
+				packet = server.takeOutbound(SIFBinstanceID);
+			}
+			return received.toString();
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	//
+	// SocketTransport
+	// ===============
+	// Connects to the server over TCP/IP like the FORTE AGENT_GATE. The point
+	// advertises PUSH_ENABLED so the server writes packets as soon as they are
+	// queued, and reads them without blocking when it polls.
+	//
+	class SocketTransport implements Transport {
+		private SocketChannel socket;
+		private final ByteBuffer readBuffer = ByteBuffer.allocate(NIOserver.BUFFER_SIZE);
+		private final StringBuilder pending = new StringBuilder();
+
+		SocketTransport(int SIFBinstanceID, String hostName, int port) {
+			try {
+				socket = SocketChannel.open(new InetSocketAddress(hostName, port));
+				socket.configureBlocking(false);
+				send(PacketDelimiters.START_OF_PACKET + AgentModes.PUSH_ENABLED + PacketDelimiters.FIELD_SEPARATOR
+					 + SIFBinstanceID + PacketDelimiters.FIELD_SEPARATOR
+					 + EngineClock.clock().currentTimeMillis() + PacketDelimiters.FIELD_SEPARATOR
+					 + "0" + PacketDelimiters.FIELD_SEPARATOR + PacketDelimiters.FIELD_SEPARATOR
+					 + PacketDelimiters.END_OF_PACKET);
+			} catch (IOException e) {
+				say("Simulated diagnostic point " + SIFBinstanceID + " could not connect to " + hostName + ":" + port + ". " + e.getMessage());
+				socket = null;
+			}
+		}
+
+		@Override
+		public void send(String packets) {
+			if (socket == null) {
+				return;
+			}
+			try {
+				ByteBuffer buffer = ByteBuffer.wrap(packets.getBytes(StandardCharsets.UTF_8));
+				while (buffer.hasRemaining()) {
+					socket.write(buffer);
+				}
+				cntPackets++;
+			} catch (IOException e) {
+				say("Simulated diagnostic point lost its connection. " + e.getMessage());
+				close();
+			}
+		}
+
+		@Override
+		public String receive() {
+			if (socket == null) {
+				return "";
+			}
+			try {
+				readBuffer.clear();
+				while (socket.read(readBuffer) > 0) {
+					readBuffer.flip();
+					pending.append(StandardCharsets.UTF_8.decode(readBuffer));
+					readBuffer.clear();
+				}
+			} catch (IOException e) {
+				close();
+			}
+
+			// Only hand back complete packets. The rest waits for the next read.
+			int ptrEnd = pending.lastIndexOf(PacketDelimiters.END_OF_PACKET);
+			if (ptrEnd < 0) {
+				return "";
+			}
+			String packets = pending.substring(0, ptrEnd + 1);
+			pending.delete(0, ptrEnd + 1);
+			return packets;
+		}
+
+		@Override
+		public void close() {
+			try {
+				if (socket != null) {
+					socket.close();
+				}
+			} catch (IOException e) {
+			}
+			socket = null;
+		}
+	}
+
+	//
+	// RestartBehaviour
+	// ================
+	// The START (E_RESTART) block. Fires COLD when the application starts.
+	//
+	static class RestartBehaviour implements FunctionBlockBehaviour {
+		@Override
+		public void event(SimulatedBlock block, String eventName) {
+			if (eventName.equals("COLD")) {
+				block.fire("COLD");
+			}
+		}
+	}
+
+	//
+	// CycleBehaviour
+	// ==============
+	// The E_CYCLE block. Fires EO every DT milliseconds between START and STOP.
+	//
+	static class CycleBehaviour implements FunctionBlockBehaviour {
+		private boolean isCycling = false;
+		private long generation = 0;
+
+		@Override
+		public void event(SimulatedBlock block, String eventName) {
+			switch (eventName) {
+			case "START":
+				if (!isCycling) {
+					isCycling = true;
+					generation++;
+					block.schedule(Math.max(1, block.getInt("DT")), "CYCLE" + generation);
+				}
+				break;
+
+			case "STOP":
+				isCycling = false;
+				break;
+
+			default:
+				// Only the timer from the current START keeps cycling.
+				if (isCycling && eventName.equals("CYCLE" + generation)) {
+					block.fire("EO");
+					block.schedule(Math.max(1, block.getInt("DT")), eventName);
+				}
+				break;
+			}
+		}
+	}
+}
@@ -0,0 +1,488 @@
+//
+// SPILL QUEUE
+// ===========
+// The inbound packet queue of one diagnostic point connection. Packets are kept
+// in memory up to a fixed number, and any more are spilled to a memory-mapped
+// file until the agents catch up. A diagnostic point that no script reads can
+// therefore never fill the heap.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// The queue is first-in first-out. The oldest packets are held in a ring of
+// memoryCapacity packets and the newer ones in the spill file, which is only
+// created the first time the ring is full. Each packet taken from the ring makes
+// room for the oldest spilled packet to move back into it, so poll() always
+// reads from memory and the caller cannot tell where a packet has been.
+//
+// The spill file is itself a ring of spillCapacity bytes. Each packet is written
+// as a record:
+//
+//     int     length of the rest of the record, or WRAP to go back to the start
+//     long    timestamp
+//     int     SIFB instance ID
+//     int     length of the command, then the command in UTF-8
+//     int     length of the data value, then the data value in UTF-8
+//
+// The file is deleted as soon as it has been mapped, so nothing is left behind
+// if the engine stops. When the spill file is full too, the oldest packets in
+// the queue are dropped to make room and counted. If the spill file cannot be
+// created the queue drops its oldest packets once the ring is full.
+//
+// Each packet is stamped with the generation of the queue when it is added.
+// newGeneration() starts a new generation, which makes every packet already in
+// the queue stale. The spill file only ever holds packets added since the ring
+// was last full, so it is emptied at once by resetting its positions. The stale
+// packets left in the ring are skipped by poll() as it comes to them. Starting
+// a new generation therefore takes the same time however long the queue is.
+//
+// The queue is written by the server thread and read by the agents. It is
+// guarded by a ReentrantLock, which is held only while packets are copied, so
+// agents running on virtual threads are not pinned.
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+// 18.10.2026 BRD Added generations so the queue can be flushed in constant time.
+//
+package fde;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class SpillQueue {
+	public static final int DEFAULT_MEMORY_CAPACITY = 1024;
+	public static final int DEFAULT_SPILL_CAPACITY = 16 * 1024 * 1024;
+
+	final static String SPILL_PREFIX = "fde-spill-";
+	final static int WRAP = -1;
+
+	// The bytes a record takes besides its strings.
+	final static int RECORD_OVERHEAD = 4 + 8 + 4 + 4 + 4;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	// Memory ring
+	// ===========
+	private final NIOserverPacket[] ring;
+	private int ringHead = 0;
+	private int ringCount = 0;
+
+	// Spill file
+	// ==========
+	// readPos and writePos are the byte offsets of the oldest record and of
+	// the next record to be written. isWrapped is set while the writer has
+	// gone back to the start of the file and the reader has not.
+	private final int spillCapacity;
+	private MappedByteBuffer spill = null;
+	private boolean isSpillFailed = false;
+	private int readPos = 0;
+	private int writePos = 0;
+	private boolean isWrapped = false;
+	private int spillCount = 0;
+	private long spillBytes = 0;
+
+	// Metrics
+	// =======
+	private long cntSpilled = 0;
+	private long cntDropped = 0;
+	private int maxSize = 0;
+
+	// Generations
+	// ===========
+	// cntStale is the number of packets in the ring from older generations.
+	private int generation = 0;
+	private int cntStale = 0;
+
+	//
+	// SpillQueue()
+	// ============
+	public SpillQueue() {
+		this(DEFAULT_MEMORY_CAPACITY, DEFAULT_SPILL_CAPACITY);
+	}
+
+	//
+	// SpillQueue()
+	// ============
+	// memoryCapacity  The number of packets held in memory.
+	//
+	// spillCapacity   The size in bytes of the spill file, or zero to drop the
+	//                 oldest packets rather than spill them.
+	//
+	public SpillQueue(int memoryCapacity, int spillCapacity) {
+		if ((memoryCapacity < 1) || (spillCapacity < 0)) {
+			throw new IllegalArgumentException("The queue capacity must be positive");
+		}
+		this.ring = new NIOserverPacket[memoryCapacity];
+		this.spillCapacity = spillCapacity;
+		this.isSpillFailed = (spillCapacity == 0);
+	}
+
+	//
+	// add()
+	// =====
+	// Adds a packet to the end of the queue.
+	//
+	public void add(NIOserverPacket packet) {
+		lock.lock();
+		try {
+			packet.generation(generation);
+			if ((spillCount == 0) && (ringCount < ring.length)) {
+				ring[(ringHead + ringCount) % ring.length] = packet;
+				ringCount++;
+			} else {
+				spill(packet);
+			}
+			maxSize = Math.max(maxSize, ringCount + spillCount);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//
+	// poll()
+	// ======
+	// Removes the packet at the head of the queue, skipping the stale packets
+	// from older generations.
+	//
+	// returns  the packet, or null if the queue is empty.
+	//
+	public NIOserverPacket poll() {
+		lock.lock();
+		try {
+			while (ringCount > 0) {
+				NIOserverPacket packet = takeFromRing();
+				if (packet.generation() == generation) {
+					return packet;
+				}
+			}
+			return null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//
+	// takeFromRing()
+	// ==============
+	// Takes the oldest packet and moves the oldest spilled packet into the
+	// space it leaves.
+	//
+	private NIOserverPacket takeFromRing() {
+		NIOserverPacket packet = ring[ringHead];
+
+		ring[ringHead] = null;
+		ringHead = (ringHead + 1) % ring.length;
+		ringCount--;
+		if (packet.generation() != generation) {
+			cntStale--;
+		}
+		if (spillCount > 0) {
+			ring[(ringHead + ringCount) % ring.length] = readSpilled();
+			ringCount++;
+		}
+		return packet;
+	}
+
+	//
+	// spill()
+	// =======
+	// Writes a packet to the spill file, dropping the oldest packets if there
+	// is no room.
+	//
+	private void spill(NIOserverPacket packet) {
+		byte[] command = packet.command().getBytes(StandardCharsets.UTF_8);
+		byte[] dataValue = packet.dataValue().getBytes(StandardCharsets.UTF_8);
+		int length = RECORD_OVERHEAD + command.length + dataValue.length;
+
+		if ((spill == null) && !isSpillFailed) {
+			createSpill();
+		}
+		if (isSpillFailed) {
+			// Make room in the ring instead.
+			drop();
+			ring[(ringHead + ringCount) % ring.length] = packet;
+			ringCount++;
+			return;
+		}
+		if (length > spillCapacity - 4) {
+			// The packet could never be spilled.
+			cntDropped++;
+			return;
+		}
+		while (!reserve(length)) {
+			drop();
+		}
+		spill.putInt(writePos, length - 4);
+		spill.putLong(writePos + 4, packet.timeStamp());
+		spill.putInt(writePos + 12, packet.SIFBinstanceID());
+		spill.putInt(writePos + 16, command.length);
+		spill.put(writePos + 20, command);
+		spill.putInt(writePos + 20 + command.length, dataValue.length);
+		spill.put(writePos + 24 + command.length, dataValue);
+		writePos += length;
+		spillCount++;
+		spillBytes += length;
+		cntSpilled++;
+	}
+
+	//
+	// drop()
+	// ======
+	// Drops the oldest packet to make room. Stale packets are not counted as
+	// dropped since nobody would have read them.
+	//
+	private void drop() {
+		if (takeFromRing().generation() == generation) {
+			cntDropped++;
+		}
+	}
+
+	//
+	// reserve()
+	// =========
+	// Moves writePos to where a record of the given length can be written.
+	//
+	// returns  false if the spill file does not have room for it.
+	//
+	private boolean reserve(int length) {
+		if (spillCount == 0) {
+			readPos = 0;
+			writePos = 0;
+			isWrapped = false;
+		}
+		if (!isWrapped) {
+			if (writePos + length <= spillCapacity) {
+				return true;
+			}
+			if (length > readPos) {
+				return false;
+			}
+			if (writePos <= spillCapacity - 4) {
+				spill.putInt(writePos, WRAP);
+			}
+			writePos = 0;
+			isWrapped = true;
+			return true;
+		}
+		return (writePos + length <= readPos);
+	}
+
+	//
+	// readSpilled()
+	// =============
+	// Reads the oldest spilled packet.
+	//
+	private NIOserverPacket readSpilled() {
+		NIOserverPacket packet = new NIOserverPacket();
+
+		if ((readPos > spillCapacity - 4) || (spill.getInt(readPos) == WRAP)) {
+			readPos = 0;
+			isWrapped = false;
+		}
+		int length = spill.getInt(readPos) + 4;
+		packet.timeStamp(spill.getLong(readPos + 4));
+		packet.SIFBinstanceID(spill.getInt(readPos + 12));
+		int commandLength = spill.getInt(readPos + 16);
+		byte[] command = new byte[commandLength];
+		spill.get(readPos + 20, command);
+		int dataLength = spill.getInt(readPos + 20 + commandLength);
+		byte[] dataValue = new byte[dataLength];
+		spill.get(readPos + 24 + commandLength, dataValue);
+		packet.command(new String(command, StandardCharsets.UTF_8));
+		packet.dataValue(new String(dataValue, StandardCharsets.UTF_8));
+		packet.generation(generation);
+
+		readPos += length;
+		spillCount--;
+		spillBytes -= length;
+		return packet;
+	}
+
+	//
+	// createSpill()
+	// =============
+	// Creates and maps the spill file. The file is deleted straight away and
+	// lives on only in the mapping.
+	//
+	private void createSpill() {
+		Path file = null;
+
+		try {
+			file = Files.createTempFile(SPILL_PREFIX, ".spill");
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				spill = channel.map(FileChannel.MapMode.READ_WRITE, 0, spillCapacity);
+			}
+		} catch (IOException e) {
+			isSpillFailed = true;
+		} finally {
+			if (file != null) {
+				try {
+					Files.deleteIfExists(file);
+				} catch (IOException e) {
+					file.toFile().deleteOnExit();
+				}
+			}
+		}
+	}
+
+	//
+	// clear()
+	// =======
+	// Empties the queue.
+	//
+	public void clear() {
+		lock.lock();
+		try {
+			for (int ptr = 0; ptr < ring.length; ptr++) {
+				ring[ptr] = null;
+			}
+			ringHead = 0;
+			ringCount = 0;
+			readPos = 0;
+			writePos = 0;
+			isWrapped = false;
+			spillCount = 0;
+			spillBytes = 0;
+			cntStale = 0;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//
+	// newGeneration()
+	// ===============
+	// Makes every packet in the queue stale, so that only the packets added
+	// from now on are read. The spilled packets are discarded at once and the
+	// stale packets in the ring are skipped when poll() reaches them.
+	//
+	// returns  the new generation.
+	//
+	public int newGeneration() {
+		lock.lock();
+		try {
+			generation++;
+			cntStale = ringCount;
+			readPos = 0;
+			writePos = 0;
+			isWrapped = false;
+			spillCount = 0;
+			spillBytes = 0;
+			return generation;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//
+	// get generation()
+	// ================
+	public int generation() {
+		lock.lock();
+		try {
+			return generation;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//
+	// get size()
+	// ==========
+	// The number of packets in the queue, in memory and spilled, leaving out
+	// the stale ones.
+	//
+	public int size() {
+		lock.lock();
+		try {
+			return ringCount + spillCount - cntStale;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//
+	// get isEmpty()
+	// =============
+	public boolean isEmpty() {
+		return (size() == 0);
+	}
+
+	//
+	// get spilledCount()
+	// ==================
+	// The number of packets in the spill file.
+	//
+	public int spilledCount() {
+		lock.lock();
+		try {
+			return spillCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//
+	// get spilledBytes()
+	// ==================
+	// The number of bytes of the spill file in use.
+	//
+	public long spilledBytes() {
+		lock.lock();
+		try {
+			return spillBytes;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//
+	// get totalSpilled()
+	// ==================
+	// The number of packets that have been spilled since the queue was created.
+	//
+	public long totalSpilled() {
+		lock.lock();
+		try {
+			return cntSpilled;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//
+	// get droppedCount()
+	// ==================
+	// The number of packets dropped because the queue was full.
+	//
+	public long droppedCount() {
+		lock.lock();
+		try {
+			return cntDropped;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//
+	// get maxSize()
+	// =============
+	// The most packets the queue has held at once.
+	//
+	public int maxSize() {
+		lock.lock();
+		try {
+			return maxSize;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,490 @@
+//
+// TIME SERIES SEGMENT
+// ===================
+// One file of a series in the TimeSeriesStore. The samples are compressed in the
+// way described for Facebook's Gorilla database and written to the file through
+// a memory map, so appending a sample is a few shifts and stores into memory.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// Each sample is a timestamp and a fixed number of values, its width. A raw series
+// has one value per sample and a rollup series has five. The file starts with a
+// HEADER_SIZE byte header:
+//
+//     0  int   MAGIC
+//     4  int   VERSION
+//     8  int   width
+//    12  int   flags       FLAG_SEALED once the segment is complete
+//    16  long  first timestamp
+//    24  long  last timestamp
+//    32  long  sample count
+//    40  long  length of the data in bits
+//
+// and the data follows as a stream of bits written 64 at a time, most significant
+// bit first. The first sample holds its timestamp and values in full. After that:
+//
+//   Timestamps  The difference between this sample's interval and the last one's
+//               is written as
+//
+//                 0                       the interval did not change
+//                 10   + 7 bits           -64 to 63
+//                 110  + 9 bits           -256 to 255
+//                 1110 + 12 bits          -2048 to 2047
+//                 1111 + 64 bits          anything else
+//
+//   Values      Each value is XORed with the last value in its column and the
+//               result written as
+//
+//                 0                       the value did not change
+//                 10   + bits             the changed bits fit within the last
+//                                         window of changed bits
+//                 11   + 5 bits leading zeros, 6 bits length - 1, bits
+//
+// A sampled signal that changes slowly at a steady rate therefore takes a few
+// bits per sample.
+//
+// A segment is created at its full capacity as a sparse file and mapped. When it
+// is sealed the file is cut back to the data it holds and is not written again.
+// A segment left unsealed, for example because the engine stopped, is sealed when
+// it is opened again. The segment is not synchronized. The TimeSeriesStore locks
+// the series that owns it.
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+//
+package fde;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+final class TimeSeriesSegment {
+	final static int MAGIC = 0x46444553;
+	final static int VERSION = 1;
+	final static int HEADER_SIZE = 64;
+	final static int FLAG_SEALED = 1;
+
+	// The most bits one sample of a column can take.
+	final static int MAX_TIMESTAMP_BITS = 4 + 64;
+	final static int MAX_VALUE_BITS = 2 + 5 + 6 + 64;
+
+	private final Path file;
+	private final int width;
+	private final int capacity;
+	private MappedByteBuffer buffer = null;
+	private boolean isSealed;
+
+	private long firstTimestamp = 0;
+	private long lastTimestamp = 0;
+	private long count = 0;
+	private long bitLength = 0;
+
+	// Encoder
+	// =======
+	// The interval and values of the last sample, the window of changed bits
+	// in each column, and the word being filled.
+	private long lastInterval = 0;
+	private final long[] lastValues;
+	private final int[] lastLeading;
+	private final int[] lastTrailing;
+	private long word = 0;
+	private int cntWordBits = 0;
+	private int ptrWord = HEADER_SIZE;
+
+	private TimeSeriesSegment(Path file, int width, int capacity, boolean isSealed) {
+		this.file = file;
+		this.width = width;
+		this.capacity = capacity;
+		this.isSealed = isSealed;
+		lastValues = new long[width];
+		lastLeading = new int[width];
+		lastTrailing = new int[width];
+	}
+
+	//
+	// create()
+	// ========
+	// Creates a new segment file of the given capacity in bytes.
+	//
+	static TimeSeriesSegment create(Path file, int width, int capacity) throws IOException {
+		TimeSeriesSegment segment = new TimeSeriesSegment(file, width, capacity, false);
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.SPARSE)) {
+			segment.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+		}
+		segment.buffer.putInt(0, MAGIC);
+		segment.buffer.putInt(4, VERSION);
+		segment.buffer.putInt(8, width);
+		segment.buffer.putInt(12, 0);
+		return segment;
+	}
+
+	//
+	// open()
+	// ======
+	// Opens an existing segment file by reading its header. A segment that was
+	// not sealed is sealed.
+	//
+	static TimeSeriesSegment open(Path file) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		TimeSeriesSegment segment;
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			while (header.hasRemaining() && (channel.read(header) >= 0)) {
+			}
+			if ((header.getInt(0) != MAGIC) || (header.getInt(4) != VERSION) || (header.getInt(8) < 1)) {
+				throw new IOException("Not a time series segment");
+			}
+			segment = new TimeSeriesSegment(file, header.getInt(8), (int) channel.size(), true);
+			segment.firstTimestamp = header.getLong(16);
+			segment.lastTimestamp = header.getLong(24);
+			segment.count = header.getLong(32);
+			segment.bitLength = header.getLong(40);
+			if (segment.dataSize() > channel.size()) {
+				throw new IOException("Time series segment is truncated");
+			}
+			if ((header.getInt(12) & FLAG_SEALED) == 0) {
+				header.putInt(12, FLAG_SEALED);
+				channel.write(ByteBuffer.wrap(header.array(), 12, 4), 12);
+				channel.truncate(segment.dataSize());
+			}
+		}
+		return segment;
+	}
+
+	//
+	// append()
+	// ========
+	// Adds a sample. The timestamp must not be earlier than the last one.
+	//
+	// returns  false if the segment is full or sealed.
+	//
+	boolean append(long timeStamp, double[] values) {
+		if (isSealed || (ptrWord + 8 + ((MAX_TIMESTAMP_BITS + (width * MAX_VALUE_BITS)) / 8) + 8 > capacity)) {
+			return false;
+		}
+		if (count == 0) {
+			firstTimestamp = timeStamp;
+			writeBits(timeStamp, 64);
+			for (int ptrColumn = 0; ptrColumn < width; ptrColumn++) {
+				lastValues[ptrColumn] = Double.doubleToRawLongBits(values[ptrColumn]);
+				lastLeading[ptrColumn] = -1;
+				writeBits(lastValues[ptrColumn], 64);
+			}
+		} else {
+			writeTimestamp(timeStamp);
+			for (int ptrColumn = 0; ptrColumn < width; ptrColumn++) {
+				writeValue(ptrColumn, Double.doubleToRawLongBits(values[ptrColumn]));
+			}
+		}
+		lastTimestamp = timeStamp;
+		count++;
+
+		// Store the part-filled word and the header, so the file is complete
+		// after every sample.
+		if (cntWordBits > 0) {
+			buffer.putLong(ptrWord, word);
+		}
+		bitLength = ((long) (ptrWord - HEADER_SIZE) * 8) + cntWordBits;
+		buffer.putLong(16, firstTimestamp);
+		buffer.putLong(24, lastTimestamp);
+		buffer.putLong(32, count);
+		buffer.putLong(40, bitLength);
+		return true;
+	}
+
+	//
+	// writeTimestamp()
+	// ================
+	private void writeTimestamp(long timeStamp) {
+		long interval = timeStamp - lastTimestamp;
+		long change = interval - lastInterval;
+
+		lastInterval = interval;
+		if (change == 0) {
+			writeBits(0, 1);
+		} else if ((change >= -64) && (change <= 63)) {
+			writeBits(0b10, 2);
+			writeBits(change, 7);
+		} else if ((change >= -256) && (change <= 255)) {
+			writeBits(0b110, 3);
+			writeBits(change, 9);
+		} else if ((change >= -2048) && (change <= 2047)) {
+			writeBits(0b1110, 4);
+			writeBits(change, 12);
+		} else {
+			writeBits(0b1111, 4);
+			writeBits(change, 64);
+		}
+	}
+
+	//
+	// writeValue()
+	// ============
+	private void writeValue(int ptrColumn, long value) {
+		long xor = value ^ lastValues[ptrColumn];
+
+		lastValues[ptrColumn] = value;
+		if (xor == 0) {
+			writeBits(0, 1);
+			return;
+		}
+		int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+		int trailing = Long.numberOfTrailingZeros(xor);
+		if ((lastLeading[ptrColumn] >= 0) && (leading >= lastLeading[ptrColumn]) && (trailing >= lastTrailing[ptrColumn])) {
+			writeBits(0b10, 2);
+			writeBits(xor >>> lastTrailing[ptrColumn], 64 - lastLeading[ptrColumn] - lastTrailing[ptrColumn]);
+		} else {
+			int length = 64 - leading - trailing;
+			writeBits(0b11, 2);
+			writeBits(leading, 5);
+			writeBits(length - 1, 6);
+			writeBits(xor >>> trailing, length);
+			lastLeading[ptrColumn] = leading;
+			lastTrailing[ptrColumn] = trailing;
+		}
+	}
+
+	//
+	// writeBits()
+	// ===========
+	// Writes the low cntBits bits of bits, from 1 to 64 of them.
+	//
+	private void writeBits(long bits, int cntBits) {
+		int cntFree = 64 - cntWordBits;
+
+		if (cntBits <= cntFree) {
+			word |= (bits & mask(cntBits)) << (cntFree - cntBits);
+			cntWordBits += cntBits;
+		} else {
+			int cntRest = cntBits - cntFree;
+			word |= (bits >>> cntRest) & mask(cntFree);
+			buffer.putLong(ptrWord, word);
+			ptrWord += 8;
+			word = (bits & mask(cntRest)) << (64 - cntRest);
+			cntWordBits = cntRest;
+		}
+		if (cntWordBits == 64) {
+			buffer.putLong(ptrWord, word);
+			ptrWord += 8;
+			word = 0;
+			cntWordBits = 0;
+		}
+	}
+
+	//
+	// mask()
+	// ======
+	private static long mask(int cntBits) {
+		return (cntBits == 64) ? -1L : ((1L << cntBits) - 1);
+	}
+
+	//
+	// seal()
+	// ======
+	// Marks the segment complete and cuts the file back to its data.
+	//
+	void seal() throws IOException {
+		if (isSealed) {
+			return;
+		}
+		buffer.putInt(12, FLAG_SEALED);
+		buffer.force();
+		buffer = null;
+		isSealed = true;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.truncate(dataSize());
+		}
+	}
+
+	//
+	// decoder()
+	// =========
+	// Returns a decoder for the samples in the segment. The data of a segment
+	// that is still being written is copied, so later appends do not disturb
+	// the decoder.
+	//
+	Decoder decoder() throws IOException {
+		ByteBuffer data;
+
+		if (isSealed) {
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				data = channel.map(FileChannel.MapMode.READ_ONLY, 0, dataSize());
+			}
+		} else {
+			data = ByteBuffer.allocate(dataSize());
+			ByteBuffer source = buffer.duplicate();
+			source.limit(dataSize());
+			data.put(source);
+		}
+		return new Decoder(data, width, count);
+	}
+
+	//
+	// get dataSize()
+	// ==============
+	// The size in bytes of the header and the data, in whole words.
+	//
+	int dataSize() {
+		return HEADER_SIZE + (int) (((bitLength + 63) / 64) * 8);
+	}
+
+	Path file() {
+		return file;
+	}
+
+	int width() {
+		return width;
+	}
+
+	boolean isSealed() {
+		return isSealed;
+	}
+
+	long firstTimestamp() {
+		return firstTimestamp;
+	}
+
+	long lastTimestamp() {
+		return lastTimestamp;
+	}
+
+	long count() {
+		return count;
+	}
+
+	//
+	// Decoder
+	// =======
+	// Reads the samples of a segment in order. next() moves on to the next sample,
+	// whose timestamp and values are then in timestamp and values.
+	//
+	static final class Decoder {
+		private final ByteBuffer data;
+		private final long count;
+		private long ptrSample = 0;
+
+		long timestamp = 0;
+		final double[] values;
+
+		private long interval = 0;
+		private final long[] lastValues;
+		private final int[] lastLeading;
+		private final int[] lastTrailing;
+
+		private long word = 0;
+		private int cntWordBits = 0;
+		private int ptrWord = HEADER_SIZE;
+
+		Decoder(ByteBuffer data, int width, long count) {
+			this.data = data;
+			this.count = count;
+			values = new double[width];
+			lastValues = new long[width];
+			lastLeading = new int[width];
+			lastTrailing = new int[width];
+			Arrays.fill(lastLeading, -1);
+		}
+
+		//
+		// next()
+		// ======
+		// returns  false when there are no more samples.
+		//
+		boolean next() {
+			if (ptrSample >= count) {
+				return false;
+			}
+			if (ptrSample == 0) {
+				timestamp = readBits(64);
+				for (int ptrColumn = 0; ptrColumn < values.length; ptrColumn++) {
+					lastValues[ptrColumn] = readBits(64);
+					values[ptrColumn] = Double.longBitsToDouble(lastValues[ptrColumn]);
+				}
+			} else {
+				interval += readTimestampChange();
+				timestamp += interval;
+				for (int ptrColumn = 0; ptrColumn < values.length; ptrColumn++) {
+					values[ptrColumn] = Double.longBitsToDouble(readValue(ptrColumn));
+				}
+			}
+			ptrSample++;
+			return true;
+		}
+
+		//
+		// readTimestampChange()
+		// =====================
+		private long readTimestampChange() {
+			if (readBits(1) == 0) {
+				return 0;
+			} else if (readBits(1) == 0) {
+				return signed(readBits(7), 7);
+			} else if (readBits(1) == 0) {
+				return signed(readBits(9), 9);
+			} else if (readBits(1) == 0) {
+				return signed(readBits(12), 12);
+			}
+			return readBits(64);
+		}
+
+		//
+		// readValue()
+		// ===========
+		private long readValue(int ptrColumn) {
+			if (readBits(1) == 0) {
+				return lastValues[ptrColumn];
+			}
+			if (readBits(1) == 0) {
+				int length = 64 - lastLeading[ptrColumn] - lastTrailing[ptrColumn];
+				lastValues[ptrColumn] ^= readBits(length) << lastTrailing[ptrColumn];
+			} else {
+				int leading = (int) readBits(5);
+				int length = (int) readBits(6) + 1;
+				lastLeading[ptrColumn] = leading;
+				lastTrailing[ptrColumn] = 64 - leading - length;
+				lastValues[ptrColumn] ^= readBits(length) << lastTrailing[ptrColumn];
+			}
+			return lastValues[ptrColumn];
+		}
+
+		//
+		// signed()
+		// ========
+		private static long signed(long bits, int cntBits) {
+			return (bits << (64 - cntBits)) >> (64 - cntBits);
+		}
+
+		//
+		// readBits()
+		// ==========
+		// Reads cntBits bits, from 1 to 64 of them.
+		//
+		private long readBits(int cntBits) {
+			long bits;
+
+			if (cntBits <= cntWordBits) {
+				bits = word >>> (64 - cntBits);
+				word = (cntBits == 64) ? 0 : (word << cntBits);
+				cntWordBits -= cntBits;
+			} else {
+				int cntRest = cntBits - cntWordBits;
+				bits = (cntWordBits == 0) ? 0 : (word >>> (64 - cntWordBits));
+				word = data.getLong(ptrWord);
+				ptrWord += 8;
+				bits = (cntRest == 64) ? word : ((bits << cntRest) | (word >>> (64 - cntRest)));
+				word = (cntRest == 64) ? 0 : (word << cntRest);
+				cntWordBits = 64 - cntRest;
+			}
+			return bits;
+		}
+	}
+}
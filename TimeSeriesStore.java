@@ -0,0 +1,1029 @@
+//
+// TIME SERIES STORE
+// =================
+// Keeps the values sampled by the diagnostic points on disk so that they can be
+// looked at after a fault has been found, and compared with earlier runs. The
+// packets handed to the agents are gone once they have been read, but every
+// sample is also written here as it arrives.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// Each diagnostic point has a series of its own, named FBNAME.EVENT, held in a
+// directory of that name under the store's directory. A series is a sequence of
+// TimeSeriesSegment files, each holding up to segmentTime milliseconds or
+// segmentSize bytes of compressed samples. A sample from a steadily sampled,
+// slowly changing signal takes less than a byte, so a week of 10 Hz samples from
+// a diagnostic point takes around 4 MB and a few hundred points a few hundred MB.
+// Noisy signals take up to three or four bytes a sample. Samples with timestamps earlier than the last one in the
+// series are rejected and counted.
+//
+// Reading
+// =======
+// scan() returns a Cursor over the samples in a range of timestamps. The cursor
+// skips the segments outside the range and decodes the rest straight from their
+// memory maps, so a scan runs at the speed the samples can be decompressed.
+//
+//     TimeSeriesStore.Cursor cursor = store.scan("F_TO_C_CONV.CNF", from, to);
+//     while (cursor.next()) {
+//         ... cursor.timestamp() ... cursor.value() ...
+//     }
+//
+// rollup() summarises a range in intervals of a given length, giving the count,
+// minimum, maximum and mean of each interval that has samples. Values that are
+// not numbers, such as the samples of an event without data, are counted but
+// otherwise left out.
+//
+// Retention
+// =========
+// retention() limits how long the samples are kept. Once a segment's samples are
+// older than the raw retention time, measured back from the newest sample in the
+// series, the segment is summarised into the series' rollups and deleted. The
+// rollups are themselves a series, FBNAME.EVENT@INTERVAL, holding the number of
+// samples in each interval, how many of them are numbers, and the minimum,
+// maximum and mean of those. They are deleted once they are older than the
+// rollup retention time. rollup() uses them for the part of a range that is no longer held in full.
+// Retention is applied each time a segment is completed. By default samples are
+// kept for ever.
+//
+// The server threads only queue the samples of the diagnostic points. The store's
+// writer thread takes them from the queue in batches and writes them, so creating,
+// sealing and deleting segment files never holds up a server. If the writer falls
+// behind and the queue fills, the oldest samples are dropped and counted in 
+// droppedCount(). Samples given to append() are written by the caller.
+//
+// Segments are read by the agents. Each series is locked while it is written,
+// and while a scan takes its list of segments. Errors are recorded in errors()
+// rather than thrown, so a failing disk never holds up the servers.
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+// 18.10.2026 BRD The samples from the servers are written by a writer thread, off
+//                the servers' selector threads.
+//
+package fde;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class TimeSeriesStore implements SampleListener {
+	// The directory the store is kept in, under the application's directory.
+	public static final String STORE_DIRECTORY = "history";
+
+	public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+	public static final long DEFAULT_SEGMENT_TIME = 60 * 60 * 1000;
+	
+	// The number of samples the writer's queue holds, and the number it 
+	// takes at a time.
+	public static final int DEFAULT_QUEUE_SIZE = 65536;
+	final static int WRITER_BATCH_SIZE = 256;
+	
+	// How long close() waits in milliseconds for the queued samples to be
+	// written.
+	final static long CLOSE_TIMEOUT = 5000;
+
+	// Rollup segments cover this many times as long as raw segments.
+	final static int ROLLUP_SEGMENT_FACTOR = 24;
+
+	// The columns of a rollup series.
+	final static int ROLLUP_COUNT = 0;
+	final static int ROLLUP_NUMBERS = 1;
+	final static int ROLLUP_MIN = 2;
+	final static int ROLLUP_MAX = 3;
+	final static int ROLLUP_MEAN = 4;
+	final static int ROLLUP_WIDTH = 5;
+
+	final static String SEGMENT_SUFFIX = ".seg";
+	final static String ROLLUP_SEPARATOR = "@";
+
+	private boolean isSilent = false;
+
+	private final Path directory;
+	private final int segmentSize;
+	private final long segmentTime;
+
+	private volatile long rawRetention = Long.MAX_VALUE;
+	private volatile long rollupInterval = 0;
+	private volatile long rollupRetention = Long.MAX_VALUE;
+
+	private final Map<String, Series> series = new ConcurrentHashMap<String, Series>();
+
+	// The series of each diagnostic point, indexed by the point's harnessID.
+	// The array is replaced rather than changed, so the server threads can read
+	// it without locking.
+	private volatile Series[] seriesByID = new Series[0];
+	private final Object attachLock = new Object();
+	private final List<String> errors = new ArrayList<String>();
+	
+	// Writer queue
+	// ============
+	// A ring buffer of the samples waiting for the writer.
+	private final ReentrantLock queueLock = new ReentrantLock();
+	private final Condition notEmpty = queueLock.newCondition();
+	private final Condition isDrained = queueLock.newCondition();
+	private final Series[] queueSeries;
+	private final long[] queueTimestamps;
+	private final double[] queueValues;
+	private int queueHead = 0;
+	private int queueCount = 0;
+	private int cntInProgress = 0;
+	private long cntDropped = 0;
+	private final Thread writer;
+
+	//
+	// Series
+	// ======
+	// The segments of one series, oldest first. Only the last can be active.
+	//
+	private class Series {
+		final String name;
+		final Path path;
+		final int width;
+		final long maxSegmentTime;
+		final List<TimeSeriesSegment> segments = new ArrayList<TimeSeriesSegment>();
+		TimeSeriesSegment active = null;
+		long nextSequence = 0;
+		long lastTimestamp = Long.MIN_VALUE;
+		long cntRejected = 0;
+		final double[] row;
+
+		Series(String name, int width, long maxSegmentTime) {
+			this.name = name;
+			this.path = directory.resolve(name);
+			this.width = width;
+			this.maxSegmentTime = maxSegmentTime;
+			this.row = new double[width];
+		}
+
+		//
+		// load()
+		// ======
+		// Opens the segments already on disk.
+		//
+		void load() throws IOException {
+			List<Path> files = new ArrayList<Path>();
+
+			Files.createDirectories(path);
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, "*" + SEGMENT_SUFFIX)) {
+				for (Path file : stream) {
+					files.add(file);
+				}
+			}
+			files.sort(null);
+			for (Path file : files) {
+				String fileName = file.getFileName().toString();
+				try {
+					long sequence = Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length()));
+					TimeSeriesSegment segment = TimeSeriesSegment.open(file);
+					nextSequence = Math.max(nextSequence, sequence + 1);
+					if (segment.width() != width) {
+						addError("Skipping " + file + ": it has " + segment.width() + " values per sample");
+						continue;
+					}
+					if (segment.count() == 0) {
+						Files.delete(file);
+						continue;
+					}
+					segments.add(segment);
+					lastTimestamp = Math.max(lastTimestamp, segment.lastTimestamp());
+				} catch (NumberFormatException | IOException e) {
+					addError("Skipping " + file + ": " + e.getMessage());
+				}
+			}
+		}
+
+		//
+		// append()
+		// ========
+		synchronized void append(long timeStamp, double[] values) {
+			if (timeStamp < lastTimestamp) {
+				cntRejected++;
+				return;
+			}
+			try {
+				if ((active != null) && (timeStamp - active.firstTimestamp() >= maxSegmentTime)) {
+					complete();
+				}
+				if ((active == null) || !active.append(timeStamp, values)) {
+					if (active != null) {
+						complete();
+					}
+					active = TimeSeriesSegment.create(path.resolve(String.format("%012d", nextSequence++) + SEGMENT_SUFFIX),
+						width, segmentSize);
+					segments.add(active);
+					active.append(timeStamp, values);
+				}
+				lastTimestamp = timeStamp;
+			} catch (IOException e) {
+				cntRejected++;
+				addError(name + ": " + e.getMessage());
+			}
+		}
+
+		//
+		// append()
+		// ========
+		synchronized void append(long timeStamp, double value) {
+			row[0] = value;
+			append(timeStamp, row);
+		}
+
+		//
+		// complete()
+		// ==========
+		// Seals the active segment and applies the retention policy.
+		//
+		void complete() throws IOException {
+			active.seal();
+			active = null;
+			if (width == 1) {
+				retain(lastTimestamp - rawRetention, rollupInterval);
+			} else {
+				retain(lastTimestamp - rollupRetention, 0);
+			}
+		}
+
+		//
+		// close()
+		// =======
+		synchronized void close() {
+			if (active != null) {
+				try {
+					active.seal();
+				} catch (IOException e) {
+					addError(name + ": " + e.getMessage());
+				}
+				active = null;
+			}
+		}
+
+		//
+		// retain()
+		// ========
+		// Deletes the completed segments that hold nothing later than horizon,
+		// first summarising them into the rollups if interval is not zero.
+		//
+		void retain(long horizon, long interval) throws IOException {
+			while (!segments.isEmpty() && (segments.get(0) != active) && (segments.get(0).lastTimestamp() < horizon)) {
+				TimeSeriesSegment segment = segments.get(0);
+				if (interval > 0) {
+					summarise(segment, interval);
+				}
+				segments.remove(0);
+				Files.deleteIfExists(segment.file());
+			}
+		}
+
+		//
+		// summarise()
+		// ===========
+		// Appends the rollups of each interval in a segment to the rollup series.
+		//
+		private void summarise(TimeSeriesSegment segment, long interval) throws IOException {
+			Series rollups = series(name + ROLLUP_SEPARATOR + interval, ROLLUP_WIDTH);
+			TimeSeriesSegment.Decoder decoder = segment.decoder();
+			Rollup rollup = null;
+
+			while (decoder.next()) {
+				long start = intervalStart(decoder.timestamp, interval);
+				if ((rollup != null) && (rollup.start != start)) {
+					rollups.append(rollup.start, rollup.row());
+					rollup = null;
+				}
+				if (rollup == null) {
+					rollup = new Rollup(start);
+				}
+				rollup.add(decoder.values[0]);
+			}
+			if (rollup != null) {
+				rollups.append(rollup.start, rollup.row());
+			}
+		}
+
+		//
+		// snapshot()
+		// ==========
+		// The segments that may hold samples between from and to.
+		//
+		synchronized List<TimeSeriesSegment> snapshot(long from, long to) {
+			List<TimeSeriesSegment> found = new ArrayList<TimeSeriesSegment>();
+
+			for (TimeSeriesSegment segment : segments) {
+				if ((segment.count() > 0) && (segment.lastTimestamp() >= from) && (segment.firstTimestamp() <= to)) {
+					found.add(segment);
+				}
+			}
+			return found;
+		}
+
+		//
+		// decoder()
+		// =========
+		// Returns a decoder for one of the series' segments. The series is locked
+		// so that the active segment is not written while its data is copied.
+		//
+		synchronized TimeSeriesSegment.Decoder decoder(TimeSeriesSegment segment) throws IOException {
+			return segment.decoder();
+		}
+
+		//
+		// firstTimestamp()
+		// ================
+		synchronized long firstTimestamp() {
+			return segments.isEmpty() ? Long.MAX_VALUE : segments.get(0).firstTimestamp();
+		}
+
+		//
+		// count()
+		// =======
+		synchronized long count() {
+			long cntSamples = 0;
+			for (TimeSeriesSegment segment : segments) {
+				cntSamples += segment.count();
+			}
+			return cntSamples;
+		}
+
+		//
+		// size()
+		// ======
+		synchronized long size() {
+			long cntBytes = 0;
+			for (TimeSeriesSegment segment : segments) {
+				cntBytes += segment.dataSize();
+			}
+			return cntBytes;
+		}
+	}
+
+	//
+	// Rollup
+	// ======
+	// The summary of the samples in one interval. min, max and mean are NaN if
+	// none of the samples were numbers.
+	//
+	public static class Rollup {
+		public final long start;
+		private long count = 0;
+		private long cntNumbers = 0;
+		private double min = Double.NaN;
+		private double max = Double.NaN;
+		private double sum = 0;
+
+		Rollup(long start) {
+			this.start = start;
+		}
+
+		//
+		// add()
+		// =====
+		// Adds a sample.
+		//
+		void add(double value) {
+			count++;
+			if (!Double.isNaN(value)) {
+				min = (cntNumbers == 0) ? value : Math.min(min, value);
+				max = (cntNumbers == 0) ? value : Math.max(max, value);
+				sum += value;
+				cntNumbers++;
+			}
+		}
+
+		//
+		// add()
+		// =====
+		// Adds the summary of a shorter interval, as read from a rollup series.
+		//
+		void add(double[] row) {
+			long cntRowNumbers = (long) row[ROLLUP_NUMBERS];
+			count += (long) row[ROLLUP_COUNT];
+			if (cntRowNumbers > 0) {
+				min = (cntNumbers == 0) ? row[ROLLUP_MIN] : Math.min(min, row[ROLLUP_MIN]);
+				max = (cntNumbers == 0) ? row[ROLLUP_MAX] : Math.max(max, row[ROLLUP_MAX]);
+				sum += row[ROLLUP_MEAN] * cntRowNumbers;
+				cntNumbers += cntRowNumbers;
+			}
+		}
+
+		//
+		// row()
+		// =====
+		// The summary as a row of a rollup series.
+		//
+		double[] row() {
+			return new double[] {count, cntNumbers, min, max, mean()};
+		}
+
+		public long count() {
+			return count;
+		}
+
+		public double min() {
+			return min;
+		}
+
+		public double max() {
+			return max;
+		}
+
+		public double mean() {
+			return (cntNumbers == 0) ? Double.NaN : sum / cntNumbers;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d n=%d min=%.4g max=%.4g mean=%.4g", start, count, min, max, mean());
+		}
+	}
+
+	//
+	// Cursor
+	// ======
+	// Steps through the samples of a series between two timestamps, inclusive.
+	//
+	public class Cursor {
+		private final Series owner;
+		private final List<TimeSeriesSegment> segments;
+		private final long from;
+		private final long to;
+		private int ptrSegment = 0;
+		private TimeSeriesSegment.Decoder decoder = null;
+		private boolean isFinished = false;
+
+		Cursor(Series owner, List<TimeSeriesSegment> segments, long from, long to) {
+			this.owner = owner;
+			this.segments = segments;
+			this.from = from;
+			this.to = to;
+		}
+
+		//
+		// next()
+		// ======
+		// Moves on to the next sample.
+		//
+		// returns  false when there are no more samples in the range.
+		//
+		public boolean next() {
+			while (!isFinished) {
+				if (decoder == null) {
+					if (ptrSegment == segments.size()) {
+						isFinished = true;
+						break;
+					}
+					try {
+						decoder = owner.decoder(segments.get(ptrSegment++));
+					} catch (NoSuchFileException e) {
+						// The segment has been deleted by the retention policy.
+						continue;
+					} catch (IOException e) {
+						addError("Scan failed: " + e.getMessage());
+						continue;
+					}
+				}
+				if (!decoder.next()) {
+					decoder = null;
+				} else if (decoder.timestamp > to) {
+					isFinished = true;
+				} else if (decoder.timestamp >= from) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		//
+		// get timestamp()
+		// ===============
+		public long timestamp() {
+			return decoder.timestamp;
+		}
+
+		//
+		// get value()
+		// ===========
+		public double value() {
+			return decoder.values[0];
+		}
+
+		//
+		// get value()
+		// ===========
+		// The value in a column of a series that has more than one.
+		//
+		public double value(int ptrColumn) {
+			return decoder.values[ptrColumn];
+		}
+	}
+
+	//
+	// TimeSeriesStore()
+	// =================
+	public TimeSeriesStore(String directory) {
+		this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_SEGMENT_TIME, DEFAULT_QUEUE_SIZE);
+	}
+	
+	//
+	// TimeSeriesStore()
+	// =================
+	public TimeSeriesStore(String directory, int segmentSize, long segmentTime) {
+		this(directory, segmentSize, segmentTime, DEFAULT_QUEUE_SIZE);
+	}
+
+	//
+	// TimeSeriesStore()
+	// =================
+	// directory    Where the series are kept. It is created if need be.
+	//
+	// segmentSize  The largest size in bytes of a segment file.
+	//
+	// segmentTime  The longest time in milliseconds that a segment covers.
+	//
+	// queueSize    The number of samples from the servers that can wait to be
+	//              written.
+	//
+	public TimeSeriesStore(String directory, int segmentSize, long segmentTime, int queueSize) {
+		if ((segmentSize < TimeSeriesSegment.HEADER_SIZE + 1024) || (segmentTime < 1)) {
+			throw new IllegalArgumentException("The segment size and time are too small");
+		}
+		if (queueSize < 1) {
+			throw new IllegalArgumentException("The queue size must be positive");
+		}
+		this.directory = Paths.get(directory);
+		this.segmentSize = segmentSize;
+		this.segmentTime = segmentTime;
+		queueSeries = new Series[queueSize];
+		queueTimestamps = new long[queueSize];
+		queueValues = new double[queueSize];
+		writer = new Thread(this::runWriter, "TimeSeriesStore");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	//
+	// retention()
+	// ===========
+	// Sets how long samples are kept.
+	//
+	// rawTime         How long every sample is kept, in milliseconds.
+	//
+	// interval        The length of the intervals that older samples are
+	//                 summarised in, or zero if they are not to be kept.
+	//
+	// rollupTime      How long the summaries are kept, in milliseconds.
+	//
+	public void retention(long rawTime, long interval, long rollupTime) {
+		if ((rawTime < 0) || (interval < 0) || (rollupTime < 0)) {
+			throw new IllegalArgumentException("The retention times must not be negative");
+		}
+		rawRetention = rawTime;
+		rollupInterval = interval;
+		rollupRetention = rollupTime;
+	}
+
+	//
+	// attach()
+	// ========
+	// Records the samples of every diagnostic point.
+	//
+	// returns  the number of points attached.
+	//
+	public int attach(DiagnosticPoints dps) {
+		int cntAttached = 0;
+
+		for (int ptrDP = 0; ptrDP < dps.count(); ptrDP++) {
+			if (attach(dps.get(ptrDP))) {
+				cntAttached++;
+			}
+		}
+		if (cntAttached > 0) {
+			say("Recording " + cntAttached + " diagnostic point(s) in " + directory);
+		}
+		return cntAttached;
+	}
+
+	//
+	// attach()
+	// ========
+	// Records the samples of a diagnostic point from now on.
+	//
+	// returns  false if the point's series could not be opened.
+	//
+	public boolean attach(DiagnosticPoint dp) {
+		int harnessID = dp.harnessID();
+
+		if (harnessID < 0) {
+			throw new IllegalArgumentException("Diagnostic point " + dp.fbName + "." + dp.fbEventName + " has not been deployed");
+		}
+		Series pointSeries = series(dp.fbName + "." + dp.fbEventName, 1);
+		if (pointSeries == null) {
+			return false;
+		}
+		synchronized (attachLock) {
+			Series[] newSeries = (harnessID >= seriesByID.length) ? Arrays.copyOf(seriesByID, harnessID + 1) : seriesByID.clone();
+			newSeries[harnessID] = pointSeries;
+			seriesByID = newSeries;
+		}
+		dp.server.addSampleListener(this);
+		return true;
+	}
+
+	//
+	// detach()
+	// ========
+	// Stops recording a diagnostic point.
+	//
+	public void detach(DiagnosticPoint dp) {
+		synchronized (attachLock) {
+			if (dp.harnessID() < seriesByID.length) {
+				Series[] newSeries = seriesByID.clone();
+				newSeries[dp.harnessID()] = null;
+				seriesByID = newSeries;
+			}
+		}
+	}
+
+	//
+	// series()
+	// ========
+	// Returns the series with this name, opening or creating it if need be.
+	//
+	// returns  null if the series could not be opened.
+	//
+	private Series series(String name, int width) {
+		Series found = series.get(name);
+
+		if (found == null) {
+			synchronized (series) {
+				found = series.get(name);
+				if (found == null) {
+					long maxSegmentTime = (width == 1) ? segmentTime : segmentTime * ROLLUP_SEGMENT_FACTOR;
+					found = new Series(name, width, maxSegmentTime);
+					try {
+						found.load();
+					} catch (IOException e) {
+						addError("Cannot open series " + name + ": " + e.getMessage());
+						return null;
+					}
+					series.put(name, found);
+				}
+			}
+		}
+		return found;
+	}
+
+	//
+	// sampleReceived()
+	// ================
+	// Called by a server thread with each sampled value. The value is queued
+	// for the writer.
+	//
+	@Override
+	public void sampleReceived(int harnessID, long timeStamp, double value) {
+		Series[] currentSeries = seriesByID;
+
+		if ((harnessID >= 0) && (harnessID < currentSeries.length) && (currentSeries[harnessID] != null)) {
+			enqueue(currentSeries[harnessID], timeStamp, value);
+		}
+	}
+
+	//
+	// enqueue()
+	// =========
+	// Adds a sample to the writer's queue, dropping the oldest sample if the
+	// queue is full.
+	//
+	private void enqueue(Series target, long timeStamp, double value) {
+		queueLock.lock();
+		try {
+			if (queueCount == queueSeries.length) {
+				queueSeries[queueHead] = null;
+				queueHead = (queueHead + 1) % queueSeries.length;
+				queueCount--;
+				cntDropped++;
+			}
+			int ptrTail = (queueHead + queueCount) % queueSeries.length;
+			queueSeries[ptrTail] = target;
+			queueTimestamps[ptrTail] = timeStamp;
+			queueValues[ptrTail] = value;
+			queueCount++;
+			notEmpty.signal();
+		} finally {
+			queueLock.unlock();
+		}
+	}
+
+	//
+	// runWriter()
+	// ===========
+	// Takes the samples from the queue in batches and writes them with the
+	// queue unlocked.
+	//
+	private void runWriter() {
+		Series[] batchSeries = new Series[WRITER_BATCH_SIZE];
+		long[] batchTimestamps = new long[WRITER_BATCH_SIZE];
+		double[] batchValues = new double[WRITER_BATCH_SIZE];
+
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				int cntBatch = 0;
+				queueLock.lock();
+				try {
+					while (queueCount == 0) {
+						notEmpty.await();
+					}
+					while ((queueCount > 0) && (cntBatch < WRITER_BATCH_SIZE)) {
+						batchSeries[cntBatch] = queueSeries[queueHead];
+						batchTimestamps[cntBatch] = queueTimestamps[queueHead];
+						batchValues[cntBatch] = queueValues[queueHead];
+						queueSeries[queueHead] = null;
+						queueHead = (queueHead + 1) % queueSeries.length;
+						queueCount--;
+						cntBatch++;
+					}
+					cntInProgress = cntBatch;
+				} finally {
+					queueLock.unlock();
+				}
+
+				for (int ptrBatch = 0; ptrBatch < cntBatch; ptrBatch++) {
+					batchSeries[ptrBatch].append(batchTimestamps[ptrBatch], batchValues[ptrBatch]);
+					batchSeries[ptrBatch] = null;
+				}
+				queueLock.lock();
+				try {
+					cntInProgress = 0;
+					if (queueCount == 0) {
+						isDrained.signalAll();
+					}
+				} finally {
+					queueLock.unlock();
+				}
+			}
+		} catch (InterruptedException e) {
+			// The store has been shut down.
+		}
+	}
+
+	//
+	// awaitWritten()
+	// ==============
+	// Waits until the writer has written every sample queued so far.
+	//
+	// returns  false if there are still samples to write after the timeout.
+	//
+	public boolean awaitWritten(long milliseconds) {
+		long nanos = TimeUnit.MILLISECONDS.toNanos(milliseconds);
+
+		queueLock.lock();
+		try {
+			while ((queueCount > 0) || (cntInProgress > 0)) {
+				if (nanos <= 0) {
+					return false;
+				}
+				nanos = isDrained.awaitNanos(nanos);
+			}
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			queueLock.unlock();
+		}
+	}
+
+	//
+	// get droppedCount()
+	// ==================
+	// The number of samples from the servers that were dropped because the
+	// writer had fallen behind.
+	//
+	public long droppedCount() {
+		queueLock.lock();
+		try {
+			return cntDropped;
+		} finally {
+			queueLock.unlock();
+		}
+	}
+
+	//
+	// append()
+	// ========
+	// Adds a sample to a series, creating the series if need be.
+	//
+	public void append(String name, long timeStamp, double value) {
+		Series found = series(name, 1);
+
+		if (found != null) {
+			found.append(timeStamp, value);
+		}
+	}
+
+	//
+	// scan()
+	// ======
+	// Returns a cursor over the samples of a series with timestamps from from
+	// to to, inclusive. A series that does not exist has no samples.
+	//
+	public Cursor scan(String name, long from, long to) {
+		Series found = series.get(name);
+
+		if ((found == null) && Files.isDirectory(directory.resolve(name))) {
+			found = series(name, 1);
+		}
+		if (found == null) {
+			return new Cursor(null, new ArrayList<TimeSeriesSegment>(), from, to);
+		}
+		return new Cursor(found, found.snapshot(from, to), from, to);
+	}
+
+	//
+	// scan()
+	// ======
+	public Cursor scan(DiagnosticPoint dp, long from, long to) {
+		return scan(dp.fbName + "." + dp.fbEventName, from, to);
+	}
+
+	//
+	// rollup()
+	// ========
+	// Summarises the samples of a series from from to to in intervals of the
+	// given length in milliseconds. Only the intervals that have samples are
+	// returned. Where the samples have been summarised by the retention policy,
+	// intervals shorter than the retention policy's are not available and the
+	// summaries are returned as they are.
+	//
+	public List<Rollup> rollup(String name, long from, long to, long interval) {
+		List<Rollup> rollups = new ArrayList<Rollup>();
+		Series raw = series.get(name);
+		long rawStart = (raw == null) ? Long.MIN_VALUE : raw.firstTimestamp();
+		Rollup rollup = null;
+
+		if (interval < 1) {
+			throw new IllegalArgumentException("The interval must be positive");
+		}
+
+		// Summaries of the samples that are no longer held in full.
+		long storedInterval = rollupInterval;
+		if ((storedInterval > 0) && (from < rawStart)) {
+			Cursor cursor = scan(name + ROLLUP_SEPARATOR + storedInterval, from, Math.min(to, rawStart - 1));
+			double[] row = new double[ROLLUP_WIDTH];
+			while (cursor.next()) {
+				long start = intervalStart(cursor.timestamp(), Math.max(interval, storedInterval));
+				if ((rollup == null) || (rollup.start != start)) {
+					rollup = new Rollup(start);
+					rollups.add(rollup);
+				}
+				for (int ptrColumn = 0; ptrColumn < ROLLUP_WIDTH; ptrColumn++) {
+					row[ptrColumn] = cursor.value(ptrColumn);
+				}
+				rollup.add(row);
+			}
+		}
+
+		Cursor cursor = scan(name, from, to);
+		while (cursor.next()) {
+			long start = intervalStart(cursor.timestamp(), interval);
+			if ((rollup == null) || (rollup.start != start)) {
+				rollup = new Rollup(start);
+				rollups.add(rollup);
+			}
+			rollup.add(cursor.value());
+		}
+		return rollups;
+	}
+
+	//
+	// rollup()
+	// ========
+	public List<Rollup> rollup(DiagnosticPoint dp, long from, long to, long interval) {
+		return rollup(dp.fbName + "." + dp.fbEventName, from, to, interval);
+	}
+
+	//
+	// intervalStart()
+	// ===============
+	private static long intervalStart(long timeStamp, long interval) {
+		return timeStamp - Math.floorMod(timeStamp, interval);
+	}
+
+	//
+	// get count()
+	// ===========
+	// The number of samples held in full for a series.
+	//
+	public long count(String name) {
+		Series found = series.get(name);
+		return (found == null) ? 0 : found.count();
+	}
+
+	//
+	// get rejectedCount()
+	// ===================
+	// The number of samples that could not be added to a series because they
+	// were out of order or could not be written.
+	//
+	public long rejectedCount(String name) {
+		Series found = series.get(name);
+		if (found == null) {
+			return 0;
+		}
+		synchronized (found) {
+			return found.cntRejected;
+		}
+	}
+
+	//
+	// get size()
+	// ==========
+	// The number of bytes of disk taken by the samples of every series.
+	//
+	public long size() {
+		long cntBytes = 0;
+		for (Series found : series.values()) {
+			cntBytes += found.size();
+		}
+		return cntBytes;
+	}
+
+	//
+	// get seriesNames()
+	// =================
+	// The names of the series that have been opened.
+	//
+	public List<String> seriesNames() {
+		List<String> names = new ArrayList<String>(series.keySet());
+		names.sort(null);
+		return names;
+	}
+
+	//
+	// close()
+	// =======
+	// Writes the queued samples and seals the segments being written. Samples
+	// that arrive afterwards start new segments.
+	//
+	public void close() {
+		if (!awaitWritten(CLOSE_TIMEOUT)) {
+			addError("Closed the store with samples still waiting to be written");
+		}
+		for (Series found : series.values()) {
+			found.close();
+		}
+	}
+
+	//
+	// shutdown()
+	// ==========
+	// Closes the store and stops the writer thread. Samples that arrive 
+	// afterwards are queued but not written.
+	//
+	public void shutdown() {
+		close();
+		writer.interrupt();
+	}
+
+	//
+	// errors()
+	// ========
+	// The errors met while opening, writing or scanning the series.
+	//
+	public synchronized List<String> errors() {
+		return new ArrayList<String>(errors);
+	}
+
+	//
+	// addError()
+	// ==========
+	private synchronized void addError(String error) {
+		errors.add(error);
+		say(error);
+	}
+
+	//
+	// say()
+	// =====
+	// Output a console message for use during debugging. This
+	// can be turned off by setting the private variable silence
+	//
+	private void say(String whatToSay) {
+		if (!isSilent) {
+			System.out.println(whatToSay);
+		}
+	}
+}
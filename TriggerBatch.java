@@ -0,0 +1,139 @@
+//
+// TRIGGER BATCH
+// =============
+// Holds a set of diagnostic point triggers that are to be applied to the
+// function block application together. This allows a script to stimulate
+// several inputs at the same instant, for example a three-phase current or
+// a gimbal position, rather than one diagnostic point after another.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// Build the batch and pass it to DiagnosticPoints.trigger():
+//
+//     TriggerBatch batch = new TriggerBatch();
+//     batch.add(PHASE_A_REQ, currentA);
+//     batch.add(PHASE_B_REQ, currentB);
+//     batch.add(PHASE_C_REQ, currentC);
+//     if (dps.trigger(batch)) {
+//         start = batch.timestamp(0);
+//         ...
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+//
+package fde;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TriggerBatch {
+	private List<DiagnosticPoint> dps = new ArrayList<DiagnosticPoint>();
+	private List<String> packets = new ArrayList<String>();
+	private List<Boolean> hasValue = new ArrayList<Boolean>();
+	private long[] timestamps = new long[0];
+	private boolean[] triggered = new boolean[0];
+	
+	//
+	// add()
+	// =====
+	// Adds a trigger that sets an input data value and fires its event.
+	//
+	public TriggerBatch add(DiagnosticPoint dp, double data) {
+		dps.add(dp);
+		packets.add(dp.triggerPacket(data));
+		hasValue.add(true);
+		return this;
+	}
+	
+	//
+	// add()
+	// =====
+	// Adds a trigger that only fires an event.
+	//
+	public TriggerBatch add(DiagnosticPoint dp) {
+		dps.add(dp);
+		packets.add(dp.triggerPacket());
+		hasValue.add(false);
+		return this;
+	}
+	
+	//
+	// clear()
+	// =======
+	// Empties the batch so it can be reused for the next test vector.
+	//
+	public void clear() {
+		dps.clear();
+		packets.clear();
+		hasValue.clear();
+		timestamps = new long[0];
+		triggered = new boolean[0];
+	}
+	
+	//
+	// count()
+	// =======
+	public int count() {
+		return dps.size();
+	}
+	
+	//
+	// get dp()
+	// ========
+	public DiagnosticPoint dp(int ptr) {
+		return dps.get(ptr);
+	}
+	
+	//
+	// get packet()
+	// ============
+	String packet(int ptr) {
+		return packets.get(ptr);
+	}
+	
+	//
+	// hasValue()
+	// ==========
+	// True if this trigger carries a data value rather than just an event.
+	//
+	boolean hasValue(int ptr) {
+		return hasValue.get(ptr);
+	}
+	
+	//
+	// get timestamp()
+	// ===============
+	// The FORTE timestamp returned for this trigger, or zero if none arrived.
+	//
+	public long timestamp(int ptr) {
+		return (ptr < timestamps.length) ? timestamps[ptr] : 0;
+	}
+	
+	//
+	// get triggered()
+	// ===============
+	public boolean triggered(int ptr) {
+		return (ptr < triggered.length) && triggered[ptr];
+	}
+	
+	//
+	// reset()
+	// =======
+	// Clears the results before the batch is sent.
+	//
+	void reset() {
+		timestamps = new long[dps.size()];
+		triggered = new boolean[dps.size()];
+	}
+	
+	//
+	// set timestamp()
+	// ===============
+	void timestamp(int ptr, long timestamp) {
+		timestamps[ptr] = timestamp;
+		triggered[ptr] = true;
+	}
+}
@@ -0,0 +1,22 @@
+//
+// VARIABLE TYPES
+// ==============
+// Whether a function block variable is an input, an output or internal.
+//
+// (c) AUT University - 2019-2020
+//
+// Revision History
+// ================
+// 18.10.2019 BRD Original version.
+// 18.10.2026 BRD Added VAR_INTERNAL for the internal variables of basic function
+//                blocks.
+// 18.10.2026 BRD Moved out of FunctionBlockVariable.java into its own source file.
+//
+package fde;
+
+enum VarTypes {
+	VAR_UNDEFINED,
+	VAR_INPUT,
+	VAR_OUTPUT,
+	VAR_INTERNAL
+}
@@ -0,0 +1,21 @@
+//
+// VERACITY TYPES
+// ==============
+// Whether a belief has been tested and found to be true or false.
+//
+// (c) AUT University - 2020
+//
+// Revision History
+// ================
+// 19.08.2020 BRD Original version.
+// 18.10.2026 BRD Moved out of Belief.java into its own source file.
+//
+package fde;
+
+class VeracityTypes {
+	public static final int UNDETERMINED = 0;			// This belief has not been verified (tried, tested).
+	public static final int TRUE = 1;         			// This belief has been tested and is now believed to
+	         											// be true.
+	public static final int FALSE = 2;					// This belief has been tested and is now believed to
+														// be false.
+}
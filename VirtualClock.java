@@ -0,0 +1,227 @@
+//
+// VIRTUAL CLOCK
+// =============
+// A discrete-event clock for running diagnostic scripts against a simulated
+// application faster than real time. Time only moves when every thread attached
+// to the clock is waiting in sleep(). It then jumps straight to the earliest
+// pending wake-up time, releasing the threads waiting for that time. A script
+// that waits 100 ms between the steps of a test therefore does not actually
+// wait at all.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// Only use a virtual clock when the diagnostic points are fed by a simulator
+// that stamps its packets with this clock. A real FORTE runtime keeps running
+// in real time, so triggers would time out in virtual time before it replied.
+//
+// Threads that are not attached can still sleep on the clock. They wake when
+// the attached threads have moved time past their wake-up time, or when time is
+// moved on explicitly with advance().
+//
+// The clock is guarded by a ReentrantLock and its sleepers wait on a Condition,
+// so an agent sleeping on a virtual thread is not pinned to its carrier.
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+// 18.10.2026 BRD Uses a ReentrantLock and Condition rather than a monitor.
+//
+package fde;
+
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class VirtualClock extends EngineClock {
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition timeMoved = lock.newCondition();
+	private final long startTime;
+	private long now;
+
+	// The wake-up times of the threads sleeping on the clock.
+	private final PriorityQueue<Long> wakeups = new PriorityQueue<Long>();
+
+	// Attached threads, and how many of them are running rather than sleeping.
+	private final Set<Thread> attached = new HashSet<Thread>();
+	private int cntRunning = 0;
+
+	private long cntAdvances = 0;
+
+	//
+	// VirtualClock()
+	// ==============
+	// Starts virtual time at the current wall-clock time.
+	//
+	public VirtualClock() {
+		this(System.currentTimeMillis());
+	}
+
+	//
+	// VirtualClock()
+	// ==============
+	// startTime  The epoch time in milliseconds that virtual time starts at.
+	//
+	public VirtualClock(long startTime) {
+		this.startTime = startTime;
+		this.now = startTime;
+	}
+
+	@Override
+	public long currentTimeMillis() {
+		lock.lock();
+		try {
+			return now;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public long nanoTime() {
+		return (currentTimeMillis() - startTime) * 1000000L;
+	}
+
+	//
+	// sleep()
+	// =======
+	// Registers a wake-up time and waits for virtual time to reach it. If this
+	// leaves no attached thread running, time moves on to the earliest wake-up.
+	//
+	@Override
+	public void sleep(long milliseconds, CountDownLatch wake) throws InterruptedException {
+		lock.lock();
+		try {
+			Long wakeTime = now + Math.max(0, milliseconds);
+			boolean isAttached = attached.contains(Thread.currentThread());
+
+			wakeups.add(wakeTime);
+			if (isAttached) {
+				cntRunning--;
+			}
+			try {
+				advanceIfIdle();
+				while ((now < wakeTime) && !isReleased(wake)) {
+					timeMoved.await();
+				}
+			} finally {
+				// The wake-up stays registered until the thread is running
+				// again, so time cannot move past it in the meantime.
+				wakeups.remove(wakeTime);
+				if (isAttached) {
+					cntRunning++;
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void wakeWaiters() {
+		lock.lock();
+		try {
+			timeMoved.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void attach() {
+		lock.lock();
+		try {
+			if (attached.add(Thread.currentThread())) {
+				cntRunning++;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void detach() {
+		lock.lock();
+		try {
+			if (attached.remove(Thread.currentThread())) {
+				cntRunning--;
+				advanceIfIdle();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean isVirtual() {
+		return true;
+	}
+
+	//
+	// advance()
+	// =========
+	// Moves virtual time forward explicitly, waking any thread whose wake-up
+	// time has been reached.
+	//
+	public void advance(long milliseconds) {
+		lock.lock();
+		try {
+			now += Math.max(0, milliseconds);
+			cntAdvances++;
+			timeMoved.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	//
+	// advanceIfIdle()
+	// ===============
+	// Moves time to the earliest wake-up once no attached thread is running.
+	// Must be called holding the lock.
+	//
+	private void advanceIfIdle() {
+		if ((cntRunning <= 0) && !wakeups.isEmpty()) {
+			long nextTime = wakeups.peek();
+			if (nextTime > now) {
+				now = nextTime;
+				cntAdvances++;
+				timeMoved.signalAll();
+			}
+		}
+	}
+
+	//
+	// isReleased()
+	// ============
+	private boolean isReleased(CountDownLatch wake) {
+		return (wake != null) && (wake.getCount() == 0);
+	}
+
+	//
+	// get elapsedTime()
+	// =================
+	// Milliseconds of virtual time since the clock started.
+	//
+	public long elapsedTime() {
+		return currentTimeMillis() - startTime;
+	}
+
+	//
+	// get advanceCount()
+	// ==================
+	// The number of times virtual time has moved forward.
+	//
+	public long advanceCount() {
+		lock.lock();
+		try {
+			return cntAdvances;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
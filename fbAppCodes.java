@@ -0,0 +1,24 @@
+//
+// FUNCTION BLOCK APPLICATION CODES
+// ================================
+// The status codes returned when the function block application is changed.
+//
+// (c) AUT University - 2019-2020
+//
+// Revision History
+// ================
+// 04.09.2019 BRD Original version.
+// 18.10.2026 BRD Moved out of FunctionBlockApp.java into its own source file.
+//
+package fde;
+
+enum fbAppCodes {
+	UNDEFINED,			// Default undefined state.
+	INVALID_NAME,       // Blank or invalid function block name was specified.
+	INVALID_PORT_NAME,  // Name of the function block port was blank or invalid.
+	INVALID_EVENT_NAME, // The name of event was blank or invalid.
+	FB_NOT_FOUND,		// Function block specified in the command could not be found.
+	EVENT_UNDEFINED,    // No event could be found that would trigger the input or output data event.
+	REWIRE_FAILED,		// Could not rewire the function block specified. 
+	REWIRED				// Application was rewired successfully.
+}
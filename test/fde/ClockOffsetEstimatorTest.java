@@ -0,0 +1,215 @@
+//
+// CLOCK OFFSET ESTIMATOR TEST
+// ===========================
+// Checks the ClockOffsetEstimator against synthetic round trips to a FORTE
+// clock whose offset, drift and network delays are known.
+//
+// (c) AUT University - 2026
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+//
+package fde;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+public class ClockOffsetEstimatorTest extends TestCase {
+	private static final double START_TIME = 1.7e12;
+	private final Random random = new Random(46);
+
+	public static void main(String[] args) {
+		new ClockOffsetEstimatorTest().run();
+	}
+
+	@Override
+	protected void tests() throws Exception {
+		uncalibrated();
+		constantOffset();
+		drift();
+		rejectedRoundTrips();
+		clockStep();
+		engineTimeAnchor();
+	}
+
+	//
+	// uncalibrated()
+	// ==============
+	private void uncalibrated() {
+		ClockOffsetEstimator estimator = new ClockOffsetEstimator();
+		check(!estimator.isCalibrated(), "Not calibrated before any round trip");
+		checkEquals(START_TIME, estimator.toEngineTime(START_TIME), 0, "Times pass through until calibrated");
+		checkEquals(START_TIME, estimator.toForteTime(START_TIME), 0, "Times pass through until calibrated");
+	}
+
+	//
+	// constantOffset()
+	// ================
+	// Round trips with uneven legs and an occasional long queueing delay. The
+	// error must stay within the estimator's own uncertainty.
+	//
+	private void constantOffset() {
+		double trueOffset = -123456.7;
+		ClockOffsetEstimator estimator = new ClockOffsetEstimator();
+		double time = START_TIME;
+		for (int n = 0; n < 500; n++) {
+			roundTrip(estimator, time, trueOffset);
+			time += 100;
+		}
+		check(estimator.isCalibrated(), "Calibrated");
+		checkEquals(500, estimator.roundTripCount(), "Every round trip used");
+		double error = Math.abs(estimator.offset(time) - trueOffset);
+		check(error <= estimator.uncertainty(), "Offset error " + error + " within the uncertainty " + estimator.uncertainty());
+		check(error < 1, "Offset error " + error + " under a millisecond");
+		checkEquals(0, estimator.drift(), 20, "No drift found in a clock that does not drift");
+		check(estimator.roundTripDelay() < 1.5, "Shortest round trip found, " + estimator.roundTripDelay());
+
+		double engineTime = time + 12.34;
+		checkEquals(engineTime, estimator.toEngineTime(estimator.toForteTime(engineTime)), 1e-6, "toEngineTime() undoes toForteTime()");
+	}
+
+	//
+	// drift()
+	// =======
+	// A FORTE clock gaining 500 ppm. The drift needs MIN_DRIFT_SPAN of samples
+	// before it is estimated.
+	//
+	private void drift() {
+		double trueOffset = 2500;
+		double trueDrift = 500e-6;
+		ClockOffsetEstimator estimator = new ClockOffsetEstimator();
+		double time = START_TIME;
+		for (int n = 0; n < 20; n++) {
+			roundTrip(estimator, time, trueOffset + trueDrift * (time - START_TIME));
+			time += 100;
+		}
+		checkEquals(0, estimator.drift(), 0, "No drift estimated over less than MIN_DRIFT_SPAN");
+
+		for (int n = 0; n < 1000; n++) {
+			roundTrip(estimator, time, trueOffset + trueDrift * (time - START_TIME));
+			time += 100;
+		}
+		checkEquals(trueDrift * 1e6, estimator.drift(), 150, "Drift in ppm");
+		double expected = trueOffset + trueDrift * (time - START_TIME);
+		checkEquals(expected, estimator.offset(time), 1, "Offset follows the drift");
+	}
+
+	//
+	// rejectedRoundTrips()
+	// ====================
+	private void rejectedRoundTrips() {
+		ClockOffsetEstimator estimator = new ClockOffsetEstimator();
+		check(!estimator.add(START_TIME + 10, 0, START_TIME), "A round trip that took negative time is rejected");
+		check(!estimator.add(Double.NaN, 0, START_TIME), "A round trip with no send time is rejected");
+		check(!estimator.isCalibrated(), "Rejected round trips do not calibrate");
+	}
+
+	//
+	// clockStep()
+	// ===========
+	// When the FORTE clock is stepped, STEP_COUNT disagreeing samples in a row
+	// replace the estimate. Fewer are treated as outliers.
+	//
+	private void clockStep() {
+		double trueOffset = 1000;
+		ClockOffsetEstimator estimator = new ClockOffsetEstimator();
+		double time = START_TIME;
+		for (int n = 0; n < 100; n++) {
+			roundTrip(estimator, time, trueOffset);
+			time += 100;
+		}
+
+		roundTrip(estimator, time, trueOffset + 60000);
+		time += 100;
+		checkEquals(trueOffset, estimator.offset(time), 1, "A single outlier is ignored");
+		for (int n = 0; n < 10; n++) {
+			roundTrip(estimator, time, trueOffset);
+			time += 100;
+		}
+
+		for (int n = 0; n < ClockOffsetEstimator.STEP_COUNT - 1; n++) {
+			roundTrip(estimator, time, trueOffset + 60000);
+			time += 100;
+			checkEquals(trueOffset, estimator.offset(time), 1, "Estimate kept until STEP_COUNT samples disagree");
+		}
+		roundTrip(estimator, time, trueOffset + 60000);
+		time += 100;
+		checkEquals(trueOffset + 60000, estimator.offset(time), 1, "Estimate follows the stepped clock");
+	}
+
+	//
+	// engineTimeAnchor()
+	// ==================
+	// engineTime() interpolates with the nanosecond timer but must not wander
+	// more than MAX_ANCHOR_DRIFT from the EngineClock, even when the timer runs
+	// at a different rate or the clock is stepped.
+	//
+	private void engineTimeAnchor() {
+		EngineClock original = EngineClock.clock();
+		TestClock clock = new TestClock();
+		EngineClock.install(clock);
+		try {
+			double worst = 0;
+			for (int n = 0; n < 10000; n++) {
+				// The timer runs 2% fast.
+				clock.nanos += 102000;
+				clock.millis = 1000000 + (n / 10);
+				worst = Math.max(worst, Math.abs(ClockOffsetEstimator.engineTime() - clock.millis));
+			}
+			check(worst <= ClockOffsetEstimator.MAX_ANCHOR_DRIFT, "engineTime() kept within " + worst + " ms of a clock its timer outruns");
+
+			clock.millis += 3600000;
+			clock.nanos += 100000;
+			checkEquals(clock.millis, ClockOffsetEstimator.engineTime(), ClockOffsetEstimator.MAX_ANCHOR_DRIFT,
+				"engineTime() follows a stepped clock");
+		} finally {
+			EngineClock.install(original);
+		}
+	}
+
+	//
+	// roundTrip()
+	// ===========
+	// Adds a round trip sent at the engine time given to a FORTE clock that is
+	// offset ahead of the engine's. Each leg takes half a millisecond plus an
+	// exponential queueing delay, and one trip in ten waits up to 50 ms more.
+	//
+	private void roundTrip(ClockOffsetEstimator estimator, double sendTime, double offset) {
+		double outbound = 0.5 + leg();
+		double inbound = 0.5 + leg();
+		if (random.nextInt(10) == 0) {
+			inbound += 50 * random.nextDouble();
+		}
+		long timeStamp = (long) Math.floor(sendTime + outbound + offset);
+		estimator.add(sendTime, timeStamp, sendTime + outbound + inbound);
+	}
+
+	private double leg() {
+		return -0.3 * Math.log(1 - random.nextDouble());
+	}
+
+	//
+	// TestClock
+	// =========
+	// An EngineClock whose time and timer are set by the test.
+	//
+	private static class TestClock extends EngineClock {
+		volatile long millis = 0;
+		volatile long nanos = 0;
+
+		@Override
+		public long currentTimeMillis() {
+			return millis;
+		}
+
+		@Override
+		public long nanoTime() {
+			return nanos;
+		}
+
+		@Override
+		public void sleep(long milliseconds, CountDownLatch wake) {
+		}
+	}
+}
@@ -0,0 +1,184 @@
+//
+// OSCILLATION DETECTOR TEST
+// =========================
+// Checks the sliding DFT oscillation detector against sine waves in and out of
+// its band and against a DFT of the window worked out directly.
+//
+// (c) AUT University - 2026
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+//
+package fde;
+
+import java.util.List;
+import java.util.Random;
+
+public class OscillationTest extends TestCase {
+	// Sampled every PERIOD milliseconds, so the Nyquist frequency is 50 Hz
+	// and the resolution of the default window is 1000 / (10 * 64) Hz.
+	private static final long PERIOD = 10;
+	private static final double RESOLUTION = 1000.0 / (PERIOD * AnomalyDetector.Oscillation.DEFAULT_WINDOW);
+
+	public static void main(String[] args) {
+		new OscillationTest().run();
+	}
+
+	@Override
+	protected void tests() throws Exception {
+		sweep();
+		outOfBand();
+		offsetAndNoise();
+		hysteresis();
+		directDFT();
+		gaps();
+		arguments();
+	}
+
+	//
+	// sweep()
+	// =======
+	// A unit sine anywhere in the band is at most half a bin from a bin, so
+	// its amplitude is never measured at less than sinc(1/2), about 0.64.
+	//
+	private void sweep() {
+		double worst = Double.MAX_VALUE;
+		for (double hz = 2; hz <= 20; hz += 0.05) {
+			AnomalyDetector.Oscillation detector = new AnomalyDetector.Oscillation(2, 20, 0.5, PERIOD);
+			feed(detector, 0, 400, hz, 1, 0);
+			worst = Math.min(worst, detector.amplitude());
+			if (!detector.isAnomalous() || (Math.abs(detector.peakFrequency() - hz) > RESOLUTION)) {
+				check(false, String.format("%.2f Hz gave %.3f at %.2f Hz", hz, detector.amplitude(), detector.peakFrequency()));
+				return;
+			}
+		}
+		check(worst > 0.6, "Weakest response across the band is " + worst);
+		check(worst <= 1.05, "Response never exceeds the amplitude, weakest " + worst);
+	}
+
+	//
+	// outOfBand()
+	// ===========
+	private void outOfBand() {
+		AnomalyDetector.Oscillation detector = new AnomalyDetector.Oscillation(2, 10, 0.5, PERIOD);
+		feed(detector, 0, 2000, 40, 1, 0);
+		check(!detector.isAnomalous(), "40 Hz is ignored by a 2 to 10 Hz band, amplitude " + detector.amplitude());
+		checkEquals(0, detector.anomalyCount(), "No anomalies out of band");
+	}
+
+	//
+	// offsetAndNoise()
+	// ================
+	// A steady offset must not leak into the low frequency bins.
+	//
+	private void offsetAndNoise() {
+		AnomalyDetector.Oscillation detector = new AnomalyDetector.Oscillation(1, 5, 0.5, PERIOD);
+		Random random = new Random(1);
+		for (int n = 0; n < 5000; n++) {
+			detector.update(n * PERIOD, 1000 + 0.05 * random.nextGaussian());
+		}
+		check(!detector.isAnomalous(), "Offset of 1000 with noise is not an oscillation, amplitude " + detector.amplitude());
+		check(detector.amplitude() < 0.05, "Offset removed, amplitude " + detector.amplitude());
+	}
+
+	//
+	// hysteresis()
+	// ============
+	// Once anomalous, the detector only clears below CLEAR_RATIO of the limit.
+	//
+	private void hysteresis() {
+		AnomalyDetector.Oscillation detector = new AnomalyDetector.Oscillation(4, 6, 1, PERIOD);
+		long end = feed(detector, 0, 500, 5, 2, 0);
+		check(detector.isAnomalous(), "Amplitude 2 is above the limit of 1");
+		end = feed(detector, end, 500, 5, 0.9, 0);
+		check(detector.isAnomalous(), "Amplitude 0.9 is above the clear level, measured " + detector.amplitude());
+		feed(detector, end, 500, 5, 0.5, 0);
+		check(!detector.isAnomalous(), "Amplitude 0.5 clears the anomaly, measured " + detector.amplitude());
+		checkEquals(1, detector.anomalyCount(), "One anomaly");
+	}
+
+	//
+	// directDFT()
+	// ===========
+	// After a long run the recursion still agrees with a DFT of the window.
+	//
+	private void directDFT() {
+		int window = 32;
+		double hz = 12.5;
+		AnomalyDetector.Oscillation detector = new AnomalyDetector.Oscillation(hz, hz, 100, PERIOD, window);
+		Random random = new Random(2);
+		double[] values = new double[200000];
+		for (int n = 0; n < values.length; n++) {
+			values[n] = 5 + Math.sin(2 * Math.PI * 3 * n * PERIOD / 1000.0) + 0.7 * Math.sin(2 * Math.PI * hz * n * PERIOD / 1000.0)
+				+ 0.2 * random.nextGaussian();
+			detector.update(n * PERIOD, values[n]);
+		}
+
+		// The detector holds each value until the next tick, so its window
+		// ends with the value before the last one given.
+		int last = values.length - 2;
+		double mean = 0;
+		for (int m = last - window + 1; m <= last; m++) {
+			mean += values[m];
+		}
+		mean /= window;
+		double re = 0;
+		double im = 0;
+		double omega = 2 * Math.PI * hz * PERIOD / 1000.0;
+		for (int m = last - window + 1; m <= last; m++) {
+			re += (values[m] - mean) * Math.cos(omega * m);
+			im += (values[m] - mean) * Math.sin(omega * m);
+		}
+		double expected = 2 * Math.sqrt(re * re + im * im) / window;
+		checkEquals(expected, detector.amplitude(), expected * 0.01, "Sliding DFT agrees with a direct DFT after 200000 samples");
+	}
+
+	//
+	// gaps()
+	// ======
+	// A gap longer than the window starts the window again.
+	//
+	private void gaps() {
+		AnomalyDetector.Oscillation detector = new AnomalyDetector.Oscillation(4, 6, 0.5, PERIOD);
+		long end = feed(detector, 0, 500, 5, 1, 0);
+		check(detector.isAnomalous(), "Anomalous before the gap");
+		detector.update(end + 10000, 0);
+		check(!detector.isAnomalous(), "Not anomalous straight after a gap");
+		checkEquals(0, detector.amplitude(), 0, "Window cleared by the gap");
+	}
+
+	//
+	// arguments()
+	// ===========
+	private void arguments() {
+		checkThrows(IllegalArgumentException.class, () -> new AnomalyDetector.Oscillation(1, 49, 0.5, PERIOD, 128),
+			"A band needing more than MAX_BINS bins");
+		checkThrows(IllegalArgumentException.class, () -> new AnomalyDetector.Oscillation(2, 60, 0.5, PERIOD),
+			"A band above the Nyquist frequency");
+		checkThrows(IllegalArgumentException.class, () -> new AnomalyDetector.Oscillation(5, 2, 0.5, PERIOD),
+			"A band with minHz above maxHz");
+		checkThrows(IllegalArgumentException.class, () -> AnomalyDetector.parse("oscillation(2, 20, 0.5)"),
+			"Too few arguments");
+
+		List<AnomalyDetector> detectors = AnomalyDetector.parse("zscore(4) oscillation(2, 20, 0.5, 10, 128)");
+		checkEquals(2, detectors.size(), "Two detectors parsed");
+		check(detectors.get(1) instanceof AnomalyDetector.Oscillation, "Second detector is an oscillation detector");
+	}
+
+	//
+	// feed()
+	// ======
+	// Feeds cntSamples of a sine wave of the given frequency and amplitude to
+	// the detector, one every PERIOD milliseconds from the start time, and
+	// returns the time after the last one.
+	//
+	private long feed(AnomalyDetector detector, long start, int cntSamples, double hz, double amplitude, double offset) {
+		long timestamp = start;
+		for (int n = 0; n < cntSamples; n++) {
+			detector.update(timestamp, offset + amplitude * Math.sin(2 * Math.PI * hz * timestamp / 1000.0));
+			timestamp += PERIOD;
+		}
+		return timestamp;
+	}
+}
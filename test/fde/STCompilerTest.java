@@ -0,0 +1,92 @@
+//
+// STRUCTURED TEXT COMPILER TEST
+// =============================
+// Checks that the STCompiler narrows assigned values to their declared types
+// and follows the IEC 61131-3 rules for MOD and for division.
+//
+// (c) AUT University - 2026
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+//
+package fde;
+
+public class STCompilerTest extends TestCase {
+	private STCompiler compiler;
+
+	public static void main(String[] args) {
+		new STCompilerTest().run();
+	}
+
+	@Override
+	protected void tests() throws Exception {
+		FunctionBlock fb = new FunctionBlock();
+		fb.addVar("i", VarTypes.VAR_INPUT, DataTypes.DATATYPE_INT, "", "");
+		fb.addVar("j", VarTypes.VAR_INPUT, DataTypes.DATATYPE_INT, "", "");
+		fb.addVar("l", VarTypes.VAR_OUTPUT, DataTypes.DATATYPE_LINT, "", "");
+		fb.addVar("r", VarTypes.VAR_OUTPUT, DataTypes.DATATYPE_REAL, "", "");
+		fb.addVar("lr", VarTypes.VAR_OUTPUT, DataTypes.DATATYPE_LREAL, "", "");
+		fb.addVar("b", VarTypes.VAR_OUTPUT, DataTypes.DATATYPE_BOOL, "", "");
+		compiler = new STCompiler(fb);
+
+		narrowing();
+		modulo();
+		division();
+	}
+
+	//
+	// narrowing()
+	// ===========
+	private void narrowing() throws Exception {
+		checkEquals(-32768, (long) run("i := 32767 + 1;", 0, 0, "i"), "INT wraps at 16 bits");
+		checkEquals(32767, (long) run("i := -32768 - 1;", 0, 0, "i"), "INT wraps below -32768");
+		checkEquals(-1, (long) run("i := i * 65535;", 1, 0, "i"), "INT product wraps");
+		checkEquals(70000, (long) run("l := 35000 * 2;", 0, 0, "l"), "LINT holds more than 16 bits");
+		checkEquals((float) 0.1, run("r := 0.1;", 0, 0, "r"), 0, "REAL has single precision");
+		checkEquals(0.1, run("lr := 0.1;", 0, 0, "lr"), 0, "LREAL keeps double precision");
+		checkEquals(1, run("b := i > j;", 5, 3, "b"), 0, "BOOL TRUE is 1");
+		checkEquals(0, run("b := i > j;", 3, 5, "b"), 0, "BOOL FALSE is 0");
+
+		double[] values = new double[compiler.slotCount()];
+		compiler.compile("FOR i := 32760 TO 32767 DO j := j + 1; IF j > 100 THEN EXIT; END_IF; END_FOR;").run(values);
+		checkEquals(101, (long) values[compiler.slot("j")], "FOR loop counter wraps like FORTE's INT");
+	}
+
+	//
+	// modulo()
+	// ========
+	private void modulo() throws Exception {
+		checkEquals(1, (long) run("l := i MOD j;", 7, 3, "l"), "7 MOD 3");
+		checkEquals(-1, (long) run("l := i MOD j;", -7, 3, "l"), "MOD takes the sign of the dividend");
+		checkEquals(1, (long) run("l := i MOD j;", 7, -3, "l"), "MOD ignores the sign of the divisor");
+		checkEquals(0, (long) run("l := i MOD j;", 7, 0, "l"), "MOD by zero gives zero");
+		checkThrows(STCompileException.class, () -> compiler.compile("lr := lr MOD 2;"), "MOD of a REAL");
+		checkThrows(STCompileException.class, () -> compiler.compile("l := b MOD 2;"), "MOD of a BOOL");
+	}
+
+	//
+	// division()
+	// ==========
+	private void division() throws Exception {
+		checkEquals(3, (long) run("l := i / j;", 7, 2, "l"), "INT division truncates");
+		checkEquals(-3, (long) run("l := i / j;", -7, 2, "l"), "INT division truncates towards zero");
+		checkEquals(0, (long) run("l := i / j;", 7, 0, "l"), "INT division by zero gives zero");
+		checkEquals(3.5, run("lr := i / 2.0;", 7, 0, "lr"), 0, "REAL division");
+		checkEquals(Double.POSITIVE_INFINITY, run("lr := i / 0.0;", 7, 0, "lr"), 0, "REAL division by zero");
+		checkEquals(-32768, (long) run("i := i / j;", -32768, -1, "i"), "INT division wraps on overflow");
+	}
+
+	//
+	// run()
+	// =====
+	// Compiles and runs an algorithm with i and j set, returning a variable.
+	//
+	private double run(String source, double i, double j, String result) throws STCompileException {
+		double[] values = new double[compiler.slotCount()];
+		values[compiler.slot("i")] = i;
+		values[compiler.slot("j")] = j;
+		compiler.compile(source).run(values);
+		return values[compiler.slot(result)];
+	}
+}
@@ -0,0 +1,277 @@
+//
+// SPILL QUEUE TEST
+// ================
+// Checks that the SpillQueue stays first-in first-out as packets move between
+// its memory ring and its spill file, as the spill file wraps and fills, and
+// across generations.
+//
+// (c) AUT University - 2026
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+//
+package fde;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
+public class SpillQueueTest extends TestCase {
+	// The longest data value randomAgainstModel() adds, and the size of its
+	// spill record. The queue must not drop packets until its spill file is
+	// nearly full, allowing for the space lost at the end when it wraps.
+	private static final int MAX_DATA_LENGTH = 40;
+	private static final int MAX_RECORD_LENGTH = SpillQueue.RECORD_OVERHEAD + 1 + MAX_DATA_LENGTH + 2;
+
+	private final Random random = new Random(48);
+	private long cntPackets = 0;
+
+	public static void main(String[] args) {
+		new SpillQueueTest().run();
+	}
+
+	@Override
+	protected void tests() throws Exception {
+		spillAndRefill();
+		spillFull();
+		spillDisabled();
+		oversizedPacket();
+		generations();
+		randomAgainstModel(4, 256, false);
+		randomAgainstModel(16, 1024, true);
+		randomAgainstModel(3, 0, true);
+	}
+
+	//
+	// spillAndRefill()
+	// ================
+	// Packets beyond the ring go to the spill file and come back in order.
+	//
+	private void spillAndRefill() {
+		SpillQueue queue = new SpillQueue(4, 4096);
+		Deque<NIOserverPacket> expected = new ArrayDeque<NIOserverPacket>();
+		for (int n = 0; n < 30; n++) {
+			expected.add(add(queue));
+		}
+		checkEquals(30, queue.size(), "Size counts the spilled packets");
+		checkEquals(26, queue.spilledCount(), "Packets beyond the ring are spilled");
+		checkEquals(26, queue.totalSpilled(), "Spills counted");
+		checkEquals(30, queue.maxSize(), "Most packets held");
+
+		for (int n = 0; n < 10; n++) {
+			checkPacket(expected.poll(), queue.poll(), "Polled while spilled");
+		}
+		for (int n = 0; n < 5; n++) {
+			expected.add(add(queue));
+		}
+		drain(queue, expected, "Drained after spilling");
+		checkEquals(0, queue.spilledBytes(), "Spill file emptied");
+		checkEquals(0, queue.droppedCount(), "Nothing dropped");
+	}
+
+	//
+	// spillFull()
+	// ===========
+	// When the spill file is full the oldest packets are dropped.
+	//
+	private void spillFull() {
+		SpillQueue queue = new SpillQueue(2, 200);
+		Deque<NIOserverPacket> expected = new ArrayDeque<NIOserverPacket>();
+		for (int n = 0; n < 50; n++) {
+			expected.add(add(queue, "x"));
+		}
+		long cntDropped = queue.droppedCount();
+		check(cntDropped > 0, "Packets dropped from a full queue");
+		checkEquals(50, cntDropped + queue.size(), "Every packet is either queued or dropped");
+		for (long n = 0; n < cntDropped; n++) {
+			expected.poll();
+		}
+		drain(queue, expected, "The newest packets survive a full queue");
+	}
+
+	//
+	// spillDisabled()
+	// ===============
+	private void spillDisabled() {
+		SpillQueue queue = new SpillQueue(3, 0);
+		Deque<NIOserverPacket> expected = new ArrayDeque<NIOserverPacket>();
+		for (int n = 0; n < 5; n++) {
+			expected.add(add(queue));
+		}
+		checkEquals(2, queue.droppedCount(), "Oldest packets dropped without a spill file");
+		checkEquals(0, queue.totalSpilled(), "Nothing spilled without a spill file");
+		expected.poll();
+		expected.poll();
+		drain(queue, expected, "The newest packets kept without a spill file");
+	}
+
+	//
+	// oversizedPacket()
+	// =================
+	// A packet too big for the spill file is dropped on its own.
+	//
+	private void oversizedPacket() {
+		SpillQueue queue = new SpillQueue(1, 100);
+		Deque<NIOserverPacket> expected = new ArrayDeque<NIOserverPacket>();
+		expected.add(add(queue));
+		expected.add(add(queue, "y"));
+		add(queue, "z".repeat(200));
+		expected.add(add(queue, "w"));
+		checkEquals(1, queue.droppedCount(), "Oversized packet dropped");
+		drain(queue, expected, "Packets around an oversized one kept");
+	}
+
+	//
+	// generations()
+	// =============
+	// A new generation makes every queued packet stale, in the ring and in
+	// the spill file, at once.
+	//
+	private void generations() {
+		SpillQueue queue = new SpillQueue(4, 1024);
+		for (int n = 0; n < 20; n++) {
+			add(queue);
+		}
+		int generation = queue.newGeneration();
+		checkEquals(1, generation, "Generation advanced");
+		checkEquals(generation, queue.generation(), "Generation read back");
+		checkEquals(0, queue.size(), "New generation empties the queue");
+		checkEquals(0, queue.spilledCount(), "New generation empties the spill file");
+		check(queue.poll() == null, "No packets after a new generation");
+
+		// The ring is still full of stale packets, so these are spilled.
+		for (int n = 0; n < 4; n++) {
+			add(queue);
+		}
+		queue.newGeneration();
+		Deque<NIOserverPacket> expected = new ArrayDeque<NIOserverPacket>();
+		for (int n = 0; n < 10; n++) {
+			expected.add(add(queue));
+		}
+		checkEquals(10, queue.size(), "Only the newest generation counted");
+		NIOserverPacket packet = queue.poll();
+		checkPacket(expected.poll(), packet, "Stale packets skipped");
+		checkEquals(queue.generation(), packet.generation(), "Packet stamped with the current generation");
+		drain(queue, expected, "Newest generation drained");
+
+		SpillQueue full = new SpillQueue(2, 0);
+		add(full);
+		add(full);
+		full.newGeneration();
+		add(full);
+		add(full);
+		checkEquals(0, full.droppedCount(), "Stale packets pushed out are not counted as dropped");
+		checkEquals(2, full.size(), "New packets replace the stale ones");
+	}
+
+	//
+	// randomAgainstModel()
+	// ====================
+	// Adds and polls packets of random sizes at random, so that the spill file
+	// wraps many times and fills now and then, and checks the queue against a
+	// simple deque. Packets the queue drops are its oldest, and it only drops
+	// them when the spill file is nearly full.
+	//
+	private void randomAgainstModel(int memoryCapacity, int spillCapacity, boolean isGenerations) {
+		String description = "Queue of " + memoryCapacity + " packets and " + spillCapacity + " bytes";
+		SpillQueue queue = new SpillQueue(memoryCapacity, spillCapacity);
+		Deque<NIOserverPacket> expected = new ArrayDeque<NIOserverPacket>();
+		long cntDropped = 0;
+		long cntAdded = 0;
+
+		for (int step = 0; step < 200000; step++) {
+			int action = random.nextInt(100);
+			if (action < 55) {
+				long spilledBytes = queue.spilledBytes();
+				NIOserverPacket packet = add(queue, "v".repeat(random.nextInt(MAX_DATA_LENGTH)));
+				cntAdded++;
+				long newlyDropped = queue.droppedCount() - cntDropped;
+				cntDropped = queue.droppedCount();
+				if ((newlyDropped > 0) && (spillCapacity > 0) && (spilledBytes < spillCapacity - (3 * MAX_RECORD_LENGTH))) {
+					check(false, description + ": dropped with only " + spilledBytes + " bytes spilled at step " + step);
+					return;
+				}
+				for (long n = 0; n < newlyDropped; n++) {
+					expected.poll();
+				}
+				expected.add(packet);
+			} else if (action < 99) {
+				NIOserverPacket expectedPacket = expected.poll();
+				NIOserverPacket packet = queue.poll();
+				if (!samePacket(expectedPacket, packet)) {
+					checkPacket(expectedPacket, packet, description + ", step " + step);
+					return;
+				}
+			} else if (isGenerations) {
+				queue.newGeneration();
+				expected.clear();
+			}
+			if (queue.size() != expected.size()) {
+				checkEquals(expected.size(), queue.size(), description + ": size at step " + step);
+				return;
+			}
+		}
+		check(true, description + " matched the model");
+		if (spillCapacity > 0) {
+			check(queue.totalSpilled() * SpillQueue.RECORD_OVERHEAD > 10L * spillCapacity,
+				description + ": spill file wrapped, " + queue.totalSpilled() + " spilled");
+		}
+		check((cntDropped > 0) && (cntDropped < cntAdded), description + ": filled up, " + cntDropped + " of " + cntAdded + " dropped");
+		drain(queue, expected, description + " drained");
+	}
+
+	//
+	// add()
+	// =====
+	// Adds a packet with a unique timestamp and returns it.
+	//
+	private NIOserverPacket add(SpillQueue queue) {
+		return add(queue, Long.toString(random.nextLong()));
+	}
+
+	private NIOserverPacket add(SpillQueue queue, String dataValue) {
+		NIOserverPacket packet = new NIOserverPacket();
+		cntPackets++;
+		packet.command("6");
+		packet.SIFBinstanceID(1 + (int) (cntPackets % 49));
+		packet.timeStamp(cntPackets);
+		packet.dataValue(dataValue + "\u00e9");
+		queue.add(packet);
+		return packet;
+	}
+
+	//
+	// drain()
+	// =======
+	private void drain(SpillQueue queue, Deque<NIOserverPacket> expected, String description) {
+		while (!expected.isEmpty()) {
+			NIOserverPacket expectedPacket = expected.poll();
+			NIOserverPacket packet = queue.poll();
+			if (!samePacket(expectedPacket, packet)) {
+				checkPacket(expectedPacket, packet, description);
+				return;
+			}
+		}
+		check(queue.poll() == null, description + ": nothing left");
+		checkEquals(0, queue.size(), description + ": size");
+	}
+
+	private void checkPacket(NIOserverPacket expected, NIOserverPacket packet, String description) {
+		check(samePacket(expected, packet), description + ": expected " + text(expected) + ", got " + text(packet));
+	}
+
+	private static boolean samePacket(NIOserverPacket expected, NIOserverPacket packet) {
+		if ((expected == null) || (packet == null)) {
+			return (expected == packet);
+		}
+		return (expected.timeStamp() == packet.timeStamp())
+			&& (expected.SIFBinstanceID() == packet.SIFBinstanceID())
+			&& expected.command().equals(packet.command())
+			&& expected.dataValue().equals(packet.dataValue());
+	}
+
+	private static String text(NIOserverPacket packet) {
+		return (packet == null) ? "null" : packet.timeStamp() + "|" + packet.SIFBinstanceID() + "|" + packet.dataValue();
+	}
+}
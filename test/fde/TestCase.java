@@ -0,0 +1,105 @@
+//
+// TEST CASE
+// =========
+// The base class of the self-checking tests in the test folder. Each test is a
+// small program that exercises one class and reports the checks that failed.
+//
+// (c) AUT University - 2026
+//
+// Documentation
+// =============
+// The tests are in the fde package so they can reach the package-private
+// parts of the classes they test. A test subclasses TestCase, puts its
+// checks in tests() and starts itself from main():
+//
+//     public static void main(String[] args) {
+//         new SpillQueueTest().run();
+//     }
+//
+// run() prints each failed check and exits with a non-zero status if any
+// failed, so the tests can be run from a script. An exception thrown by a
+// test is reported as a failure.
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+//
+package fde;
+
+public abstract class TestCase {
+	private int cntChecks = 0;
+	private int cntFailed = 0;
+
+	//
+	// tests()
+	// =======
+	// Runs the checks of the test.
+	//
+	protected abstract void tests() throws Exception;
+
+	//
+	// run()
+	// =====
+	public void run() {
+		String testName = getClass().getSimpleName();
+		try {
+			tests();
+		} catch (Throwable e) {
+			cntFailed++;
+			System.out.println(testName + " threw " + e);
+			e.printStackTrace(System.out);
+		}
+		System.out.println(testName + ": " + cntChecks + " checks, " + cntFailed + " failed");
+		if (cntFailed > 0) {
+			System.exit(1);
+		}
+	}
+
+	//
+	// check()
+	// =======
+	protected void check(boolean condition, String description) {
+		cntChecks++;
+		if (!condition) {
+			cntFailed++;
+			System.out.println("FAILED: " + description);
+		}
+	}
+
+	//
+	// checkEquals()
+	// =============
+	protected void checkEquals(long expected, long actual, String description) {
+		check(expected == actual, description + " (expected " + expected + ", got " + actual + ")");
+	}
+
+	//
+	// checkEquals()
+	// =============
+	// Compares doubles to within tolerance. NaN equals NaN.
+	//
+	protected void checkEquals(double expected, double actual, double tolerance, String description) {
+		boolean isEqual = (Double.isNaN(expected) && Double.isNaN(actual))
+				|| (expected == actual)
+				|| (Math.abs(expected - actual) <= tolerance);
+		check(isEqual, description + " (expected " + expected + ", got " + actual + ")");
+	}
+
+	//
+	// checkThrows()
+	// =============
+	// Checks that running the code throws an exception of the given class.
+	//
+	protected void checkThrows(Class<? extends Throwable> expected, ThrowingRunnable code, String description) {
+		try {
+			code.run();
+			check(false, description + " (nothing was thrown)");
+		} catch (Throwable e) {
+			check(expected.isInstance(e), description + " (threw " + e + ")");
+		}
+	}
+
+	protected interface ThrowingRunnable {
+		void run() throws Exception;
+	}
+}
@@ -0,0 +1,267 @@
+//
+// TIME SERIES SEGMENT TEST
+// ========================
+// Checks that the Gorilla compression in TimeSeriesSegment gives back exactly
+// the samples that were written, before and after the segment is sealed and
+// reopened.
+//
+// (c) AUT University - 2026
+//
+// Revision History
+// ================
+// 18.10.2026 BRD Original version.
+//
+package fde;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+public class TimeSeriesSegmentTest extends TestCase {
+	private static final int CAPACITY = 1 << 20;
+
+	private final Random random = new Random(47);
+	private Path directory;
+	private int cntFiles = 0;
+
+	public static void main(String[] args) {
+		new TimeSeriesSegmentTest().run();
+	}
+
+	@Override
+	protected void tests() throws Exception {
+		directory = Files.createTempDirectory("fde-segment-test");
+		try {
+			roundTrip(1);
+			roundTrip(5);
+			decodeWhileWriting();
+			reopenUnsealed();
+			compression();
+			full();
+		} finally {
+			try (Stream<Path> files = Files.walk(directory)) {
+				files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+			}
+		}
+	}
+
+	//
+	// roundTrip()
+	// ===========
+	// Writes samples that use every timestamp and value encoding, seals the
+	// segment, and reads them back bit for bit from the sealed file.
+	//
+	private void roundTrip(int width) throws IOException {
+		List<Sample> samples = samples(width, 5000);
+		TimeSeriesSegment segment = TimeSeriesSegment.create(newFile(), width, CAPACITY);
+		boolean isAppended = true;
+		for (Sample sample : samples) {
+			isAppended &= segment.append(sample.timestamp, sample.values);
+		}
+		check(isAppended, "Appended every sample of width " + width);
+		checkDecoded(segment, samples, "Width " + width + " before sealing");
+
+		segment.seal();
+		check(segment.isSealed(), "Sealed");
+		checkEquals(segment.dataSize(), Files.size(segment.file()), "Sealed file cut back to its data");
+		check(!segment.append(samples.get(samples.size() - 1).timestamp, samples.get(0).values), "No appends once sealed");
+		checkDecoded(segment, samples, "Width " + width + " after sealing");
+
+		TimeSeriesSegment reopened = TimeSeriesSegment.open(segment.file());
+		checkEquals(width, reopened.width(), "Width read from the header");
+		checkEquals(samples.size(), reopened.count(), "Count read from the header");
+		checkEquals(samples.get(0).timestamp, reopened.firstTimestamp(), "First timestamp read from the header");
+		checkEquals(samples.get(samples.size() - 1).timestamp, reopened.lastTimestamp(), "Last timestamp read from the header");
+		checkDecoded(reopened, samples, "Width " + width + " reopened");
+	}
+
+	//
+	// decodeWhileWriting()
+	// ====================
+	// A decoder of a segment still being written sees the samples written so
+	// far, and is not disturbed by later appends.
+	//
+	private void decodeWhileWriting() throws IOException {
+		List<Sample> samples = samples(1, 2000);
+		TimeSeriesSegment segment = TimeSeriesSegment.create(newFile(), 1, CAPACITY);
+		for (int ptr = 0; ptr < 1000; ptr++) {
+			segment.append(samples.get(ptr).timestamp, samples.get(ptr).values);
+		}
+		TimeSeriesSegment.Decoder decoder = segment.decoder();
+		for (int ptr = 1000; ptr < samples.size(); ptr++) {
+			segment.append(samples.get(ptr).timestamp, samples.get(ptr).values);
+		}
+		checkDecoder(decoder, samples.subList(0, 1000), "Decoder made half way");
+		checkDecoded(segment, samples, "Decoder made at the end");
+	}
+
+	//
+	// reopenUnsealed()
+	// ================
+	// A segment that was never sealed, as if the engine stopped, is sealed
+	// when it is opened again and keeps every sample.
+	//
+	private void reopenUnsealed() throws IOException {
+		List<Sample> samples = samples(5, 777);
+		TimeSeriesSegment segment = TimeSeriesSegment.create(newFile(), 5, CAPACITY);
+		for (Sample sample : samples) {
+			segment.append(sample.timestamp, sample.values);
+		}
+		TimeSeriesSegment reopened = TimeSeriesSegment.open(segment.file());
+		check(reopened.isSealed(), "Unsealed segment sealed on opening");
+		checkEquals(reopened.dataSize(), Files.size(reopened.file()), "Unsealed segment cut back on opening");
+		checkDecoded(reopened, samples, "Unsealed segment reopened");
+	}
+
+	//
+	// compression()
+	// =============
+	// A steady signal sampled at a steady rate takes a couple of bits per
+	// sample, and a slowly moving one only a few bytes.
+	//
+	private void compression() throws IOException {
+		int cntSamples = 10000;
+		TimeSeriesSegment steady = TimeSeriesSegment.create(newFile(), 1, CAPACITY);
+		TimeSeriesSegment moving = TimeSeriesSegment.create(newFile(), 1, CAPACITY);
+		for (int n = 0; n < cntSamples; n++) {
+			steady.append(1000000 + n * 100L, new double[] { 21.5 });
+			moving.append(1000000 + n * 100L, new double[] { Math.round(200 * Math.sin(n / 500.0)) / 10.0 });
+		}
+		double steadyBits = (steady.dataSize() - TimeSeriesSegment.HEADER_SIZE) * 8.0 / cntSamples;
+		double movingBytes = (moving.dataSize() - TimeSeriesSegment.HEADER_SIZE) / (double) cntSamples;
+		check(steadyBits < 2.1, "Steady signal takes " + steadyBits + " bits a sample");
+		check(movingBytes < 4, "Slowly moving signal takes " + movingBytes + " bytes a sample");
+	}
+
+	//
+	// full()
+	// ======
+	// A full segment refuses samples, and keeps the ones it accepted.
+	//
+	private void full() throws IOException {
+		List<Sample> samples = samples(5, 5000);
+		TimeSeriesSegment segment = TimeSeriesSegment.create(newFile(), 5, 4096);
+		int cntAccepted = 0;
+		while ((cntAccepted < samples.size()) && segment.append(samples.get(cntAccepted).timestamp, samples.get(cntAccepted).values)) {
+			cntAccepted++;
+		}
+		check((cntAccepted > 0) && (cntAccepted < samples.size()), "Small segment filled after " + cntAccepted + " samples");
+		check(segment.dataSize() <= 4096, "Data fits the capacity");
+		checkDecoded(segment, samples.subList(0, cntAccepted), "Full segment");
+	}
+
+	//
+	// samples()
+	// =========
+	// Makes samples whose intervals change by nothing, by small, medium and
+	// large amounts and by more than 12 bits, and whose values repeat, move
+	// slowly, jump at random and include NaN, the infinities and -0.
+	//
+	private List<Sample> samples(int width, int cntSamples) {
+		double[] special = { Double.NaN, Double.longBitsToDouble(0x7ff8dead00000001L), Double.POSITIVE_INFINITY,
+			Double.NEGATIVE_INFINITY, -0.0, 0.0, Double.MIN_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE };
+		List<Sample> samples = new ArrayList<Sample>();
+		long timestamp = 1700000000000L;
+		long interval = 100;
+		double[] last = new double[width];
+
+		for (int n = 0; n < cntSamples; n++) {
+			switch (random.nextInt(6)) {
+			case 0:
+				interval += random.nextInt(128) - 64;
+				break;
+			case 1:
+				interval += random.nextInt(512) - 256;
+				break;
+			case 2:
+				interval += random.nextInt(4096) - 2048;
+				break;
+			case 3:
+				interval += random.nextInt(1000000);
+				break;
+			}
+			interval = Math.max(0, interval);
+			timestamp += interval;
+
+			double[] values = new double[width];
+			for (int ptrColumn = 0; ptrColumn < width; ptrColumn++) {
+				switch (random.nextInt(5)) {
+				case 0:
+					values[ptrColumn] = last[ptrColumn];
+					break;
+				case 1:
+					values[ptrColumn] = last[ptrColumn] + 0.1;
+					break;
+				case 2:
+					values[ptrColumn] = special[random.nextInt(special.length)];
+					break;
+				case 3:
+					values[ptrColumn] = Double.longBitsToDouble(random.nextLong());
+					break;
+				default:
+					values[ptrColumn] = random.nextGaussian() * 100;
+				}
+				last[ptrColumn] = values[ptrColumn];
+			}
+			samples.add(new Sample(timestamp, values));
+		}
+		return samples;
+	}
+
+	//
+	// checkDecoded()
+	// ==============
+	private void checkDecoded(TimeSeriesSegment segment, List<Sample> samples, String description) throws IOException {
+		checkDecoder(segment.decoder(), samples, description);
+	}
+
+	//
+	// checkDecoder()
+	// ==============
+	// Checks the decoder gives back exactly the samples, comparing the raw bits
+	// of the values so that NaN payloads and -0 are checked as well.
+	//
+	private void checkDecoder(TimeSeriesSegment.Decoder decoder, List<Sample> samples, String description) {
+		int ptrSample = 0;
+		while (decoder.next()) {
+			if (ptrSample >= samples.size()) {
+				check(false, description + ": more samples decoded than written");
+				return;
+			}
+			Sample sample = samples.get(ptrSample);
+			if (decoder.timestamp != sample.timestamp) {
+				checkEquals(sample.timestamp, decoder.timestamp, description + ": timestamp of sample " + ptrSample);
+				return;
+			}
+			for (int ptrColumn = 0; ptrColumn < sample.values.length; ptrColumn++) {
+				long expected = Double.doubleToRawLongBits(sample.values[ptrColumn]);
+				long actual = Double.doubleToRawLongBits(decoder.values[ptrColumn]);
+				if (expected != actual) {
+					checkEquals(expected, actual, description + ": bits of sample " + ptrSample + " column " + ptrColumn);
+					return;
+				}
+			}
+			ptrSample++;
+		}
+		checkEquals(samples.size(), ptrSample, description + ": samples decoded");
+	}
+
+	private Path newFile() {
+		return directory.resolve("segment" + (cntFiles++) + TimeSeriesStore.SEGMENT_SUFFIX);
+	}
+
+	private static class Sample {
+		final long timestamp;
+		final double[] values;
+
+		Sample(long timestamp, double[] values) {
+			this.timestamp = timestamp;
+			this.values = values;
+		}
+	}
+}